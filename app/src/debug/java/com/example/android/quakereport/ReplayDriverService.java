@@ -0,0 +1,223 @@
+package com.example.android.quakereport;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test of the list's loading path, for debug builds: runs the real EarthquakeLoader.loadInBackground() (and so
+ * EarthquakeStore, EarthquakeQueryPlanner and QueryUtils) many times against the configured endpoint, and reports the
+ * p50/p99 end-to-end latency and the throughput.
+ * 用真正的EarthquakeLoader反覆載入，量測端到端的延遲(p50/p99)和吞吐量；搭配replay/的伺服器就能離線重現各種網路狀況
+ *
+ * Meant to run against the replay server of replay/ (see USGS_REQUEST_URL in app/build.gradle):
+ *   replay/build/install/replay/bin/replay --feed feeds/usgs-20000.geojson --latency-ms 200 --bandwidth-kbps 512
+ *   ./gradlew installDebug -PusgsRequestUrl=http://10.0.2.2:8080/fdsnws/event/1/query
+ *   adb shell am startservice -n com.example.android.quakereport/.ReplayDriverService --ei runs 200 --ei concurrency 2
+ *   adb shell run-as com.example.android.quakereport cat files/replay.txt
+ *
+ * Each load is timed from the start of loadInBackground() to its result, i.e. fetch, parse, store, format and sort.
+ * By default every run nudges minmag by 0.0001, so no two runs share a URL: each one is a full download that reaches
+ * the server (identical queries would be answered by the single-flight memo, and a repeated query only fetches its
+ * "updatedafter" delta). Pass --ez distinct false to measure that incremental path instead.
+ */
+public class ReplayDriverService extends IntentService {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ReplayDriverService.class.getSimpleName();
+
+    /** Name of the report in the app's files dir */
+    private static final String REPORT_FILE_NAME = "replay.txt";
+
+    /** Number of timed loads */
+    private static final String EXTRA_RUNS = "runs";
+
+    /** Number of untimed loads first, to warm up the connection pool, the JIT and the database */
+    private static final String EXTRA_WARMUP = "warmup";
+
+    /** Number of loads running at the same time */
+    private static final String EXTRA_CONCURRENCY = "concurrency";
+
+    /** Minimum magnitude of the query (a String, like the preference) */
+    private static final String EXTRA_MIN_MAGNITUDE = "minmag";
+
+    /** Number of earthquakes per load */
+    private static final String EXTRA_LIMIT = "limit";
+
+    /** FDSN offset of the page loaded, or 0 for the first page (the sync path) */
+    private static final String EXTRA_OFFSET = "offset";
+
+    /** Whether every run uses its own URL (see the class comment) */
+    private static final String EXTRA_DISTINCT = "distinct";
+
+    public ReplayDriverService() {
+        super(ReplayDriverService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        int runs = Math.max(1, intent.getIntExtra(EXTRA_RUNS, 50));
+        int warmup = Math.max(0, intent.getIntExtra(EXTRA_WARMUP, 2));
+        int concurrency = Math.max(1, intent.getIntExtra(EXTRA_CONCURRENCY, 1));
+        String minMagnitude = intent.getStringExtra(EXTRA_MIN_MAGNITUDE);
+        if (minMagnitude == null) {
+            minMagnitude = getString(R.string.settings_min_magnitude_default);
+        }
+        int limit = intent.getIntExtra(EXTRA_LIMIT, getResources().getInteger(R.integer.earthquake_page_size));
+        int offset = intent.getIntExtra(EXTRA_OFFSET, 0);
+        boolean distinct = intent.getBooleanExtra(EXTRA_DISTINCT, true);
+
+        String header = String.format(Locale.US,
+                "# replay of %s\n# runs=%d warmup=%d concurrency=%d minmag=%s limit=%d offset=%d distinct=%b\n",
+                BuildConfig.USGS_REQUEST_URL, runs, warmup, concurrency, minMagnitude, limit, offset, distinct);
+        Log.i(LOG_TAG, "Starting " + header);
+
+        List<Callable<Load>> loads = new ArrayList<>();
+        double baseMagnitude = Double.parseDouble(minMagnitude);
+        for (int i = 0; i < warmup + runs; i++) {
+            String runMagnitude = distinct
+                    ? String.format(Locale.US, "%.4f", baseMagnitude + i * 0.0001) : minMagnitude;
+            loads.add(new Load(EarthquakeActivity.buildQueryUrl(runMagnitude, limit, offset)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        String report;
+        try {
+            runAll(executor, loads.subList(0, warmup));
+            long requestsBefore = Metrics.HTTP_REQUESTS.get();
+            long errorsBefore = Metrics.HTTP_ERRORS.get();
+            long wallStart = System.nanoTime();
+            List<Load> timed = runAll(executor, loads.subList(warmup, loads.size()));
+            long wallNanos = System.nanoTime() - wallStart;
+            report = header + summarize(timed, wallNanos) + String.format(Locale.US, "http requests=%d errors=%d\n",
+                    Metrics.HTTP_REQUESTS.get() - requestsBefore, Metrics.HTTP_ERRORS.get() - errorsBefore);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (Metrics.ENABLED) {
+            report += "\n" + Metrics.dumpToString();
+        }
+        Log.i(LOG_TAG, report);
+        writeReport(new File(getFilesDir(), REPORT_FILE_NAME), report);
+    }
+
+    private static List<Load> runAll(ExecutorService executor, List<Callable<Load>> loads)
+            throws InterruptedException {
+        List<Load> done = new ArrayList<>();
+        for (Future<Load> future : executor.invokeAll(loads)) {
+            try {
+                done.add(future.get());
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Load threw", e.getCause());
+            }
+        }
+        return done;
+    }
+
+    /**
+     * The latency percentiles (nearest rank, over the loads that returned a list) and the throughput of the timed runs.
+     * A load whose request failed still returns the stored earthquakes, so the failed requests are counted from the
+     * HTTP metrics instead (always enabled in debug builds).
+     */
+    private static String summarize(List<Load> loads, long wallNanos) {
+        long[] latencies = new long[loads.size()];
+        int succeeded = 0;
+        long events = 0;
+        for (Load load : loads) {
+            if (load.mEvents >= 0) {
+                latencies[succeeded++] = load.mNanos;
+                events += load.mEvents;
+            }
+        }
+        latencies = Arrays.copyOf(latencies, succeeded);
+        Arrays.sort(latencies);
+        long sum = 0;
+        for (long latency : latencies) {
+            sum += latency;
+        }
+        double wallSeconds = wallNanos / 1e9;
+        return String.format(Locale.US,
+                "loads=%d empty=%d events=%d wall=%.1f s\n"
+                        + "latency_ms p50=%.1f p90=%.1f p99=%.1f max=%.1f mean=%.1f\n"
+                        + "throughput loads_per_s=%.2f events_per_s=%.0f\n",
+                loads.size(), loads.size() - succeeded, events, wallSeconds,
+                percentileMillis(latencies, 50), percentileMillis(latencies, 90), percentileMillis(latencies, 99),
+                succeeded == 0 ? 0 : latencies[succeeded - 1] / 1e6,
+                succeeded == 0 ? 0 : sum / 1e6 / succeeded,
+                succeeded / wallSeconds, events / wallSeconds);
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static void writeReport(File file, String report) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+            writer.write(report);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the replay report", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the replay report", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * One timed load of a URL through the list's loader.
+     */
+    private final class Load implements Callable<Load> {
+
+        private final String mUrl;
+
+        private long mNanos;
+
+        /** Number of earthquakes loaded, or -1 if the loader returned nothing */
+        private int mEvents = -1;
+
+        Load(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public Load call() {
+            long start = System.nanoTime();
+            EarthquakeResultSet result = new EarthquakeLoader(getApplicationContext(), mUrl).loadInBackground();
+            mNanos = System.nanoTime() - start;
+            if (result != null) {
+                mEvents = result.size();
+            }
+            return this;
+        }
+    }
+}
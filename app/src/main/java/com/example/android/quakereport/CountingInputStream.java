@@ -0,0 +1,80 @@
+package com.example.android.quakereport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} wrapper that counts the bytes read through it.
+ * QueryUtils puts one under the decompressor (bytes on the wire) and one above it (inflated bytes),
+ * so every request can report how much the compression saved.
+ * When metrics are on, it also adds up the time spent blocked in read(): under the decompressor that is the time the
+ * request spent waiting for the network, which QueryUtils tells apart from the time spent parsing.
+ */
+final class CountingInputStream extends FilterInputStream {
+
+    private long mCount;
+
+    /** Nanoseconds spent in read() and skip(); only counted when Metrics.ENABLED */
+    private long mReadNanos;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Returns the number of bytes read (or skipped) so far.
+     */
+    long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the nanoseconds spent reading so far, or 0 when metrics are disabled.
+     */
+    long getReadNanos() {
+        return mReadNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = Metrics.now();
+        int b = super.read();
+        if (b != -1) {
+            mCount++;
+        }
+        if (Metrics.ENABLED) {
+            mReadNanos += System.nanoTime() - start;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = Metrics.now();
+        int n = super.read(buffer, offset, length);
+        if (n > 0) {
+            mCount += n;
+        }
+        if (Metrics.ENABLED) {
+            mReadNanos += System.nanoTime() - start;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = Metrics.now();
+        long skipped = super.skip(n);
+        mCount += skipped;
+        if (Metrics.ENABLED) {
+            mReadNanos += System.nanoTime() - start;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;   //reset() would make the count wrong, so don't offer mark/reset
+    }
+}
@@ -15,6 +15,16 @@ public class Earthquake {
 
     private String mUrl;  //Website URL of the earthquake
 
+    private String mId;   //USGS event id (e.g. "us7000abcd"), the key the local store merges updates by
+
+    private long mUpdatedInMilliseconds;  //Time in milliseconds (from the Epoch) when USGS last updated this event
+
+    private double mLatitude;   //Latitude of the epicenter in degrees (from the GeoJSON geometry), or NaN if unknown
+
+    private double mLongitude;  //Longitude of the epicenter in degrees, or NaN if unknown
+
+    private double mDepth;      //Depth of the hypocenter in km, or NaN if unknown
+
 
     /**
      * Constructs a new {@link Earthquake} object.
@@ -25,10 +35,46 @@ public class Earthquake {
      */
     //Call the constructor method to initialize the global member variables at the top based on the values we pass into the constructor.
     public Earthquake(double magnitude, String location, long timeInMilliseconds, String url) {
+        this(null, magnitude, location, timeInMilliseconds, url, timeInMilliseconds);
+    }
+
+    /**
+     * Constructs a new {@link Earthquake} object that can be stored and merged by its USGS event id.
+     * @param id is the USGS event id of the earthquake
+     * @param magnitude is the magnitude (size) of the earthquake
+     * @param location is the city location of the earthquake
+     * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the earthquake happened
+     * @param url is the website URL to find more details about the earthquake
+     * @param updatedInMilliseconds is the time in milliseconds (from the Epoch) when USGS last updated the event
+     */
+    public Earthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                      long updatedInMilliseconds) {
+        this(id, magnitude, location, timeInMilliseconds, url, updatedInMilliseconds, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructs a new {@link Earthquake} object with the position of its epicenter.
+     * @param id is the USGS event id of the earthquake
+     * @param magnitude is the magnitude (size) of the earthquake
+     * @param location is the city location of the earthquake
+     * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the earthquake happened
+     * @param url is the website URL to find more details about the earthquake
+     * @param updatedInMilliseconds is the time in milliseconds (from the Epoch) when USGS last updated the event
+     * @param latitude is the latitude of the epicenter in degrees, or NaN if unknown
+     * @param longitude is the longitude of the epicenter in degrees, or NaN if unknown
+     * @param depth is the depth of the hypocenter in km, or NaN if unknown
+     */
+    public Earthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                      long updatedInMilliseconds, double latitude, double longitude, double depth) {
+        mId = id;
         mMagnitude = magnitude;
         mLocation = location;
         mTimeInMilliseconds = timeInMilliseconds;
         mUrl = url;
+        mUpdatedInMilliseconds = updatedInMilliseconds;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mDepth = depth;
     }
 
 
@@ -49,4 +95,28 @@ public class Earthquake {
         return mUrl;
     }
 
+    public String getmId() {    //Returns the USGS event id, or null if the earthquake wasn't parsed from a feature with an id.
+        return mId;
+    }
+
+    public long getmUpdatedInMilliseconds() {
+        return mUpdatedInMilliseconds;
+    }
+
+    public double getmLatitude() {
+        return mLatitude;
+    }
+
+    public double getmLongitude() {
+        return mLongitude;
+    }
+
+    public double getmDepth() {
+        return mDepth;
+    }
+
+    public boolean hasCoordinates() {   //Returns true if the position of the epicenter is known.
+        return !Double.isNaN(mLatitude) && !Double.isNaN(mLongitude);
+    }
+
 }
@@ -9,30 +9,51 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.graphics.Typeface;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListView;
+import android.widget.ScrollView;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 // We need to say that EarthquakeActivity implements the LoaderCallbacks interface,
-// along with a generic parameter specifying what the loader will return (in this case an Earthquake).
-public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<List<Earthquake>> {
+// along with a generic parameter specifying what the loader will return (in this case the formatted EarthquakeListItems with their sort indices).
+// It also listens for changes of the settings, so a new sort order is applied to the list it already holds instead of loading it again.
+public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<EarthquakeResultSet>,
+        SharedPreferences.OnSharedPreferenceChangeListener {
 
     private static final String LOG_TAG = EarthquakeActivity.class.getName();
 
+    /** Name of the file in the app's files dir that the metrics screen also writes its dump to */
+    private static final String METRICS_FILE_NAME = "metrics.txt";
+
     /** URL (for earthquake data from the USGS dataset) modified to the base URI.
      * Later we’ll use UriBuilder.appendQueryParameter() methods to add additional parameters to the URI
-     * (such as JSON response format, 10 earthquakes requested, minimum magnitude value, and sort order). */
-    private static final String USGS_REQUEST_URL =
-            "https://earthquake.usgs.gov/fdsnws/event/1/query";
+     * (such as JSON response format, 10 earthquakes requested, minimum magnitude value, and sort order).
+     * It is the live USGS endpoint unless the build points it somewhere else, e.g. at the replay server of replay/
+     * (see USGS_REQUEST_URL in app/build.gradle). */
+    private static final String USGS_REQUEST_URL = BuildConfig.USGS_REQUEST_URL;
 
     /**
      * Constant value for the earthquake loader ID. We can choose any integer.
@@ -41,6 +62,81 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
      */
     private static final int EARTHQUAKE_LOADER_ID = 1;
 
+    /**
+     * Loader ID for the later pages of the list. Every page request restarts this loader with new arguments.
+     */
+    private static final int EARTHQUAKE_PAGE_LOADER_ID = 2;
+
+    /** Loader arguments of a page request: the FDSN offset (1-based) and limit of the page */
+    private static final String ARG_OFFSET = "offset";
+    private static final String ARG_LIMIT = "limit";
+
+    /** Start fetching the next (or previous) page when the user is this many rows away from the end of the list */
+    private static final int PAGE_PREFETCH_DISTANCE = 5;
+
+    /** Number of earthquakes per page (R.integer.earthquake_page_size) */
+    private int mPageSize;
+
+    /** Maximum number of earthquakes kept in the adapter (R.integer.earthquake_window_size) */
+    private int mWindowSize;
+
+    /** FDSN offset (1-based) of the first earthquake in the adapter. It grows when pages are dropped from the top. */
+    private int mWindowOffset = 1;
+
+    /** True once a page came back shorter than requested, i.e. there is nothing more to fetch after the window */
+    private boolean mEndReached;
+
+    /** URL of the page request in flight (null if none), so stale or repeated page results can be ignored */
+    private String mPendingPageUrl;
+
+    /** True if the page in flight goes above the window (the user scrolled back up), false if it goes below */
+    private boolean mPendingPagePrepend;
+
+    /** The list of earthquakes */
+    private ListView mEarthquakeListView;
+
+    /** Lists up to this many rows (old plus new) are diffed on the UI thread; longer ones on a background thread */
+    private static final int DIFF_ON_UI_THREAD_MAX_ROWS = 200;
+
+    /** True until the first EarthquakeActivity of this process has been created; tells cold starts from warm ones */
+    private static boolean sFirstActivityOfProcess = true;
+
+    /** Whether this activity was the first one created in its process (a cold start) */
+    private boolean mColdStart;
+
+    /** SystemClock.elapsedRealtime() at the start of onCreate(), the origin of the time-to-first-content measurement */
+    private long mCreateTime;
+
+    /** Set once the time to first content has been reported, so only the first content counts */
+    private boolean mFirstContentReported;
+
+    /** Incremented whenever the adapter's contents change, so a diff computed against older contents is not applied */
+    private int mListGeneration;
+
+    /** The list most recently passed to updateList(); a background diff towards an older list is dropped */
+    private List<EarthquakeListItem> mTargetItems;
+
+    /** Whether a background diff is running; at most one runs at a time */
+    private boolean mDiffRunning;
+
+    /** Every earthquake of the window, with its sort indices (null until the first content arrives) */
+    private EarthquakeResultSet mResultSet;
+
+    /** Order of the list, from the order-by preference ("magnitude" or "time") */
+    private String mOrderBy;
+
+    /** The minmag of the query the window was fetched with, as it appears in the URL */
+    private String mQueryMinMagnitude;
+
+    /** The minimum magnitude the user asked for; at least mQueryMinMagnitude, stricter values are filtered locally */
+    private double mMinMagnitude;
+
+    /** Text typed in the search box; when not empty, the list only shows earthquakes whose place matches it */
+    private String mSearchQuery = "";
+
+    /** Ids of the stored earthquakes near the one the user long-pressed (see showNearby()); when not null, only they are shown */
+    private Set<String> mNearbyIds;
+
     /** Adapter for the list of earthquakes */
     private EarthquakeAdapter mAdapter;
 
@@ -58,12 +154,34 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreateTime = SystemClock.elapsedRealtime();
+        mColdStart = sFirstActivityOfProcess;
+        sFirstActivityOfProcess = false;
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
 
+        mPageSize = getResources().getInteger(R.integer.earthquake_page_size);
+        mWindowSize = getResources().getInteger(R.integer.earthquake_window_size);
+
+        // The sort order is applied here, to the earthquakes already loaded; only the minimum magnitude is part of the query.
+        // 排序在App內完成，改變排序不需要重新下載；只有最小震度會改變查詢網址
+        //每個Preference都有一個相應的鍵值對，可供系統用來將設置保存在應用設置的默認SharedPreferences文件中。
+        //當用戶更改設置時，系統會自動更新SharedPreferences文件中的相應值。
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this); //透過PreferenceManager叫系統抓各設定項目的資料，將各設定項目命名為sharedPrefs
+        mOrderBy = sharedPrefs.getString(
+                getString(R.string.settings_order_by_key),
+                getString(R.string.settings_order_by_default));
+        mQueryMinMagnitude = sharedPrefs.getString(                   //抓設定項目裡的字符(最小震度)，該字符就會儲存下面兩個元素：設定項目的識別key和預設數值
+                getString(R.string.settings_min_magnitude_key),       //取得設定項目的識別key (需要取得Key是為了要讓系統知道是抓哪個項目key下的數值)
+                getString(R.string.settings_min_magnitude_default));  //取得震度的預設數值(若用戶有輸入新的數值，系統就會抓到新的數值)
+        mMinMagnitude = parseMagnitude(mQueryMinMagnitude);
+        mQueryMinMagnitude = getLoadedMinMagnitude(mQueryMinMagnitude);
+        sharedPrefs.registerOnSharedPreferenceChangeListener(this);
+
         // Find a reference to the {@link ListView} in the layout
         ListView earthquakeListView = (ListView) findViewById(R.id.list);
+        mEarthquakeListView = earthquakeListView;
 
         /** Now we need to hook up the empty view to the ListView. We can use the ListView setEmptyView() method.
          *  We can also make the empty state TextView be a global variable (在上面), so we can refer to it in a later method.
@@ -72,7 +190,7 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
         earthquakeListView.setEmptyView(mEmptyStateTextView);
 
         // Create a new adapter that takes an empty list of earthquakes as input
-        mAdapter = new EarthquakeAdapter(this, new ArrayList<Earthquake>());
+        mAdapter = new EarthquakeAdapter(this, new ArrayList<EarthquakeListItem>());
 
         // Set the adapter on the {@link ListView}
         // so the list can be populated in the user interface
@@ -84,7 +202,7 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
                 // Find the current earthquake that was clicked on
-                Earthquake currentEarthquake = mAdapter.getItem(position);
+                Earthquake currentEarthquake = mAdapter.getItem(position).getEarthquake();
 
                 // Convert the String URL into a URI object (to pass into the Intent constructor)
                 Uri earthquakeUri = Uri.parse(currentEarthquake.getmUrl());
@@ -97,6 +215,37 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
             }
         });
 
+        // Long-press an earthquake to show only the ones near it (e.g. its aftershocks); back shows them all again.
+        // 長按某個地震，只顯示震央在它附近的地震
+        earthquakeListView.setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+            @Override
+            public boolean onItemLongClick(AdapterView<?> adapterView, View view, int position, long l) {
+                Earthquake earthquake = mAdapter.getItem(position).getEarthquake();
+                if (Double.isNaN(earthquake.getmLatitude()) || Double.isNaN(earthquake.getmLongitude())) {
+                    return false;   //位置不明，無法找附近的地震
+                }
+                showNearby(earthquake);
+                return true;
+            }
+        });
+
+        // Fetch further pages in the background as the user nears either end of what the list currently holds.
+        earthquakeListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                maybeRequestPage(firstVisibleItem, visibleItemCount, totalItemCount);
+            }
+        });
+
+
+        // Show the list saved by the last load right away (stale-while-revalidate). The loader below then refreshes it
+        // in the background and only the rows that changed are updated.
+        showSnapshot();
+
 
         /** 在這裡設置檢查網路連線狀態，若有連線則加載loader並獲取數據，若斷線則在App畫面顯示錯誤訊息*/
         // Get a reference to the ConnectivityManager to check the state of network connectivity
@@ -130,46 +279,248 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
             loadingIndicator.setVisibility(View.GONE);  //我們有在佈局中添加"加載中"的符號(loading indicator)，所以要讓App在斷線時隱藏"加載中"的符號，否則該符號會跟下面的錯誤訊息重疊出現在畫面上。
 
             // Set empty state text to display no connection error message when there is no Internet connection.
+            // The empty view only shows when there was no snapshot to show either.
             //斷線時的錯誤訊息
             mEmptyStateTextView.setText(R.string.no_internet_connection);
+
+            // Alarms don't survive a reboot: make sure the background sync is still scheduled, so the list gets
+            // refreshed once the device is back online.
+            EarthquakeSyncService.schedule(this);
         }
 
     }
 
 
+    @Override
+    protected void onDestroy() {
+        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
+        super.onDestroy();
+    }
+
+    /**
+     * Called when a setting changes (while SettingsActivity is in front, since this activity is singleTop and survives it).
+     * A new sort order just switches the sort index of the earthquakes we already hold: no request is made.
+     * A stricter minimum magnitude than the one the window was fetched with is filtered locally as well; only a lower
+     * one changes the query, so the list is loaded again.
+     */
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (getString(R.string.settings_order_by_key).equals(key)) {
+            mOrderBy = sharedPreferences.getString(key, getString(R.string.settings_order_by_default));
+            if (mResultSet != null) {
+                updateList(getDisplayedItems());  //只換排序索引，不重新下載
+            }
+        } else if (getString(R.string.settings_min_magnitude_key).equals(key)) {
+            String minMagnitude = sharedPreferences.getString(key, getString(R.string.settings_min_magnitude_default));
+            mMinMagnitude = parseMagnitude(minMagnitude);
+            if (mMinMagnitude >= parseMagnitude(mQueryMinMagnitude)) {
+                // Everything the new threshold keeps was already fetched: filter the window.
+                if (mResultSet != null) {
+                    updateList(getDisplayedItems());    //門檻提高，直接在已下載的資料中篩選
+                    maybeFillFilteredWindow();
+                }
+            } else {
+                // The new threshold lets in earthquakes we never fetched: change the query and load it.
+                mQueryMinMagnitude = minMagnitude;
+                mPendingPageUrl = null;
+                getLoaderManager().restartLoader(EARTHQUAKE_LOADER_ID, null, this);
+            }
+        }
+    }
+
+    /**
+     * Returns the minmag to query with when the activity starts. A stricter minimum magnitude only filters the window
+     * locally and leaves the query as it was, so the snapshot and the sync watermark belong to the URL that was last
+     * loaded, not to the one the preference would build. If that URL is our first page with a lower minmag, keep
+     * querying it (the preference is applied locally); otherwise the preference builds a new query.
+     * 門檻提高時只在本地篩選，查詢網址不變；下次啟動沿用上次實際載入的網址，快照和同步水位才不會失效
+     *
+     * @param preferred is the minimum magnitude preference
+     */
+    private String getLoadedMinMagnitude(String preferred) {
+        String lastQuery = EarthquakeStore.getInstance(this).getLastSyncQuery();
+        if (lastQuery == null) {
+            return preferred;
+        }
+        String loaded = Uri.parse(lastQuery).getQueryParameter("minmag");
+        if (loaded == null || parseMagnitude(loaded) > parseMagnitude(preferred)
+                || !lastQuery.equals(buildQueryUrl(loaded, mPageSize, 0))) {
+            return preferred;   //上次的查詢不是這個列表的第一頁，或門檻比設定更嚴格
+        }
+        return loaded;
+    }
+
+    /**
+     * Parse a minimum magnitude preference. A value that isn't a number (e.g. an empty field, or "NaN") filters nothing
+     * locally; it is still passed to USGS as it is, like before.
+     */
+    private static double parseMagnitude(String value) {
+        try {
+            double magnitude = Double.parseDouble(value);
+            return Double.isNaN(magnitude) ? Double.NEGATIVE_INFINITY : magnitude;
+        } catch (NumberFormatException | NullPointerException e) {
+            return Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Returns the rows of the window the list shows: the ones at or above the minimum magnitude, near the long-pressed
+     * earthquake (if any) and whose place matches the search text (if any), in the user's order.
+     */
+    private List<EarthquakeListItem> getDisplayedItems() {
+        List<EarthquakeListItem> items = mResultSet.getItems(mOrderBy, mMinMagnitude);
+        if (mNearbyIds != null) {
+            List<EarthquakeListItem> nearby = new ArrayList<>();
+            for (EarthquakeListItem item : items) {
+                if (mNearbyIds.contains(item.getEarthquake().getmId())) {
+                    nearby.add(item);
+                }
+            }
+            items = nearby;
+        }
+        if (TextUtils.isEmpty(mSearchQuery)) {
+            return items;
+        }
+        // Look the search text up in the place index instead of scanning every place string.
+        EarthquakePlaceIndex.Matches matches = EarthquakeStore.getInstance(this).getPlaceIndex().search(mSearchQuery);
+        List<EarthquakeListItem> found = new ArrayList<>();
+        for (EarthquakeListItem item : items) {
+            if (matches.contains(item.getEarthquake().getmId())) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Filter the list by the search text as the user types, and log how long the search took.
+     */
+    private void onSearchQueryChanged(String query) {
+        mSearchQuery = query.trim();
+        if (mResultSet == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<EarthquakeListItem> items = getDisplayedItems();
+        long micros = (System.nanoTime() - start) / 1000;
+        EarthquakePlaceIndex index = EarthquakeStore.getInstance(this).getPlaceIndex();
+        Log.i(LOG_TAG, "Place search \"" + mSearchQuery + "\": " + items.size() + " rows in " + micros + " us (index: "
+                + index.size() + " events, " + index.getWordCount() + " words)");
+        updateList(items);
+    }
+
+
+    /**
+     * Show only the earthquakes within R.integer.nearby_radius_km of the given one. Only the cells around the epicenter
+     * are searched in the store's spatial index; the list then keeps the rows whose events were found. The search runs
+     * on a background thread because the first one of the process builds the index from the table.
+     */
+    private void showNearby(final Earthquake earthquake) {
+        final EarthquakeStore store = EarthquakeStore.getInstance(this);
+        final int radiusKm = getResources().getInteger(R.integer.nearby_radius_km);
+        new AsyncTask<Void, Void, Set<String>>() {
+            @Override
+            protected Set<String> doInBackground(Void... params) {
+                EarthquakeSpatialIndex index = store.getSpatialIndex();    //只有第一次需要從資料庫建立
+                long start = System.nanoTime();
+                int[] rows = index.withinRadius(earthquake.getmLatitude(), earthquake.getmLongitude(), radiusKm);
+                Set<String> ids = new HashSet<>();
+                for (int row : rows) {
+                    ids.add(index.getTable().getId(row));
+                }
+                Log.i(LOG_TAG, "Nearby search: " + rows.length + " of " + index.size() + " events within " + radiusKm
+                        + " km, searched in " + (System.nanoTime() - start) / 1000 + " us");
+                return ids;
+            }
+
+            @Override
+            protected void onPostExecute(Set<String> ids) {
+                if (isFinishing() || mResultSet == null) {
+                    return;
+                }
+                mNearbyIds = ids;
+                List<EarthquakeListItem> items = getDisplayedItems();
+                Toast.makeText(EarthquakeActivity.this,
+                        getString(R.string.nearby_toast, items.size(), radiusKm), Toast.LENGTH_SHORT).show();
+                updateList(items);
+            }
+        }.execute();
+    }
+
+    /**
+     * Back first leaves the nearby view (showNearby()), then the app.
+     */
+    @Override
+    public void onBackPressed() {
+        if (mNearbyIds != null) {
+            mNearbyIds = null;
+            if (mResultSet != null) {
+                updateList(getDisplayedItems());
+            }
+            return;
+        }
+        super.onBackPressed();
+    }
+
+
     /** Then we need to override the three methods specified in the LoaderCallbacks interface. */
     //We need onCreateLoader(), for when the LoaderManager has determined that the loader with our specified ID isn't running, so we should create a new one.
     @Override
-    public Loader<List<Earthquake>> onCreateLoader(int i, Bundle bundle) {
-        //Read the user’s latest preferences for the minimum magnitude, construct a proper URI with their preference,
-        //and then create a new Loader for that URI.
-        //每個Preference都有一個相應的鍵值對，可供系統用來將設置保存在應用設置的默認SharedPreferences文件中。
-        //當用戶更改設置時，系統會自動更新SharedPreferences文件中的相應值。
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this); //透過PreferenceManager叫系統抓各設定項目的資料，將各設定項目命名為sharedPrefs
-        String minMagnitude = sharedPrefs.getString(                  //抓設定項目裡的字符，將該字符命名為minMagnitude，該字符就會儲存下面兩個元素：設定項目的識別key和預設數值
-                getString(R.string.settings_min_magnitude_key),       //取得設定項目的識別key (需要取得Key是為了要讓系統知道是抓哪個項目key下的數值)
-                getString(R.string.settings_min_magnitude_default));  //取得震度的預設數值(若用戶有輸入新的數值，系統就會抓到新的數值)
+    public Loader<EarthquakeResultSet> onCreateLoader(int id, Bundle args) {
+        // The first page uses the page size; a later page (the page loader) carries its own offset and limit.
+        if (id == EARTHQUAKE_PAGE_LOADER_ID && args != null) {
+            mPendingPageUrl = buildQueryUrl(args.getInt(ARG_LIMIT), args.getInt(ARG_OFFSET));
+            return new EarthquakeLoader(this, mPendingPageUrl);
+        }
+        return new EarthquakeLoader(this, buildQueryUrl(mPageSize, 0));  //把網址存到Loader中，提交出來
+    }
 
-        String orderBy = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),            //Read from SharedPreferences and check for the value associated with the key
-                getString(R.string.settings_order_by_default)         //When building the URI and appending query parameters, instead of hardcoding the “orderby” parameter to be “time”, we will use the user’s preference (stored in the orderBy variable).
-        );
+    /**
+     * Build the USGS query URL from the user's preferences.
+     *
+     * @param limit is the number of earthquakes requested
+     * @param offset is the FDSN offset (1-based) of the first earthquake requested, or 0 for the first page
+     */
+    private String buildQueryUrl(int limit, int offset) {
+        //Use the minimum magnitude of the current query (the last loaded one or the user's preference, picked in
+        //onCreate(), and only lowered by onSharedPreferenceChanged()), construct a proper URI with it, and then create a new Loader for that URI.
+        return buildQueryUrl(mQueryMinMagnitude, limit, offset);
+    }
 
+    /**
+     * Build the USGS query URL of the list for the given minimum magnitude. Also used by the replay driver of the debug
+     * build, so that it loads exactly the URLs the list does.
+     */
+    static String buildQueryUrl(String minMagnitude, int limit, int offset) {
         Uri baseUri = Uri.parse(USGS_REQUEST_URL);                    //導入URI化的網址(USGS_REQUEST_URL)並解析，將解析到的URI網址命名為baseUri
         Uri.Builder uriBuilder = baseUri.buildUpon();                 //對URI網址導入Uri.Builder方法，準備將其他的用戶設定值添加在URI後面，把等待添加的URI網址命名為uriBuilder，
 
         uriBuilder.appendQueryParameter("format", "geojson");         //在URI後面添加搜尋參數字符"format"(格式為geojson)
-        uriBuilder.appendQueryParameter("limit", "10");               //在URI後面添加搜尋參數"limit"(限制為10個搜尋結果)
+        uriBuilder.appendQueryParameter("limit", String.valueOf(limit)); //在URI後面添加搜尋參數"limit"(每頁的搜尋結果數量，見R.integer.earthquake_page_size)
         uriBuilder.appendQueryParameter("minmag", minMagnitude);      //在URI後面添加搜尋參數"minmag"(預設震度的數值，若用戶有輸入新的數值，系統就會抓到新的數值)
         uriBuilder.appendQueryParameter("orderby", "time");           //在URI後面添加搜尋參數"orderby"(以時間排序)
                                                                       //(註:原URL網址是"http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&orderby=time&minmag=6&limit=10")
+        // The server always sorts by time, so that the pages (offsets) of the query stay the same whatever order the
+        // user picks; the order-by preference is applied locally (see EarthquakeResultSet) and never changes the URL.
+
+        if (offset > 0) {
+            // A later page: the same query, starting further down the result set.
+            uriBuilder.appendQueryParameter(EarthquakeStore.PARAM_OFFSET, String.valueOf(offset));
+        }
 
-        return new EarthquakeLoader(this, uriBuilder.toString());  //透過toString把更新的URI網址(uriBuilder)轉換成字符，存到Loader中，提交出來
+        return uriBuilder.toString();                                 //透過toString把更新的URI網址(uriBuilder)轉換成字符，提交出來
     }
 
     //We need onLoadFinished(), where we'll do exactly what we did in onPostExecute(), and use the earthquake data to update our UI - by updating the dataset in the adapter.
     @Override
-    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
+    public void onLoadFinished(Loader<EarthquakeResultSet> loader, EarthquakeResultSet earthquakes) {
+        long start = Metrics.now();     //計時UI執行緒處理載入結果花的時間
+
+        if (loader.getId() == EARTHQUAKE_PAGE_LOADER_ID) {
+            onPageLoadFinished((EarthquakeLoader) loader, earthquakes);
+            Metrics.LOAD_FINISHED.recordSince(start);
+            return;
+        }
 
         /** Hide the loading indicator (by setting visibility to View.GONE) after the first load is completed - when onLoadFinished() is called.
          * 我們有在佈局中添加"加載中"的符號(loading indicator)，所以要讓App在加載器加載完數據後隱藏"加載中"的符號。
@@ -179,6 +530,9 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
         loadingIndicator.setVisibility(View.GONE);
 
 
+        reportFirstContent("network");
+
+
         /** To avoid the “No earthquakes found.” message blinking on the screen when the app first launches, we can leave the empty state TextView blank,
          *  until the first load completes. In the onLoadFinished callback method, we can set the text to be the string “No earthquakes found.” */
         // Set empty state text to display "No earthquakes found." when there is no data available to fetch.
@@ -186,23 +540,266 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
         mEmptyStateTextView.setText(R.string.no_earthquakes);
 
 
-        // Clear the adapter of previous earthquake data
+        // Any page still in flight belongs to the old list.
+        mPendingPageUrl = null;
+
+        // The first page replaces the whole window.
+        mResultSet = earthquakes != null ? earthquakes : new EarthquakeResultSet(new ArrayList<EarthquakeListItem>());
+        mWindowOffset = 1;
+        mEndReached = mResultSet.size() < mPageSize;
+
+        // Instead of clearing the adapter and adding everything back (which rebinds every visible row), work out what
+        // actually changed and only touch those rows.
+        updateList(getDisplayedItems());
+        maybeFillFilteredWindow();
+
+        // Keep the list fresh in the background from now on. The store just synced, so the first background sync is
+        // scheduled one interval from now rather than run again.
+        EarthquakeSyncService.schedule(this);
+        Metrics.LOAD_FINISHED.recordSince(start);
+    }
+
+    /**
+     * Replace the contents of the list with the given items, rebinding only what changed. Every change of the list goes
+     * through here: a new first page, a page added to the window, or a new sort order.
+     * The diff runs on the UI thread for short lists and on a background thread for long ones. Only one background diff
+     * runs at a time: lists passed in while it runs only replace the target, and when it ends its result is applied if
+     * nothing changed in the meantime, or else dropped and one new diff is started towards the newest list. A result is
+     * never diffed again, so diffs can't keep restarting each other.
+     */
+    private void updateList(List<EarthquakeListItem> newItems) {
+        mTargetItems = newItems;
+        if (!mDiffRunning) {
+            diffToTarget();
+        }
+        //否則等正在背景執行的比對結束後，再改為比對最新的清單
+    }
+
+    /**
+     * Work out the diff from the adapter's contents to mTargetItems, and apply it.
+     */
+    private void diffToTarget() {
+        final List<EarthquakeListItem> newItems = mTargetItems;
+        if (newItems == null) {
+            return;     //loader已重設，沒有要顯示的清單
+        }
+        final List<EarthquakeListItem> oldItems = new ArrayList<>(mAdapter.getCount());
+        for (int i = 0; i < mAdapter.getCount(); i++) {
+            oldItems.add(mAdapter.getItem(i));
+        }
+
+        if (oldItems.size() + newItems.size() <= DIFF_ON_UI_THREAD_MAX_ROWS) {
+            applyDiff(EarthquakeDiff.calculate(oldItems, newItems), newItems);
+            return;
+        }
+
+        final int generation = mListGeneration;
+        mDiffRunning = true;
+        new AsyncTask<Void, Void, EarthquakeDiff>() {
+            @Override
+            protected EarthquakeDiff doInBackground(Void... params) {
+                return EarthquakeDiff.calculate(oldItems, newItems);
+            }
+
+            @Override
+            protected void onPostExecute(EarthquakeDiff diff) {
+                mDiffRunning = false;
+                if (isFinishing()) {
+                    return;
+                }
+                if (newItems == mTargetItems && generation == mListGeneration) {
+                    applyDiff(diff, newItems);
+                } else {
+                    diffToTarget();     //有更新的清單，或畫面上的清單已經變了：丟掉這次的結果，只比對最新的清單一次
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Put the new items into the adapter. If rows were only updated in place, just the updated rows that are on screen are
+     * rebound; otherwise the ListView is notified once and the row that was at the top of the screen is kept there.
+     */
+    private void applyDiff(EarthquakeDiff diff, List<EarthquakeListItem> newItems) {
+        mListGeneration++;
+
+        if (diff.isEmpty()) {
+            return;     //資料完全沒變，不需要重畫任何一列
+        }
+
+        int firstVisible = mEarthquakeListView.getFirstVisiblePosition();
+        View firstChild = mEarthquakeListView.getChildAt(0);
+        int firstTop = firstChild == null ? 0 : firstChild.getTop();
+        String anchorKey = firstVisible < mAdapter.getCount()
+                ? EarthquakeDiff.keyOf(mAdapter.getItem(firstVisible)) : null;
+
+        mAdapter.setNotifyOnChange(false);
         mAdapter.clear();
+        mAdapter.addAll(newItems);
+
+        if (!diff.hasStructuralChanges()) {
+            // Same events in the same order: rebind the updated rows that are on screen, directly into their views.
+            mAdapter.setNotifyOnChange(true);
+            int childCount = mEarthquakeListView.getChildCount();
+            for (int position : diff.getChangedPositions()) {
+                int childIndex = position - firstVisible;
+                if (childIndex >= 0 && childIndex < childCount) {
+                    mAdapter.getView(position, mEarthquakeListView.getChildAt(childIndex), mEarthquakeListView);
+                }
+            }
+            return;
+        }
 
+        mAdapter.notifyDataSetChanged();    //一次通知ListView更新(也會把setNotifyOnChange恢復為true)
+        int anchorPosition = anchorKey == null ? -1 : diff.getNewPosition(anchorKey);
+        if (anchorPosition >= 0) {
+            mEarthquakeListView.setSelectionFromTop(anchorPosition, firstTop);
+        }
+    }
 
-        // If there is a valid list of {@link Earthquake}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (earthquakes != null && !earthquakes.isEmpty()) {
-            mAdapter.addAll(earthquakes);
+    /**
+     * Fill the list with the snapshot saved by the last load of the same query, if there is one.
+     * The snapshot is one page of earthquakes in a memory-mapped columnar file, so reading and formatting it here on the
+     * UI thread takes a few milliseconds and the list is already filled in the first frame.
+     */
+    private void showSnapshot() {
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(
+                EarthquakeSnapshot.getFile(getFilesDir()), buildQueryUrl(mPageSize, 0));
+        if (snapshot == null || snapshot.size() == 0) {
+            return;     //沒有快照(第一次開啟App或查詢條件改變)，就照原本的流程等待loader
+        }
+        mResultSet = new EarthquakeResultSet(new EarthquakeFormatter(this).format(snapshot.asList()));
+        mTargetItems = getDisplayedItems();
+        mAdapter.addAll(mTargetItems);
+        mEndReached = snapshot.size() < mPageSize;
+        findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+        reportFirstContent("snapshot");
+    }
+
+    /**
+     * Log how long it took from onCreate() until the list is first drawn with content, for cold and warm starts.
+     *
+     * @param source is where the first content came from ("snapshot" or "network")
+     */
+    private void reportFirstContent(final String source) {
+        if (mFirstContentReported) {
+            return;
+        }
+        mFirstContentReported = true;
+        final ViewTreeObserver observer = mEarthquakeListView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                }
+                Log.i(LOG_TAG, "Time to first content: " + (SystemClock.elapsedRealtime() - mCreateTime) + " ms ("
+                        + (mColdStart ? "cold" : "warm") + " start, from " + source + ")");
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Called from onScroll(). Starts loading the next page when the user nears the end of the list,
+     * or the previous page when the user scrolls back to the top of a window whose first pages were dropped.
+     */
+    private void maybeRequestPage(int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        // The window, not the adapter: a stricter minimum magnitude can leave the adapter empty while the window isn't.
+        if (mResultSet == null || mResultSet.size() == 0 || mPendingPageUrl != null) {
+            return;     //還沒有資料，或已經有一頁正在下載中
+        }
+        if (!mEndReached && firstVisibleItem + visibleItemCount >= totalItemCount - PAGE_PREFETCH_DISTANCE) {
+            // The window may already hold more than the adapter shows while a diff is still being worked out.
+            requestPage(mWindowOffset + mResultSet.size(), mPageSize, false);
+        } else if (mWindowOffset > 1 && firstVisibleItem <= PAGE_PREFETCH_DISTANCE) {
+            int offset = Math.max(1, mWindowOffset - mPageSize);
+            requestPage(offset, mWindowOffset - offset, true);
         }
     }
 
+    /**
+     * Fetch the next page when the rows at or above a stricter minimum magnitude than the query's (filtered locally)
+     * don't fill a page. USGS may have more of them after the window, but with no rows to scroll past, onScroll() would
+     * never ask for them and the list would stay short, or show "no earthquakes". Called again as every page arrives,
+     * until enough rows qualify or the end is reached.
+     * 門檻提高後，視窗中符合的地震不到一頁時，繼續下載下一頁，直到夠一頁或沒有更多資料
+     */
+    private void maybeFillFilteredWindow() {
+        if (mResultSet == null || mEndReached || mPendingPageUrl != null) {
+            return;
+        }
+        if (mResultSet.countAtLeast(mMinMagnitude) < mPageSize) {
+            requestPage(mWindowOffset + mResultSet.size(), mPageSize, false);
+        }
+    }
+
+    /**
+     * Restart the page loader for the given FDSN offset and limit. onCreateLoader() records the page URL as pending.
+     */
+    private void requestPage(int offset, int limit, boolean prepend) {
+        Bundle args = new Bundle();
+        args.putInt(ARG_OFFSET, offset);
+        args.putInt(ARG_LIMIT, limit);
+        mPendingPagePrepend = prepend;
+        getLoaderManager().restartLoader(EARTHQUAKE_PAGE_LOADER_ID, args, this);
+    }
+
+    /**
+     * Add a loaded page above or below the current window, then drop rows from the opposite end if the window grew past
+     * R.integer.earthquake_window_size. The window is kept in server (time) order; the list shows it in the user's order,
+     * and updateList() keeps the row the user was looking at in the same place on screen.
+     */
+    private void onPageLoadFinished(EarthquakeLoader loader, EarthquakeResultSet page) {
+        // The loader reloads when the activity is restarted, so the same page can be delivered again later.
+        // Only the page we are waiting for is added.
+        if (mPendingPageUrl == null || !mPendingPageUrl.equals(loader.getUrl())) {
+            return;
+        }
+        mPendingPageUrl = null;
+        if (page == null || mResultSet == null) {
+            return;     //下載失敗，使用者下次捲動時會再試一次
+        }
+
+        EarthquakeResultSet window;
+        if (mPendingPagePrepend) {
+            window = page.concat(mResultSet);
+            mWindowOffset -= page.size();
+            // Drop rows from the bottom; they will be fetched again when the user scrolls back down.
+            if (window.size() > mWindowSize) {
+                window = window.subSet(0, mWindowSize);
+                mEndReached = false;
+            }
+        } else {
+            window = mResultSet.concat(page);
+            if (page.size() < mPageSize) {
+                mEndReached = true;
+            }
+            // Drop rows from the top; they will be fetched again when the user scrolls back up.
+            int removed = Math.max(0, window.size() - mWindowSize);
+            if (removed > 0) {
+                window = window.subSet(removed, window.size());
+                mWindowOffset += removed;
+            }
+        }
+        mResultSet = window;
+        updateList(getDisplayedItems());
+        maybeFillFilteredWindow();
+    }
+
     //We need onLoaderReset(), we're being informed that the data from our loader is no longer valid.
     //This isn't actually a case that's going to come up with our simple loader, but the correct thing to do is to remove all the earthquake data from our UI by clearing out the adapter’s data set.
     @Override
-    public void onLoaderReset(Loader<List<Earthquake>> loader) {
+    public void onLoaderReset(Loader<EarthquakeResultSet> loader) {
+        // Restarting the page loader for the next page resets the previous one; its page is already in the list.
+        if (loader.getId() == EARTHQUAKE_PAGE_LOADER_ID) {
+            return;
+        }
         // Loader reset, so we can clear out our existing data.
         mAdapter.clear();
+        mListGeneration++;
+        mTargetItems = null;
+        mResultSet = null;
     }
 
 
@@ -211,6 +808,27 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {  //這個方法是要用來生成選單頁面
         getMenuInflater().inflate(R.menu.main, menu); // 設置要用哪個menu檔做為選單
+
+        // Filter the list by place while the user types in the search box. 使用者每輸入一個字就立即篩選清單
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                onSearchQueryChanged(query);
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                onSearchQueryChanged(newText);
+                return true;
+            }
+        });
+
+        // The metrics screen only exists in builds that record metrics (debug builds).
+        menu.findItem(R.id.action_metrics).setVisible(Metrics.ENABLED);
         return true;
     }
 
@@ -221,8 +839,34 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
             Intent settingsIntent = new Intent(this, SettingsActivity.class); //按下「settings」鈕要做的事：把畫面從EarthquakeActivity跳轉到SettingsActivity
             startActivity(settingsIntent);  //開始上述的動作
             return true;
+        } else if (id == R.id.action_metrics) {
+            showMetrics();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Show the metrics recorded so far in a dialog, and write them to files/metrics.txt so they can be pulled with adb.
+     */
+    private void showMetrics() {
+        File dumpFile = new File(getFilesDir(), METRICS_FILE_NAME);
+        Metrics.writeDumpFile(dumpFile);
+
+        TextView dumpView = new TextView(this);
+        dumpView.setText(Metrics.dumpToString());
+        dumpView.setTypeface(Typeface.MONOSPACE);
+        dumpView.setTextIsSelectable(true);
+        int padding = getResources().getDimensionPixelSize(R.dimen.metrics_padding);
+        dumpView.setPadding(padding, padding, padding, padding);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(dumpView);
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.metrics_menu_item)
+                .setView(scrollView)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
 }
\ No newline at end of file
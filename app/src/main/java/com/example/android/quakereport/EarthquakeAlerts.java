@@ -0,0 +1,192 @@
+package com.example.android.quakereport;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Posts a notification when a sync stores a significant earthquake: one at or above the alert magnitude the user set
+ * in the settings (next to the minimum magnitude of the list).
+ *
+ * The check only looks at the events a sync just received from USGS (the "updatedafter" delta merged by
+ * EarthquakeStore), never at the whole table, so it takes microseconds and runs right after the merge, on the
+ * sync's own background thread. An event is alerted once: the ids of the alerted events are remembered, in a set
+ * bounded to the most recent MAX_SEEN_IDS ids (events older than MAX_EVENT_AGE_MILLIS are never alerted, so an id
+ * falls out of the set long after its event could come back in a delta). A full download is not news: its events are
+ * only remembered as seen (see onReplaced()), so the first sync of a new query does not alert everything it lists.
+ * 這個類在每次同步後，只檢查這次新下載(或有更新)的地震，若震度超過用戶設定的警報門檻就發出通知；已通知過的地震不會再通知
+ */
+public final class EarthquakeAlerts {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeAlerts.class.getSimpleName();
+
+    /** Name of the SharedPreferences file that holds the ids already alerted */
+    private static final String ALERT_PREFS_NAME = "earthquake_alerts";
+
+    /** Key of the ids already alerted, oldest first, separated by SEEN_IDS_SEPARATOR */
+    private static final String KEY_SEEN_IDS = "seen_ids";
+
+    private static final String SEEN_IDS_SEPARATOR = ",";
+
+    /** Number of alerted ids remembered */
+    static final int MAX_SEEN_IDS = 256;
+
+    /** Events that happened longer ago than this (e.g. old events in a delta after a long pause) are never alerted */
+    static final long MAX_EVENT_AGE_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Context mContext;
+
+    private final SharedPreferences mAlertPrefs;
+
+    /** Ids already alerted, oldest first; loaded from mAlertPrefs on the first check */
+    private LinkedHashSet<String> mSeenIds;
+
+    public EarthquakeAlerts(Context context) {
+        mContext = context.getApplicationContext();
+        mAlertPrefs = mContext.getSharedPreferences(ALERT_PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Alert the significant earthquakes among the given events, which a sync just fetched and stored.
+     *
+     * @param delta are the events the sync received, not the whole result set
+     * @param fetchStartedAt is when the sync's request started (SystemClock.elapsedRealtime()), to log the latency
+     *                       from fetch to notification
+     */
+    public synchronized void onIngested(List<Earthquake> delta, long fetchStartedAt) {
+        double threshold = getAlertMagnitude();
+        if (Double.isNaN(threshold) || delta.isEmpty()) {
+            return;     //用戶關閉了警報，或這次沒有新資料
+        }
+
+        long checkStart = SystemClock.elapsedRealtime();
+        List<Earthquake> alerts = select(delta, threshold, System.currentTimeMillis());
+        if (alerts.isEmpty()) {
+            return;
+        }
+        saveSeenIds();
+
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        for (Earthquake earthquake : alerts) {
+            notificationManager.notify(earthquake.getmId(), 0, buildNotification(earthquake));
+        }
+        long postedAt = SystemClock.elapsedRealtime();
+        Log.i(LOG_TAG, "Alerted " + alerts.size() + " of " + delta.size() + " new events (M" + threshold
+                + "+): fetch to notification " + (postedAt - fetchStartedAt) + " ms, check and post "
+                + (postedAt - checkStart) + " ms");
+    }
+
+    /**
+     * Remember the significant earthquakes of a full download as seen, without posting anything: the full download is
+     * the result set the user is about to see in the list, not news. Only the deltas of later syncs are alerted, and
+     * an event of the full download updated in one of them is not alerted either.
+     * 全部下載(例如第一次同步或換了篩選條件)只記下符合條件的地震，不發出通知
+     *
+     * @param earthquakes are the events of the full download
+     */
+    public synchronized void onReplaced(List<Earthquake> earthquakes) {
+        double threshold = getAlertMagnitude();
+        if (Double.isNaN(threshold) || earthquakes.isEmpty()) {
+            return;
+        }
+        List<Earthquake> seen = select(earthquakes, threshold, System.currentTimeMillis());
+        if (seen.isEmpty()) {
+            return;
+        }
+        saveSeenIds();
+        Log.i(LOG_TAG, "Full download: " + seen.size() + " of " + earthquakes.size() + " events (M" + threshold
+                + "+) marked as seen without an alert");
+    }
+
+    /**
+     * Returns the events of the delta to alert, and remembers them as alerted: at or above the threshold, recent, and
+     * not alerted before. One pass over the delta. The caller saves the remembered ids (saveSeenIds()).
+     */
+    synchronized List<Earthquake> select(List<Earthquake> delta, double threshold, long now) {
+        if (mSeenIds == null) {
+            mSeenIds = loadSeenIds();
+        }
+        List<Earthquake> alerts = new ArrayList<>();
+        for (Earthquake earthquake : delta) {
+            if (earthquake.getmMagnitude() >= threshold
+                    && earthquake.getmId() != null
+                    && now - earthquake.getmTimeInMilliseconds() <= MAX_EVENT_AGE_MILLIS
+                    && mSeenIds.add(earthquake.getmId())) {
+                alerts.add(earthquake);
+            }
+        }
+        // Forget the oldest ids beyond the bound.
+        Iterator<String> oldest = mSeenIds.iterator();
+        for (int excess = mSeenIds.size() - MAX_SEEN_IDS; excess > 0; excess--) {
+            oldest.next();
+            oldest.remove();
+        }
+        return alerts;
+    }
+
+    /**
+     * Returns the alert magnitude the user set, or NaN if alerts are off (the field is empty or not a number).
+     */
+    private double getAlertMagnitude() {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String value = sharedPrefs.getString(mContext.getString(R.string.settings_alert_magnitude_key),
+                mContext.getString(R.string.settings_alert_magnitude_default));
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private LinkedHashSet<String> loadSeenIds() {
+        LinkedHashSet<String> seenIds = new LinkedHashSet<>();
+        String saved = mAlertPrefs.getString(KEY_SEEN_IDS, "");
+        for (String id : TextUtils.split(saved, SEEN_IDS_SEPARATOR)) {
+            if (!id.isEmpty()) {
+                seenIds.add(id);
+            }
+        }
+        return seenIds;
+    }
+
+    private void saveSeenIds() {
+        mAlertPrefs.edit().putString(KEY_SEEN_IDS, TextUtils.join(SEEN_IDS_SEPARATOR, mSeenIds)).apply();
+    }
+
+    /**
+     * Build the notification of one earthquake: its magnitude and place; tapping it opens the USGS event page, like
+     * tapping the earthquake in the list.
+     */
+    private Notification buildNotification(Earthquake earthquake) {
+        String title = mContext.getString(R.string.alert_title, earthquake.getmMagnitude());
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(title)
+                .setContentText(earthquake.getmLocation())
+                .setWhen(earthquake.getmTimeInMilliseconds())
+                .setCategory(NotificationCompat.CATEGORY_EVENT)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true);
+        if (earthquake.getmUrl() != null) {
+            Intent websiteIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(earthquake.getmUrl()));
+            builder.setContentIntent(PendingIntent.getActivity(mContext, 0, websiteIntent, 0));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.quakereport;
+
+import android.provider.BaseColumns;
+
+/**
+ * API Contract for the local earthquake store.
+ * 這個類只用來定義資料庫的表格名稱和欄位名稱，讓EarthquakeDbHelper和EarthquakeStore共用同一組常數
+ */
+public final class EarthquakeContract {
+
+    /**
+     * To prevent someone from accidentally instantiating the contract class, give it an empty constructor.
+     */
+    private EarthquakeContract() {
+    }
+
+    /**
+     * Inner class that defines constant values for the earthquakes database table.
+     * Each entry in the table represents a single USGS event, keyed by its event id.
+     */
+    public static final class EarthquakeEntry implements BaseColumns {
+
+        /** Name of database table for earthquakes */
+        public static final String TABLE_NAME = "earthquakes";
+
+        /**
+         * Unique ID number for the row (only for use in the database table).
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * USGS event id of the earthquake. Rows are merged (replaced) by this column.
+         * Type: TEXT
+         */
+        public static final String COLUMN_EVENT_ID = "event_id";
+
+        /**
+         * Magnitude of the earthquake.
+         * Type: REAL
+         */
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+
+        /**
+         * Place (location) string of the earthquake, e.g. "74km NW of Rumoi, Japan".
+         * Type: TEXT
+         */
+        public static final String COLUMN_PLACE = "place";
+
+        /**
+         * Time in milliseconds (from the Epoch) when the earthquake happened.
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TIME = "time";
+
+        /**
+         * Website URL of the earthquake.
+         * Type: TEXT
+         */
+        public static final String COLUMN_URL = "url";
+
+        /**
+         * Time in milliseconds (from the Epoch) when USGS last updated the event.
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UPDATED = "updated";
+
+        /**
+         * Latitude of the epicenter in degrees, or NULL if unknown.
+         * Type: REAL
+         */
+        public static final String COLUMN_LATITUDE = "latitude";
+
+        /**
+         * Longitude of the epicenter in degrees, or NULL if unknown.
+         * Type: REAL
+         */
+        public static final String COLUMN_LONGITUDE = "longitude";
+
+        /**
+         * Depth of the hypocenter in km, or NULL if unknown.
+         * Type: REAL
+         */
+        public static final String COLUMN_DEPTH = "depth";
+    }
+}
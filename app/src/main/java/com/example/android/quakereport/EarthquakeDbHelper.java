@@ -0,0 +1,77 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+
+/**
+ * Database helper for the local earthquake store. Manages database creation and version management.
+ * 這個類負責建立和升級存放地震資料的SQLite資料庫
+ */
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    /** Name of the database file */
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version.
+     * Version 2 added the latitude, longitude and depth columns.
+     */
+    static final int DATABASE_VERSION = 2;
+
+    /**
+     * Constructs a new instance of {@link EarthquakeDbHelper}.
+     *
+     * @param context of the app
+     */
+    public EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This is called when the database is created for the first time.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Create a String that contains the SQL statement to create the earthquakes table.
+        // The event id is UNIQUE so that inserting an updated event replaces the old row instead of duplicating it.
+        String SQL_CREATE_EARTHQUAKES_TABLE = "CREATE TABLE " + EarthquakeEntry.TABLE_NAME + " ("
+                + EarthquakeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + EarthquakeEntry.COLUMN_EVENT_ID + " TEXT NOT NULL UNIQUE, "
+                + EarthquakeEntry.COLUMN_MAGNITUDE + " REAL NOT NULL DEFAULT 0, "
+                + EarthquakeEntry.COLUMN_PLACE + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_URL + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_UPDATED + " INTEGER NOT NULL DEFAULT 0, "
+                + EarthquakeEntry.COLUMN_LATITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_LONGITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_DEPTH + " REAL);";
+
+        // Execute the SQL statement
+        db.execSQL(SQL_CREATE_EARTHQUAKES_TABLE);
+
+        // The list is always read ordered by time or by magnitude, so index both columns.
+        db.execSQL("CREATE INDEX earthquakes_time ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_TIME + ");");
+        db.execSQL("CREATE INDEX earthquakes_magnitude ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_MAGNITUDE + ");");
+    }
+
+    /**
+     * This is called when the database needs to be upgraded.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Add the position columns. The rows already stored keep NULL there until they are downloaded again;
+            // EarthquakeStore records the version with its sync watermark, so the next sync downloads everything.
+            String[] columns = {
+                    EarthquakeEntry.COLUMN_LATITUDE, EarthquakeEntry.COLUMN_LONGITUDE, EarthquakeEntry.COLUMN_DEPTH};
+            for (String column : columns) {
+                db.execSQL("ALTER TABLE " + EarthquakeEntry.TABLE_NAME + " ADD COLUMN " + column + " REAL;");
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two versions of the earthquake list, keyed by USGS event id.
+ *
+ * Every row of the new list is classified as inserted (its id wasn't in the old list), moved (its id was, but it
+ * changed position relative to the rows around it), changed (same id, but the event was updated) or unchanged;
+ * every row of the old list whose id is gone is removed. Moves are kept to a minimum: the rows that stay in the
+ * same relative order form the longest increasing subsequence of their new positions, and only the others count
+ * as moved.
+ * 這個類用event id比對新舊兩份地震清單，找出新增、刪除、移動和內容有變動的列，讓畫面只需要更新受影響的列
+ *
+ * calculate() only reads the two lists, so it can run on a background thread for long lists.
+ */
+public final class EarthquakeDiff {
+
+    /** Positions (in the old list) of the rows that were removed */
+    private final int[] mRemoved;
+
+    /** Positions (in the new list) of the rows that were inserted */
+    private final int[] mInserted;
+
+    /** Positions (in the new list) of the rows that moved */
+    private final int[] mMoved;
+
+    /** Positions (in the new list) of the rows whose event was updated */
+    private final int[] mChanged;
+
+    /** Position of every key in the new list */
+    private final Map<String, Integer> mNewPositions;
+
+    private EarthquakeDiff(int[] removed, int[] inserted, int[] moved, int[] changed,
+                           Map<String, Integer> newPositions) {
+        mRemoved = removed;
+        mInserted = inserted;
+        mMoved = moved;
+        mChanged = changed;
+        mNewPositions = newPositions;
+    }
+
+    /**
+     * Work out what changed between the old and the new list.
+     */
+    public static EarthquakeDiff calculate(List<EarthquakeListItem> oldItems, List<EarthquakeListItem> newItems) {
+        int oldSize = oldItems.size();
+        int newSize = newItems.size();
+
+        Map<String, Integer> newPositions = new HashMap<>(newSize * 2);
+        for (int i = 0; i < newSize; i++) {
+            newPositions.put(keyOf(newItems.get(i)), i);
+        }
+
+        // Old rows whose id is gone are removed; for the others, remember where they went.
+        int[] removed = new int[oldSize];
+        int removedCount = 0;
+        int[] survivorNewPositions = new int[oldSize];
+        int survivorCount = 0;
+        boolean[] existedBefore = new boolean[newSize];
+        int[] changed = new int[newSize];
+        int changedCount = 0;
+        for (int i = 0; i < oldSize; i++) {
+            EarthquakeListItem oldItem = oldItems.get(i);
+            Integer newPosition = newPositions.get(keyOf(oldItem));
+            if (newPosition == null || existedBefore[newPosition]) {
+                removed[removedCount++] = i;    //gone from the new list, or a duplicate of a row already matched
+            } else {
+                survivorNewPositions[survivorCount++] = newPosition;
+                existedBefore[newPosition] = true;
+                if (isChanged(oldItem.getEarthquake(), newItems.get(newPosition).getEarthquake())) {
+                    changed[changedCount++] = newPosition;
+                }
+            }
+        }
+
+        // Surviving rows that are part of the longest increasing run of new positions keep their relative order;
+        // all the other survivors have moved.
+        boolean[] stays = longestIncreasingSubsequence(survivorNewPositions, survivorCount, newSize);
+        int[] inserted = new int[newSize];
+        int insertedCount = 0;
+        int[] moved = new int[newSize];
+        int movedCount = 0;
+        for (int i = 0; i < newSize; i++) {
+            if (!existedBefore[i]) {
+                inserted[insertedCount++] = i;
+            } else if (!stays[i]) {
+                moved[movedCount++] = i;
+            }
+        }
+
+        Arrays.sort(changed, 0, changedCount);
+        return new EarthquakeDiff(
+                Arrays.copyOf(removed, removedCount),
+                Arrays.copyOf(inserted, insertedCount),
+                Arrays.copyOf(moved, movedCount),
+                Arrays.copyOf(changed, changedCount),
+                newPositions);
+    }
+
+    /**
+     * Returns the key a row is matched by: the USGS event id, or the URL for earthquakes without an id.
+     */
+    public static String keyOf(EarthquakeListItem item) {
+        Earthquake earthquake = item.getEarthquake();
+        return earthquake.getmId() != null ? earthquake.getmId() : earthquake.getmUrl();
+    }
+
+    /**
+     * Returns true if the event was updated in a way the list shows.
+     */
+    private static boolean isChanged(Earthquake oldEarthquake, Earthquake newEarthquake) {
+        return oldEarthquake.getmUpdatedInMilliseconds() != newEarthquake.getmUpdatedInMilliseconds()
+                || oldEarthquake.getmMagnitude() != newEarthquake.getmMagnitude()
+                || oldEarthquake.getmTimeInMilliseconds() != newEarthquake.getmTimeInMilliseconds()
+                || !equalStrings(oldEarthquake.getmLocation(), newEarthquake.getmLocation())
+                || !equalStrings(oldEarthquake.getmUrl(), newEarthquake.getmUrl());
+    }
+
+    private static boolean equalStrings(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Find a longest strictly increasing subsequence of the first count values (patience sorting, O(n log n)).
+     *
+     * @return flags indexed by value: true for the values that are part of the subsequence
+     */
+    private static boolean[] longestIncreasingSubsequence(int[] values, int count, int valueRange) {
+        int[] tailIndices = new int[count];     //index of the smallest tail of an increasing run of each length
+        int[] previous = new int[count];        //index of the previous element in the run ending at each index
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tailIndices[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tailIndices[low - 1] : -1;
+            tailIndices[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] inSubsequence = new boolean[valueRange];
+        for (int i = length > 0 ? tailIndices[length - 1] : -1; i >= 0; i = previous[i]) {
+            inSubsequence[values[i]] = true;
+        }
+        return inSubsequence;
+    }
+
+    /** Returns true if both lists hold the same events, with the same contents, in the same order. */
+    public boolean isEmpty() {
+        return !hasStructuralChanges() && mChanged.length == 0;
+    }
+
+    /** Returns true if rows were inserted, removed or moved (as opposed to only updated in place). */
+    public boolean hasStructuralChanges() {
+        return mRemoved.length > 0 || mInserted.length > 0 || mMoved.length > 0;
+    }
+
+    /** Returns the positions in the old list of the removed rows, in ascending order. */
+    public int[] getRemovedPositions() {
+        return mRemoved;
+    }
+
+    /** Returns the positions in the new list of the inserted rows, in ascending order. */
+    public int[] getInsertedPositions() {
+        return mInserted;
+    }
+
+    /** Returns the positions in the new list of the moved rows, in ascending order. */
+    public int[] getMovedPositions() {
+        return mMoved;
+    }
+
+    /** Returns the positions in the new list of the rows whose event was updated, in ascending order. */
+    public int[] getChangedPositions() {
+        return mChanged;
+    }
+
+    /**
+     * Returns the position in the new list of the row with the given key, or -1 if it isn't in the new list.
+     */
+    public int getNewPosition(String key) {
+        Integer position = mNewPositions.get(key);
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public String toString() {
+        return "EarthquakeDiff{removed=" + mRemoved.length
+                + ", inserted=" + mInserted.length
+                + ", moved=" + mMoved.length
+                + ", changed=" + mChanged.length + "}";
+    }
+}
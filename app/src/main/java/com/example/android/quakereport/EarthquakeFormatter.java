@@ -0,0 +1,143 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.support.v4.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Turns {@link Earthquake}s into {@link EarthquakeListItem}s: the magnitude text and color, the two parts of the location,
+ * and the date and time strings are all worked out here, in EarthquakeLoader.loadInBackground(), so the UI thread only has to
+ * assign them to the views in EarthquakeAdapter.getView().
+ * The text itself comes from EarthquakeTextFormat, which needs no Context; this class adds what does (the "Near the"
+ * text and the magnitude colors).
+ * 這個類負責在背景執行緒把地震資料格式化成畫面要顯示的文字和顏色，UI執行緒只需要把結果設定到View上
+ */
+public class EarthquakeFormatter {
+
+    /**
+     * Define a private helper method called getMagnitudeColor(double magnitude) that returns the correct color value based on the current earthquake’s magnitude value.
+     **/
+    //将颜色 资源 ID 转换为颜色整数值int。Need to convert the color resource ID into a color integer value.
+    //The method would take a double magnitude value as input and return a color integer value.
+    //the switch statement cannot accept a double value, so we should convert our decimal magnitude value into an integer.
+    private int getMagnitudeColor(double magnitude) {
+        // The color only depends on the floor of the magnitude, so it is looked up once per floor and cached.
+        int magnitudeFloor = Math.max(0, Math.min((int) Math.floor(magnitude), mMagnitudeColors.length - 1));
+        int color = mMagnitudeColors[magnitudeFloor];
+        if (color == 0) {   //0 is fully transparent, which none of the magnitude colors are, so it means "not looked up yet"
+            color = lookUpMagnitudeColor(magnitudeFloor);   //negative magnitudes share the color of magnitude 0-1
+            mMagnitudeColors[magnitudeFloor] = color;
+        }
+        return color;
+    }
+
+    private int lookUpMagnitudeColor(double magnitude) {       //宣告一個獲取震度顏色的方法(getMagnitudeColor)，設定什麼震度對接什麼顏色，並將獲取的顏色屬性轉換成int。在方法的括弧中導入一個argument(素材)，也就是屬性為double的magnitude變數，將會在接下來的statement中使用這個變數。
+        int magnitudeColorResourceId;
+        int magnitudeFloor = (int) Math.floor(magnitude);  //Math.floor()最大整數，取小於這個數的最大整數。We can use the Math class to do some handy mathematical calculations. In this case, we can take the “floor” of the decimal magnitude value. This means finding the closest integer less than the decimal value. The floor of the value 1.2 would be the integer 1. Informally, for a positive decimal number, you can think of it as truncating the part of the number after the decimal point.
+        switch (magnitudeFloor) {                          //Within each case, we set the value of the magnitudeColorResourceId variable to be one of the color resources that we defined the colors.xml file.
+            case 0:
+            case 1:
+                magnitudeColorResourceId = R.color.magnitude1;  //In Java code, you can refer to the colors that you defined in the colors.xml file using the color resource ID such as R.color.magnitude1, R.color.magnitude2.
+                break;                                          //For case 0 and 1, we fall through to the same logic, which is to use the R.color.magnitude1 color. This was a design decision to use the same color for earthquakes with magnitude less than 2.
+            case 2:
+                magnitudeColorResourceId = R.color.magnitude2;
+                break;
+            case 3:
+                magnitudeColorResourceId = R.color.magnitude3;
+                break;
+            case 4:
+                magnitudeColorResourceId = R.color.magnitude4;
+                break;
+            case 5:
+                magnitudeColorResourceId = R.color.magnitude5;
+                break;
+            case 6:
+                magnitudeColorResourceId = R.color.magnitude6;
+                break;
+            case 7:
+                magnitudeColorResourceId = R.color.magnitude7;
+                break;
+            case 8:
+                magnitudeColorResourceId = R.color.magnitude8;
+                break;
+            case 9:
+                magnitudeColorResourceId = R.color.magnitude9;
+                break;
+            default:
+                magnitudeColorResourceId = R.color.magnitude10plus;  //We also have a default case where any earthquake with magnitude higher than 10 will use the R.color.magnitude10plus color resource.
+                break;
+        }
+        return ContextCompat.getColor(mContext, magnitudeColorResourceId);  //ContextCompat.getColor()返回的值都是整数，它返回的int实际上就是你想要的颜色（一个十六进制颜色作为整数），在大多数情况下，你会被要求输入该颜色。 R.color.xxx int实际上只是一个ID，引用了你的资源中的十六进制/整数颜色，依赖于你正在使用的API可能会被要求提供该ID，但在幕后，肯定会有ContextCompat.getColor()那个ID。
+        /**
+         *Once we find the right color resource ID, we still have one more step to convert it into an actual color value.
+         * Remember that color resource IDs just point to the resource we defined, but not the value of the color.
+         * For example, R.layout.earthquake_list_item is a reference to tell us where the layout is located. It’s just a number, not the full XML layout.
+         * You can call ContextCompat getColor() to convert the color resource ID into an actual integer color value, and return the result as the return value of the getMagnitudeColor() helper method.
+         **/
+    }
+
+
+    /** Context used to read the "Near the" text and to resolve the magnitude colors */
+    private final Context mContext;
+
+    /** Text shown as the location offset when the place has no " of " part, read once instead of once per row */
+    private final String mNearThe;
+
+    /** Magnitude colors cached by magnitude floor (0-9, and 10 for 10+); 0 means not looked up yet */
+    private final int[] mMagnitudeColors = new int[11];
+
+
+    public EarthquakeFormatter(Context context) {
+        mContext = context.getApplicationContext();
+        mNearThe = mContext.getString(R.string.near_the);
+    }
+
+
+    /**
+     * Format every earthquake of the given list, keeping the order.
+     */
+    public List<EarthquakeListItem> format(List<Earthquake> earthquakes) {
+        List<EarthquakeListItem> items = new ArrayList<>(earthquakes.size());
+        for (int i = 0; i < earthquakes.size(); i++) {
+            items.add(format(earthquakes.get(i)));
+        }
+        return items;
+    }
+
+
+    /**
+     * Work out everything the list item of the given earthquake shows.
+     */
+    public EarthquakeListItem format(Earthquake earthquake) {
+        /**
+         * Split the original location String (i.e. “74km NW of Rumoi, Japan”) into the location offset “74km NW of ”
+         * and the primary location “Rumoi, Japan” (see EarthquakeTextFormat.primaryLocationStart()). If there is no
+         * " of " part, we use the “Near the” text as the location offset, and just use the original location String as
+         * the primary location.
+         **/
+        String originalLocation = earthquake.getmLocation();
+        String locationOffset;
+        String primaryLocation;
+        int primaryLocationStart = EarthquakeTextFormat.primaryLocationStart(originalLocation);
+        if (primaryLocationStart >= 0) {
+            locationOffset = originalLocation.substring(0, primaryLocationStart);
+            primaryLocation = originalLocation.substring(primaryLocationStart);
+        } else {
+            locationOffset = mNearThe;
+            primaryLocation = originalLocation;
+        }
+
+        return new EarthquakeListItem(
+                earthquake,
+                EarthquakeTextFormat.formatMagnitude(earthquake.getmMagnitude()),            // Format the magnitude to show 1 decimal place
+                getMagnitudeColor(earthquake.getmMagnitude()),          // Get the appropriate background color based on the magnitude
+                locationOffset,
+                primaryLocation,
+                EarthquakeTextFormat.formatDate(earthquake.getmTimeInMilliseconds()),        // Format the date string (i.e. "Mar 3, 1984")
+                EarthquakeTextFormat.formatTime(earthquake.getmTimeInMilliseconds()));       // Format the time string (i.e. "4:30PM")
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses USGS GeoJSON responses into {@link Earthquake}s.
+ * 這個類負責把USGS回應的GeoJSON解析成Earthquake物件，不牽涉連線，所以也能在benchmarks模組的JVM上執行
+ *
+ * readFeaturesFromStream() is the pull parser the network path uses. readFromStream()/extractFeatureFromJson() are
+ * kept as the original DOM path, so the two can be compared on the same feeds (see benchmarks/).
+ * The pull parser is Gson's JsonReader rather than android.util.JsonReader: the two have the same API (the platform's
+ * is an early copy of Gson's), but Gson's is plain Java, so the benchmarks module runs this very file on the desktop
+ * JVM. The platform's calls Android-only methods of the core library and can't run there.
+ */
+public final class EarthquakeJsonParser {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeJsonParser.class.getSimpleName();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeJsonParser} object.
+     */
+    private EarthquakeJsonParser() {
+    }
+
+    /**
+     * Parse the GeoJSON response with a pull parser while it is being read from the {@link InputStream}.
+     * Only features[].id, features[].properties.{mag,place,time,updated,url} and features[].geometry.coordinates are
+     * read; every other value (metadata and the properties we don't use) is skipped with skipValue() without ever being
+     * turned into Strings or objects.
+     * 這個輔助方法是要用來一邊讀取數據一邊解析，不需先把整份回應存成字符
+     */
+    static List<Earthquake> readFeaturesFromStream(InputStream inputStream) throws IOException {
+        return readFeaturesFromStream(inputStream, QueryDeadline.NONE);
+    }
+
+    /**
+     * Same as {@link #readFeaturesFromStream(InputStream)}, but stops with an InterruptedIOException as soon as the
+     * query is cancelled or out of time: the deadline is checked before every feature, so the features already
+     * buffered (which a disconnect doesn't throw away) aren't parsed for nothing.
+     */
+    static List<Earthquake> readFeaturesFromStream(InputStream inputStream, QueryDeadline deadline) throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        if (inputStream == null) {
+            return earthquakes;
+        }
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        FeatureFields fields = new FeatureFields();         //每個feature重複使用同一個暫存物件
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("features".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    deadline.throwIfDone();                 //查詢被取消或超過期限就不再解析
+                    earthquakes.add(readFeature(reader, fields));   //每讀完一個feature就馬上建立一個Earthquake物件
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();                         //"type"、"metadata"、"bbox"等用不到的欄位直接跳過
+            }
+        }
+        reader.endObject();
+        return earthquakes;
+    }
+
+    /**
+     * Read a single element of the "features" array and build an {@link Earthquake} from its id, properties and geometry.
+     * USGS puts "id" after "properties" and "geometry", so the values are collected in fields and the Earthquake is only
+     * built once the whole feature is read.
+     */
+    private static Earthquake readFeature(JsonReader reader, FeatureFields fields) throws IOException {
+        fields.reset();
+        boolean hasProperties = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("properties".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readProperties(reader, fields);
+                hasProperties = true;
+            } else if ("geometry".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readGeometry(reader, fields);
+            } else if ("id".equals(name) && reader.peek() == JsonToken.STRING) {
+                fields.id = reader.nextString();
+            } else {
+                reader.skipValue();                         //"type"等欄位用不到，直接跳過
+            }
+        }
+        reader.endObject();
+        if (!hasProperties) {
+            throw new IllegalStateException("Feature without properties");
+        }
+        long updated = fields.hasUpdated ? fields.updated : fields.time;   //沒有updated(或為null)時，和extractFeatureFromJson一樣用time
+        return new Earthquake(fields.id, fields.magnitude, fields.location, fields.time, fields.url, updated,
+                fields.latitude, fields.longitude, fields.depth);
+    }
+
+    /**
+     * Read the "properties" object of a feature, keeping only mag, place, time, updated and url.
+     * USGS sends null for some of these values (e.g. a mag that hasn't been reviewed yet), so nulls fall back to defaults.
+     */
+    private static void readProperties(JsonReader reader, FeatureFields fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if ("mag".equals(name)) {
+                fields.magnitude = reader.nextDouble();
+            } else if ("place".equals(name)) {
+                fields.location = reader.nextString();
+            } else if ("time".equals(name)) {
+                fields.time = reader.nextLong();
+            } else if ("updated".equals(name)) {
+                fields.updated = reader.nextLong();
+                fields.hasUpdated = true;
+            } else if ("url".equals(name)) {
+                fields.url = reader.nextString();
+            } else {
+                reader.skipValue();                         //其他二十多個屬性用不到，直接跳過而不建立字符
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "geometry" object of a feature: a GeoJSON Point whose coordinates are [longitude, latitude, depth].
+     */
+    private static void readGeometry(JsonReader reader, FeatureFields fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("coordinates".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (reader.peek() != JsonToken.NUMBER) {
+                        reader.skipValue();                 //USGS有時會把深度送成null
+                        continue;
+                    }
+                    double value = reader.nextDouble();
+                    if (i == 0) {
+                        fields.longitude = value;           //GeoJSON的座標順序是經度在前、緯度在後
+                    } else if (i == 1) {
+                        fields.latitude = value;
+                    } else if (i == 2) {
+                        fields.depth = value;
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * The values read from one feature so far. One instance is reused for every feature of a response.
+     */
+    private static final class FeatureFields {
+        String id;
+        double magnitude;
+        String location;
+        long time;
+        long updated;
+        /** False while "updated" is missing or null: the feature was never updated after its time */
+        boolean hasUpdated;
+        String url;
+        double latitude;
+        double longitude;
+        double depth;
+
+        void reset() {
+            id = null;
+            magnitude = 0;
+            location = "";
+            time = 0;
+            updated = 0;
+            hasUpdated = false;
+            url = "";
+            latitude = Double.NaN;
+            longitude = Double.NaN;
+            depth = Double.NaN;
+        }
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the whole JSON response from the server.
+     * 這個輔助方法是要用來讀取數據
+     */
+    static String readFromStream(InputStream inputStream) throws IOException {  //讀取或輸出資訊時可能會發生錯誤，所以要丟出IOException來封裝錯誤訊息以免App當掉
+        StringBuilder output = new StringBuilder();   //創建一個名叫output的StringBuilder
+        if (inputStream != null) {                    //若有輸入的數據(inputStream不是空的)
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));  //則創建讀取數據的inputStreamReader，帶入輸入的數據並設定字元編碼為UTF-8
+            BufferedReader reader = new BufferedReader(inputStreamReader);  //創建讀取數據的BufferedReader，命名為reader，並把inputStreamReader封裝進BufferedReader。這一行程式就只是宣告一個緩衝區來存放輸入的數據
+            String line = reader.readLine();    //讀取緩衝區(reader)的其中一行，將讀取到的資訊命名為line字符
+            while (line != null) {              //若有讀取到資訊(line字符不是空的)
+                output.append(line);            //就把讀取到的line字符添加在所輸出資訊的後面
+                line = reader.readLine();       //然後再去讀取緩衝區(reader)的下一行，更新line字符
+            }                                   //因為數據很多，不知會需要執行append幾次，所以會使用while loop無限次執行。若知道是有限的次數就可以使用for loop (for how many given times)
+        }
+        return output.toString();               //將輸出的資訊轉換成字符String後提交出去
+    }
+
+    /**
+     * Return a list of {@link Earthquake} objects that has been built up from parsing the given JSON response.
+     * 這個輔助方法是要用來解析API
+     */
+    static List<Earthquake> extractFeatureFromJson(String earthquakeJSON) {    //方法中的argument可以自行命名(earthquakeJSON)
+        // If the JSON string is empty or null, then return early.
+        if (earthquakeJSON == null || earthquakeJSON.isEmpty()) {
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding earthquakes to
+        List<Earthquake> earthquakes = new ArrayList<>();    //創建名為earthquakes的ArrayList，沿用自定義的Earthquake類。將屬性定為List是方便日後有需要時可以隨意把ArrayList更換成LinkedList或其他。
+
+        // Try to parse the JSON response string. If there's a problem with the way the JSON is formatted, a JSONException exception object will be thrown.
+        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        try {
+
+            // Create a JSONObject from the JSON response string
+            JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
+
+            // Extract the JSONArray associated with the key called "features", which represents a list of features (or earthquakes).
+            JSONArray earthquakeArray = baseJsonResponse.getJSONArray("features");
+
+            // For each earthquake in the earthquakeArray, create an {@link Earthquake} object
+            for (int i = 0; i < earthquakeArray.length(); i++) {
+
+                // Get a single earthquake at position i within the list of earthquakes
+                JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
+
+                // For a given earthquake, extract the JSONObject associated with the key called "properties",
+                // which represents a list of all properties for that earthquake.
+                JSONObject properties = currentEarthquake.getJSONObject("properties");
+
+                // Extract the value for the key called "mag" as a Double value
+                double magnitude = properties.getDouble("mag");
+
+                // Extract the value for the key called "place"
+                String location = properties.getString("place");
+
+                // Extract the value for the key called "time"
+                long time = properties.getLong("time");
+
+                // Extract the value for the key called "url"
+                String url = properties.getString("url");
+
+                // Extract the position from the "geometry" object: a GeoJSON Point with [longitude, latitude, depth].
+                double latitude = Double.NaN;
+                double longitude = Double.NaN;
+                double depth = Double.NaN;
+                JSONObject geometry = currentEarthquake.optJSONObject("geometry");
+                JSONArray coordinates = geometry == null ? null : geometry.optJSONArray("coordinates");
+                if (coordinates != null) {
+                    longitude = coordinates.optDouble(0);
+                    latitude = coordinates.optDouble(1);
+                    depth = coordinates.optDouble(2);
+                }
+
+                // Create a new {@link Earthquake} object called earthquake and extending from the Earthquake Class,
+                // with the id, magnitude, location, time, url and position from the JSON response.
+                Earthquake earthquake = new Earthquake(currentEarthquake.optString("id", null), magnitude, location, time,
+                        url, properties.optLong("updated", time), latitude, longitude, depth);
+
+                // Add the new {@link Earthquake} to the list of earthquakes.
+                earthquakes.add(earthquake);
+            }
+
+        } catch (JSONException e) {
+            // If an error is thrown when executing any of the above statements in the "try" block,
+            // catch the exception here, so the app doesn't crash. Print a log message with the message from the exception.
+            Log.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
+        }
+
+        // Return the list of earthquakes
+        return earthquakes;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.quakereport;
+
+/**
+ * Immutable display model of one row of the earthquake list: the {@link Earthquake} itself plus every string and color
+ * its list item shows, already formatted by {@link EarthquakeFormatter} on the loader's background thread.
+ * 這個類存放一列清單要顯示的所有內容(已經格式化好)，讓EarthquakeAdapter只需要設定文字和顏色
+ */
+public final class EarthquakeListItem {
+
+    private final Earthquake mEarthquake;
+
+    private final String mMagnitudeText;
+
+    private final int mMagnitudeColor;
+
+    private final String mLocationOffset;
+
+    private final String mPrimaryLocation;
+
+    private final String mDateText;
+
+    private final String mTimeText;
+
+    /**
+     * Constructs a new {@link EarthquakeListItem} object.
+     * @param earthquake is the earthquake shown by the list item
+     * @param magnitudeText is the magnitude formatted with 1 decimal place (i.e. "3.2")
+     * @param magnitudeColor is the color integer of the magnitude circle
+     * @param locationOffset is the part of the place before the primary location (i.e. "74km NW of " or "Near the")
+     * @param primaryLocation is the primary location (i.e. "Rumoi, Japan")
+     * @param dateText is the formatted date (i.e. "Mar 3, 1984")
+     * @param timeText is the formatted time (i.e. "4:30 PM")
+     */
+    public EarthquakeListItem(Earthquake earthquake, String magnitudeText, int magnitudeColor, String locationOffset,
+                              String primaryLocation, String dateText, String timeText) {
+        mEarthquake = earthquake;
+        mMagnitudeText = magnitudeText;
+        mMagnitudeColor = magnitudeColor;
+        mLocationOffset = locationOffset;
+        mPrimaryLocation = primaryLocation;
+        mDateText = dateText;
+        mTimeText = timeText;
+    }
+
+    public Earthquake getEarthquake() {
+        return mEarthquake;
+    }
+
+    public String getMagnitudeText() {
+        return mMagnitudeText;
+    }
+
+    public int getMagnitudeColor() {
+        return mMagnitudeColor;
+    }
+
+    public String getLocationOffset() {
+        return mLocationOffset;
+    }
+
+    public String getPrimaryLocation() {
+        return mPrimaryLocation;
+    }
+
+    public String getDateText() {
+        return mDateText;
+    }
+
+    public String getTimeText() {
+        return mTimeText;
+    }
+}
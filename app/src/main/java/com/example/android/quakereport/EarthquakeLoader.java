@@ -2,12 +2,14 @@ package com.example.android.quakereport;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.net.Uri;
 
 import java.util.List;
 
 /**
- * To define the EarthquakeLoader class, we extend AsyncTaskLoader and specify List as the generic parameter,
- * which explains what type of data is expected to be loaded. In this case, the loader is loading a list of Earthquake objects.
+ * To define the EarthquakeLoader class, we extend AsyncTaskLoader and specify EarthquakeResultSet as the generic parameter,
+ * which explains what type of data is expected to be loaded. In this case, the loader is loading a list of EarthquakeListItem objects
+ * (earthquakes that are already formatted for the list), together with their sort indices.
  * Then we take a String URL in the constructor, and in loadInBackground(), we'll do the exact same operations as in doInBackground back in EarthquakeAsyncTask.
  * Important: Notice that we also override the onStartLoading() method to call forceLoad() which is a required step to actually trigger the loadInBackground() method to execute.
  */
@@ -16,7 +18,7 @@ import java.util.List;
 /**
  * Load a list of earthquakes by using an AsyncTask to perform the network request to the given URL.
  */
-public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
+public class EarthquakeLoader extends AsyncTaskLoader<EarthquakeResultSet> {
 
     /** Tag for log messages */
     private static final String LOG_TAG = EarthquakeLoader.class.getName();
@@ -24,6 +26,9 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
     /** Query URL */
     private String mUrl;
 
+    /** Cancellation and deadline of the load in progress, or null between loads */
+    private volatile QueryDeadline mDeadline;
+
     /**
      * Constructs a new {@link EarthquakeLoader}.
      *
@@ -35,22 +40,88 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
         mUrl = url;
     }
 
+    /**
+     * Returns the query URL this loader loads, so callers can tell which request a result belongs to.
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
     @Override
     protected void onStartLoading() {
         forceLoad();
     }
 
+    /**
+     * Called on the UI thread when the load is cancelled (the activity went away, or restartLoader() replaced this
+     * load): stop the request and the parse right away instead of letting them run to the end for nothing.
+     * AsyncTaskLoader only calls it from API 16; on older releases the load still runs to its deadline.
+     * 取消載入時馬上中斷連線和解析，不必等下載完再丟掉結果
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        QueryDeadline deadline = mDeadline;
+        if (deadline != null) {
+            deadline.cancel();
+        }
+    }
+
     /**
      * This is on a background thread.
      */
     @Override
-    public List<Earthquake> loadInBackground() {
+    public EarthquakeResultSet loadInBackground() {
         if (mUrl == null) {
             return null;
         }
+        long loadStart = Metrics.now();
+        // A cancel that comes before this line finds no deadline to cancel: that load runs to the end and
+        // AsyncTaskLoader drops its result, as before. 在這一行之前取消的話沒有期限可以取消，結果仍會被丟掉
+        QueryDeadline deadline = QueryDeadline.after(
+                getContext().getResources().getInteger(R.integer.query_deadline_seconds) * 1000L);
+        mDeadline = deadline;
+        try {
+            return load(deadline, loadStart);
+        } finally {
+            mDeadline = null;
+            deadline.finish();
+        }
+    }
+
+    private EarthquakeResultSet load(QueryDeadline deadline, long loadStart) {
+
+        // Make sure identical requests can be answered (or revalidated) from the HTTP response cache.
+        QueryCache.install(getContext());
+        QueryRetryPolicy.install(getContext());
+
+        EarthquakeStore store = EarthquakeStore.getInstance(getContext());
+        List<Earthquake> earthquakes;
+        if (Uri.parse(mUrl).getQueryParameter(EarthquakeStore.PARAM_OFFSET) != null) {
+            // A later page of the list: fetch just that page (falling back to the store when offline).
+            earthquakes = store.fetchPage(mUrl, deadline);
+        } else {
+            // Ask USGS only for the events that changed since the last sync, merge them into the local store,
+            // and read the list to show back from the store (which still works when the network request fails).
+            earthquakes = store.sync(mUrl, deadline);
+
+            // Save the first page so the next start of the app can show it before this loader has finished.
+            if (earthquakes != null) {
+                EarthquakeSnapshot.write(EarthquakeSnapshot.getFile(getContext().getFilesDir()), mUrl, earthquakes);
+            }
+        }
+        QueryCache.flush();
+        if (earthquakes == null || deadline.isCancelled()) {
+            Metrics.LOADER_BACKGROUND.recordSince(loadStart);
+            return null;
+        }
 
-        // Perform the network request, parse the response, and extract a list of earthquakes.
-        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakeData(mUrl);
-        return earthquakes;
+        // Format everything the list shows here, on the background thread, so the UI thread only assigns it.
+        // The sort indices are built here too, so switching the order later is instant.
+        long formatStart = Metrics.now();
+        EarthquakeResultSet resultSet =
+                new EarthquakeResultSet(new EarthquakeFormatter(getContext()).format(earthquakes));
+        Metrics.LOADER_FORMAT.recordSince(formatStart);
+        Metrics.LOADER_BACKGROUND.recordSince(loadStart);
+        return resultSet;
     }
 }
\ No newline at end of file
@@ -0,0 +1,253 @@
+package com.example.android.quakereport;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over the place names of the earthquakes, for searching the list by place ("Japan", "alas") as the
+ * user types.
+ *
+ * Every place is split into words that are case-folded and stripped of accents ("74km NW of Rumoi, Japan" becomes
+ * "74km", "nw", "of", "rumoi", "japan"). Each word maps to the list of events whose place contains it, and the words
+ * are kept sorted, so all words starting with a prefix are one range of the dictionary. A query matches the events
+ * whose place has, for every word of the query, a word starting with it: "rum jap" finds "74km NW of Rumoi, Japan".
+ * 這個類把地名拆成單字(不分大小寫、去掉重音符號)建立反向索引，讓使用者輸入地名的前幾個字母就能立即篩選出符合的地震
+ *
+ * Events are added as they are stored (see EarthquakeStore.merge()), so the index never has to be rebuilt. An event
+ * whose place changed gets a new entry and its old one is marked dead. All methods are synchronized: events are added on
+ * loader threads while the UI thread searches.
+ */
+public final class EarthquakePlaceIndex {
+
+    /** Word -> ids of the entries whose place contains it, sorted by word for prefix ranges */
+    private final TreeMap<String, Postings> mPostings = new TreeMap<>();
+
+    /** Event key -> id of its current entry */
+    private final Map<String, Integer> mEntryIds = new HashMap<>();
+
+    /** Place of each entry, by entry id, to tell whether an event's place changed */
+    private final List<String> mPlaces = new ArrayList<>();
+
+    /** Entries replaced by a newer entry of the same event; they stay in the postings but never match */
+    private final BitSet mDeadEntries = new BitSet();
+
+    /**
+     * Add an event, or update it if its place changed since it was added.
+     *
+     * @param key is the USGS event id
+     * @param place is the place string of the event
+     */
+    public synchronized void add(String key, String place) {
+        if (key == null || place == null) {
+            return;
+        }
+        Integer existing = mEntryIds.get(key);
+        if (existing != null) {
+            if (place.equals(mPlaces.get(existing))) {
+                return;     //地名沒變，不需要更新索引
+            }
+            mDeadEntries.set(existing);
+        }
+
+        int entryId = mPlaces.size();
+        mPlaces.add(place);
+        mEntryIds.put(key, entryId);
+        for (String word : tokenize(place)) {
+            Postings postings = mPostings.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                mPostings.put(word, postings);
+            }
+            postings.add(entryId);
+        }
+    }
+
+    /**
+     * Remove an event (e.g. one USGS deleted), if it is in the index. Its entry is marked dead like a replaced one.
+     */
+    public synchronized void remove(String key) {
+        Integer existing = mEntryIds.remove(key);
+        if (existing != null) {
+            mDeadEntries.set(existing);
+        }
+    }
+
+    /**
+     * Add an event unless it is already in the index (e.g. while loading stored events, which must not replace the
+     * place of an event a concurrent merge just added).
+     */
+    public synchronized void addIfAbsent(String key, String place) {
+        if (!mEntryIds.containsKey(key)) {
+            add(key, place);
+        }
+    }
+
+    /**
+     * Returns the events whose place matches the query: for every word of the query, the place has a word that starts
+     * with it. An empty query (no words) matches nothing; callers show the unfiltered list instead.
+     */
+    public synchronized Matches search(String query) {
+        BitSet result = null;
+        for (String prefix : tokenize(query)) {
+            BitSet wordMatches = new BitSet(mPlaces.size());
+            SortedMap<String, Postings> range = mPostings.subMap(prefix, prefix + Character.MAX_VALUE);
+            for (Postings postings : range.values()) {
+                postings.addTo(wordMatches);
+            }
+            if (result == null) {
+                result = wordMatches;
+            } else {
+                result.and(wordMatches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        if (result == null) {
+            result = new BitSet();
+        }
+        result.andNot(mDeadEntries);
+        return new Matches(result);
+    }
+
+    /** Returns the number of events in the index. */
+    public synchronized int size() {
+        return mEntryIds.size();
+    }
+
+    /** Returns the number of distinct words in the index. */
+    public synchronized int getWordCount() {
+        return mPostings.size();
+    }
+
+    /**
+     * Returns a rough estimate of the memory the index uses, in bytes: the words and their tree entries, the postings,
+     * the places and the key map. Object header and alignment sizes are those of a typical 32-bit ART heap.
+     */
+    public synchronized long estimateMemoryBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, Postings> entry : mPostings.entrySet()) {
+            bytes += 32 + stringBytes(entry.getKey())          //TreeMap.Entry + word
+                    + 24 + 12 + entry.getValue().capacity() * 4L;    //Postings + its int[]
+        }
+        for (String key : mEntryIds.keySet()) {
+            bytes += 24 + stringBytes(key) + 16;                //HashMap.Entry + key + Integer
+        }
+        bytes += mEntryIds.size() * 4L * 2;                     //HashMap table (load factor 0.75, rounded up)
+        bytes += mPlaces.size() * 4L;                           //ArrayList slots; the place Strings are shared with the rows
+        bytes += mDeadEntries.size() / 8;
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return 24 + 12 + value.length() * 2L;                   //String + char[]
+    }
+
+    /**
+     * Split a place or a query into case-folded words without accents. Words are separated by anything that isn't a
+     * letter or a digit. Text with non-ASCII characters is NFD-normalized first so accents become separate combining
+     * marks, which are dropped ("México" becomes "mexico"); plain ASCII text (most places) skips that step.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String folded = isAscii(text) ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (isCombiningMark(c)) {
+                continue;   //重音符號直接略過，不當作分隔字元
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCombiningMark(char c) {
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
+
+    /**
+     * The result of a search.
+     */
+    public final class Matches {
+
+        private final BitSet mEntries;
+
+        private Matches(BitSet entries) {
+            mEntries = entries;
+        }
+
+        /** Returns true if the event with the given key matched. */
+        public boolean contains(String key) {
+            synchronized (EarthquakePlaceIndex.this) {
+                Integer entryId = key == null ? null : mEntryIds.get(key);
+                return entryId != null && mEntries.get(entryId);
+            }
+        }
+
+        /** Returns the number of events that matched. */
+        public int size() {
+            return mEntries.cardinality();
+        }
+    }
+
+    /**
+     * A sorted, growable list of entry ids. Entries are added in increasing id order, so a duplicate (a word that
+     * appears twice in one place) is always the last element.
+     */
+    private static final class Postings {
+
+        private int[] mIds = new int[2];
+
+        private int mSize;
+
+        boolean add(int id) {
+            if (mSize > 0 && mIds[mSize - 1] == id) {
+                return false;
+            }
+            if (mSize == mIds.length) {
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+            }
+            mIds[mSize++] = id;
+            return true;
+        }
+
+        void addTo(BitSet bits) {
+            for (int i = 0; i < mSize; i++) {
+                bits.set(mIds[i]);
+            }
+        }
+
+        int capacity() {
+            return mIds.length;
+        }
+    }
+}
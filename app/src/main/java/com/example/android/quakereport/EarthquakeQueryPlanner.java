@@ -0,0 +1,334 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a large USGS query into time-sliced sub-queries that are fetched and parsed in parallel.
+ *
+ * A query with both "starttime" and "endtime" (and no "offset") is cut into equal time windows. Each window is
+ * fetched with QueryUtils.fetchEarthquakeData() on a bounded thread pool; the results are merged, duplicates (an
+ * event on a window boundary, or one returned twice while it was being updated) are removed by event id, and the
+ * merged list is sorted by the query's "orderby" and cut to its "limit". Windows that fail are retried on their own,
+ * without fetching the windows that already succeeded again, as long as QueryRetryPolicy's retry budget allows.
+ * 這個類把一個大範圍時間的查詢切成數個小時段，同時下載、各自解析，再依event id去重合併成一份排序好的清單
+ *
+ * Queries that can't be split (no time range, or paged with "offset") go to QueryUtils.fetchEarthquakeData() unchanged.
+ * That includes the list's own pages (EarthquakeActivity.buildQueryUrl()): they ask for the newest "limit" events
+ * without a time range, and splitting such a query would fetch up to shardCount * limit events to keep limit of them.
+ * Splitting pays off for time-ranged queries whose result is large (a catalog of a month or a region), where the
+ * windows parse in parallel and a failed window is fetched again on its own.
+ *
+ * Identical queries asked for at the same time (e.g. by the list's loader after a rotation and by a background sync)
+ * share one fetch, and a finished result is reused for a few seconds (see QuerySingleFlight).
+ *
+ * A query's QueryDeadline reaches every window: when it is cancelled or runs out of time, the windows in flight
+ * disconnect, the ones still queued return at once and no further attempt is made.
+ */
+public final class EarthquakeQueryPlanner {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeQueryPlanner.class.getSimpleName();
+
+    /** Time windows shorter than this (one hour) are not split any further */
+    private static final long MIN_SHARD_MILLIS = 60L * 60L * 1000L;
+
+    /** Formats FDSN accepts for starttime/endtime, most specific first */
+    private static final String[] FDSN_TIME_PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ss.SSS",
+            "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm",
+            "yyyy-MM-dd"
+    };
+
+    private final int mShardCount;
+
+    private final int mMaxAttempts;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /** Shares one fetch between identical queries made at the same time */
+    private final QuerySingleFlight mSingleFlight;
+
+    /**
+     * Constructs a new {@link EarthquakeQueryPlanner}.
+     *
+     * @param shardCount is the number of time windows a splittable query is cut into
+     * @param maxConcurrency is the maximum number of windows fetched at the same time
+     * @param maxAttempts is how many times a window is tried before the whole query counts as failed
+     * @param memoMillis is how long the result of a query is reused for an identical query
+     */
+    public EarthquakeQueryPlanner(int shardCount, int maxConcurrency, int maxAttempts, long memoMillis) {
+        mShardCount = Math.max(1, shardCount);
+        mMaxAttempts = Math.max(1, maxAttempts);
+        int threads = Math.max(1, maxConcurrency);
+        mExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);     //閒置的執行緒30秒後就結束，不佔用資源
+        mSingleFlight = new QuerySingleFlight(memoMillis);
+    }
+
+    /**
+     * Fetch the given query, split into time windows if possible.
+     * This blocks until every window is fetched, so it must be called from a background thread.
+     *
+     * @return the merged earthquakes (read-only, since they may be shared with other callers), or null if the query
+     *         (or one of its windows, after every retry) failed
+     */
+    public List<Earthquake> fetch(String requestUrl) {
+        return fetch(requestUrl, QueryDeadline.NONE);
+    }
+
+    /**
+     * Same as {@link #fetch(String)}, but stops as soon as the given query is cancelled or out of time.
+     *
+     * @return the merged earthquakes, or null if the query failed, was cancelled or ran out of time
+     */
+    public List<Earthquake> fetch(final String requestUrl, final QueryDeadline deadline) {
+        return mSingleFlight.fetch(requestUrl, deadline, new Callable<List<Earthquake>>() {
+            @Override
+            public List<Earthquake> call() {
+                return fetchShards(requestUrl, deadline);
+            }
+        });
+    }
+
+    private List<Earthquake> fetchShards(String requestUrl, QueryDeadline deadline) {
+        List<String> shardUrls = planShards(requestUrl);
+        if (shardUrls.size() <= 1) {
+            return QueryUtils.fetchEarthquakeData(requestUrl, deadline);
+        }
+
+        List<List<Earthquake>> results = new ArrayList<>(Collections.<List<Earthquake>>nCopies(shardUrls.size(), null));
+        for (int attempt = 1; attempt <= mMaxAttempts; attempt++) {
+            if (deadline.isDone()) {
+                return null;    //取消或超時就不再重試
+            }
+            if (attempt > 1 && !acquireRetryBudget(results)) {
+                Log.w(LOG_TAG, "Retry budget spent, giving up on " + requestUrl);
+                return null;
+            }
+            // Submit only the windows that haven't succeeded yet.
+            List<Future<List<Earthquake>>> futures = new ArrayList<>(shardUrls.size());
+            for (int i = 0; i < shardUrls.size(); i++) {
+                futures.add(results.get(i) == null
+                        ? mExecutor.submit(new ShardFetch(shardUrls.get(i), deadline)) : null);
+            }
+
+            int failed = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                Future<List<Earthquake>> future = futures.get(i);
+                if (future == null) {
+                    continue;
+                }
+                try {
+                    results.set(i, future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelAll(futures);
+                    return null;
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Problem fetching " + shardUrls.get(i), e.getCause());
+                }
+                if (results.get(i) == null) {
+                    failed++;
+                }
+            }
+            if (deadline.isDone()) {
+                return null;    //其他時段在取消時已經各自中斷連線(或還沒開始就直接返回)
+            }
+            if (failed == 0) {
+                return merge(results, Uri.parse(requestUrl));
+            }
+            Log.w(LOG_TAG, failed + " of " + shardUrls.size() + " windows failed (attempt " + attempt + ")");
+        }
+        return null;
+    }
+
+    /**
+     * Returns the URLs of the time windows of the given query, or just the query itself if it can't be split.
+     */
+    List<String> planShards(String requestUrl) {
+        List<String> urls = new ArrayList<>();
+        Uri uri = Uri.parse(requestUrl);
+        long start = parseFdsnTime(uri.getQueryParameter("starttime"));
+        long end = parseFdsnTime(uri.getQueryParameter("endtime"));
+        if (mShardCount == 1 || start < 0 || end <= start || uri.getQueryParameter(EarthquakeStore.PARAM_OFFSET) != null) {
+            urls.add(requestUrl);
+            return urls;
+        }
+
+        int shards = (int) Math.max(1, Math.min(mShardCount, (end - start) / MIN_SHARD_MILLIS));
+        long step = (end - start) / shards;
+        for (int i = 0; i < shards; i++) {
+            long shardStart = start + i * step;
+            long shardEnd = i == shards - 1 ? end : shardStart + step;
+            urls.add(replaceTimeRange(uri, shardStart, shardEnd));
+        }
+        return urls;
+    }
+
+    /**
+     * Rebuild the query with the given starttime and endtime, keeping every other parameter.
+     */
+    private static String replaceTimeRange(Uri uri, long start, long end) {
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if ("starttime".equals(name) || "endtime".equals(name)) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        builder.appendQueryParameter("starttime", EarthquakeStore.formatFdsnTime(start));
+        builder.appendQueryParameter("endtime", EarthquakeStore.formatFdsnTime(end));
+        return builder.toString();
+    }
+
+    /**
+     * Merge the results of all windows: drop duplicate event ids (keeping the most recently updated copy),
+     * sort by the query's orderby and cut to its limit.
+     */
+    private static List<Earthquake> merge(List<List<Earthquake>> results, Uri query) {
+        Map<String, Earthquake> byId = new LinkedHashMap<>();
+        List<Earthquake> withoutId = new ArrayList<>();
+        for (List<Earthquake> shard : results) {
+            for (Earthquake earthquake : shard) {
+                if (earthquake.getmId() == null) {
+                    withoutId.add(earthquake);
+                    continue;
+                }
+                Earthquake existing = byId.get(earthquake.getmId());
+                if (existing == null
+                        || existing.getmUpdatedInMilliseconds() < earthquake.getmUpdatedInMilliseconds()) {
+                    byId.put(earthquake.getmId(), earthquake);
+                }
+            }
+        }
+
+        List<Earthquake> merged = new ArrayList<>(byId.size() + withoutId.size());
+        merged.addAll(byId.values());
+        merged.addAll(withoutId);
+        Collections.sort(merged, comparatorFor(query.getQueryParameter("orderby")));
+
+        String limit = query.getQueryParameter("limit");
+        if (!TextUtils.isEmpty(limit)) {
+            try {
+                int n = Integer.parseInt(limit);
+                if (n >= 0 && merged.size() > n) {
+                    merged = new ArrayList<>(merged.subList(0, n));
+                }
+            } catch (NumberFormatException e) {
+                Log.e(LOG_TAG, "Invalid limit in query: " + limit, e);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the comparator matching an FDSN "orderby" value (time, time-asc, magnitude or magnitude-asc).
+     */
+    private static Comparator<Earthquake> comparatorFor(final String orderBy) {
+        return new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                if ("magnitude".equals(orderBy)) {
+                    return Double.compare(b.getmMagnitude(), a.getmMagnitude());
+                } else if ("magnitude-asc".equals(orderBy)) {
+                    return Double.compare(a.getmMagnitude(), b.getmMagnitude());
+                } else if ("time-asc".equals(orderBy)) {
+                    return compareLongs(a.getmTimeInMilliseconds(), b.getmTimeInMilliseconds());
+                }
+                return compareLongs(b.getmTimeInMilliseconds(), a.getmTimeInMilliseconds());   //FDSN default: newest first
+            }
+        };
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Parse an FDSN starttime/endtime value (UTC), or return -1 if it is missing or not understood.
+     */
+    private static long parseFdsnTime(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return -1;
+        }
+        for (String pattern : FDSN_TIME_PATTERNS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            try {
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                // Try the next, less specific pattern.
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Spend one token of the retry budget for every window fetched again, so that these retries on top of
+     * QueryUtils' own stay within QueryRetryPolicy's limit on extra load.
+     */
+    private static boolean acquireRetryBudget(List<List<Earthquake>> results) {
+        QueryRetryPolicy policy = QueryRetryPolicy.get();
+        for (List<Earthquake> result : results) {
+            if (result == null && !policy.tryAcquireBudget()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void cancelAll(List<Future<List<Earthquake>>> futures) {
+        for (Future<List<Earthquake>> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Fetches and parses one time window.
+     */
+    private static final class ShardFetch implements Callable<List<Earthquake>> {
+
+        private final String mUrl;
+
+        private final QueryDeadline mDeadline;
+
+        ShardFetch(String url, QueryDeadline deadline) {
+            mUrl = url;
+            mDeadline = deadline;
+        }
+
+        @Override
+        public List<Earthquake> call() {
+            if (mDeadline.isDone()) {
+                return null;    //排隊等執行緒的時候查詢就被取消了
+            }
+            return QueryUtils.fetchEarthquakeData(mUrl, mDeadline);
+        }
+    }
+}
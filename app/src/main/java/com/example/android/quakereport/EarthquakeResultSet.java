@@ -0,0 +1,304 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The earthquakes the list currently holds, with a precomputed sort index for every order the user can pick.
+ *
+ * The rows are kept in the order USGS returned them (the query always asks for orderby=time, so that pages line up).
+ * Next to them, one permutation per order ("magnitude" and "time", the values of the order-by preference) lists the
+ * row positions in that order. getItems(orderBy) is a view through one of these permutations, so switching the order
+ * only swaps which index is used: nothing is sorted again and nothing is fetched again.
+ * 這個類保存清單目前所有的地震，並預先算好依震度和依時間排序的索引，切換排序時只要換用另一個索引，不必重新排序或重新下載
+ *
+ * Instances are immutable. concat() and subSet() build the result set of a grown or trimmed window by merging or
+ * filtering the existing indices, without sorting again.
+ *
+ * getItems(orderBy, minMagnitude) also answers a stricter minimum magnitude than the one the rows were fetched with,
+ * locally: the rows at or above the threshold are a prefix of the magnitude index, found by binary search.
+ */
+public final class EarthquakeResultSet {
+
+    /** Value of the order-by preference that sorts by magnitude, largest first */
+    public static final String ORDER_BY_MAGNITUDE = "magnitude";
+
+    /** Value of the order-by preference that sorts by time, most recent first */
+    public static final String ORDER_BY_TIME = "time";
+
+    /** Rows in the order USGS returned them */
+    private final List<EarthquakeListItem> mItems;
+
+    /** Magnitude of every row of mItems, as a primitive column so filtering doesn't touch the row objects */
+    private final double[] mMagnitudes;
+
+    /** Positions in mItems, largest magnitude first */
+    private final int[] mByMagnitude;
+
+    /** Positions in mItems, most recent first */
+    private final int[] mByTime;
+
+    /**
+     * Constructs a new {@link EarthquakeResultSet} and sorts its indices. For a page of the list this takes well under
+     * a millisecond, but the loader still builds it on its background thread.
+     *
+     * @param items are the rows in the order USGS returned them
+     */
+    public EarthquakeResultSet(List<EarthquakeListItem> items) {
+        mItems = Collections.unmodifiableList(new ArrayList<>(items));
+        mMagnitudes = magnitudesOf(mItems);
+        mByMagnitude = sortedPositions(mItems, BY_MAGNITUDE);
+        mByTime = sortedPositions(mItems, BY_TIME);
+    }
+
+    private EarthquakeResultSet(List<EarthquakeListItem> items, int[] byMagnitude, int[] byTime) {
+        mItems = items;
+        mMagnitudes = magnitudesOf(items);
+        mByMagnitude = byMagnitude;
+        mByTime = byTime;
+    }
+
+    private static double[] magnitudesOf(List<EarthquakeListItem> items) {
+        double[] magnitudes = new double[items.size()];
+        for (int i = 0; i < magnitudes.length; i++) {
+            magnitudes[i] = items.get(i).getEarthquake().getmMagnitude();
+        }
+        return magnitudes;
+    }
+
+    /** Returns the number of rows. */
+    public int size() {
+        return mItems.size();
+    }
+
+    /** Returns the rows in the order USGS returned them. */
+    public List<EarthquakeListItem> getItems() {
+        return mItems;
+    }
+
+    /**
+     * Returns a read-only view of the rows in the given order. This takes O(1): the view reads through the sort index.
+     *
+     * @param orderBy is a value of the order-by preference ({@link #ORDER_BY_MAGNITUDE} or {@link #ORDER_BY_TIME});
+     *                anything else keeps the order USGS returned
+     */
+    public List<EarthquakeListItem> getItems(String orderBy) {
+        if (ORDER_BY_MAGNITUDE.equals(orderBy)) {
+            return new SortedView(mByMagnitude, mByMagnitude.length);
+        } else if (ORDER_BY_TIME.equals(orderBy)) {
+            return new SortedView(mByTime, mByTime.length);
+        }
+        return mItems;
+    }
+
+    /**
+     * Returns a read-only view of the rows with at least the given magnitude, in the given order.
+     * The rows are found by binary search over the magnitude index (O(log n)); the view takes O(1) to build when sorted
+     * by magnitude and O(n) otherwise (one pass over the other index, without sorting).
+     * 用二分搜尋在依震度排序的索引中找出符合最小震度的列，不必重新下載或重新排序
+     *
+     * @param orderBy is a value of the order-by preference, see {@link #getItems(String)}
+     * @param minMagnitude is the smallest magnitude to keep; NaN keeps every row
+     */
+    public List<EarthquakeListItem> getItems(String orderBy, double minMagnitude) {
+        int count = countAtLeast(minMagnitude);
+        if (count == mItems.size()) {
+            return getItems(orderBy);
+        }
+        if (ORDER_BY_MAGNITUDE.equals(orderBy)) {
+            return new SortedView(mByMagnitude, count);
+        }
+        int[] positions = new int[count];
+        int kept = 0;
+        if (ORDER_BY_TIME.equals(orderBy)) {
+            for (int i = 0; kept < count; i++) {
+                int position = mByTime[i];
+                if (mMagnitudes[position] >= minMagnitude) {
+                    positions[kept++] = position;
+                }
+            }
+        } else {
+            for (int position = 0; kept < count; position++) {
+                if (mMagnitudes[position] >= minMagnitude) {
+                    positions[kept++] = position;
+                }
+            }
+        }
+        return new SortedView(positions, kept);
+    }
+
+    /**
+     * Returns how many rows have at least the given magnitude: the length of the prefix of the magnitude index
+     * (largest first) whose magnitudes are >= minMagnitude. A NaN threshold filters nothing, so every row counts.
+     */
+    public int countAtLeast(double minMagnitude) {
+        if (Double.isNaN(minMagnitude)) {
+            return mByMagnitude.length;     //NaN和任何數比較都是false，當作沒有門檻
+        }
+        int low = 0;
+        int high = mByMagnitude.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mMagnitudes[mByMagnitude[mid]] >= minMagnitude) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the rows of this result set followed by the rows of the other one, e.g. the window plus the next page.
+     * The indices of both are merged, in O(n).
+     */
+    public EarthquakeResultSet concat(EarthquakeResultSet other) {
+        List<EarthquakeListItem> items = new ArrayList<>(mItems.size() + other.mItems.size());
+        items.addAll(mItems);
+        items.addAll(other.mItems);
+        items = Collections.unmodifiableList(items);
+        return new EarthquakeResultSet(items,
+                merge(items, mByMagnitude, other.mByMagnitude, mItems.size(), BY_MAGNITUDE),
+                merge(items, mByTime, other.mByTime, mItems.size(), BY_TIME));
+    }
+
+    /**
+     * Returns the rows from position from (inclusive) to position to (exclusive), e.g. the window after rows were dropped
+     * from one end. The indices are filtered, in O(n).
+     */
+    public EarthquakeResultSet subSet(int from, int to) {
+        if (from < 0 || to > mItems.size() || from > to) {
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", size " + mItems.size());
+        }
+        List<EarthquakeListItem> items = Collections.unmodifiableList(new ArrayList<>(mItems.subList(from, to)));
+        return new EarthquakeResultSet(items, filter(mByMagnitude, from, to), filter(mByTime, from, to));
+    }
+
+    /**
+     * Sort the positions of the given rows (a stable merge sort, so equal rows keep the order USGS returned them in).
+     */
+    private static int[] sortedPositions(List<EarthquakeListItem> items, RowOrder order) {
+        int size = items.size();
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        mergeSort(items, positions, new int[size], 0, size, order);
+        return positions;
+    }
+
+    private static void mergeSort(List<EarthquakeListItem> items, int[] positions, int[] buffer, int from, int to,
+                                  RowOrder order) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(items, positions, buffer, from, middle, order);
+        mergeSort(items, positions, buffer, middle, to, order);
+        if (order.compare(items, positions[middle - 1], positions[middle]) <= 0) {
+            return;     //兩半已經依序排好了(清單本來就大致依時間排序，這很常見)
+        }
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && order.compare(items, buffer[left], buffer[right]) <= 0)) {
+                positions[i] = buffer[left++];
+            } else {
+                positions[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Merge two sorted indices into one index over the concatenated rows. Positions of the second index are shifted
+     * by the size of the first result set; on ties the first result set's rows come first.
+     */
+    private static int[] merge(List<EarthquakeListItem> items, int[] first, int[] second, int shift, RowOrder order) {
+        int[] merged = new int[first.length + second.length];
+        int left = 0;
+        int right = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (right >= second.length
+                    || (left < first.length && order.compare(items, first[left], second[right] + shift) <= 0)) {
+                merged[i] = first[left++];
+            } else {
+                merged[i] = second[right++] + shift;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Keep the positions from from (inclusive) to to (exclusive) of a sorted index, renumbered from 0.
+     */
+    private static int[] filter(int[] positions, int from, int to) {
+        int[] filtered = new int[to - from];
+        int count = 0;
+        for (int position : positions) {
+            if (position >= from && position < to) {
+                filtered[count++] = position - from;
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * An order of rows, compared by position. Ties are broken by position so every order is total and stable.
+     */
+    private abstract static class RowOrder {
+        final int compare(List<EarthquakeListItem> items, int a, int b) {
+            int result = compare(items.get(a).getEarthquake(), items.get(b).getEarthquake());
+            return result != 0 ? result : (a < b ? -1 : (a == b ? 0 : 1));
+        }
+
+        abstract int compare(Earthquake a, Earthquake b);
+    }
+
+    private static final RowOrder BY_MAGNITUDE = new RowOrder() {
+        @Override
+        int compare(Earthquake a, Earthquake b) {
+            return Double.compare(b.getmMagnitude(), a.getmMagnitude());
+        }
+    };
+
+    private static final RowOrder BY_TIME = new RowOrder() {
+        @Override
+        int compare(Earthquake a, Earthquake b) {
+            long timeA = a.getmTimeInMilliseconds();
+            long timeB = b.getmTimeInMilliseconds();
+            return timeA > timeB ? -1 : (timeA == timeB ? 0 : 1);
+        }
+    };
+
+    /**
+     * Read-only view of the rows through the first count positions of a sort index.
+     */
+    private final class SortedView extends AbstractList<EarthquakeListItem> implements RandomAccess {
+
+        private final int[] mPositions;
+
+        private final int mCount;
+
+        SortedView(int[] positions, int count) {
+            mPositions = positions;
+            mCount = count;
+        }
+
+        @Override
+        public EarthquakeListItem get(int index) {
+            if (index < 0 || index >= mCount) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + mCount);
+            }
+            return mItems.get(mPositions[index]);
+        }
+
+        @Override
+        public int size() {
+            return mCount;
+        }
+    }
+}
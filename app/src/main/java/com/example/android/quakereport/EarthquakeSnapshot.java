@@ -0,0 +1,452 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A list of earthquakes saved in a compact, versioned binary format, read straight from a memory-mapped file.
+ *
+ * The loader saves its last list this way so the next start of the app can show it in its first frame, before the loader
+ * has even started (stale-while-revalidate), without parsing any JSON. The file also records the query URL it was saved
+ * for, so a snapshot of a different query (e.g. before the user changed the minimum magnitude) is not shown.
+ * 這個類把地震清單存成精簡的二進位檔(數值欄位+字串表)，讀取時直接從記憶體映射的檔案取值，需要時才建立Earthquake物件
+ *
+ * Layout (big-endian), version 3:
+ * <pre>
+ *   header       int magic "QKSN", int version, int rowCount, int stringCount, int queryString
+ *   magnitudes   double[rowCount]
+ *   times        long[rowCount]
+ *   updated      long[rowCount]
+ *   latitudes    double[rowCount]        NaN when unknown
+ *   longitudes   double[rowCount]        NaN when unknown
+ *   depths       double[rowCount]        NaN when unknown
+ *   ids          int[rowCount]           index into the string table, -1 for null
+ *   places       int[rowCount]           index into the string table, -1 for null
+ *   urls         int[rowCount]           index into the string table, -1 for null
+ *   string table int[stringCount + 1]    start of each string in the UTF-8 bytes below (plus the end of the last one)
+ *                byte[]                  UTF-8 bytes of all strings, each distinct string stored once
+ * </pre>
+ * Every column has a fixed width, so a field of any row is one absolute ByteBuffer get() away: reading the snapshot
+ * creates no per-row objects, and an {@link Earthquake} (and its Strings) is only built for a row that is accessed.
+ */
+public final class EarthquakeSnapshot {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeSnapshot.class.getSimpleName();
+
+    /** Name of the snapshot file inside the app's files dir */
+    private static final String FILE_NAME = "earthquakes.snapshot";
+
+    /** First bytes of every snapshot file ("QKSN") */
+    private static final int MAGIC = 0x514B534E;
+
+    /**
+     * Version of the layout above. Files of any other version (e.g. the row-by-row version 1, or version 2 without the
+     * position columns) are ignored.
+     */
+    static final int VERSION = 3;
+
+    /** Size of the header in bytes: magic, version, rowCount, stringCount, queryString */
+    private static final int HEADER_BYTES = 5 * 4;
+
+    /** Bytes of one row in the fixed-width columns: six 8-byte columns and three 4-byte string indices */
+    private static final int ROW_BYTES = 6 * 8 + 3 * 4;
+
+    /** String table index that stands for null */
+    private static final int NULL_STRING = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+
+    private final int mRowCount;
+
+    private final int mStringCount;
+
+    /** Byte positions of the columns and the string table inside mBuffer */
+    private final int mMagnitudesAt;
+    private final int mTimesAt;
+    private final int mUpdatedAt;
+    private final int mLatitudesAt;
+    private final int mLongitudesAt;
+    private final int mDepthsAt;
+    private final int mIdsAt;
+    private final int mPlacesAt;
+    private final int mUrlsAt;
+    private final int mStringOffsetsAt;
+    private final int mStringBytesAt;
+
+    /** Strings decoded so far, by string table index; filled in on first access */
+    private final String[] mDecodedStrings;
+
+    private EarthquakeSnapshot(ByteBuffer buffer, int rowCount, int stringCount) {
+        mBuffer = buffer;
+        mRowCount = rowCount;
+        mStringCount = stringCount;
+        mMagnitudesAt = HEADER_BYTES;
+        mTimesAt = mMagnitudesAt + rowCount * 8;
+        mUpdatedAt = mTimesAt + rowCount * 8;
+        mLatitudesAt = mUpdatedAt + rowCount * 8;
+        mLongitudesAt = mLatitudesAt + rowCount * 8;
+        mDepthsAt = mLongitudesAt + rowCount * 8;
+        mIdsAt = mDepthsAt + rowCount * 8;
+        mPlacesAt = mIdsAt + rowCount * 4;
+        mUrlsAt = mPlacesAt + rowCount * 4;
+        mStringOffsetsAt = mUrlsAt + rowCount * 4;
+        mStringBytesAt = mStringOffsetsAt + (stringCount + 1) * 4;
+        mDecodedStrings = new String[stringCount];
+    }
+
+    /**
+     * Returns the snapshot file inside the given files dir.
+     */
+    public static File getFile(File filesDir) {
+        return new File(filesDir, FILE_NAME);
+    }
+
+    /**
+     * Save the given earthquakes as the snapshot of the given query. The file is written to a temporary file first and
+     * renamed over the old snapshot, so a reader never sees a half-written file.
+     */
+    public static void write(File file, String queryUrl, List<Earthquake> earthquakes) {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            writeTo(out, queryUrl, earthquakes);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                Log.e(LOG_TAG, "Problem replacing the snapshot file " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the snapshot.", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failing; the temporary file is simply left behind and overwritten next time.
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the given earthquakes in the layout described above.
+     */
+    static void writeTo(DataOutputStream out, String queryUrl, List<Earthquake> earthquakes) throws IOException {
+        int rowCount = earthquakes.size();
+
+        // Build the string table; every distinct string gets one index.
+        StringTable strings = new StringTable();
+        int queryString = strings.indexOf(queryUrl);
+        int[] ids = new int[rowCount];
+        int[] places = new int[rowCount];
+        int[] urls = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            ids[i] = strings.indexOf(earthquake.getmId());
+            places[i] = strings.indexOf(earthquake.getmLocation());
+            urls[i] = strings.indexOf(earthquake.getmUrl());
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(rowCount);
+        out.writeInt(strings.size());
+        out.writeInt(queryString);
+        for (int i = 0; i < rowCount; i++) {
+            out.writeDouble(earthquakes.get(i).getmMagnitude());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            out.writeLong(earthquakes.get(i).getmTimeInMilliseconds());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            out.writeLong(earthquakes.get(i).getmUpdatedInMilliseconds());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            out.writeDouble(earthquakes.get(i).getmLatitude());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            out.writeDouble(earthquakes.get(i).getmLongitude());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            out.writeDouble(earthquakes.get(i).getmDepth());
+        }
+        for (int id : ids) {
+            out.writeInt(id);
+        }
+        for (int place : places) {
+            out.writeInt(place);
+        }
+        for (int url : urls) {
+            out.writeInt(url);
+        }
+
+        List<byte[]> encoded = strings.encode();
+        int offset = 0;
+        for (byte[] bytes : encoded) {
+            out.writeInt(offset);
+            offset += bytes.length;
+        }
+        out.writeInt(offset);
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Open the snapshot saved for the given query.
+     *
+     * @return the snapshot, or null if there is no snapshot for this query (or it can't be read)
+     */
+    public static EarthquakeSnapshot open(File file, String queryUrl) {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            // The mapping stays valid after the file is closed below.
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            EarthquakeSnapshot snapshot = wrap(buffer);
+            if (snapshot == null || !queryUrl.equals(snapshot.getQueryUrl())) {
+                return null;    //這份快照是別的查詢條件(或舊版格式)存下的，不能拿來顯示
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt file shows up as an exception from the buffer; just ignore the snapshot.
+            Log.e(LOG_TAG, "Problem reading the snapshot.", e);
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the snapshot.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot from a buffer holding the layout described above (e.g. a MappedByteBuffer).
+     *
+     * The whole layout is checked before anything is allocated for it: the counts of the header against the size of the
+     * buffer (in long arithmetic, so a huge count can't overflow into a small size), every string offset, and every
+     * string index. A truncated or corrupt file is rejected here rather than failing later, when its rows are read on
+     * the UI thread, and a corrupt count can't make the constructor allocate gigabytes.
+     * 先用long計算各區段的大小並和檔案大小比對，確認整個檔案都有效之後才建立物件，避免損壞的檔案造成當機或配置大量記憶體
+     *
+     * @return the snapshot, or null if the buffer doesn't hold a valid snapshot of this version
+     */
+    static EarthquakeSnapshot wrap(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        if (limit < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+        int rowCount = buffer.getInt(8);
+        int stringCount = buffer.getInt(12);
+        if (rowCount < 0 || stringCount < 0) {
+            return null;
+        }
+        long stringOffsetsAt = HEADER_BYTES + (long) rowCount * ROW_BYTES;
+        long stringBytesAt = stringOffsetsAt + ((long) stringCount + 1) * 4;
+        if (stringBytesAt > limit) {
+            return null;    //檔案被截斷了，或筆數損壞
+        }
+
+        // The string offsets must ascend from 0 and stay inside the buffer, so that every string can be read.
+        int previous = 0;
+        for (int i = 0; i <= stringCount; i++) {
+            int offset = buffer.getInt((int) stringOffsetsAt + i * 4);
+            if (offset < previous || (i == 0 && offset != 0) || stringBytesAt + offset > limit) {
+                return null;
+            }
+            previous = offset;
+        }
+
+        // Every string index (the query, and the id, place and url of every row) must be null or in the table.
+        if (!isStringIndex(buffer.getInt(16), stringCount)) {
+            return null;
+        }
+        int stringIndicesAt = HEADER_BYTES + rowCount * 6 * 8;
+        for (int i = 0; i < rowCount * 3; i++) {
+            if (!isStringIndex(buffer.getInt(stringIndicesAt + i * 4), stringCount)) {
+                return null;
+            }
+        }
+        return new EarthquakeSnapshot(buffer, rowCount, stringCount);
+    }
+
+    private static boolean isStringIndex(int index, int stringCount) {
+        return index == NULL_STRING || (index >= 0 && index < stringCount);
+    }
+
+    /** Returns the query URL the snapshot was saved for. */
+    public String getQueryUrl() {
+        return getString(mBuffer.getInt(16));
+    }
+
+    /** Returns the number of earthquakes in the snapshot. */
+    public int size() {
+        return mRowCount;
+    }
+
+    public double getMagnitude(int row) {
+        checkRow(row);
+        return mBuffer.getDouble(mMagnitudesAt + row * 8);
+    }
+
+    public long getTimeInMilliseconds(int row) {
+        checkRow(row);
+        return mBuffer.getLong(mTimesAt + row * 8);
+    }
+
+    public long getUpdatedInMilliseconds(int row) {
+        checkRow(row);
+        return mBuffer.getLong(mUpdatedAt + row * 8);
+    }
+
+    public double getLatitude(int row) {
+        checkRow(row);
+        return mBuffer.getDouble(mLatitudesAt + row * 8);
+    }
+
+    public double getLongitude(int row) {
+        checkRow(row);
+        return mBuffer.getDouble(mLongitudesAt + row * 8);
+    }
+
+    public double getDepth(int row) {
+        checkRow(row);
+        return mBuffer.getDouble(mDepthsAt + row * 8);
+    }
+
+    public String getId(int row) {
+        checkRow(row);
+        return getString(mBuffer.getInt(mIdsAt + row * 4));
+    }
+
+    public String getLocation(int row) {
+        checkRow(row);
+        return getString(mBuffer.getInt(mPlacesAt + row * 4));
+    }
+
+    public String getUrl(int row) {
+        checkRow(row);
+        return getString(mBuffer.getInt(mUrlsAt + row * 4));
+    }
+
+    /**
+     * Build the {@link Earthquake} of the given row.
+     */
+    public Earthquake getEarthquake(int row) {
+        return new Earthquake(getId(row), getMagnitude(row), getLocation(row), getTimeInMilliseconds(row),
+                getUrl(row), getUpdatedInMilliseconds(row), getLatitude(row), getLongitude(row), getDepth(row));
+    }
+
+    /**
+     * Returns a read-only {@link List} view of the snapshot that builds each {@link Earthquake} when it is read.
+     */
+    public List<Earthquake> asList() {
+        return new RowList();
+    }
+
+    /**
+     * Decode a string of the string table, once; later calls return the same String.
+     */
+    private String getString(int index) {
+        if (index == NULL_STRING) {
+            return null;
+        }
+        if (index < 0 || index >= mStringCount) {
+            throw new IndexOutOfBoundsException("string " + index + ", count " + mStringCount);
+        }
+        String value = mDecodedStrings[index];
+        if (value == null) {
+            int start = mBuffer.getInt(mStringOffsetsAt + index * 4);
+            int end = mBuffer.getInt(mStringOffsetsAt + (index + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = mBuffer.duplicate();  //讀取時不改動共用buffer的position
+            view.position(mStringBytesAt + start);
+            view.get(bytes);
+            value = new String(bytes, UTF_8);
+            mDecodedStrings[index] = value;
+        }
+        return value;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= mRowCount) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + mRowCount);
+        }
+    }
+
+    /**
+     * Read-only list view over the rows of the snapshot.
+     */
+    private final class RowList extends AbstractList<Earthquake> implements RandomAccess {
+        @Override
+        public Earthquake get(int index) {
+            return getEarthquake(index);
+        }
+
+        @Override
+        public int size() {
+            return mRowCount;
+        }
+    }
+
+    /**
+     * Assigns each distinct string an index, in order of first use, while a snapshot is written.
+     */
+    private static final class StringTable {
+
+        private final Map<String, Integer> mIndices = new HashMap<>();
+
+        private final List<String> mStrings = new ArrayList<>();
+
+        int indexOf(String value) {
+            if (value == null) {
+                return NULL_STRING;
+            }
+            Integer index = mIndices.get(value);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(value);
+                mIndices.put(value, index);
+            }
+            return index;
+        }
+
+        int size() {
+            return mStrings.size();
+        }
+
+        List<byte[]> encode() {
+            List<byte[]> encoded = new ArrayList<>(mStrings.size());
+            for (String value : mStrings) {
+                encoded.add(value.getBytes(UTF_8));
+            }
+            return encoded;
+        }
+    }
+}
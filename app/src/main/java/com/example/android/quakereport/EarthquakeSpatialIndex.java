@@ -0,0 +1,321 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * A grid index over the epicenters of the earthquakes in an {@link EarthquakeTable}, for "within X km of here" and
+ * bounding-box queries that are answered on the device, without a request to USGS.
+ *
+ * The globe is cut into cells of cellDegrees x cellDegrees (latitude x longitude). The rows are grouped by cell in
+ * one array (the cell of a row is found by arithmetic, and each cell's rows are a contiguous range of that array), so
+ * a query only looks at the rows of the few cells its area overlaps. Cells that lie completely inside a bounding box
+ * are copied without testing their rows. Rows whose position is unknown are not indexed.
+ * 這個類把地震依震央所在的經緯度方格分組，查詢某個範圍或某點周圍X公里內的地震時，只需要檢查範圍內的方格，不必逐一比對或連網查詢
+ *
+ * The index is immutable and can be queried from any thread. Query results are row numbers of the table.
+ */
+public final class EarthquakeSpatialIndex {
+
+    /** Default size of a cell in degrees; about 111 x 111 km at the equator */
+    public static final double DEFAULT_CELL_DEGREES = 1.0;
+
+    /** Mean radius of the Earth in km */
+    static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final EarthquakeTable mTable;
+
+    private final double mCellDegrees;
+
+    /** Number of cells from south to north and from west to east */
+    private final int mLatitudeCells;
+    private final int mLongitudeCells;
+
+    /** The rows of cell c are mRows[mCellStarts[c]] to mRows[mCellStarts[c + 1] - 1] */
+    private final int[] mCellStarts;
+
+    /** Table rows, grouped by cell */
+    private final int[] mRows;
+
+    /** Latitude, longitude and cosine of the latitude of mRows[i], so queries don't go back to the table */
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final double[] mCosLatitudes;
+
+    /**
+     * Constructs a new {@link EarthquakeSpatialIndex} with cells of {@link #DEFAULT_CELL_DEGREES}.
+     */
+    public EarthquakeSpatialIndex(EarthquakeTable table) {
+        this(table, DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * Constructs a new {@link EarthquakeSpatialIndex}. Building takes two passes over the table (a counting sort).
+     *
+     * @param table holds the earthquakes to index
+     * @param cellDegrees is the size of a cell in degrees; smaller cells mean fewer rows tested per query but more cells
+     */
+    public EarthquakeSpatialIndex(EarthquakeTable table, double cellDegrees) {
+        if (!(cellDegrees > 0 && cellDegrees <= 180)) {
+            throw new IllegalArgumentException("cellDegrees " + cellDegrees);
+        }
+        mTable = table;
+        mCellDegrees = cellDegrees;
+        mLatitudeCells = (int) Math.ceil(180 / cellDegrees);
+        mLongitudeCells = (int) Math.ceil(360 / cellDegrees);
+
+        // Count the rows of every cell...
+        int size = table.size();
+        int[] cells = new int[size];
+        int[] starts = new int[mLatitudeCells * mLongitudeCells + 1];
+        int indexed = 0;
+        for (int row = 0; row < size; row++) {
+            double latitude = table.getLatitude(row);
+            double longitude = table.getLongitude(row);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                cells[row] = -1;    //位置不明的地震不放進索引
+                continue;
+            }
+            cells[row] = cellOf(latitudeCell(latitude), longitudeCell(longitude));
+            starts[cells[row] + 1]++;
+            indexed++;
+        }
+        for (int cell = 0; cell < starts.length - 1; cell++) {
+            starts[cell + 1] += starts[cell];
+        }
+
+        // ...then put each row in its cell's range.
+        mRows = new int[indexed];
+        mLatitudes = new double[indexed];
+        mLongitudes = new double[indexed];
+        mCosLatitudes = new double[indexed];
+        int[] next = Arrays.copyOf(starts, starts.length - 1);
+        for (int row = 0; row < size; row++) {
+            if (cells[row] < 0) {
+                continue;
+            }
+            int i = next[cells[row]]++;
+            mRows[i] = row;
+            mLatitudes[i] = table.getLatitude(row);
+            mLongitudes[i] = table.getLongitude(row);
+            mCosLatitudes[i] = Math.cos(Math.toRadians(mLatitudes[i]));
+        }
+        mCellStarts = starts;
+    }
+
+    /** Returns the table the row numbers of the query results refer to. */
+    public EarthquakeTable getTable() {
+        return mTable;
+    }
+
+    /** Returns the number of indexed rows (the rows with a known position). */
+    public int size() {
+        return mRows.length;
+    }
+
+    /**
+     * Returns the rows whose epicenter lies in the given bounding box (edges included).
+     * A box with west greater than east crosses the antimeridian (e.g. west 170, east -170).
+     *
+     * @return the table rows, in no particular order
+     */
+    public int[] withinBox(double south, double west, double north, double east) {
+        RowCollector result = new RowCollector();
+        if (south > north) {
+            return result.toArray();
+        }
+        int firstLatitudeCell = latitudeCell(Math.max(-90, south));
+        int lastLatitudeCell = latitudeCell(Math.min(90, north));
+        for (int latitudeCell = firstLatitudeCell; latitudeCell <= lastLatitudeCell; latitudeCell++) {
+            double cellSouth = latitudeCell * mCellDegrees - 90;
+            boolean latitudeInside = cellSouth >= south && cellSouth + mCellDegrees <= north;
+            if (west <= east) {
+                scanBoxRow(latitudeCell, latitudeInside, longitudeCell(west), longitudeCell(east),
+                        south, west, north, east, result);
+            } else {
+                scanBoxRow(latitudeCell, latitudeInside, longitudeCell(west), mLongitudeCells - 1,
+                        south, west, north, east, result);
+                scanBoxRow(latitudeCell, latitudeInside, 0, lastCellEastOfAntimeridian(west, east),
+                        south, west, north, east, result);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Scan the cells firstCell..lastCell of one band of latitude for the box query.
+     */
+    private void scanBoxRow(int latitudeCell, boolean latitudeInside, int firstCell, int lastCell,
+                            double south, double west, double north, double east, RowCollector result) {
+        for (int longitudeCell = firstCell; longitudeCell <= lastCell; longitudeCell++) {
+            int cell = cellOf(latitudeCell, longitudeCell);
+            int start = mCellStarts[cell];
+            int end = mCellStarts[cell + 1];
+            if (start == end) {
+                continue;
+            }
+            double cellWest = longitudeCell * mCellDegrees - 180;
+            double cellEast = Math.min(180, cellWest + mCellDegrees);
+            boolean longitudeInside = west <= east
+                    ? cellWest >= west && cellEast <= east
+                    : cellWest >= west || cellEast <= east;
+            if (latitudeInside && longitudeInside) {
+                result.addAll(mRows, start, end);   //整個方格都在範圍內，不必逐一檢查
+                continue;
+            }
+            for (int i = start; i < end; i++) {
+                if (mLatitudes[i] >= south && mLatitudes[i] <= north && longitudeInBox(mLongitudes[i], west, east)) {
+                    result.add(mRows[i]);
+                }
+            }
+        }
+    }
+
+    private static boolean longitudeInBox(double longitude, double west, double east) {
+        return west <= east
+                ? longitude >= west && longitude <= east
+                : longitude >= west || longitude <= east;
+    }
+
+    /**
+     * Returns the rows whose epicenter lies within the given great-circle distance of a point.
+     *
+     * @param latitude of the point in degrees
+     * @param longitude of the point in degrees
+     * @param radiusKm is the distance in km
+     * @return the table rows, in no particular order
+     */
+    public int[] withinRadius(double latitude, double longitude, double radiusKm) {
+        RowCollector result = new RowCollector();
+        if (!(radiusKm >= 0)) {
+            return result.toArray();
+        }
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        double radiusDegrees = Math.toDegrees(angularRadius);
+
+        // The bounding box of the circle. Near a pole (or for huge radii) it spans every longitude.
+        double south = latitude - radiusDegrees;
+        double north = latitude + radiusDegrees;
+        double west = -180;
+        double east = 180;
+        if (south > -90 && north < 90) {
+            double halfWidth = Math.toDegrees(Math.asin(
+                    Math.min(1, Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude)))));
+            if (halfWidth < 180) {
+                west = normalizeLongitude(longitude - halfWidth);
+                east = normalizeLongitude(longitude + halfWidth);
+            }
+        }
+
+        // Test the rows of the overlapped cells with the haversine formula:
+        // hav(d) = hav(dLat) + cos(lat1) cos(lat2) hav(dLon), and d <= r  <=>  hav(d) <= hav(r).
+        double maxHaversine = haversine(Math.min(angularRadius, Math.PI));
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        int firstLatitudeCell = latitudeCell(Math.max(-90, south));
+        int lastLatitudeCell = latitudeCell(Math.min(90, north));
+        for (int latitudeCell = firstLatitudeCell; latitudeCell <= lastLatitudeCell; latitudeCell++) {
+            if (west <= east) {
+                scanCircleRow(latitudeCell, longitudeCell(west), longitudeCell(east),
+                        latitude, longitude, cosLatitude, maxHaversine, result);
+            } else {
+                scanCircleRow(latitudeCell, longitudeCell(west), mLongitudeCells - 1,
+                        latitude, longitude, cosLatitude, maxHaversine, result);
+                scanCircleRow(latitudeCell, 0, lastCellEastOfAntimeridian(west, east),
+                        latitude, longitude, cosLatitude, maxHaversine, result);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Scan the cells firstCell..lastCell of one band of latitude for the radius query.
+     */
+    private void scanCircleRow(int latitudeCell, int firstCell, int lastCell, double latitude, double longitude,
+                               double cosLatitude, double maxHaversine, RowCollector result) {
+        for (int longitudeCell = firstCell; longitudeCell <= lastCell; longitudeCell++) {
+            int cell = cellOf(latitudeCell, longitudeCell);
+            for (int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; i++) {
+                double h = haversine(Math.toRadians(mLatitudes[i] - latitude))
+                        + cosLatitude * mCosLatitudes[i] * haversine(Math.toRadians(mLongitudes[i] - longitude));
+                if (h <= maxHaversine) {
+                    result.add(mRows[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the great-circle distance in km between two points given in degrees.
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double h = haversine(Math.toRadians(latitude2 - latitude1))
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * haversine(Math.toRadians(longitude2 - longitude1));
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(Math.min(1, h)));
+    }
+
+    private static double haversine(double angle) {
+        double s = Math.sin(angle / 2);
+        return s * s;
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        if (longitude < -180) {
+            return longitude + 360;
+        } else if (longitude > 180) {
+            return longitude - 360;
+        }
+        return longitude;
+    }
+
+    private int latitudeCell(double latitude) {
+        int cell = (int) Math.floor((latitude + 90) / mCellDegrees);
+        return Math.max(0, Math.min(mLatitudeCells - 1, cell));     //緯度90度(北極)歸在最北邊的方格
+    }
+
+    private int longitudeCell(double longitude) {
+        int cell = (int) Math.floor((normalizeLongitude(longitude) + 180) / mCellDegrees);
+        return Math.max(0, Math.min(mLongitudeCells - 1, cell));    //經度180度歸在最東邊的方格
+    }
+
+    /**
+     * For a range crossing the antimeridian, returns the last cell of the part east of it. When west and east fall in
+     * the same cell, that cell was already scanned with the part west of the antimeridian and is not scanned again.
+     */
+    private int lastCellEastOfAntimeridian(double west, double east) {
+        return Math.min(longitudeCell(east), longitudeCell(west) - 1);
+    }
+
+    private int cellOf(int latitudeCell, int longitudeCell) {
+        return latitudeCell * mLongitudeCells + longitudeCell;
+    }
+
+    /**
+     * A growable int array for query results.
+     */
+    private static final class RowCollector {
+
+        private int[] mValues = new int[16];
+
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        void addAll(int[] values, int from, int to) {
+            int count = to - from;
+            if (mSize + count > mValues.length) {
+                mValues = Arrays.copyOf(mValues, Math.max(mSize + count, mValues.length * 2));
+            }
+            System.arraycopy(values, from, mValues, mSize, count);
+            mSize += count;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package com.example.android.quakereport;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * On-device store of earthquakes keyed by USGS event id, kept up to date with incremental syncs.
+ *
+ * The first sync for a query downloads the whole result set. After that, sync() only asks USGS for events
+ * updated after the newest "updated" time we have seen (the FDSN "updatedafter" parameter) and merges them
+ * into the table, so a refresh usually transfers a handful of features (or none) instead of the whole list.
+ * The list shown to the user is always read back from the table, which also means the last results survive
+ * process death and are still shown when the network request fails.
+ * 這個類負責把地震資料存在手機的資料庫裡，每次更新只向USGS要求上次同步之後有變動的地震
+ */
+public final class EarthquakeStore {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeStore.class.getSimpleName();
+
+    /** Name of the SharedPreferences file that holds the sync state */
+    private static final String SYNC_PREFS_NAME = "earthquake_sync";
+
+    /** Key of the query (URL without "updatedafter") that the watermark below belongs to */
+    private static final String KEY_SYNC_QUERY = "sync_query";
+
+    /** Key of the newest "updated" time (ms from the Epoch) seen for that query */
+    private static final String KEY_SYNC_WATERMARK = "sync_watermark";
+
+    /** Key of the database version the watermark was recorded with; rows stored by an older schema lack columns */
+    private static final String KEY_SYNC_SCHEMA = "sync_schema";
+
+    /** Key of the time (ms from the Epoch) the last sync finished, see EarthquakeSyncPolicy */
+    private static final String KEY_SYNC_LAST_ATTEMPT = "sync_last_attempt";
+
+    /** Key of the number of syncs that failed in a row, see EarthquakeSyncPolicy */
+    private static final String KEY_SYNC_FAILURES = "sync_failures";
+
+    /** FDSN query parameter that limits the results to events updated after the given time */
+    private static final String PARAM_UPDATED_AFTER = "updatedafter";
+
+    /** FDSN query parameter with the (1-based) index of the first result to return, used for paging */
+    public static final String PARAM_OFFSET = "offset";
+
+    /** Columns read back from the table, in the order used by readEarthquake() */
+    private static final String[] PROJECTION = {
+            EarthquakeEntry.COLUMN_EVENT_ID,
+            EarthquakeEntry.COLUMN_MAGNITUDE,
+            EarthquakeEntry.COLUMN_PLACE,
+            EarthquakeEntry.COLUMN_TIME,
+            EarthquakeEntry.COLUMN_URL,
+            EarthquakeEntry.COLUMN_UPDATED,
+            EarthquakeEntry.COLUMN_LATITUDE,
+            EarthquakeEntry.COLUMN_LONGITUDE,
+            EarthquakeEntry.COLUMN_DEPTH
+    };
+
+    private static EarthquakeStore sInstance;
+
+    private final EarthquakeDbHelper mDbHelper;
+
+    private final SharedPreferences mSyncPrefs;
+
+    /** Fetches queries from USGS, splitting large time ranges into parallel sub-queries */
+    private final EarthquakeQueryPlanner mPlanner;
+
+    /** Place-name search index over every stored event; filled from the table once, then kept up to date by merge() */
+    private final EarthquakePlaceIndex mPlaceIndex = new EarthquakePlaceIndex();
+
+    /** Whether the events stored before this process started have been added to mPlaceIndex */
+    private boolean mPlaceIndexLoaded;
+
+    /**
+     * Spatial index over every stored event whose position is known; read from the table the first time it is needed,
+     * then replaced by store() from its own rows and the stored events, without reading the table again
+     */
+    private EarthquakeSpatialIndex mSpatialIndex;
+
+    /** Guards mSpatialIndex */
+    private final Object mSpatialIndexLock = new Object();
+
+    /** When the next background sync is due; every sync, foreground or background, is recorded in it */
+    private final EarthquakeSyncPolicy mSyncPolicy;
+
+    /** Notifies the significant earthquakes among the events each sync receives */
+    private final EarthquakeAlerts mAlerts;
+
+    /**
+     * Returns the single store of the app. There is only one database file, so all loaders share one helper.
+     */
+    public static synchronized EarthquakeStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private EarthquakeStore(Context context) {
+        this(context,
+                new EarthquakeQueryPlanner(
+                        context.getResources().getInteger(R.integer.query_shard_count),
+                        context.getResources().getInteger(R.integer.query_max_concurrency),
+                        context.getResources().getInteger(R.integer.query_shard_attempts),
+                        context.getResources().getInteger(R.integer.query_memo_millis)),
+                new EarthquakeSyncPolicy(EarthquakeSyncPolicy.SYSTEM_CLOCK,
+                        minutesToMillis(context, R.integer.sync_interval_minutes),
+                        minutesToMillis(context, R.integer.sync_initial_backoff_minutes),
+                        minutesToMillis(context, R.integer.sync_max_backoff_minutes),
+                        minutesToMillis(context, R.integer.sync_min_spacing_minutes)));
+    }
+
+    /**
+     * Creates a store with the given planner and sync policy instead of the ones configured in integers.xml, for
+     * tests. The app uses {@link #getInstance(Context)}.
+     */
+    EarthquakeStore(Context context, EarthquakeQueryPlanner planner, EarthquakeSyncPolicy syncPolicy) {
+        mDbHelper = new EarthquakeDbHelper(context);
+        mSyncPrefs = context.getSharedPreferences(SYNC_PREFS_NAME, Context.MODE_PRIVATE);
+        mPlanner = planner;
+        mSyncPolicy = syncPolicy;
+        mSyncPolicy.restore(mSyncPrefs.getLong(KEY_SYNC_LAST_ATTEMPT, 0), mSyncPrefs.getInt(KEY_SYNC_FAILURES, 0));
+        mAlerts = new EarthquakeAlerts(context);
+    }
+
+    private static long minutesToMillis(Context context, int resourceId) {
+        return context.getResources().getInteger(resourceId) * 60L * 1000L;
+    }
+
+    /**
+     * Bring the store up to date for the given USGS query URL and return the matching earthquakes from the store.
+     * This does network and disk I/O, so it must be called from a background thread (e.g. loadInBackground()).
+     *
+     * @param requestUrl is the USGS query URL built by EarthquakeActivity (format, limit, minmag and orderby)
+     * @return a read-only list of the stored earthquakes matching the query's minmag, orderby and limit
+     */
+    public List<Earthquake> sync(String requestUrl) {
+        return sync(requestUrl, QueryDeadline.NONE);
+    }
+
+    /**
+     * Same as {@link #sync(String)}, under the given query's cancellation and deadline. A sync that runs out of time
+     * counts as failed and still returns the stored earthquakes; a cancelled one isn't recorded as an attempt (nothing
+     * went wrong with USGS) and returns null, since nobody wants its result any more.
+     *
+     * @return the stored earthquakes matching the query, or null if the query was cancelled
+     */
+    public List<Earthquake> sync(String requestUrl, QueryDeadline deadline) {
+        Uri queryUri = Uri.parse(requestUrl);
+        loadPlaceIndex();
+
+        // Record the sync in the policy whoever runs it (the list's loader or EarthquakeSyncService), so a background
+        // sync right after the app refreshed the list is coalesced into it, and failures push the next one back.
+        synchronized (mSyncPolicy) {
+            mSyncPolicy.onRunStarted();
+        }
+        boolean success = false;
+        try {
+            success = fetchChanges(requestUrl, queryUri, deadline);
+        } finally {
+            synchronized (mSyncPolicy) {
+                if (!success && deadline.isCancelled()) {
+                    mSyncPolicy.onRunCancelled();
+                } else {
+                    mSyncPolicy.onRunFinished(success);
+                }
+                mSyncPrefs.edit()
+                        .putLong(KEY_SYNC_LAST_ATTEMPT, mSyncPolicy.getLastAttemptAt())
+                        .putInt(KEY_SYNC_FAILURES, mSyncPolicy.getConsecutiveFailures())
+                        .apply();
+            }
+        }
+
+        if (!success && deadline.isCancelled()) {
+            return null;    //使用者已經離開或換了查詢，不必再讀資料庫
+        }
+        return query(queryUri);
+    }
+
+    /**
+     * Fetch the events of the query that changed since the last sync and merge them into the table.
+     *
+     * @return false if the request failed
+     */
+    private boolean fetchChanges(String requestUrl, Uri queryUri, QueryDeadline deadline) {
+        // The watermark is only valid for the query it was recorded for. If the user changed a filter,
+        // the events we hold may not cover the new query, so fall back to a full download.
+        // The same goes for rows stored before the database gained columns (e.g. the position): download them again.
+        long watermark = 0;
+        if (requestUrl.equals(mSyncPrefs.getString(KEY_SYNC_QUERY, null))
+                && mSyncPrefs.getInt(KEY_SYNC_SCHEMA, 1) == EarthquakeDbHelper.DATABASE_VERSION) {
+            watermark = mSyncPrefs.getLong(KEY_SYNC_WATERMARK, 0);
+        }
+
+        String fetchUrl = requestUrl;
+        if (watermark > 0) {
+            fetchUrl = queryUri.buildUpon()
+                    .appendQueryParameter(PARAM_UPDATED_AFTER, formatFdsnTime(watermark))
+                    .toString();
+        }
+
+        long fetchStartedAt = SystemClock.elapsedRealtime();
+        List<Earthquake> changed = mPlanner.fetch(fetchUrl, deadline);
+        if (changed != null) {
+            // A full download is the whole result set of the query, so it replaces the table: events USGS deleted, and
+            // rows stored by other queries or later pages, would otherwise stay in the table and show up in the list.
+            long newestUpdate = watermark > 0 ? merge(changed) : replaceAll(changed);
+
+            // Only the delta is checked for alerts, right after it is stored. A full download isn't news (it is all
+            // the events of the query, e.g. the first sync after the user changed a filter): it is only marked seen.
+            if (watermark > 0) {
+                mAlerts.onIngested(changed, fetchStartedAt);
+            } else {
+                mAlerts.onReplaced(changed);
+            }
+
+            // If the response was cut off by "limit", events updated before the newest one we received may still
+            // be missing, so don't move the watermark past them: the next sync downloads the full result set again.
+            int limit = parseInt(queryUri.getQueryParameter("limit"), 0);
+            long newWatermark = (limit > 0 && changed.size() >= limit && watermark > 0)
+                    ? 0 : Math.max(watermark, newestUpdate);
+            mSyncPrefs.edit()
+                    .putString(KEY_SYNC_QUERY, requestUrl)
+                    .putLong(KEY_SYNC_WATERMARK, newWatermark)
+                    .putInt(KEY_SYNC_SCHEMA, EarthquakeDbHelper.DATABASE_VERSION)
+                    .apply();
+            return true;
+        }
+        Log.w(LOG_TAG, "Sync failed, showing stored earthquakes only");
+        return false;
+    }
+
+    /**
+     * Returns the query URL of the last sync (the list the user last looked at), which background syncs refresh,
+     * or null if the app never synced.
+     */
+    public String getLastSyncQuery() {
+        return mSyncPrefs.getString(KEY_SYNC_QUERY, null);
+    }
+
+    /**
+     * Ask the sync policy whether a background sync should run now. See {@link EarthquakeSyncPolicy#decide}.
+     */
+    public EarthquakeSyncPolicy.Decision decideSync(boolean requested, boolean online) {
+        synchronized (mSyncPolicy) {
+            return mSyncPolicy.decide(requested, online);
+        }
+    }
+
+    /**
+     * Returns when the background sync should wake up next (ms from the Epoch), after the given decision.
+     */
+    public long getNextSyncWakeUpAt(EarthquakeSyncPolicy.Decision decision) {
+        synchronized (mSyncPolicy) {
+            return mSyncPolicy.getNextWakeUpAt(decision);
+        }
+    }
+
+    /**
+     * Fetch one page of a query (a URL with an "offset" parameter) and merge it into the store.
+     * If the request fails, the same page is read from the store instead, so scrolling still works offline.
+     *
+     * @return the earthquakes of the requested page
+     */
+    public List<Earthquake> fetchPage(String pageUrl) {
+        return fetchPage(pageUrl, QueryDeadline.NONE);
+    }
+
+    /**
+     * Same as {@link #fetchPage(String)}, under the given query's cancellation and deadline.
+     *
+     * @return the earthquakes of the requested page, or null if the query was cancelled
+     */
+    public List<Earthquake> fetchPage(String pageUrl, QueryDeadline deadline) {
+        List<Earthquake> page = mPlanner.fetch(pageUrl, deadline);
+        if (page != null) {
+            merge(page);
+            return page;
+        }
+        if (deadline.isCancelled()) {
+            return null;
+        }
+        Log.w(LOG_TAG, "Page request failed, reading the page from the store");
+        return query(Uri.parse(pageUrl));
+    }
+
+    /**
+     * Insert or replace the given earthquakes in one transaction, keyed by event id.
+     *
+     * @return the newest "updated" time among the given earthquakes, or 0 if there were none
+     */
+    public long merge(List<Earthquake> earthquakes) {
+        return store(earthquakes, false);
+    }
+
+    /**
+     * Replace every stored earthquake with the given ones in one transaction, so a reader sees either the old rows or
+     * the new ones.
+     * 全部下載時用新的結果取代整個資料表，已被USGS刪除的地震和其他查詢留下的資料就不會再出現在列表中
+     *
+     * @return the newest "updated" time among the given earthquakes, or 0 if there were none
+     */
+    long replaceAll(List<Earthquake> earthquakes) {
+        return store(earthquakes, true);
+    }
+
+    private long store(List<Earthquake> earthquakes, boolean replace) {
+        long newestUpdate = 0;
+        List<String> removedIds = new ArrayList<>();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (replace) {
+                readEventIds(db, removedIds);
+                db.delete(EarthquakeEntry.TABLE_NAME, null, null);
+            }
+            ContentValues values = new ContentValues();
+            for (Earthquake earthquake : earthquakes) {
+                if (earthquake.getmId() == null) {
+                    continue;   //沒有event id的地震無法合併，所以不存
+                }
+                values.clear();
+                values.put(EarthquakeEntry.COLUMN_EVENT_ID, earthquake.getmId());
+                values.put(EarthquakeEntry.COLUMN_MAGNITUDE, earthquake.getmMagnitude());
+                values.put(EarthquakeEntry.COLUMN_PLACE, earthquake.getmLocation());
+                values.put(EarthquakeEntry.COLUMN_TIME, earthquake.getmTimeInMilliseconds());
+                values.put(EarthquakeEntry.COLUMN_URL, earthquake.getmUrl());
+                values.put(EarthquakeEntry.COLUMN_UPDATED, earthquake.getmUpdatedInMilliseconds());
+                putNullable(values, EarthquakeEntry.COLUMN_LATITUDE, earthquake.getmLatitude());
+                putNullable(values, EarthquakeEntry.COLUMN_LONGITUDE, earthquake.getmLongitude());
+                putNullable(values, EarthquakeEntry.COLUMN_DEPTH, earthquake.getmDepth());
+                db.insertWithOnConflict(EarthquakeEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                newestUpdate = Math.max(newestUpdate, earthquake.getmUpdatedInMilliseconds());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Index the places of the new and updated events, so search finds them without rebuilding the index.
+        Set<String> storedIds = new HashSet<>();
+        for (Earthquake earthquake : earthquakes) {
+            mPlaceIndex.add(earthquake.getmId(), earthquake.getmLocation());
+            storedIds.add(earthquake.getmId());
+        }
+        int removed = 0;
+        for (String id : removedIds) {
+            if (!storedIds.contains(id)) {
+                mPlaceIndex.remove(id);
+                removed++;
+            }
+        }
+        if (replace) {
+            Log.i(LOG_TAG, "Full download: " + earthquakes.size() + " events stored, " + removed + " removed");
+        }
+
+        // Replace the spatial index too (if it was built), so "nearby" keeps answering from memory.
+        synchronized (mSpatialIndexLock) {
+            if (mSpatialIndex != null) {
+                mSpatialIndex = new EarthquakeSpatialIndex(
+                        updateSpatialRows(mSpatialIndex.getTable(), earthquakes, replace));
+            }
+        }
+        return newestUpdate;
+    }
+
+    /**
+     * Returns the rows of the spatial index after the given earthquakes were stored: the ones they replaced are
+     * dropped (all of them after a full download), and those with a known position added, the last one of an id
+     * winning as in the table.
+     */
+    private static EarthquakeTable updateSpatialRows(EarthquakeTable rows, List<Earthquake> earthquakes,
+                                                     boolean replace) {
+        Map<String, Earthquake> stored = new LinkedHashMap<>();
+        for (Earthquake earthquake : earthquakes) {
+            if (earthquake.getmId() != null) {
+                stored.put(earthquake.getmId(), earthquake);
+            }
+        }
+        EarthquakeTable updated = new EarthquakeTable((replace ? 0 : rows.size()) + stored.size());
+        if (!replace) {
+            for (int row = 0; row < rows.size(); row++) {
+                if (!stored.containsKey(rows.getId(row))) {
+                    updated.add(rows.getEarthquake(row));   //沒有變動的地震直接從舊的索引複製，不必讀資料庫
+                }
+            }
+        }
+        for (Earthquake earthquake : stored.values()) {
+            if (earthquake.hasCoordinates()) {
+                updated.add(earthquake);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Add the event id of every stored row to the given list.
+     */
+    private static void readEventIds(SQLiteDatabase db, List<String> ids) {
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME, new String[]{EarthquakeEntry.COLUMN_EVENT_ID},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the place-name search index over the stored events. It only covers the events stored in earlier runs
+     * of the app once the first sync of this run has started.
+     */
+    public EarthquakePlaceIndex getPlaceIndex() {
+        return mPlaceIndex;
+    }
+
+    /**
+     * Add the places of every stored event to the search index, once per process. Reads two columns of the whole
+     * table, so it runs on the loader's background thread (from sync()).
+     */
+    private void loadPlaceIndex() {
+        synchronized (mPlaceIndex) {
+            if (mPlaceIndexLoaded) {
+                return;
+            }
+            mPlaceIndexLoaded = true;
+        }
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(
+                EarthquakeEntry.TABLE_NAME,
+                new String[]{EarthquakeEntry.COLUMN_EVENT_ID, EarthquakeEntry.COLUMN_PLACE},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                mPlaceIndex.addIfAbsent(cursor.getString(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        Log.i(LOG_TAG, "Place index: " + mPlaceIndex.size() + " events, " + mPlaceIndex.getWordCount() + " words, ~"
+                + mPlaceIndex.estimateMemoryBytes() / 1024 + " KB, built in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    /**
+     * Read the earthquakes matching the minmag, orderby, limit and offset parameters of the given query from the table.
+     */
+    public List<Earthquake> query(Uri queryUri) {
+        double minMagnitude = parseDouble(queryUri.getQueryParameter("minmag"), 0);
+        int limit = parseInt(queryUri.getQueryParameter("limit"), 0);
+        int offset = parseInt(queryUri.getQueryParameter(PARAM_OFFSET), 1);   //FDSN offsets start at 1
+
+        String limitClause = null;
+        if (limit > 0) {
+            limitClause = offset > 1 ? (offset - 1) + "," + limit : String.valueOf(limit);
+        }
+
+        String orderBy = "magnitude".equals(queryUri.getQueryParameter("orderby"))
+                ? EarthquakeEntry.COLUMN_MAGNITUDE + " DESC"
+                : EarthquakeEntry.COLUMN_TIME + " DESC";
+
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(
+                EarthquakeEntry.TABLE_NAME,
+                PROJECTION,
+                EarthquakeEntry.COLUMN_MAGNITUDE + " >= ?",
+                new String[]{String.valueOf(minMagnitude)},
+                null,
+                null,
+                orderBy,
+                limitClause);
+
+        // Read the rows into columns rather than one object per row; the returned list builds Earthquake objects
+        // only for the rows that are read from it.
+        EarthquakeTable table;
+        try {
+            table = new EarthquakeTable(cursor.getCount());
+            while (cursor.moveToNext()) {
+                readEarthquake(cursor, table);
+            }
+        } finally {
+            cursor.close();
+        }
+        return table.asList();
+    }
+
+    /**
+     * Returns the spatial index over every stored earthquake whose position is known, for region and radius queries
+     * that are answered on the device. The first call reads the whole table, so call it from a background thread; the
+     * index is then kept up to date as events are stored, and later calls return it at once.
+     * 第一次呼叫時從資料庫建立空間索引，之後每次存入地震時更新，不必再讀整個資料表
+     */
+    public EarthquakeSpatialIndex getSpatialIndex() {
+        synchronized (mSpatialIndexLock) {
+            if (mSpatialIndex == null) {
+                long start = SystemClock.elapsedRealtime();
+                mSpatialIndex = readSpatialIndex();
+                Log.i(LOG_TAG, "Spatial index: " + mSpatialIndex.size() + " events, built in "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+            }
+            return mSpatialIndex;
+        }
+    }
+
+    /**
+     * Build a spatial index over every stored earthquake whose position is known, from the table.
+     */
+    private EarthquakeSpatialIndex readSpatialIndex() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(
+                EarthquakeEntry.TABLE_NAME,
+                PROJECTION,
+                EarthquakeEntry.COLUMN_LATITUDE + " IS NOT NULL AND " + EarthquakeEntry.COLUMN_LONGITUDE + " IS NOT NULL",
+                null,
+                null,
+                null,
+                null);
+        EarthquakeTable table;
+        try {
+            table = new EarthquakeTable(cursor.getCount());
+            while (cursor.moveToNext()) {
+                readEarthquake(cursor, table);
+            }
+        } finally {
+            cursor.close();
+        }
+        return new EarthquakeSpatialIndex(table);
+    }
+
+    /**
+     * Append the current row of a cursor over {@link #PROJECTION} to the given table.
+     */
+    private static void readEarthquake(Cursor cursor, EarthquakeTable table) {
+        table.add(
+                cursor.getString(0),
+                cursor.getDouble(1),
+                cursor.getString(2),
+                cursor.getLong(3),
+                cursor.getString(4),
+                cursor.getLong(5),
+                getNullableDouble(cursor, 6),
+                getNullableDouble(cursor, 7),
+                getNullableDouble(cursor, 8));
+    }
+
+    /** Store NaN (an unknown value) as NULL. */
+    private static void putNullable(ContentValues values, String column, double value) {
+        if (Double.isNaN(value)) {
+            values.putNull(column);
+        } else {
+            values.put(column, value);
+        }
+    }
+
+    /** Read NULL back as NaN. */
+    private static double getNullableDouble(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+
+    /**
+     * Format a time in milliseconds from the Epoch the way FDSN expects it (ISO 8601, UTC).
+     */
+    static String formatFdsnTime(long timeInMilliseconds) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timeInMilliseconds));
+    }
+
+    private static double parseDouble(String value, double defaultValue) {
+        if (TextUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Invalid number in query: " + value, e);
+            return defaultValue;
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (TextUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Invalid number in query: " + value, e);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.android.quakereport;
+
+/**
+ * Decides when the store should be refreshed in the background (see EarthquakeSyncService).
+ *
+ * The policy only does arithmetic on times, so it has no Android dependencies and can be driven by a fake {@link Clock}:
+ * - After a successful refresh (in the background or by the list's own loader), the next one is due one interval later.
+ * - After a failed refresh, the next one is due after a backoff that doubles with every failure in a row, up to a cap.
+ * - A refresh requested while another one is running, or ran less than the minimum spacing ago, is coalesced into
+ *   that one: it is skipped, so several triggers close together (an alarm, the app starting, the list's loader, a
+ *   queued duplicate) cause one download.
+ * - A refresh that is due while the device is offline is skipped without counting as a failure.
+ * 這個類決定背景同步的時間：成功後隔一個週期再同步，失敗後用指數退避(exponential backoff)延後重試，短時間內重複的同步要求會合併成一次
+ *
+ * Instances are not thread-safe; EarthquakeStore owns the app's policy and synchronizes on it.
+ */
+public final class EarthquakeSyncPolicy {
+
+    /** Source of the current time, in milliseconds since the epoch. */
+    public interface Clock {
+        long now();
+    }
+
+    /** The system wall clock. The policy's times are persisted, so they must survive a reboot (unlike uptime). */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /** What to do when the scheduler wakes up. */
+    public enum Decision {
+        /** Refresh now. */
+        RUN,
+        /** Not due yet, or another refresh ran moments ago: nothing to do. */
+        NOT_DUE,
+        /** Due, but the device is offline: try again at the next interval. */
+        OFFLINE
+    }
+
+    private final Clock mClock;
+
+    private final long mIntervalMillis;
+
+    private final long mInitialBackoffMillis;
+
+    private final long mMaxBackoffMillis;
+
+    private final long mMinSpacingMillis;
+
+    /** When the last refresh finished, successfully or not (0 if never) */
+    private long mLastAttemptAt;
+
+    /** Number of refreshes that failed in a row since the last success */
+    private int mConsecutiveFailures;
+
+    /** Number of refreshes started and not finished yet */
+    private int mRunning;
+
+    /**
+     * Constructs a new {@link EarthquakeSyncPolicy}.
+     *
+     * @param clock is the source of the current time
+     * @param intervalMillis is the time between two successful refreshes
+     * @param initialBackoffMillis is the delay after the first failure; it doubles with every further failure
+     * @param maxBackoffMillis caps the delay after failures
+     * @param minSpacingMillis is the time after a refresh during which further requests are coalesced into it
+     */
+    public EarthquakeSyncPolicy(Clock clock, long intervalMillis, long initialBackoffMillis, long maxBackoffMillis,
+                                long minSpacingMillis) {
+        if (intervalMillis <= 0 || initialBackoffMillis <= 0 || maxBackoffMillis < initialBackoffMillis
+                || minSpacingMillis < 0) {
+            throw new IllegalArgumentException("Invalid sync policy times");
+        }
+        mClock = clock;
+        mIntervalMillis = intervalMillis;
+        mInitialBackoffMillis = initialBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mMinSpacingMillis = minSpacingMillis;
+    }
+
+    /**
+     * Restore the state saved from {@link #getLastAttemptAt()} and {@link #getConsecutiveFailures()}, e.g. after the
+     * process was killed between two alarms.
+     */
+    public void restore(long lastAttemptAt, int consecutiveFailures) {
+        mLastAttemptAt = Math.max(0, lastAttemptAt);
+        mConsecutiveFailures = Math.max(0, consecutiveFailures);
+    }
+
+    public long getLastAttemptAt() {
+        return mLastAttemptAt;
+    }
+
+    public int getConsecutiveFailures() {
+        return mConsecutiveFailures;
+    }
+
+    /**
+     * Returns when the next refresh is due, in the clock's time. Never refreshed means due now.
+     */
+    public long getNextRunAt() {
+        if (mLastAttemptAt == 0) {
+            return mClock.now();
+        }
+        return mLastAttemptAt + (mConsecutiveFailures == 0 ? mIntervalMillis : getBackoffMillis());
+    }
+
+    /**
+     * Returns the delay after the current run of failures: initial backoff * 2^(failures - 1), capped.
+     */
+    long getBackoffMillis() {
+        long backoff = mInitialBackoffMillis;
+        for (int i = 1; i < mConsecutiveFailures && backoff < mMaxBackoffMillis; i++) {
+            backoff *= 2;       //每多失敗一次，延遲時間加倍
+        }
+        return Math.min(backoff, mMaxBackoffMillis);
+    }
+
+    /**
+     * Decide whether to refresh now.
+     *
+     * @param requested is true when the refresh was asked for explicitly (e.g. the app started) rather than by the
+     *                  schedule: it runs even if not due yet, unless a refresh ran less than the minimum spacing ago
+     * @param online is whether the device has a network connection
+     */
+    public Decision decide(boolean requested, boolean online) {
+        if (mRunning > 0) {
+            return Decision.NOT_DUE;        //已經有同步在進行中，這次要求合併到那一次
+        }
+        long now = mClock.now();
+        boolean clockWentBack = now < mLastAttemptAt;   //使用者調過時間，就當作已經到期
+        if (!clockWentBack && mLastAttemptAt > 0) {
+            if (now - mLastAttemptAt < mMinSpacingMillis) {
+                return Decision.NOT_DUE;    //剛剛才同步過，這次要求合併到上一次
+            }
+            if (!requested && now < getNextRunAt()) {
+                return Decision.NOT_DUE;
+            }
+        }
+        return online ? Decision.RUN : Decision.OFFLINE;
+    }
+
+    /**
+     * Record that a refresh started, whoever runs it. Every call must be followed by one {@link #onRunFinished} or
+     * {@link #onRunCancelled}.
+     */
+    public void onRunStarted() {
+        mRunning++;
+    }
+
+    /**
+     * Record the outcome of a refresh, whoever ran it.
+     */
+    public void onRunFinished(boolean success) {
+        mRunning = Math.max(0, mRunning - 1);
+        mLastAttemptAt = mClock.now();
+        mConsecutiveFailures = success ? 0 : mConsecutiveFailures + 1;
+    }
+
+    /**
+     * Record that a refresh was cancelled before it finished (e.g. the user left the list): it is neither a success nor
+     * a failure, so the schedule and the backoff don't change.
+     */
+    public void onRunCancelled() {
+        mRunning = Math.max(0, mRunning - 1);
+    }
+
+    /**
+     * Returns when to wake up next after the given decision: when the next refresh is due, or one interval from now
+     * after an offline skip (the policy has no state to change for it). If the clock was set back before the last
+     * refresh, a refresh is due now, as in {@link #decide}, rather than an interval after a time that is still to come.
+     */
+    public long getNextWakeUpAt(Decision decision) {
+        long now = mClock.now();
+        if (decision == Decision.OFFLINE) {
+            return now + mIntervalMillis;
+        }
+        long nextRunAt = now < mLastAttemptAt ? now : getNextRunAt();    //時鐘被調回去，就當作已經到期
+        return Math.max(nextRunAt, now + mMinSpacingMillis);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.quakereport;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Refreshes the local store in the background, so the list is already up to date (and the snapshot shown at startup
+ * is recent) when the user opens the app.
+ *
+ * The service syncs the query the list last synced (EarthquakeStore.getLastSyncQuery()), through the same
+ * incremental EarthquakeStore.sync() the list's loader uses, so a background refresh usually downloads only the few
+ * events that changed. When to run is decided by EarthquakeSyncPolicy; this class only wires it to Android:
+ * - The next run is one alarm, re-armed after every wake-up for the time the policy asks for. It is an RTC (not
+ *   RTC_WAKEUP) alarm, so it never wakes the device up: it is delivered the next time the device is awake anyway,
+ *   and since API 19 the system batches it with other apps' alarms.
+ * - Intents are handled one at a time on a worker thread (IntentService), and the policy coalesces the ones that
+ *   arrive while a sync runs or right after one.
+ * - Nothing is downloaded when the ConnectivityManager reports no connection (the same check EarthquakeActivity
+ *   does before starting its loader).
+ * 這個類在背景定期更新地震資料；何時同步由EarthquakeSyncPolicy決定，離線時不同步，鬧鐘不會喚醒休眠中的手機
+ */
+public class EarthquakeSyncService extends IntentService {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = EarthquakeSyncService.class.getSimpleName();
+
+    /** Action of the intents sent by the alarm: sync if the policy says a sync is due */
+    private static final String ACTION_SCHEDULED_SYNC = "com.example.android.quakereport.action.SCHEDULED_SYNC";
+
+    /** Action of the intents sent by requestSync(): sync unless one ran moments ago */
+    private static final String ACTION_REQUESTED_SYNC = "com.example.android.quakereport.action.REQUESTED_SYNC";
+
+    public EarthquakeSyncService() {
+        super(EarthquakeSyncService.class.getSimpleName());
+    }
+
+    /**
+     * Make sure the next background sync is scheduled. Safe to call often (e.g. every time the app starts): the alarm
+     * is replaced, not added. Alarms don't survive a reboot, so this is also what schedules them again afterwards.
+     */
+    public static void schedule(Context context) {
+        context.startService(new Intent(context, EarthquakeSyncService.class).setAction(ACTION_SCHEDULED_SYNC));
+    }
+
+    /**
+     * Ask for a sync now rather than at the next scheduled time. Coalesced with any sync that is running or just ran.
+     */
+    public static void requestSync(Context context) {
+        context.startService(new Intent(context, EarthquakeSyncService.class).setAction(ACTION_REQUESTED_SYNC));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        EarthquakeStore store = EarthquakeStore.getInstance(this);
+        boolean requested = intent != null && ACTION_REQUESTED_SYNC.equals(intent.getAction());
+        String queryUrl = store.getLastSyncQuery();
+
+        EarthquakeSyncPolicy.Decision decision = store.decideSync(requested, isOnline(this));
+        if (decision == EarthquakeSyncPolicy.Decision.RUN && queryUrl != null) {
+            // Make sure identical requests can be answered (or revalidated) from the HTTP response cache.
+            QueryCache.install(this);
+            QueryRetryPolicy.install(this);
+            QueryDeadline deadline = QueryDeadline.after(
+                    getResources().getInteger(R.integer.query_deadline_seconds) * 1000L);
+            List<Earthquake> earthquakes;
+            try {
+                earthquakes = store.sync(queryUrl, deadline);
+            } finally {
+                deadline.finish();
+            }
+            QueryCache.flush();
+
+            // Update the snapshot too, so the next start of the app shows the refreshed list right away.
+            if (earthquakes != null) {
+                EarthquakeSnapshot.write(EarthquakeSnapshot.getFile(getFilesDir()), queryUrl, earthquakes);
+            }
+        }
+
+        long wakeUpAt = store.getNextSyncWakeUpAt(decision);
+        setAlarm(this, wakeUpAt);
+        Log.i(LOG_TAG, "Background sync: " + decision + (queryUrl == null ? " (nothing synced yet)" : "")
+                + ", next wake-up in " + (wakeUpAt - System.currentTimeMillis()) / 1000 + " s");
+    }
+
+    /**
+     * Arm (or move) the single alarm that starts this service at the given time, in ms from the Epoch.
+     */
+    private static void setAlarm(Context context, long triggerAtMillis) {
+        Intent intent = new Intent(context, EarthquakeSyncService.class).setAction(ACTION_SCHEDULED_SYNC);
+        PendingIntent operation = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.RTC, triggerAtMillis, operation);     //RTC: 不喚醒休眠中的手機，等手機醒來時才觸發
+    }
+
+    /**
+     * Returns true if there is a network connection, as checked in EarthquakeActivity.onCreate().
+     */
+    private static boolean isOnline(Context context) {
+        ConnectivityManager connMgr = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+}
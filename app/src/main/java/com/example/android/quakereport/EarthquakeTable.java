@@ -0,0 +1,286 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Column-oriented storage for a large collection of earthquakes.
+ *
+ * Instead of one {@link Earthquake} object (with its header and four references) per event, every field lives in
+ * its own primitive array. Place names repeat a lot ("Near the coast of ...", "Fiji region"), so each distinct
+ * place is stored once in a dictionary and rows only keep an int code. USGS event URLs all look like
+ * "https://earthquake.usgs.gov/earthquakes/eventpage/" + event id, so the part before the last '/' is
+ * dictionary-encoded the same way and the part after it is only kept when it differs from the event id.
+ * 這個類把地震資料依欄位存成陣列(震度、時間各一個陣列，地點和網址用字典編碼)，以減少大量地震物件所佔的記憶體
+ *
+ * Rows are appended with add() and never change afterwards. asList() gives a read-only view that builds
+ * {@link Earthquake} objects only for the rows that are actually read (e.g. the rows an adapter binds).
+ */
+public final class EarthquakeTable {
+
+    /** Number of rows allocated when no capacity is given */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+
+    private String[] mIds;
+    private double[] mMagnitudes;
+    private long[] mTimes;
+    private long[] mUpdated;
+    private int[] mPlaceCodes;
+    private int[] mUrlPrefixCodes;
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private double[] mDepths;
+
+    /** URL part after the last '/', or null when it equals the event id (the usual case) */
+    private String[] mUrlSuffixes;
+
+    private final StringDictionary mPlaces = new StringDictionary();
+    private final StringDictionary mUrlPrefixes = new StringDictionary();
+
+    /**
+     * Constructs an empty table.
+     */
+    public EarthquakeTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty table with room for the given number of rows before its columns have to grow.
+     */
+    public EarthquakeTable(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        mIds = new String[capacity];
+        mMagnitudes = new double[capacity];
+        mTimes = new long[capacity];
+        mUpdated = new long[capacity];
+        mPlaceCodes = new int[capacity];
+        mUrlPrefixCodes = new int[capacity];
+        mUrlSuffixes = new String[capacity];
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mDepths = new double[capacity];
+    }
+
+    /**
+     * Append the fields of the given earthquake as a new row.
+     */
+    public void add(Earthquake earthquake) {
+        add(earthquake.getmId(), earthquake.getmMagnitude(), earthquake.getmLocation(),
+                earthquake.getmTimeInMilliseconds(), earthquake.getmUrl(), earthquake.getmUpdatedInMilliseconds(),
+                earthquake.getmLatitude(), earthquake.getmLongitude(), earthquake.getmDepth());
+    }
+
+    /**
+     * Append a new row without a position.
+     */
+    public void add(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                    long updatedInMilliseconds) {
+        add(id, magnitude, location, timeInMilliseconds, url, updatedInMilliseconds, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Append a new row. The latitude, longitude and depth are NaN when unknown.
+     */
+    public void add(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                    long updatedInMilliseconds, double latitude, double longitude, double depth) {
+        if (mSize == mMagnitudes.length) {
+            grow();
+        }
+        int row = mSize;
+        mIds[row] = id;
+        mMagnitudes[row] = magnitude;
+        mTimes[row] = timeInMilliseconds;
+        mUpdated[row] = updatedInMilliseconds;
+        mLatitudes[row] = latitude;
+        mLongitudes[row] = longitude;
+        mDepths[row] = depth;
+        mPlaceCodes[row] = mPlaces.encode(location);
+
+        // Split the URL at its last '/'. The prefix is shared by (almost) every row, the suffix is usually the id.
+        String prefix = url;
+        String suffix = null;
+        int slash = url == null ? -1 : url.lastIndexOf('/');
+        if (slash >= 0) {
+            prefix = url.substring(0, slash + 1);
+            suffix = url.substring(slash + 1);
+            if (suffix.equals(id)) {
+                suffix = null;
+            }
+        }
+        mUrlPrefixCodes[row] = mUrlPrefixes.encode(prefix);
+        mUrlSuffixes[row] = suffix;
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = mMagnitudes.length + (mMagnitudes.length >> 1) + 1;
+        mIds = Arrays.copyOf(mIds, capacity);
+        mMagnitudes = Arrays.copyOf(mMagnitudes, capacity);
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mUpdated = Arrays.copyOf(mUpdated, capacity);
+        mPlaceCodes = Arrays.copyOf(mPlaceCodes, capacity);
+        mUrlPrefixCodes = Arrays.copyOf(mUrlPrefixCodes, capacity);
+        mUrlSuffixes = Arrays.copyOf(mUrlSuffixes, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mDepths = Arrays.copyOf(mDepths, capacity);
+    }
+
+    /** Returns the number of rows in the table. */
+    public int size() {
+        return mSize;
+    }
+
+    public String getId(int row) {
+        checkRow(row);
+        return mIds[row];
+    }
+
+    public double getMagnitude(int row) {
+        checkRow(row);
+        return mMagnitudes[row];
+    }
+
+    public long getTimeInMilliseconds(int row) {
+        checkRow(row);
+        return mTimes[row];
+    }
+
+    public long getUpdatedInMilliseconds(int row) {
+        checkRow(row);
+        return mUpdated[row];
+    }
+
+    /** Returns the latitude of the row's epicenter in degrees, or NaN if unknown. */
+    public double getLatitude(int row) {
+        checkRow(row);
+        return mLatitudes[row];
+    }
+
+    /** Returns the longitude of the row's epicenter in degrees, or NaN if unknown. */
+    public double getLongitude(int row) {
+        checkRow(row);
+        return mLongitudes[row];
+    }
+
+    /** Returns the depth of the row's hypocenter in km, or NaN if unknown. */
+    public double getDepth(int row) {
+        checkRow(row);
+        return mDepths[row];
+    }
+
+    /** Returns the place string of the row. Rows with the same place share one String instance. */
+    public String getLocation(int row) {
+        checkRow(row);
+        return mPlaces.decode(mPlaceCodes[row]);
+    }
+
+    /** Returns the dictionary code of the row's place; rows with equal places have equal codes. */
+    public int getLocationCode(int row) {
+        checkRow(row);
+        return mPlaceCodes[row];
+    }
+
+    /** Returns the number of distinct places in the table. */
+    public int getLocationCount() {
+        return mPlaces.size();
+    }
+
+    public String getUrl(int row) {
+        checkRow(row);
+        String prefix = mUrlPrefixes.decode(mUrlPrefixCodes[row]);
+        if (prefix == null) {
+            return null;
+        }
+        String suffix = mUrlSuffixes[row];
+        if (suffix == null) {
+            // The suffix was dropped because it equals the id. A URL without '/' is kept whole in the prefix.
+            return prefix.endsWith("/") && mIds[row] != null ? prefix + mIds[row] : prefix;
+        }
+        return prefix + suffix;
+    }
+
+    /**
+     * Build an {@link Earthquake} object for the given row.
+     */
+    public Earthquake getEarthquake(int row) {
+        return new Earthquake(getId(row), getMagnitude(row), getLocation(row), getTimeInMilliseconds(row),
+                getUrl(row), getUpdatedInMilliseconds(row), getLatitude(row), getLongitude(row), getDepth(row));
+    }
+
+    /**
+     * Returns a read-only {@link List} view of the table. Each get() builds the {@link Earthquake} for that row,
+     * so only rows that are actually read cost an object.
+     *
+     * Nothing is cached: every get() builds a new object, even for the same row, and Earthquake has no equals(), so
+     * indexOf() and contains() never find a row. Read each row once and keep the object if it is needed again, as
+     * EarthquakeFormatter.format() does; a cache would keep every row read alive for as long as the list.
+     * 每次get()都會建立新的物件(不快取)，同一列要用多次的話請自己保留讀到的物件
+     */
+    public List<Earthquake> asList() {
+        return new RowList();
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + mSize);
+        }
+    }
+
+    /**
+     * Read-only list view over the rows of the table.
+     */
+    private final class RowList extends AbstractList<Earthquake> implements RandomAccess {
+        @Override
+        public Earthquake get(int index) {
+            return getEarthquake(index);
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
+
+    /**
+     * Maps each distinct string to a small int code and back. Code 0 is reserved for null.
+     */
+    private static final class StringDictionary {
+
+        private final Map<String, Integer> mCodes = new HashMap<>();
+
+        private String[] mValues = new String[8];
+
+        private int mCount = 1;   //code 0 = null
+
+        int encode(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = mCodes.get(value);
+            if (code == null) {
+                if (mCount == mValues.length) {
+                    mValues = Arrays.copyOf(mValues, mCount * 2);
+                }
+                code = mCount++;
+                mValues[code] = value;
+                mCodes.put(value, code);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return mValues[code];
+        }
+
+        int size() {
+            return mCount - 1;
+        }
+    }
+}
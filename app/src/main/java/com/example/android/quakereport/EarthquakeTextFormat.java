@@ -0,0 +1,95 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The text of an earthquake's list item: its magnitude, date and time strings, and where its location splits into the
+ * offset and the primary location.
+ * 這些格式化方法不需要Context，所以EarthquakeFormatter和benchmarks模組都能直接使用
+ */
+final class EarthquakeTextFormat {
+
+    /**
+     * We will be using the split(String string) method in the String class to split the original string at the position where the text “ of “ occurs.
+     * The result will be a String containing the characters PRIOR to the “ of ” text and a String containing the characters AFTER the “ of “ text.
+     * Since we’ll frequently need to refer to the “ of “ text, we can define a static final String constant (that is a global variable) in this class.
+     **/
+    private static final String LOCATION_SEPARATOR = " of ";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeTextFormat} object.
+     */
+    private EarthquakeTextFormat() {
+    }
+
+    /**
+     * Two helper methods, formatDate() and formatTime(), that we created to accept a Date object and return an appropriately formatted date string using SimpleDateFormat.
+     * These two methods are used in EarthquakeFormatter.format() to produce the formatted date and time strings of each earthquake.
+     * SimpleDateFormat and DecimalFormat are expensive to create and not thread-safe, so each thread keeps and reuses its own instances
+     * instead of creating new ones for every row. 每個執行緒各自重複使用同一組格式化物件，不必每一列都重新建立
+     **/
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("LLL dd, yyyy"); // stand-alone month => L:1 LL:01 LLL:Jan LLLL:January LLLLL:J
+        }
+    };
+
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("h:mm a"); //a代表AM或PM
+        }
+    };
+
+    private static final ThreadLocal<DecimalFormat> MAGNITUDE_FORMAT = new ThreadLocal<DecimalFormat>() {
+        @Override
+        protected DecimalFormat initialValue() {
+            return new DecimalFormat("0.0");
+        }
+    };
+
+    /** A Date object reused by each thread for formatting, instead of a new Date per row */
+    private static final ThreadLocal<Date> REUSABLE_DATE = new ThreadLocal<Date>() {
+        @Override
+        protected Date initialValue() {
+            return new Date();
+        }
+    };
+
+    // Return the formatted date string (i.e. "Mar 3, 1984") from a time in milliseconds. 利用SimpleDateFormat來自定義日期格式
+    static String formatDate(long timeInMilliseconds) {
+        Date dateObject = REUSABLE_DATE.get();
+        dateObject.setTime(timeInMilliseconds);
+        return DATE_FORMAT.get().format(dateObject);
+    }
+
+    // Return the formatted time string (i.e. "4:30 PM") from a time in milliseconds. 利用SimpleDateFormat來自定義時間格式
+    static String formatTime(long timeInMilliseconds) {
+        Date dateObject = REUSABLE_DATE.get();
+        dateObject.setTime(timeInMilliseconds);
+        return TIME_FORMAT.get().format(dateObject);
+    }
+
+
+    /**
+     * Create a helper method called formatMagnitude() that takes a double value as input and returns the formatted string.
+     * The helper method uses a DecimalFormat object instance with the pattern string “0.0”.
+     * Return the formatted magnitude string showing 1 decimal place (i.e. "3.2") from a decimal magnitude value.
+     */
+    static String formatMagnitude(double magnitude) {
+        return MAGNITUDE_FORMAT.get().format(magnitude);
+    }
+
+    /**
+     * Returns where the primary location starts in the given location (i.e. the index of “Rumoi, Japan” in “74km NW of
+     * Rumoi, Japan”), right after the LOCATION_SEPARATOR, or -1 if there is no separator.
+     * indexOf() is used rather than split(), which would run a regular expression and allocate an array for every row.
+     */
+    static int primaryLocationStart(String location) {
+        int separatorIndex = location.indexOf(LOCATION_SEPARATOR);
+        return separatorIndex < 0 ? -1 : separatorIndex + LOCATION_SEPARATOR.length();
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.android.quakereport;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counters of the fetch/parse/bind pipeline, to tell where the time goes.
+ *
+ * There are three kinds of metrics, all declared below as constants so recording never looks anything up:
+ * - {@link Counter}: a number that only grows (requests, bytes, rows inflated).
+ * - {@link Histogram}: durations in microseconds, counted in fixed buckets, so percentiles can be estimated.
+ * - Spans: a duration recorded with {@link #now()} and {@link Histogram#recordSince(long)}. The spans of the
+ *   pipeline (not the per-row binds) are also kept in a ring of the most recent ones, which the dump lists as a
+ *   timeline.
+ * Recording allocates nothing: every metric is a fixed set of atomic longs, and the span ring is three
+ * preallocated arrays.
+ * 這個類記錄連線、下載、解析、載入與列表綁定各階段花的時間與次數，可以匯出成檔案或在選單中的Metrics畫面查看
+ *
+ * Everything is switched by {@link #ENABLED}, which comes from BuildConfig.METRICS_ENABLED (on in debug builds, off
+ * in release builds). It is a compile-time constant, so when it is false every recording method is an empty static
+ * method and now() returns 0: nothing is timed, counted or stored.
+ */
+public final class Metrics {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = Metrics.class.getSimpleName();
+
+    /** Whether metrics are recorded. See the build types in app/build.gradle. */
+    public static final boolean ENABLED = BuildConfig.METRICS_ENABLED;
+
+    /** Upper bounds (inclusive, in microseconds) of the histogram buckets; a last bucket holds everything above */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            50, 100, 250, 500,
+            1000, 2500, 5000, 10000, 25000, 50000,
+            100000, 250000, 500000, 1000000, 2500000, 5000000
+    };
+
+    /** Number of recent pipeline spans kept for the timeline of the dump */
+    private static final int SPAN_RING_SIZE = 256;
+
+    private static final List<Counter> sCounters = new ArrayList<>();
+
+    private static final List<Histogram> sHistograms = new ArrayList<>();
+
+    /** The span ring: histogram index, end time (SystemClock.elapsedRealtime()) and duration of each slot */
+    private static final int[] sSpanHistograms = new int[ENABLED ? SPAN_RING_SIZE : 0];
+    private static final long[] sSpanEnds = new long[ENABLED ? SPAN_RING_SIZE : 0];
+    private static final long[] sSpanDurations = new long[ENABLED ? SPAN_RING_SIZE : 0];
+
+    /** Number of spans ever written to the ring; the next slot is this modulo SPAN_RING_SIZE */
+    private static final AtomicInteger sSpanCount = new AtomicInteger();
+
+    // Network (QueryUtils.makeHttpRequest)
+    public static final Counter HTTP_REQUESTS = new Counter("http.requests");
+    public static final Counter HTTP_ERRORS = new Counter("http.errors");
+    public static final Counter HTTP_WIRE_BYTES = new Counter("http.wire_bytes");
+    public static final Histogram HTTP_CONNECT = new Histogram("http.connect_us", true);
+    public static final Histogram HTTP_FIRST_BYTE = new Histogram("http.first_byte_us", true);
+    public static final Histogram HTTP_DOWNLOAD = new Histogram("http.download_us", true);
+    public static final Histogram HTTP_PARSE = new Histogram("http.parse_us", true);
+    public static final Counter EARTHQUAKES_PARSED = new Counter("parse.earthquakes");
+    public static final Counter HTTP_CANCELLED = new Counter("http.cancelled");
+    public static final Counter HTTP_EXPIRED = new Counter("http.expired");
+    public static final Histogram HTTP_STOP = new Histogram("http.stop_us", true);   //查詢取消或超時後，請求多久才真的停下來
+    public static final Counter HTTP_RETRIES = new Counter("http.retries");
+    public static final Counter HTTP_RETRIES_DENIED = new Counter("http.retries_denied");   //額度用完而沒有重試
+    public static final Counter HTTP_HEDGES = new Counter("http.hedges");
+    public static final Counter HTTP_HEDGES_DENIED = new Counter("http.hedges_denied");
+    public static final Counter HTTP_HEDGE_WINS = new Counter("http.hedge_wins");          //對沖的請求比第一個先完成
+
+    // Loading (EarthquakeLoader and EarthquakeActivity.onLoadFinished)
+    public static final Histogram LOADER_BACKGROUND = new Histogram("loader.background_us", true);
+    public static final Histogram LOADER_FORMAT = new Histogram("loader.format_us", true);
+    public static final Histogram LOAD_FINISHED = new Histogram("ui.load_finished_us", true);
+
+    // Binding (EarthquakeAdapter.getView)
+    public static final Histogram ROW_BIND = new Histogram("ui.row_bind_us", false);
+    public static final Counter ROWS_INFLATED = new Counter("ui.rows_inflated");
+    public static final Counter ROWS_RECYCLED = new Counter("ui.rows_recycled");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Metrics} object.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Returns the start time of a span, in nanoseconds, or 0 when metrics are disabled.
+     */
+    public static long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * A number that only grows.
+     */
+    public static final class Counter {
+
+        private final String mName;
+
+        private final AtomicLong mValue = new AtomicLong();
+
+        private Counter(String name) {
+            mName = name;
+            sCounters.add(this);
+        }
+
+        public void increment() {
+            if (ENABLED) {
+                mValue.incrementAndGet();
+            }
+        }
+
+        public void add(long delta) {
+            if (ENABLED) {
+                mValue.addAndGet(delta);
+            }
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * Durations in microseconds, counted in the fixed buckets of BUCKET_BOUNDS_MICROS, with their count, sum and max.
+     */
+    public static final class Histogram {
+
+        private final String mName;
+
+        /** Index in sHistograms, which is what the span ring stores */
+        private final int mIndex;
+
+        /** Whether the recorded durations also go to the span ring */
+        private final boolean mTraced;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+
+        private final AtomicLong mCount = new AtomicLong();
+
+        private final AtomicLong mSumMicros = new AtomicLong();
+
+        private final AtomicLong mMaxMicros = new AtomicLong();
+
+        private Histogram(String name, boolean traced) {
+            mName = name;
+            mTraced = traced;
+            mIndex = sHistograms.size();
+            sHistograms.add(this);
+        }
+
+        /**
+         * Record the time since the given start, which came from {@link Metrics#now()}.
+         */
+        public void recordSince(long startNanos) {
+            if (ENABLED) {
+                recordNanos(System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * Record a duration in nanoseconds.
+         */
+        public void recordNanos(long nanos) {
+            if (!ENABLED) {
+                return;
+            }
+            long micros = Math.max(0, nanos / 1000);
+            mBuckets.incrementAndGet(bucketOf(micros));
+            mCount.incrementAndGet();
+            mSumMicros.addAndGet(micros);
+            long max = mMaxMicros.get();
+            while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+                max = mMaxMicros.get();
+            }
+            if (mTraced) {
+                int slot = (sSpanCount.getAndIncrement() & Integer.MAX_VALUE) % SPAN_RING_SIZE;
+                sSpanHistograms[slot] = mIndex;
+                sSpanEnds[slot] = SystemClock.elapsedRealtime();
+                sSpanDurations[slot] = micros;
+            }
+        }
+
+        private static int bucketOf(long micros) {
+            for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+                if (micros <= BUCKET_BOUNDS_MICROS[i]) {
+                    return i;
+                }
+            }
+            return BUCKET_BOUNDS_MICROS.length;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile (0 to 100), or the max for the last
+         * bucket. An estimate: the real value is at most this.
+         */
+        long getPercentileMicros(double percentile) {
+            long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MICROS[i], mMaxMicros.get());
+                }
+            }
+            return mMaxMicros.get();
+        }
+    }
+
+    /**
+     * Write every metric and the recent spans as text.
+     */
+    public static void dump(Writer writer) throws IOException {
+        writer.write("# QuakeReport metrics" + (ENABLED ? "" : " (disabled in this build)") + "\n");
+        writer.write("# uptime " + SystemClock.elapsedRealtime() + " ms\n\n");
+        for (Counter counter : sCounters) {
+            writer.write(String.format(Locale.US, "%-24s %d\n", counter.mName, counter.get()));
+        }
+        writer.write("\n");
+        for (Histogram histogram : sHistograms) {
+            long count = histogram.mCount.get();
+            writer.write(String.format(Locale.US, "%-24s n=%d mean=%d p50<=%d p95<=%d p99<=%d max=%d\n",
+                    histogram.mName, count, count == 0 ? 0 : histogram.mSumMicros.get() / count,
+                    histogram.getPercentileMicros(50), histogram.getPercentileMicros(95),
+                    histogram.getPercentileMicros(99), histogram.mMaxMicros.get()));
+        }
+
+        writer.write("\n# recent spans, oldest first: end (ms of uptime), name, duration (us)\n");
+        int total = sSpanCount.get() & Integer.MAX_VALUE;
+        int first = Math.max(0, total - SPAN_RING_SIZE);
+        for (int i = first; i < total; i++) {
+            int slot = i % SPAN_RING_SIZE;
+            writer.write(String.format(Locale.US, "%12d %-24s %d\n", sSpanEnds[slot],
+                    sHistograms.get(sSpanHistograms[slot]).mName, sSpanDurations[slot]));
+        }
+        writer.flush();
+    }
+
+    /**
+     * Returns the dump as a String, e.g. for the metrics screen.
+     */
+    public static String dumpToString() {
+        StringWriter writer = new StringWriter();
+        try {
+            dump(writer);
+        } catch (IOException e) {
+            // A StringWriter doesn't throw.
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write the dump to the given file, replacing it. Pull it with
+     * adb shell run-as com.example.android.quakereport cat files/metrics.txt
+     *
+     * @return true if the file was written
+     */
+    public static boolean writeDumpFile(File file) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+            dump(writer);
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the metrics dump", e);
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the metrics dump", e);
+                }
+            }
+        }
+    }
+}
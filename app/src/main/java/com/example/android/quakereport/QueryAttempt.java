@@ -0,0 +1,102 @@
+package com.example.android.quakereport;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * One HTTP request of a query, as QueryRetryPolicy sees it: when the response started, how it ended, and whether
+ * trying again could help. QueryUtils.makeHttpRequest() reports into it; a hedged attempt runs on another thread,
+ * so everything here is thread-safe.
+ * 一次HTTP請求的結果：何時收到回應、成功與否、失敗的話值不值得重試
+ */
+final class QueryAttempt {
+
+    /** No response yet, or none at all */
+    private static final int NO_RESPONSE = 0;
+
+    /** The attempt's own query: a child of the query's, so that a hedged attempt that lost can be cancelled alone */
+    private final QueryDeadline mDeadline;
+
+    private final long mStartNanos = System.nanoTime();
+
+    /** Counted down when the attempt ends */
+    private final CountDownLatch mFinished = new CountDownLatch(1);
+
+    private volatile int mResponseCode = NO_RESPONSE;
+
+    /** Time to the status line (ns), valid once mResponseCode is set */
+    private volatile long mResponseNanos;
+
+    /** True if the request failed with an I/O error (not a cancellation) */
+    private volatile boolean mIoFailed;
+
+    private volatile List<Earthquake> mEarthquakes;
+
+    QueryAttempt(QueryDeadline deadline) {
+        mDeadline = deadline;
+    }
+
+    QueryDeadline getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Record the status line of the response.
+     */
+    void onResponse(int responseCode) {
+        mResponseNanos = System.nanoTime() - mStartNanos;
+        mResponseCode = responseCode;
+    }
+
+    /**
+     * Record that the request failed with an I/O error: a connection refused or reset, a timeout, a cut-off body.
+     */
+    void onIoFailure() {
+        mIoFailed = true;
+    }
+
+    /**
+     * Record the end of the attempt, with the parsed earthquakes or null.
+     */
+    void finish(List<Earthquake> earthquakes) {
+        mEarthquakes = earthquakes;
+        mDeadline.finish();
+        mFinished.countDown();
+    }
+
+    List<Earthquake> getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    boolean hasResponded() {
+        return mResponseCode != NO_RESPONSE;
+    }
+
+    /**
+     * Returns the time from the start of the attempt to its status line, in nanoseconds, or -1 if none arrived.
+     */
+    long getResponseNanos() {
+        return hasResponded() ? mResponseNanos : -1;
+    }
+
+    /**
+     * Returns true if the attempt failed in a way another attempt may not: an I/O error, or a status USGS answers when
+     * it is overloaded or unavailable (429, 5xx). A 4xx means the query itself is wrong, and a cancelled attempt was
+     * given up on purpose, so neither is retried.
+     * 只有連線錯誤、逾時和伺服器忙碌(429、5xx)才值得重試；查詢本身有錯(4xx)或被取消的就不重試
+     */
+    boolean isRetryable() {
+        if (mEarthquakes != null || mDeadline.isDone()) {
+            return false;
+        }
+        int code = mResponseCode;
+        return code == 429 || code >= 500 || (code == NO_RESPONSE || code == 200) && mIoFailed;
+    }
+
+    /**
+     * Wait until the attempt ends.
+     */
+    void awaitFinished() throws InterruptedException {
+        mFinished.await();
+    }
+}
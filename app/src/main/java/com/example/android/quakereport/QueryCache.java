@@ -0,0 +1,108 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.http.HttpResponseCache;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Disk-backed HTTP response cache underneath QueryUtils.makeHttpRequest().
+ *
+ * Once installed, every HttpURLConnection the app opens goes through the platform HttpResponseCache:
+ * fresh responses (per Cache-Control/Expires) are served from disk without touching the network, stale ones are
+ * revalidated with If-None-Match/If-Modified-Since built from the stored ETag/Last-Modified, and a 304 is answered
+ * with the cached body. Entries are evicted least-recently-used first once the byte budget is exceeded.
+ * 這個類負責安裝HTTP回應的磁碟快取，並提供命中/未命中/重新驗證的統計數字
+ */
+public final class QueryCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = QueryCache.class.getSimpleName();
+
+    /** Name of the cache directory inside the app's cache dir */
+    private static final String CACHE_DIR_NAME = "http";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryCache} object.
+     */
+    private QueryCache() {
+    }
+
+    /**
+     * Install the response cache if it isn't installed yet. The byte budget comes from R.integer.http_cache_max_bytes.
+     * Installing touches the disk, but only once per process.
+     */
+    public static synchronized void install(Context context) {
+        if (HttpResponseCache.getInstalled() != null) {
+            return;
+        }
+        File cacheDir = new File(context.getCacheDir(), CACHE_DIR_NAME);
+        long maxBytes = context.getResources().getInteger(R.integer.http_cache_max_bytes);
+        try {
+            HttpResponseCache.install(cacheDir, maxBytes);
+        } catch (IOException e) {
+            // Without a cache every request simply goes to the network, as before.
+            Log.e(LOG_TAG, "Problem installing the HTTP response cache.", e);
+        }
+    }
+
+    /**
+     * Write pending cache entries to the file system, e.g. when the activity stops.
+     */
+    public static void flush() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    /**
+     * Number of requests answered without a full network transfer (fresh hits plus 304 revalidations).
+     */
+    public static int getHitCount() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    /**
+     * Number of requests that needed a full response body from the network.
+     */
+    public static int getMissCount() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        return cache == null ? 0 : cache.getRequestCount() - cache.getHitCount();
+    }
+
+    /**
+     * Number of requests that went to the network (misses and revalidations), or -1 if the cache isn't installed.
+     */
+    public static int getNetworkCount() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        return cache == null ? -1 : cache.getNetworkCount();
+    }
+
+    /**
+     * Number of conditional requests that were answered with 304 Not Modified. A revalidation is counted both as a
+     * hit and as a network request, which is how it is told apart from a plain hit or a miss.
+     */
+    public static int getRevalidationCount() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        return cache == null ? 0 : cache.getHitCount() + cache.getNetworkCount() - cache.getRequestCount();
+    }
+
+    /**
+     * One-line summary of the counters, for the logs.
+     */
+    public static String describeStats() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache == null) {
+            return "cache not installed";
+        }
+        return "requests=" + cache.getRequestCount()
+                + " hits=" + getHitCount()
+                + " revalidated=" + getRevalidationCount()
+                + " misses=" + getMissCount()
+                + " size=" + cache.size() + "/" + cache.maxSize() + " bytes";
+    }
+}
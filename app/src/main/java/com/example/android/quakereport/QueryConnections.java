@@ -0,0 +1,265 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Opens the HTTP connections of QueryUtils.makeHttpRequest() so that they are reused, and counts how often they are.
+ *
+ * HttpURLConnection keeps idle keep-alive connections in a process-wide pool (up to 5 per host by default, more than
+ * EarthquakeQueryPlanner ever runs at once) and hands them to the next request to the same host, which then skips the
+ * TCP and TLS handshakes. That only works if every request:
+ * - reads its response body to the very end (a compressed body ends with a trailer the JSON parser never needs),
+ * - closes the stream instead of calling disconnect(), which may close the socket,
+ * - and, for HTTPS, uses the same SSLSocketFactory instance, since the pool only reuses a connection for a request
+ *   with an identical factory.
+ * open() and release() do this. The shared factory also counts the sockets it creates and their TLS handshakes, so
+ * describeStats() can report how many requests were served on a reused connection. Plain HTTP connections have no
+ * factory to count them with, so the reuse ratio only covers HTTPS requests (every USGS query is one).
+ * 這個類讓每次查詢重複使用已建立的連線(keep-alive)，省去TCP/TLS交握的時間，並統計交握次數和連線重複使用的比例
+ */
+public final class QueryConnections {
+
+    /**
+     * Bodies longer than this are not read to the end just to keep the connection: reading them would cost more than
+     * a new handshake. Their connection is closed instead.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /** Requests opened through open() */
+    private static final AtomicInteger sRequestCount = new AtomicInteger();
+
+    /** HTTPS requests opened through open(): the ones whose connections sSocketFactory counts */
+    private static final AtomicInteger sHttpsRequestCount = new AtomicInteger();
+
+    /** TLS sockets created: every one is a new connection with a new TCP handshake */
+    private static final AtomicInteger sConnectionCount = new AtomicInteger();
+
+    /** TLS handshakes completed (full or resumed) */
+    private static final AtomicInteger sHandshakeCount = new AtomicInteger();
+
+    /** Connections dropped because their body couldn't be drained */
+    private static final AtomicInteger sDiscardCount = new AtomicInteger();
+
+    /** The factory of every HTTPS connection; one instance, so that the pool can reuse the connections */
+    private static volatile SSLSocketFactory sSocketFactory =
+            new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryConnections} object.
+     */
+    private QueryConnections() {
+    }
+
+    /**
+     * Open a connection to the given URL, reusing an idle pooled one when there is one. It is not connected yet.
+     */
+    public static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sSocketFactory);
+            sHttpsRequestCount.incrementAndGet();
+        }
+        sRequestCount.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * Replace the factory the HTTPS sockets come from (e.g. with one trusting a test server's certificate). Its
+     * sockets are counted like those of the default factory; connections pooled before are no longer reused.
+     */
+    static void setSSLSocketFactory(SSLSocketFactory delegate) {
+        sSocketFactory = new CountingSSLSocketFactory(delegate);
+    }
+
+    /**
+     * Finish a request: read what is left of the response body and close it, so the connection goes back to the pool.
+     * If the body is too long to drain, or the request failed, the connection is closed instead.
+     *
+     * @param connection is the connection returned by open()
+     * @param body is the raw response body (under any decompressor), or null if none was opened
+     * @param failed is true if the request threw, in which case the connection is in an unknown state
+     */
+    public static void release(HttpURLConnection connection, InputStream body, boolean failed) {
+        if (body == null && !failed) {
+            body = getErrorStream(connection);  //錯誤的回應(例如400)也有內容，一樣要讀完才能重複使用連線
+        }
+        boolean reusable = !failed && (body == null || drain(body));
+        if (!reusable) {
+            // Disconnect before closing the stream: closing it first may hand the socket back to the pool (the
+            // platform skips a short remainder by itself), and disconnect() would then find nothing to close.
+            sDiscardCount.incrementAndGet();
+            connection.disconnect();    //先關閉連線再關閉串流，避免狀態不明的連線被放回連線池
+        }
+        closeQuietly(body);
+    }
+
+    private static InputStream getErrorStream(HttpURLConnection connection) {
+        try {
+            return connection.getErrorStream();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the rest of the stream, up to MAX_DRAIN_BYTES. Returns true if it reached the end.
+     */
+    private static boolean drain(InputStream body) {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        try {
+            int n;
+            while ((n = body.read(buffer)) != -1) {
+                drained += n;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Nothing to do: the connection is discarded with the stream.
+        }
+    }
+
+    /** Number of requests opened. */
+    public static int getRequestCount() {
+        return sRequestCount.get();
+    }
+
+    /** Number of HTTPS requests opened. */
+    public static int getHttpsRequestCount() {
+        return sHttpsRequestCount.get();
+    }
+
+    /** Number of new (TLS) connections, i.e. of TCP handshakes. */
+    public static int getConnectionCount() {
+        return sConnectionCount.get();
+    }
+
+    /** Number of TLS handshakes completed. */
+    public static int getHandshakeCount() {
+        return sHandshakeCount.get();
+    }
+
+    /**
+     * Share of the HTTPS requests that went to the network and were served on a pooled connection, from 0 to 1, or
+     * NaN if there were none. Plain HTTP requests are left out, since their new connections can't be counted; so are
+     * requests answered by the HTTP response cache without a request to the server (all of them HTTPS, as the cached
+     * queries are USGS's), which never need a connection.
+     */
+    public static double getReuseRatio() {
+        int cacheOnly = QueryCache.getHitCount() - QueryCache.getRevalidationCount();   //沒有安裝快取時為0
+        int networkRequests = sHttpsRequestCount.get() - cacheOnly;
+        if (networkRequests <= 0) {
+            return Double.NaN;
+        }
+        return Math.max(0, networkRequests - sConnectionCount.get()) / (double) networkRequests;
+    }
+
+    /**
+     * One-line summary of the counters, for the logs.
+     */
+    public static String describeStats() {
+        return "requests=" + sRequestCount.get()
+                + " https=" + sHttpsRequestCount.get()
+                + " connections=" + sConnectionCount.get()
+                + " handshakes=" + sHandshakeCount.get()
+                + " discarded=" + sDiscardCount.get()
+                + " reuse=" + formatRatio(getReuseRatio());
+    }
+
+    private static String formatRatio(double ratio) {
+        return Double.isNaN(ratio) ? "n/a" : Math.round(ratio * 100) + "%";
+    }
+
+    /**
+     * An SSLSocketFactory that counts the sockets it creates and the handshakes they complete.
+     */
+    private static final class CountingSSLSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory mDelegate;
+
+        private final HandshakeCompletedListener mHandshakeListener = new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                sHandshakeCount.incrementAndGet();
+            }
+        };
+
+        CountingSSLSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        private Socket count(Socket socket) {
+            sConnectionCount.incrementAndGet();
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).addHandshakeCompletedListener(mHandshakeListener);
+            }
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return count(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return count(mDelegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return count(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return count(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return count(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return count(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
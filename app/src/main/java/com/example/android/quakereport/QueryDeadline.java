@@ -0,0 +1,234 @@
+package com.example.android.quakereport;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation and an overall deadline for one query, passed down from EarthquakeLoader through EarthquakeStore,
+ * EarthquakeQueryPlanner and QueryUtils to the parser.
+ *
+ * A query ends early when the loader is cancelled (the user left, or changed a setting and a new query replaced it)
+ * or when its deadline passes. Either way:
+ * - the listeners run at once, on the thread that cancelled (or on the timer thread): QueryUtils registers one that
+ *   disconnects its HttpURLConnection, so a read blocked on the socket fails right away instead of after its timeout;
+ * - the parse loop and the planner check {@link #isDone()} between features and between attempts, and stop.
+ * The connect and read timeouts only bound a single step; the deadline bounds the whole query, retries included.
+ * 查詢的取消與總期限：用戶離開或改了設定，或超過期限時，馬上中斷連線和解析，讓執行緒和頻寬留給新的查詢
+ *
+ * Call {@link #finish()} when the query is over, to release the timer.
+ *
+ * A query can make several requests at once (QueryRetryPolicy's hedged attempts): each one gets a {@link #newChild()}
+ * that ends with the query but can also be cancelled alone, when another attempt won.
+ */
+public final class QueryDeadline {
+
+    private static final int ACTIVE = 0;
+
+    private static final int CANCELLED = 1;
+
+    private static final int EXPIRED = 2;
+
+    /** One thread fires every deadline; it ends when no query has been running for a while */
+    private static final ScheduledThreadPoolExecutor sTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "QueryDeadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        sTimer.setKeepAliveTime(10, TimeUnit.SECONDS);
+        sTimer.allowCoreThreadTimeOut(true);
+    }
+
+    /** A query without a deadline, which can't be cancelled either (cancel() does nothing; its children can be) */
+    public static final QueryDeadline NONE = new QueryDeadline(Long.MAX_VALUE);
+
+    /** The deadline, in System.nanoTime(), if mBounded */
+    private final long mDeadlineNanos;
+
+    /** False for NONE and its children, which have no deadline */
+    private final boolean mBounded;
+
+    private volatile int mState = ACTIVE;
+
+    /** When the query was cancelled or expired (System.nanoTime()), valid once mState isn't ACTIVE */
+    private volatile long mDoneAtNanos;
+
+    /** Run once when the query is cancelled or expires; guarded by this */
+    private final List<Runnable> mListeners = new ArrayList<>();
+
+    private ScheduledFuture<?> mTimeout;
+
+    /** The parent of a child, and the listener that ends the child with it */
+    private QueryDeadline mParent;
+    private Runnable mParentListener;
+
+    private QueryDeadline(long deadlineNanos) {
+        mDeadlineNanos = deadlineNanos;
+        mBounded = deadlineNanos != Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns a query deadline the given time from now.
+     */
+    public static QueryDeadline after(long millis) {
+        final QueryDeadline deadline = new QueryDeadline(System.nanoTime() + Math.max(0, millis) * 1000000L);
+        deadline.mTimeout = sTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deadline.end(EXPIRED);
+            }
+        }, Math.max(0, millis), TimeUnit.MILLISECONDS);
+        return deadline;
+    }
+
+    /**
+     * Returns a query that ends when this one is cancelled or expires (in the same way), and that can also be cancelled
+     * on its own. Call {@link #finish()} on it when it is over, to stop listening to this one.
+     */
+    public QueryDeadline newChild() {
+        final QueryDeadline child = new QueryDeadline(mDeadlineNanos);
+        if (this == NONE) {
+            return child;       //NONE永遠不會結束，不必監聽
+        }
+        child.mParent = this;
+        child.mParentListener = new Runnable() {
+            @Override
+            public void run() {
+                child.end(isCancelled() ? CANCELLED : EXPIRED);
+            }
+        };
+        addListener(child.mParentListener);
+        return child;
+    }
+
+    /**
+     * Cancel the query: its request and parse stop as soon as possible. Can be called from any thread.
+     */
+    public void cancel() {
+        if (this != NONE) {
+            end(CANCELLED);
+        }
+    }
+
+    private void end(int state) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (mState != ACTIVE) {
+                return;
+            }
+            mDoneAtNanos = System.nanoTime();
+            mState = state;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+            notifyAll();        //叫醒在sleep()裡等待的執行緒
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Release the timer of a query that is over. The query's state doesn't change.
+     */
+    public void finish() {
+        ScheduledFuture<?> timeout = mTimeout;
+        if (timeout != null && timeout.cancel(false)) {
+            sTimer.purge();     //不然取消的計時要等到原定時間才會從佇列移除
+        }
+        if (mParent != null) {
+            mParent.removeListener(mParentListener);
+        }
+    }
+
+    /** Returns true if the query was cancelled or its deadline passed. */
+    public boolean isDone() {
+        return mState != ACTIVE;
+    }
+
+    /** Returns true if the query was cancelled (not just out of time). */
+    public boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    /** Returns true if the query ran out of time. */
+    public boolean isExpired() {
+        return mState == EXPIRED;
+    }
+
+    /**
+     * Returns the time left before the deadline in milliseconds (0 once done), or Long.MAX_VALUE for NONE.
+     */
+    public long getRemainingMillis() {
+        if (!mBounded) {
+            return Long.MAX_VALUE;
+        }
+        if (isDone()) {
+            return 0;
+        }
+        return Math.max(0, (mDeadlineNanos - System.nanoTime()) / 1000000L);
+    }
+
+    /**
+     * Returns how long ago the query was cancelled or expired, in nanoseconds, to measure how quickly work stopped.
+     */
+    public long getNanosSinceDone() {
+        return isDone() ? System.nanoTime() - mDoneAtNanos : 0;
+    }
+
+    /**
+     * Throw if the query was cancelled or expired; called by loops that must stop then.
+     */
+    public void throwIfDone() throws InterruptedIOException {
+        if (!isDone() && mBounded && System.nanoTime() - mDeadlineNanos >= 0) {
+            end(EXPIRED);       //計時器可能晚了一點才觸發，不必等它
+        }
+        if (isDone()) {
+            throw new InterruptedIOException(isCancelled() ? "Query cancelled" : "Query deadline passed");
+        }
+    }
+
+    /**
+     * Wait for the given time, unless the query ends first (e.g. the backoff between two attempts).
+     *
+     * @return true if the whole time passed, false if the query was cancelled or expired
+     */
+    public boolean sleep(long millis) throws InterruptedException {
+        long endNanos = System.nanoTime() + Math.max(0, millis) * 1000000L;
+        synchronized (this) {
+            while (mState == ACTIVE) {
+                long leftNanos = endNanos - System.nanoTime();
+                if (leftNanos <= 0) {
+                    return true;
+                }
+                wait(leftNanos / 1000000L + 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run the given listener when the query is cancelled or expires, or right now if it already is.
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!isDone()) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    public synchronized void removeListener(Runnable listener) {
+        mListeners.remove(listener);
+    }
+}
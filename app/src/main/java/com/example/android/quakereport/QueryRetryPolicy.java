@@ -0,0 +1,398 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries and hedges the requests of QueryUtils.fetchEarthquakeData(), so that a USGS hiccup doesn't leave the user
+ * with "no earthquakes" and a slow response doesn't hold the list up for seconds.
+ *
+ * - Retry: a request that failed in a way another one may not (see QueryAttempt.isRetryable()) is tried again, up to
+ *   a number of attempts, after a backoff with "full jitter": a random time between 0 and base * 2^(attempt - 1),
+ *   capped. The jitter spreads the retries of many clients over time instead of sending them all at once.
+ * - Hedge: when a request has had no response for longer than the p95 of the recent responses, a second identical
+ *   request is sent and the first of the two to succeed wins; the other is cancelled (its connection disconnected).
+ *   Only the slowest 5% of requests are hedged, which removes most of the tail for about 5% more requests.
+ * - Budget: retries and hedges both spend from a token bucket that every request fills by a share of a token (10% by
+ *   default), so when USGS is down or slow for everyone, the extra load stays a small fraction of the normal load
+ *   instead of multiplying it.
+ * Everything stops as soon as the query's QueryDeadline ends: no retry is started that couldn't finish in time.
+ * 這個類負責重試(指數退避加隨機抖動)與對沖請求(hedged request)：回應慢於近期p95時再送一個相同的請求，取先完成的；
+ * 重試和對沖都要從額度(retry budget)扣除，避免USGS出問題時所有客戶端一起加倍送出請求
+ *
+ * The tuning values come from res/values/integers.xml once {@link #install(Context)} ran; until then (and on a plain
+ * JVM) the same defaults are used.
+ */
+public final class QueryRetryPolicy {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = QueryRetryPolicy.class.getSimpleName();
+
+    /** Number of recent response times the hedging percentile is computed over */
+    private static final int LATENCY_WINDOW = 128;
+
+    /** Hedging starts once this many response times were seen; until then the percentile means little */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /** Most tokens the budget holds, i.e. the largest burst of retries and hedges */
+    private static final double MAX_BUDGET_TOKENS = 10;
+
+    /** Starts the hedged attempts when they are due */
+    private static final ScheduledThreadPoolExecutor sTimer = new ScheduledThreadPoolExecutor(1,
+            newThreadFactory("QueryRetryPolicy-timer"));
+
+    /** Runs the hedged attempts; the first attempt of a request runs on the caller's thread */
+    private static final ExecutorService sHedgeExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), newThreadFactory("QueryRetryPolicy-hedge"));
+
+    static {
+        sTimer.setKeepAliveTime(10, TimeUnit.SECONDS);
+        sTimer.allowCoreThreadTimeOut(true);
+    }
+
+    /** The policy QueryUtils uses */
+    private static volatile QueryRetryPolicy sInstance = new QueryRetryPolicy(3, 250, 4000, 10, 95, 100);
+
+    private static boolean sInstalled;
+
+    private final int mMaxAttempts;
+
+    private final long mBaseBackoffMillis;
+
+    private final long mMaxBackoffMillis;
+
+    /** Share of a token each request adds to the budget */
+    private final double mBudgetRatio;
+
+    /** Percentile of the response times after which a request is hedged, or 0 for no hedging */
+    private final int mHedgePercentile;
+
+    private final long mMinHedgeMillis;
+
+    /** Tokens left for retries and hedges; guarded by this */
+    private double mBudgetTokens = MAX_BUDGET_TOKENS;
+
+    /** Ring of the recent times to the status line (ns); guarded by this */
+    private final long[] mLatencies = new long[LATENCY_WINDOW];
+
+    /** Number of times ever added to mLatencies; the next slot is this modulo LATENCY_WINDOW */
+    private int mLatencyCount;
+
+    private final Random mRandom = new Random();
+
+    /**
+     * Constructs a new {@link QueryRetryPolicy}.
+     *
+     * @param maxAttempts is the number of attempts of a request, the first one included (1 for no retry)
+     * @param baseBackoffMillis is the upper bound of the random backoff before the first retry; it doubles every retry
+     * @param maxBackoffMillis caps the backoff
+     * @param budgetPercent is the extra load allowed: each request lets this share of a retry or hedge happen
+     * @param hedgePercentile is the percentile of the recent response times after which a request is hedged (e.g.
+     *                        95), or 0 to never hedge
+     * @param minHedgeMillis is the shortest wait before hedging, however fast the recent responses were
+     */
+    public QueryRetryPolicy(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis, int budgetPercent,
+                            int hedgePercentile, long minHedgeMillis) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mBaseBackoffMillis = Math.max(1, baseBackoffMillis);
+        mMaxBackoffMillis = Math.max(mBaseBackoffMillis, maxBackoffMillis);
+        mBudgetRatio = Math.max(0, budgetPercent) / 100.0;
+        mHedgePercentile = Math.max(0, Math.min(99, hedgePercentile));
+        mMinHedgeMillis = Math.max(0, minHedgeMillis);
+    }
+
+    /**
+     * Build the app's policy from the values in res/values/integers.xml, once per process.
+     */
+    public static synchronized void install(Context context) {
+        if (sInstalled) {
+            return;
+        }
+        Resources resources = context.getResources();
+        sInstance = new QueryRetryPolicy(
+                resources.getInteger(R.integer.query_max_attempts),
+                resources.getInteger(R.integer.query_retry_base_millis),
+                resources.getInteger(R.integer.query_retry_max_millis),
+                resources.getInteger(R.integer.query_retry_budget_percent),
+                resources.getInteger(R.integer.query_hedge_percentile),
+                resources.getInteger(R.integer.query_hedge_min_millis));
+        sInstalled = true;
+    }
+
+    /**
+     * Returns the policy QueryUtils uses.
+     */
+    public static QueryRetryPolicy get() {
+        return sInstance;
+    }
+
+    /**
+     * Use the given policy instead, e.g. to compare policies in a load test.
+     */
+    public static synchronized void set(QueryRetryPolicy policy) {
+        sInstance = policy;
+        sInstalled = true;
+    }
+
+    /**
+     * Makes one attempt of a request (QueryUtils.makeHttpRequest()), reporting into the given QueryAttempt and
+     * stopping when its deadline ends.
+     */
+    interface Attempter {
+        List<Earthquake> attempt(QueryAttempt attempt);
+    }
+
+    /**
+     * Run the request with retries and hedging, until it succeeds, fails for good, runs out of attempts or budget, or
+     * the query ends.
+     *
+     * @param description names the request in the logs
+     * @return the earthquakes, or null if the request failed
+     */
+    List<Earthquake> fetch(String description, QueryDeadline deadline, Attempter attempter) {
+        depositBudget();
+        for (int attempt = 1; ; attempt++) {
+            Outcome outcome = attemptHedged(deadline, attempter);
+            if (outcome.mEarthquakes != null) {
+                return outcome.mEarthquakes;
+            }
+            if (!outcome.mRetryable || deadline.isDone() || attempt >= mMaxAttempts) {
+                return null;
+            }
+            long backoffMillis = nextBackoffMillis(attempt);
+            if (backoffMillis >= deadline.getRemainingMillis()) {
+                return null;    //等完退避時間就超過期限了，不必再試
+            }
+            if (!tryAcquireBudget()) {
+                Metrics.HTTP_RETRIES_DENIED.increment();
+                Log.w(LOG_TAG, "Retry budget spent, not retrying " + description);
+                return null;
+            }
+            Metrics.HTTP_RETRIES.increment();
+            Log.w(LOG_TAG, "Attempt " + attempt + " failed, retrying in " + backoffMillis + " ms: " + description);
+            try {
+                if (!deadline.sleep(backoffMillis)) {
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Make one attempt on the caller's thread and, if it has no response by the hedging delay, a second one on
+     * another thread. Returns the first success, or the failure of both.
+     */
+    private Outcome attemptHedged(final QueryDeadline deadline, final Attempter attempter) {
+        final QueryAttempt primary = new QueryAttempt(deadline.newChild());
+        final HedgeSlot hedge = new HedgeSlot();
+        long hedgeDelayMillis = getHedgeDelayMillis();
+        ScheduledFuture<?> hedgeTimer = null;
+        if (hedgeDelayMillis >= 0 && hedgeDelayMillis < deadline.getRemainingMillis()) {
+            hedgeTimer = sTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    startHedge(primary, hedge, deadline, attempter);
+                }
+            }, hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        List<Earthquake> earthquakes = null;
+        try {
+            earthquakes = attempter.attempt(primary);
+        } finally {
+            primary.finish(earthquakes);
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+        }
+        recordLatency(primary);
+
+        QueryAttempt hedged = hedge.close();
+        if (earthquakes != null) {
+            if (hedged != null) {
+                hedged.getDeadline().cancel();      //第一個請求先完成，取消對沖的請求
+            }
+            return new Outcome(earthquakes, false);
+        }
+        if (hedged == null) {
+            return new Outcome(null, primary.isRetryable());
+        }
+        try {
+            hedged.awaitFinished();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            hedged.getDeadline().cancel();
+            return new Outcome(null, false);
+        }
+        if (hedged.getEarthquakes() != null) {
+            Metrics.HTTP_HEDGE_WINS.increment();
+            return new Outcome(hedged.getEarthquakes(), false);
+        }
+        return new Outcome(null, primary.isRetryable() || hedged.isRetryable());
+    }
+
+    /**
+     * Called by the timer when the first attempt is due for a hedge: send the second one, unless the first got its
+     * response in the meantime, the query ended or the budget is spent.
+     */
+    private void startHedge(final QueryAttempt primary, HedgeSlot slot, QueryDeadline deadline,
+                            final Attempter attempter) {
+        if (primary.hasResponded() || deadline.isDone()) {
+            return;             //回應已經開始，剩下的只是下載，再送一次也不會更快
+        }
+        if (!tryAcquireBudget()) {
+            Metrics.HTTP_HEDGES_DENIED.increment();
+            return;
+        }
+        final QueryAttempt hedged = new QueryAttempt(deadline.newChild());
+        if (!slot.open(hedged)) {
+            hedged.finish(null);
+            refundBudget();
+            return;             //第一個請求剛好結束了
+        }
+        Metrics.HTTP_HEDGES.increment();
+        sHedgeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Earthquake> earthquakes = null;
+                try {
+                    earthquakes = attempter.attempt(hedged);
+                } finally {
+                    hedged.finish(earthquakes);
+                }
+                recordLatency(hedged);
+                if (earthquakes != null) {
+                    primary.getDeadline().cancel();     //對沖的請求先完成，取消第一個請求
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns how long to wait for a response before hedging, or -1 for no hedge (hedging off, or not enough
+     * response times seen yet).
+     */
+    synchronized long getHedgeDelayMillis() {
+        int samples = Math.min(mLatencyCount, LATENCY_WINDOW);
+        if (mHedgePercentile == 0 || samples < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(mLatencies, samples);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(samples * mHedgePercentile / 100.0);
+        return Math.max(mMinHedgeMillis, sorted[Math.max(0, rank - 1)] / 1000000L);
+    }
+
+    private synchronized void recordLatency(QueryAttempt attempt) {
+        long nanos = attempt.getResponseNanos();
+        if (nanos >= 0) {
+            mLatencies[mLatencyCount % LATENCY_WINDOW] = nanos;
+            mLatencyCount = mLatencyCount == Integer.MAX_VALUE ? LATENCY_WINDOW : mLatencyCount + 1;
+        }
+    }
+
+    /**
+     * Returns the backoff before the given retry: uniformly random between 0 and base * 2^(attempt - 1), capped.
+     */
+    private synchronized long nextBackoffMillis(int attempt) {
+        long ceiling = mBaseBackoffMillis;
+        for (int i = 1; i < attempt && ceiling < mMaxBackoffMillis; i++) {
+            ceiling *= 2;       //每多失敗一次，退避時間的上限加倍
+        }
+        return (long) (mRandom.nextDouble() * Math.min(ceiling, mMaxBackoffMillis));
+    }
+
+    private synchronized void depositBudget() {
+        mBudgetTokens = Math.min(MAX_BUDGET_TOKENS, mBudgetTokens + mBudgetRatio);
+    }
+
+    private synchronized void refundBudget() {
+        mBudgetTokens = Math.min(MAX_BUDGET_TOKENS, mBudgetTokens + 1);
+    }
+
+    /**
+     * Spend one token of the budget for a retry or a hedge, if there is one. EarthquakeQueryPlanner spends from it too
+     * before it fetches a failed time window again.
+     */
+    public synchronized boolean tryAcquireBudget() {
+        if (mBudgetTokens < 1) {
+            return false;
+        }
+        mBudgetTokens -= 1;
+        return true;
+    }
+
+    /**
+     * One-line summary of the state, for the logs.
+     */
+    public synchronized String describeStats() {
+        return "budget=" + String.format(Locale.US, "%.1f", mBudgetTokens)
+                + " hedgeDelay=" + getHedgeDelayMillis() + "ms samples=" + Math.min(mLatencyCount, LATENCY_WINDOW);
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * The result of a request, and whether another attempt may succeed.
+     */
+    private static final class Outcome {
+
+        final List<Earthquake> mEarthquakes;
+
+        final boolean mRetryable;
+
+        Outcome(List<Earthquake> earthquakes, boolean retryable) {
+            mEarthquakes = earthquakes;
+            mRetryable = retryable;
+        }
+    }
+
+    /**
+     * Hands the hedged attempt from the timer to the caller's thread. Once the first attempt is over, the caller closes
+     * the slot: a hedge that wasn't started by then never is.
+     */
+    private static final class HedgeSlot {
+
+        private QueryAttempt mHedged;
+
+        private boolean mClosed;
+
+        synchronized boolean open(QueryAttempt hedged) {
+            if (mClosed) {
+                return false;
+            }
+            mHedged = hedged;
+            return true;
+        }
+
+        synchronized QueryAttempt close() {
+            mClosed = true;
+            return mHedged;
+        }
+    }
+}
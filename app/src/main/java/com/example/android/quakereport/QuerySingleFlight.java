@@ -0,0 +1,232 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes identical queries that run at the same time share one request (single-flight).
+ *
+ * A rotation, coming back from SettingsActivity and a background sync can all ask for the same URL within moments.
+ * The first caller for a URL fetches it; callers that arrive while it is in flight wait for it and get the same parsed
+ * list instead of fetching again. The result is then kept for a short memo time, so a burst of requests right after
+ * it finished is answered from memory too. Failed fetches (null) are never memoized.
+ * 相同的查詢同時發出時只真正下載一次，其他呼叫者等待並共用同一份結果；剛完成的結果也會暫存幾秒，吸收短時間內重複的查詢
+ *
+ * URLs are compared after normalization (lower-case scheme and host, parameters sorted), so the same query built in a
+ * different parameter order still matches. The shared lists are read-only.
+ *
+ * Every caller waits only as long as its own QueryDeadline allows. The fetch itself runs under the deadline of the
+ * caller that started it; if that caller is cancelled, the callers that joined it and still have time start over.
+ */
+final class QuerySingleFlight {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = QuerySingleFlight.class.getSimpleName();
+
+    private final long mMemoNanos;
+
+    /** Normalized URL -> its fetch, in flight or memoized */
+    private final ConcurrentHashMap<String, Flight> mFlights = new ConcurrentHashMap<>();
+
+    /** Fetches actually made */
+    private final AtomicInteger mFetchCount = new AtomicInteger();
+
+    /** Callers that joined a fetch in flight instead of fetching */
+    private final AtomicInteger mJoinedCount = new AtomicInteger();
+
+    /** Callers answered by a memoized result */
+    private final AtomicInteger mMemoHitCount = new AtomicInteger();
+
+    /**
+     * @param memoMillis is how long a successful result is reused after its fetch finished (0 for no memo)
+     */
+    QuerySingleFlight(long memoMillis) {
+        mMemoNanos = Math.max(0, memoMillis) * 1000000L;
+    }
+
+    /**
+     * Returns the result of the given fetch of the URL, or of an identical fetch in flight or just finished.
+     *
+     * @param url is the query URL, used as the key after normalization
+     * @param deadline is the caller's query; the fetcher must stop when it ends, if this caller runs it
+     * @param fetcher fetches and parses the URL, returning null on failure; runs on the caller's thread
+     * @return the read-only result, or null if the fetch failed or the caller's query was cancelled or out of time
+     */
+    List<Earthquake> fetch(String url, QueryDeadline deadline, Callable<List<Earthquake>> fetcher) {
+        String key = normalize(url);
+        while (true) {
+            Flight flight = mFlights.get(key);
+            if (flight != null) {
+                if (flight.isExpired(System.nanoTime())) {
+                    mFlights.remove(key, flight);
+                    continue;
+                }
+                boolean memoized = flight.isDone();
+                (memoized ? mMemoHitCount : mJoinedCount).incrementAndGet();
+                if (Metrics.ENABLED) {
+                    Log.d(LOG_TAG, (memoized ? "Memo hit" : "Joined fetch in flight") + " for " + url + " ("
+                            + describeStats() + ")");
+                }
+                List<Earthquake> result = flight.await(deadline);
+                if (result == null && flight.mDeadline.isDone() && !deadline.isDone()) {
+                    mFlights.remove(key, flight);
+                    continue;   //開始下載的呼叫者被取消了，但這個呼叫者還有時間，自己重新下載
+                }
+                return result;
+            }
+
+            Flight mine = new Flight(fetcher, deadline);
+            if (mFlights.putIfAbsent(key, mine) != null) {
+                continue;       //另一個執行緒剛好搶先開始下載，改成等它的結果
+            }
+            mFetchCount.incrementAndGet();
+            pruneExpired();
+            mine.run();
+            List<Earthquake> result = mine.await(QueryDeadline.NONE);   //已經在這個執行緒上跑完了
+            if (result == null || mMemoNanos == 0) {
+                mFlights.remove(key, mine);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Drop the memoized results that expired, so URLs that are never asked for again don't stay in memory.
+     */
+    private void pruneExpired() {
+        long now = System.nanoTime();
+        Iterator<Flight> flights = mFlights.values().iterator();
+        while (flights.hasNext()) {
+            if (flights.next().isExpired(now)) {
+                flights.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the key of a URL: scheme and host in lower case, query parameters sorted (keeping each one as encoded).
+     */
+    static String normalize(String url) {
+        int queryStart = url.indexOf('?');
+        String base = queryStart < 0 ? url : url.substring(0, queryStart);
+        int schemeEnd = base.indexOf("://");
+        if (schemeEnd >= 0) {
+            int pathStart = base.indexOf('/', schemeEnd + 3);
+            if (pathStart < 0) {
+                pathStart = base.length();
+            }
+            base = base.substring(0, pathStart).toLowerCase(Locale.ROOT) + base.substring(pathStart);   //路徑有分大小寫，不能轉
+        }
+        if (queryStart < 0) {
+            return base;
+        }
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : url.substring(queryStart + 1).split("&")) {
+            if (!parameter.isEmpty()) {
+                parameters.add(parameter);
+            }
+        }
+        Collections.sort(parameters);
+        StringBuilder key = new StringBuilder(base).append('?');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                key.append('&');
+            }
+            key.append(parameters.get(i));
+        }
+        return key.toString();
+    }
+
+    /**
+     * One-line summary of the counters, for the logs: fetches made, and duplicate fetches avoided by joining a fetch in
+     * flight or by a memoized result.
+     */
+    String describeStats() {
+        int joined = mJoinedCount.get();
+        int memoHits = mMemoHitCount.get();
+        return "fetched=" + mFetchCount.get() + " avoided=" + (joined + memoHits)
+                + " (joined=" + joined + " memo=" + memoHits + ")";
+    }
+
+    /**
+     * One fetch of a URL: run once by the caller that started it, awaited by the others.
+     */
+    private final class Flight extends FutureTask<List<Earthquake>> {
+
+        /** The query of the caller that runs the fetch */
+        final QueryDeadline mDeadline;
+
+        /** When the fetch finished (System.nanoTime()), valid once mFinished is set */
+        private volatile long mFinishedAt;
+
+        private volatile boolean mFinished;
+
+        Flight(Callable<List<Earthquake>> fetcher, QueryDeadline deadline) {
+            super(fetcher);
+            mDeadline = deadline;
+        }
+
+        @Override
+        protected void set(List<Earthquake> result) {
+            super.set(result == null ? null : Collections.unmodifiableList(result));
+        }
+
+        @Override
+        protected void done() {
+            mFinishedAt = System.nanoTime();
+            mFinished = true;
+            wakeUp();
+        }
+
+        private synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        boolean isExpired(long now) {
+            return mFinished && now - mFinishedAt >= mMemoNanos;
+        }
+
+        /**
+         * Wait for the fetch and return its result, or null if it failed, the waiting thread was interrupted or the
+         * waiting caller's query ended first.
+         */
+        List<Earthquake> await(QueryDeadline deadline) {
+            Runnable wakeUp = new Runnable() {
+                @Override
+                public void run() {
+                    wakeUp();
+                }
+            };
+            deadline.addListener(wakeUp);   //查詢被取消或超時的時候，叫醒等待中的呼叫者
+            try {
+                synchronized (this) {
+                    while (!isDone() && !deadline.isDone()) {
+                        wait();
+                    }
+                }
+                if (!isDone()) {
+                    return null;
+                }
+                return get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Problem fetching the query", e.getCause());
+                return null;
+            } finally {
+                deadline.removeListener(wakeUp);
+            }
+        }
+    }
+}
@@ -1,27 +1,24 @@
 package com.example.android.quakereport;
 
-import android.text.TextUtils;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Helper methods related to requesting and receiving earthquake data from USGS.
  * 這個類的作用像工具箱，主要是用來要求和接收網路數據。包括抓取地震數據(fetchEarthquakeData)、創建網址(createUrl)、
- * 建立連線(makeHttpRequest)、讀取數據串(readFromStream)和擷取JASON(extractFeatureFromJson)方法
+ * 建立連線(makeHttpRequest)方法；解析JSON的部分在EarthquakeJsonParser
+ *
+ * The network path parses the response with EarthquakeJsonParser.readFeaturesFromStream() straight off the
+ * connection's InputStream, so the body is never held as one String and no JSONObject tree is built.
  */
 public final class QueryUtils {
 
@@ -44,22 +41,37 @@ public final class QueryUtils {
      * 這個方法是要用來打包下面的輔助方法(helper methods)
      */
     public static List<Earthquake> fetchEarthquakeData(String requestUrl) {    //方法中的argument可以自行命名(requestUrl)
-        // Create URL object。利用下面的createUrl方法來創建網址
-        URL url = createUrl(requestUrl);
+        return fetchEarthquakeData(requestUrl, QueryDeadline.NONE);
+    }
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+    /**
+     * Same as {@link #fetchEarthquakeData(String)}, but gives up as soon as the given query is cancelled or out of
+     * time: the connection is disconnected (which fails a read blocked on the socket) and the parse stops.
+     *
+     * A failed request is retried, and a slow one hedged, as QueryRetryPolicy decides.
+     *
+     * @return the earthquakes, or null if the request failed or was cancelled
+     */
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl, QueryDeadline deadline) {
+        // Create URL object。利用下面的createUrl方法來創建網址
+        final URL url = createUrl(requestUrl);
+        if (url == null) {
+            return null;
         }
 
-        // Extract relevant fields from the JSON response and create a list of {@link Earthquake}s
-        List<Earthquake> earthquakes = extractFeatureFromJson(jsonResponse);
-
-        // Return the list of {@link Earthquake}s
-        return earthquakes;
+        // Perform HTTP request to the URL and parse the response stream into a list of {@link Earthquake}s as it arrives,
+        // once or more: QueryRetryPolicy retries the failures worth retrying and hedges the slow responses.
+        return QueryRetryPolicy.get().fetch(requestUrl, deadline, new QueryRetryPolicy.Attempter() {
+            @Override
+            public List<Earthquake> attempt(QueryAttempt attempt) {
+                try {
+                    return makeHttpRequest(url, attempt);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+                    return null;
+                }
+            }
+        });
     }
 
     /**
@@ -77,129 +89,157 @@ public final class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
-     * 這個輔助方法是要用來建立連線
+     * Make an HTTP request to the given URL and return the list of {@link Earthquake}s parsed from the response,
+     * or null if there was no usable response. How the request went is reported into the given attempt.
+     * 這個輔助方法是要用來建立連線，並在接收數據的同時直接解析
      */
-    private static String makeHttpRequest(URL url) throws IOException {   //建立連線可能會有連線失敗(回傳碼非200)的狀況，所以要丟出IOException來封裝錯誤訊息以免App當掉
-        String jsonResponse = "";  //宣告jsonResponse字符並初始化為空白文字
+    private static List<Earthquake> makeHttpRequest(URL url, QueryAttempt attempt) throws IOException {   //建立連線可能會有連線失敗(回傳碼非200)的狀況，所以要丟出IOException來封裝錯誤訊息以免App當掉
+        List<Earthquake> earthquakes = null;  //宣告earthquakes並初始化為空
 
-        // If the URL is null, then return early. 若沒有網址，就別浪費時間執行下面的程式碼，直接提交上面初始化的空白文字出來
+        // If the URL is null, then return early. 若沒有網址，就別浪費時間執行下面的程式碼，直接提交null出來
         if (url == null) {
-            return jsonResponse;
+            return earthquakes;
         }
 
+        QueryDeadline deadline = attempt.getDeadline();   //這次請求的取消與期限
         HttpURLConnection urlConnection = null;  //宣告urlConnection並初始化為空，準備接著用來建立連線
-        InputStream inputStream = null;          //宣告inputStream並初始化為空，準備接著用來接收數據
+        Runnable disconnect = null;              //查詢被取消或超時的時候中斷連線
+        InputStream inputStream = null;          //宣告inputStream並初始化為空，準備接著用來接收數據(未解壓縮的原始串流)
+        InputStream decodedStream = null;        //包在inputStream外面的解壓縮串流
+        boolean failed = true;                   //請求中途出錯時，連線的狀態不明，不能再重複使用
+        long requestStart = Metrics.now();       //計時的起點(Metrics關閉時為0，不計時)
+        Metrics.HTTP_REQUESTS.increment();
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();  //為網址開啟連線渠道，將此連線命名為urlConnection
-            urlConnection.setReadTimeout(10000 /* milliseconds */);    //為此連線設置1萬毫秒的讀取超時限制
-            urlConnection.setConnectTimeout(15000 /* milliseconds */); //為此連線設置1.5萬毫秒的連線超時限制
+            deadline.throwIfDone();                                    //已經取消或超時的查詢就不必再連線
+            urlConnection = QueryConnections.open(url);                //為網址開啟連線渠道(可能重複使用先前保持連線的keep-alive連線)，將此連線命名為urlConnection
+            urlConnection.setReadTimeout(timeoutMillis(10000 /* milliseconds */, deadline));    //為此連線設置1萬毫秒的讀取超時限制(不超過查詢剩下的時間)
+            urlConnection.setConnectTimeout(timeoutMillis(15000 /* milliseconds */, deadline)); //為此連線設置1.5萬毫秒的連線超時限制(不超過查詢剩下的時間)
             urlConnection.setRequestMethod("GET");                     //為此連線設置要求數據的方式為GET()
+            urlConnection.setUseCaches(true);                          //允許透過QueryCache安裝的快取回應或以ETag/Last-Modified重新驗證
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate"); //要求伺服器壓縮回應。自己設定這個標頭之後就要自己解壓縮(見openDecodedStream)
+            // Disconnecting from another thread makes a connect() or read() blocked on the socket throw at once; the
+            // listener runs right away if the query ended in the meantime. 取消時從別的執行緒中斷連線，卡在socket上的讀取會馬上丟出例外
+            final HttpURLConnection connection = urlConnection;
+            disconnect = new Runnable() {
+                @Override
+                public void run() {
+                    connection.disconnect();
+                }
+            };
+            deadline.addListener(disconnect);
             urlConnection.connect();                                   //啟動連線
+            Metrics.HTTP_CONNECT.recordSince(requestStart);            //連線(或從連線池取得連線)花的時間
+            int responseCode = urlConnection.getResponseCode();        //送出請求並等待回應的狀態列與標頭
+            attempt.onResponse(responseCode);                          //讓QueryRetryPolicy知道回應開始了(不必對沖)，以及值不值得重試
+            Metrics.HTTP_FIRST_BYTE.recordSince(requestStart);         //從開始到收到回應第一個位元組的時間
+            deadline.throwIfDone();
 
             // If the request was successful (response code 200), then read the input stream and parse the response.
             //若回傳碼為200代表連線成功，則開始讀取與解析數據
-            if (urlConnection.getResponseCode() == 200) {       //若此連線的回傳碼為200
+            if (responseCode == 200) {                          //若此連線的回傳碼為200
                 inputStream = urlConnection.getInputStream();   //就透過此連線接收數據，將收到的數據內容帶入前面宣告過的inputStream
-                jsonResponse = readFromStream(inputStream);     //透過下面另外寫的readFromStream輔助方法來讀取該inputStream，並帶入前面宣告過的jsonResponse。
+                CountingInputStream wireStream = new CountingInputStream(inputStream);
+                CountingInputStream inflatedStream = new CountingInputStream(
+                        openDecodedStream(wireStream, urlConnection.getContentEncoding()));
+                decodedStream = inflatedStream;                 //讓下面的finally關閉最外層的串流，連帶釋放解壓縮器
+                long bodyStart = Metrics.now();
+                earthquakes = EarthquakeJsonParser.readFeaturesFromStream(inflatedStream, deadline); //透過EarthquakeJsonParser的readFeaturesFromStream輔助方法，邊解壓縮邊讀取邊解析出地震資料(取消時停下)
+                if (Metrics.ENABLED) {
+                    // Download and parse are interleaved (the parser pulls from the socket), so the time spent blocked
+                    // reading the wire is the download and the rest is decompressing and parsing.
+                    long bodyNanos = System.nanoTime() - bodyStart;
+                    Metrics.HTTP_DOWNLOAD.recordNanos(wireStream.getReadNanos());
+                    Metrics.HTTP_PARSE.recordNanos(bodyNanos - wireStream.getReadNanos());
+                    Metrics.HTTP_WIRE_BYTES.add(wireStream.getCount());
+                    Metrics.EARTHQUAKES_PARSED.add(earthquakes.size());
+                    Log.d(LOG_TAG, "Response bytes: wire=" + wireStream.getCount()
+                            + " inflated=" + inflatedStream.getCount()
+                            + " encoding=" + urlConnection.getContentEncoding());
+                }
             } else {                                            //若回傳碼不是200代表連線有問題，則紀錄下錯誤訊息:"QueryUtils, Error response code: 200"
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
             }
+            failed = false;
         } catch (IOException e) {                               //抓錯誤。所有的數據輸入與輸出的錯誤則透過IOException記錄錯誤訊息:"QueryUtils, Problem retrieving the earthquake JSON results., e)
-            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
+            if (deadline.isDone()) {                            //被取消或超時而中斷的連線不算錯誤，記下多久才停下來
+                recordStopped(url, deadline);
+            } else {
+                attempt.onIoFailure();                          //連線或讀取失敗，可以重試
+                Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
+            }
+        } catch (IllegalStateException e) {                     //JsonReader遇到不符合格式的JSON時會丟出IllegalStateException
+            Log.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
+        } catch (RuntimeException e) {
+            // disconnect() from another thread, in the middle of sending the request, can make some HttpURLConnection
+            // implementations throw this (e.g. a wrapped NullPointerException) rather than an IOException.
+            if (!deadline.isDone()) {
+                throw e;
+            }
+            recordStopped(url, deadline);
         } finally {                                             //不論有無錯誤，最終必定執行的程式碼
-            if (urlConnection != null) {                        //前面的動作都已完成(完成建立連線、讀取解數據與抓錯)之後，若還在連線(若此連線不是空)，就執行斷線
-                urlConnection.disconnect();
+            if (disconnect != null) {
+                deadline.removeListener(disconnect);
             }
-            if (inputStream != null) {                          //前面的動作都已完成(完成建立連線、讀取解數據與抓錯)之後，若還有數據(若數據不是空)，就關閉(清空)數據
+            if (earthquakes == null && !deadline.isDone()) {
+                Metrics.HTTP_ERRORS.increment();
+            }
+            if (urlConnection != null) {                        //前面的動作都已完成(完成建立連線、讀取解數據與抓錯)之後，把連線交還給連線池
+                // Don't disconnect(): read the rest of the body (e.g. the gzip trailer the parser never needs) and close
+                // it, so the next request to USGS can reuse this connection without a new TCP/TLS handshake.
+                QueryConnections.release(urlConnection, inputStream, failed);
+            }
+            if (decodedStream != null) {                        //前面的動作都已完成(完成建立連線、讀取解數據與抓錯)之後，若還有數據(若數據不是空)，就關閉(清空)數據
                 // Closing the input stream could throw an IOException, which is why
                 // the makeHttpRequest(URL url) method signature specifies that an IOException
                 // could be thrown.
-                inputStream.close();
+                decodedStream.close();
             }
         }
-        return jsonResponse;                                    //以上動作都完成後，提交jsonResponse(透過連線取得的數據內容)出來
+        if (Metrics.ENABLED) {                                  //只在debug版記錄，release版不為每個請求組字串
+            Log.d(LOG_TAG, "HTTP cache: " + QueryCache.describeStats());
+            Log.d(LOG_TAG, "HTTP connections: " + QueryConnections.describeStats());
+        }
+        return earthquakes;                                     //以上動作都完成後，提交earthquakes(透過連線取得並解析好的地震資料)出來
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the whole JSON response from the server.
-     * 這個輔助方法是要用來讀取數據
+     * Returns the given connect or read timeout, shortened to the time left before the query's deadline. The timeouts
+     * bound a single step; the deadline's listener still disconnects when the whole query runs out of time.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {  //讀取或輸出資訊時可能會發生錯誤，所以要丟出IOException來封裝錯誤訊息以免App當掉
-        StringBuilder output = new StringBuilder();   //創建一個名叫output的StringBuilder
-        if (inputStream != null) {                    //若有輸入的數據(inputStream不是空的)
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));  //則創建讀取數據的inputStreamReader，帶入輸入的數據並設定字元編碼為UTF-8
-            BufferedReader reader = new BufferedReader(inputStreamReader);  //創建讀取數據的BufferedReader，命名為reader，並把inputStreamReader封裝進BufferedReader。這一行程式就只是宣告一個緩衝區來存放輸入的數據
-            String line = reader.readLine();    //讀取緩衝區(reader)的其中一行，將讀取到的資訊命名為line字符
-            while (line != null) {              //若有讀取到資訊(line字符不是空的)
-                output.append(line);            //就把讀取到的line字符添加在所輸出資訊的後面
-                line = reader.readLine();       //然後再去讀取緩衝區(reader)的下一行，更新line字符
-            }                                   //因為數據很多，不知會需要執行append幾次，所以會使用while loop無限次執行。若知道是有限的次數就可以使用for loop (for how many given times)
+    private static int timeoutMillis(int timeoutMillis, QueryDeadline deadline) throws InterruptedIOException {
+        deadline.throwIfDone();
+        long remainingMillis = deadline.getRemainingMillis();
+        if (remainingMillis <= 0) {                             //還剩不到1毫秒
+            return 1;
         }
-        return output.toString();               //將輸出的資訊轉換成字符String後提交出去
+        return (int) Math.min(timeoutMillis, remainingMillis);  //0代表沒有超時限制，所以上面要先排除
     }
 
     /**
-     * Return a list of {@link Earthquake} objects that has been built up from parsing the given JSON response.
-     * 這個輔助方法是要用來解析API
+     * Log and measure a request stopped by its query's cancellation or deadline.
      */
-    private static List<Earthquake> extractFeatureFromJson(String earthquakeJSON) {    //方法中的argument可以自行命名(earthquakeJSON)
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(earthquakeJSON)) {
-            return null;
+    private static void recordStopped(URL url, QueryDeadline deadline) {
+        long stopNanos = deadline.getNanosSinceDone();
+        (deadline.isCancelled() ? Metrics.HTTP_CANCELLED : Metrics.HTTP_EXPIRED).increment();
+        Metrics.HTTP_STOP.recordNanos(stopNanos);
+        if (Metrics.ENABLED) {
+            Log.d(LOG_TAG, (deadline.isCancelled() ? "Cancelled" : "Deadline passed") + ", request stopped "
+                    + stopNanos / 1000 + " us later: " + url);
         }
+    }
 
-        // Create an empty ArrayList that we can start adding earthquakes to
-        List<Earthquake> earthquakes = new ArrayList<>();    //創建名為earthquakes的ArrayList，沿用自定義的Earthquake類。將屬性定為List是方便日後有需要時可以隨意把ArrayList更換成LinkedList或其他。
-
-        // Try to parse the JSON response string. If there's a problem with the way the JSON is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
-        try {
-
-            // Create a JSONObject from the JSON response string
-            JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
-
-            // Extract the JSONArray associated with the key called "features", which represents a list of features (or earthquakes).
-            JSONArray earthquakeArray = baseJsonResponse.getJSONArray("features");
-
-            // For each earthquake in the earthquakeArray, create an {@link Earthquake} object
-            for (int i = 0; i < earthquakeArray.length(); i++) {
-
-                // Get a single earthquake at position i within the list of earthquakes
-                JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
-
-                // For a given earthquake, extract the JSONObject associated with the key called "properties",
-                // which represents a list of all properties for that earthquake.
-                JSONObject properties = currentEarthquake.getJSONObject("properties");
-
-                // Extract the value for the key called "mag" as a Double value
-                double magnitude = properties.getDouble("mag");
-
-                // Extract the value for the key called "place"
-                String location = properties.getString("place");
-
-                // Extract the value for the key called "time"
-                long time = properties.getLong("time");
-
-                // Extract the value for the key called "url"
-                String url = properties.getString("url");
-
-                // Create a new {@link Earthquake} object called earthquake and extending from the Earthquake Class,
-                // with the magnitude, location, time, and url from the JSON response.
-                Earthquake earthquake = new Earthquake(magnitude, location, time, url);
-
-                // Add the new {@link Earthquake} to the list of earthquakes.
-                earthquakes.add(earthquake);
-            }
-
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
+    /**
+     * Wrap the raw response stream in a decompressor matching its Content-Encoding, so the parser reads inflated
+     * bytes straight from the socket without the whole inflated text ever being buffered.
+     * 依照伺服器回應的壓縮格式(gzip或deflate)包上對應的解壓縮串流
+     */
+    static InputStream openDecodedStream(InputStream inputStream, String contentEncoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(inputStream);
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(inputStream);
         }
-
-        // Return the list of earthquakes
-        return earthquakes;
+        return inputStream;                                     //沒有壓縮(或是未知的格式)就直接讀取
     }
 
-}
\ No newline at end of file
+}
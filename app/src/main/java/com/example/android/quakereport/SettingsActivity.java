@@ -51,6 +51,10 @@ public class SettingsActivity extends AppCompatActivity {
             // which will set this fragment as the OnPreferenceChangeListener and update the summary so that it displays the current value stored in SharedPreferences.
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+
+            // Show the alert magnitude below its title too.
+            Preference alertMagnitude = findPreference(getString(R.string.settings_alert_magnitude_key));
+            bindPreferenceSummaryToValue(alertMagnitude);
         }
 
         @Override
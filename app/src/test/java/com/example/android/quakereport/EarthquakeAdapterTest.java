@@ -0,0 +1,110 @@
+package com.example.android.quakereport;
+
+import android.app.Activity;
+import android.graphics.drawable.GradientDrawable;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts what EarthquakeAdapter.getView() allocates when it binds a recycled row: the ViewHolder and the strings
+ * EarthquakeFormatter prepared on the loader thread mean a bind should only assign them, whatever the row.
+ * 計算回收的列表項目重新綁定時配置了多少記憶體：應該只有設定文字和顏色，不建立新的物件
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeAdapterTest {
+
+    private static final int ROWS = 100;
+
+    private static final int BINDS = 5000;
+
+    private EarthquakeAdapter mAdapter;
+
+    private FrameLayout mParent;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).get();
+        activity.setTheme(android.R.style.Theme_DeviceDefault_Light);
+        ArrayList<EarthquakeListItem> items = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Earthquake earthquake = new Earthquake("us" + i, 4.5 + i % 30 / 10.0, i + "km NW of Rumoi, Japan",
+                    1540000000000L - i * 60000L, "https://earthquake.usgs.gov/earthquakes/eventpage/us" + i,
+                    1540000000000L);
+            items.add(new EarthquakeListItem(earthquake, String.valueOf(earthquake.getmMagnitude()),
+                    0xFF000000 | i * 0x010101, i + "km NW of", "Rumoi, Japan", "Oct 20, 2018", "1:46 AM"));
+        }
+        mAdapter = new EarthquakeAdapter(activity, items);
+        mParent = new FrameLayout(activity);
+    }
+
+    @Test
+    public void bindsTheFormattedFields() {
+        View row = mAdapter.getView(7, null, mParent);
+        assertEquals("7km NW of", ((TextView) row.findViewById(R.id.location_offset)).getText().toString());
+        assertEquals("Rumoi, Japan", ((TextView) row.findViewById(R.id.primary_location)).getText().toString());
+        assertEquals("Oct 20, 2018", ((TextView) row.findViewById(R.id.earthquake_date)).getText().toString());
+        assertSame(row, mAdapter.getView(8, row, mParent));
+    }
+
+    /**
+     * TextView.setText() itself allocates (its listeners, spans and layout invalidation), on a device as under
+     * Robolectric, so the bind is compared with the same setters called directly on the row's views: whatever getView()
+     * allocates beyond them (a findViewById() result, a formatter, a string) is the adapter's own.
+     */
+    @Test
+    public void recycledBindAllocatesNothingBeyondTheViewSetters() {
+        View row = mAdapter.getView(0, null, mParent);
+        TextView magnitudeView = (TextView) row.findViewById(R.id.earthquake_magnitude);
+        GradientDrawable magnitudeCircle = (GradientDrawable) magnitudeView.getBackground();
+        TextView locationOffsetView = (TextView) row.findViewById(R.id.location_offset);
+        TextView primaryLocationView = (TextView) row.findViewById(R.id.primary_location);
+        TextView dateView = (TextView) row.findViewById(R.id.earthquake_date);
+        TextView timeView = (TextView) row.findViewById(R.id.time);
+
+        long settersBytes = 0;
+        long bindBytes = 0;
+        for (int round = 0; round < 2; round++) {     //第一輪是暖身：載入類別、填滿TextView內部的緩衝區
+            long before = allocatedBytes();
+            for (int i = 0; i < BINDS; i++) {
+                EarthquakeListItem item = mAdapter.getItem(i % ROWS);
+                magnitudeView.setText(item.getMagnitudeText());
+                magnitudeCircle.setColor(item.getMagnitudeColor());
+                primaryLocationView.setText(item.getPrimaryLocation());
+                locationOffsetView.setText(item.getLocationOffset());
+                dateView.setText(item.getDateText());
+                timeView.setText(item.getTimeText());
+            }
+            settersBytes = allocatedBytes() - before;
+
+            before = allocatedBytes();
+            for (int i = 0; i < BINDS; i++) {
+                row = mAdapter.getView(i % ROWS, row, mParent);
+            }
+            bindBytes = allocatedBytes() - before;
+        }
+
+        long extraBytesPerBind = (bindBytes - settersBytes) / BINDS;
+        assertTrue("getView() allocated " + extraBytesPerBind + " bytes per bind beyond the view setters ("
+                + settersBytes / BINDS + ")", extraBytesPerBind <= 0);
+    }
+
+    /** Bytes allocated by this thread so far (HotSpot) */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
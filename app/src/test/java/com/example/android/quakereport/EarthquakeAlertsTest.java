@@ -0,0 +1,142 @@
+package com.example.android.quakereport;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowNotificationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of EarthquakeAlerts: which events of a delta are alerted (threshold, age cutoff, each event once), the bound on
+ * the remembered ids, their persistence across instances, and full downloads remembered without a notification.
+ * 測試警報的門檻、24小時的期限、同一個地震只通知一次、記住的地震數量上限，以及全部下載時不發出通知
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeAlertsTest {
+
+    private static final long NOW = 1540000000000L;
+
+    private Context mContext;
+
+    private EarthquakeAlerts mAlerts;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mAlerts = new EarthquakeAlerts(mContext);
+    }
+
+    @Test
+    public void thresholdIsInclusive() {
+        List<Earthquake> alerts = mAlerts.select(Arrays.asList(
+                quake("a", 6.0, NOW), quake("b", 5.99, NOW), quake("c", 7.2, NOW)), 6.0, NOW);
+        assertEquals(Arrays.asList("a", "c"), ids(alerts));
+    }
+
+    @Test
+    public void eventsOlderThanADayAreNotAlerted() {
+        long maxAge = EarthquakeAlerts.MAX_EVENT_AGE_MILLIS;
+        List<Earthquake> alerts = mAlerts.select(Arrays.asList(quake("day", 7.0, NOW - maxAge),
+                quake("older", 7.0, NOW - maxAge - 1), quake("hour", 7.0, NOW - 3600000)), 6.0, NOW);
+        assertEquals(Arrays.asList("day", "hour"), ids(alerts));
+    }
+
+    @Test
+    public void eventIsAlertedOnce() {
+        assertEquals(Arrays.asList("a"), ids(mAlerts.select(Arrays.asList(
+                quake("a", 7.0, NOW), quake("a", 7.1, NOW)), 6.0, NOW)));
+        // Updated by a later delta (e.g. the magnitude was revised): not alerted again.
+        assertEquals(0, mAlerts.select(Arrays.asList(quake("a", 7.3, NOW)), 6.0, NOW + 60000).size());
+    }
+
+    @Test
+    public void eventWithoutIdIsNotAlerted() {
+        assertEquals(0, mAlerts.select(Arrays.asList(quake(null, 7.0, NOW)), 6.0, NOW).size());
+    }
+
+    @Test
+    public void onlyTheMostRecentIdsAreRemembered() {
+        List<Earthquake> delta = new ArrayList<>();
+        for (int i = 0; i <= EarthquakeAlerts.MAX_SEEN_IDS; i++) {
+            delta.add(quake("e" + i, 7.0, NOW));
+        }
+        assertEquals(EarthquakeAlerts.MAX_SEEN_IDS + 1, mAlerts.select(delta, 6.0, NOW).size());
+
+        // e0, the oldest, was forgotten; e1 is still remembered.
+        assertEquals(Arrays.asList("e0"), ids(mAlerts.select(Arrays.asList(
+                quake("e0", 7.0, NOW), quake("e1", 7.0, NOW)), 6.0, NOW)));
+    }
+
+    @Test
+    public void alertedIdsSurviveANewInstance() {
+        setAlertMagnitude("6");
+        mAlerts.onIngested(Arrays.asList(quake("a", 7.0, System.currentTimeMillis())), 0);
+        assertEquals(1, notificationCount());
+
+        long now = System.currentTimeMillis();
+        EarthquakeAlerts restarted = new EarthquakeAlerts(mContext);
+        assertEquals(Arrays.asList("b"), ids(restarted.select(Arrays.asList(
+                quake("a", 7.0, now), quake("b", 7.0, now)), 6.0, now)));
+    }
+
+    @Test
+    public void fullDownloadIsRememberedWithoutNotifications() {
+        setAlertMagnitude("6");
+        long now = System.currentTimeMillis();
+        mAlerts.onReplaced(Arrays.asList(quake("a", 7.0, now), quake("b", 6.5, now), quake("c", 4.0, now)));
+        assertEquals(0, notificationCount());
+
+        // A later delta updates "a" and brings a new event: only the new one is alerted, by this or a new instance.
+        mAlerts.onIngested(Arrays.asList(quake("a", 7.1, now), quake("d", 6.2, now)), 0);
+        assertEquals(1, notificationCount());
+        EarthquakeAlerts restarted = new EarthquakeAlerts(mContext);
+        assertEquals(0, restarted.select(Arrays.asList(quake("b", 6.5, now)), 6.0, now).size());
+    }
+
+    @Test
+    public void nothingIsRememberedWhenAlertsAreOff() {
+        setAlertMagnitude("");
+        long now = System.currentTimeMillis();
+        mAlerts.onIngested(Arrays.asList(quake("a", 9.0, now)), 0);
+        mAlerts.onReplaced(Arrays.asList(quake("b", 9.0, now)));
+        assertEquals(0, notificationCount());
+        assertEquals(Arrays.asList("a", "b"), ids(new EarthquakeAlerts(mContext).select(Arrays.asList(
+                quake("a", 9.0, now), quake("b", 9.0, now)), 6.0, now)));
+    }
+
+    private void setAlertMagnitude(String value) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.settings_alert_magnitude_key), value)
+                .commit();
+    }
+
+    private int notificationCount() {
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        return ((ShadowNotificationManager) Shadow.extract(notificationManager)).size();
+    }
+
+    private static Earthquake quake(String id, double magnitude, long time) {
+        return new Earthquake(id, magnitude, "Fiji region", time, "https://example.com/" + id, time);
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getmId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of EarthquakeDiff: inserted, removed, moved and updated rows between two versions of the list.
+ * 測試新舊清單的比對結果：新增、刪除、移動與內容更新的列
+ */
+public class EarthquakeDiffTest {
+
+    @Test
+    public void identicalListsHaveNoChanges() {
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("a", "b", "c"), items("a", "b", "c"));
+        assertTrue(diff.isEmpty());
+        assertFalse(diff.hasStructuralChanges());
+        assertEquals(2, diff.getNewPosition("c"));
+    }
+
+    @Test
+    public void emptyLists() {
+        assertTrue(EarthquakeDiff.calculate(items(), items()).isEmpty());
+        assertArrayEquals(new int[]{0, 1}, EarthquakeDiff.calculate(items(), items("a", "b")).getInsertedPositions());
+        assertArrayEquals(new int[]{0, 1}, EarthquakeDiff.calculate(items("a", "b"), items()).getRemovedPositions());
+    }
+
+    @Test
+    public void insertsAreNewPositions() {
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("b", "d"), items("a", "b", "c", "d", "e"));
+        assertArrayEquals(new int[]{0, 2, 4}, diff.getInsertedPositions());
+        assertArrayEquals(new int[0], diff.getRemovedPositions());
+        assertArrayEquals(new int[0], diff.getMovedPositions());
+        assertTrue(diff.hasStructuralChanges());
+    }
+
+    @Test
+    public void deletesAreOldPositions() {
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("a", "b", "c", "d"), items("b", "d"));
+        assertArrayEquals(new int[]{0, 2}, diff.getRemovedPositions());
+        assertArrayEquals(new int[0], diff.getInsertedPositions());
+        assertArrayEquals(new int[0], diff.getMovedPositions());
+        assertEquals(-1, diff.getNewPosition("a"));
+        assertEquals(1, diff.getNewPosition("d"));
+    }
+
+    @Test
+    public void onlyTheRowsOutOfOrderMove() {
+        // "e" moved to the top; the others kept their relative order.
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("a", "b", "c", "d", "e"), items("e", "a", "b", "c", "d"));
+        assertArrayEquals(new int[]{0}, diff.getMovedPositions());
+        assertArrayEquals(new int[0], diff.getInsertedPositions());
+        assertArrayEquals(new int[0], diff.getRemovedPositions());
+    }
+
+    @Test
+    public void reversedListMovesAllButOne() {
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("a", "b", "c", "d"), items("d", "c", "b", "a"));
+        assertEquals(3, diff.getMovedPositions().length);
+    }
+
+    @Test
+    public void updatedEventIsChangedInPlace() {
+        List<EarthquakeListItem> newItems = items("a", "b", "c");
+        newItems.set(1, item("b", 6.1, 2000));
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("a", "b", "c"), newItems);
+        assertArrayEquals(new int[]{1}, diff.getChangedPositions());
+        assertFalse(diff.hasStructuralChanges());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void mixedChanges() {
+        List<EarthquakeListItem> newItems = items("f", "c", "a", "d");
+        newItems.set(3, item("d", 7.0, 2000));
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("a", "b", "c", "d", "e"), newItems);
+        assertArrayEquals(new int[]{1, 4}, diff.getRemovedPositions());
+        assertArrayEquals(new int[]{0}, diff.getInsertedPositions());
+        assertEquals(1, diff.getMovedPositions().length);   //"a" or "c" moved (either one is a minimal move)
+        assertArrayEquals(new int[]{3}, diff.getChangedPositions());
+    }
+
+    @Test
+    public void duplicateOldRowIsRemoved() {
+        EarthquakeDiff diff = EarthquakeDiff.calculate(items("a", "a", "b"), items("a", "b"));
+        assertArrayEquals(new int[]{1}, diff.getRemovedPositions());
+        assertArrayEquals(new int[0], diff.getMovedPositions());
+    }
+
+    private static List<EarthquakeListItem> items(String... ids) {
+        List<EarthquakeListItem> items = new ArrayList<>();
+        for (String id : ids) {
+            items.add(item(id, 5.0, 1000));
+        }
+        return items;
+    }
+
+    private static EarthquakeListItem item(String id, double magnitude, long updated) {
+        Earthquake earthquake = new Earthquake(id, magnitude, "Fiji region", 1540000000000L,
+                "https://earthquake.usgs.gov/earthquakes/eventpage/" + id, updated);
+        return new EarthquakeListItem(earthquake, "5.0", 0, "Near the", "Fiji region", "Oct 20, 2018", "1:46 AM");
+    }
+}
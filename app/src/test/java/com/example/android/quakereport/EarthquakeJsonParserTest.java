@@ -0,0 +1,63 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the streaming parser against the DOM parser kept for comparison: both must build the same earthquakes from
+ * the same feed, including the properties USGS leaves out or sends as null.
+ * 測試串流解析和原本的JSONObject解析對同一份資料得到相同的地震，包括缺少或為null的欄位
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeJsonParserTest {
+
+    private static final String FEED = "{\"type\":\"FeatureCollection\",\"metadata\":{\"count\":3},\"features\":["
+            + "{\"type\":\"Feature\",\"properties\":{\"mag\":6.1,\"place\":\"Fiji region\",\"time\":1540000000000,"
+            + "\"updated\":1540000600000,\"url\":\"https://example.com/a\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[178.1,-18.1,10]},\"id\":\"a\"},"
+            + "{\"type\":\"Feature\",\"properties\":{\"mag\":5.2,\"place\":\"Crete, Greece\",\"time\":1540000100000,"
+            + "\"url\":\"https://example.com/b\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[25.1,35.2,null]},\"id\":\"b\"},"
+            + "{\"type\":\"Feature\",\"properties\":{\"mag\":4.3,\"place\":\"Alaska\",\"time\":1540000200000,"
+            + "\"updated\":null,\"url\":\"https://example.com/c\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-150.0,61.0,30]},\"id\":\"c\"}]}";
+
+    @Test
+    public void streamingAndDomParsersAgree() throws IOException {
+        List<Earthquake> streamed = EarthquakeJsonParser.readFeaturesFromStream(
+                new ByteArrayInputStream(FEED.getBytes(Charset.forName("UTF-8"))));
+        List<Earthquake> parsed = EarthquakeJsonParser.extractFeatureFromJson(FEED);
+        assertEquals(3, streamed.size());
+        assertEquals(parsed.size(), streamed.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            Earthquake expected = parsed.get(i);
+            Earthquake actual = streamed.get(i);
+            assertEquals(expected.getmId(), actual.getmId());
+            assertEquals(expected.getmMagnitude(), actual.getmMagnitude(), 0);
+            assertEquals(expected.getmLocation(), actual.getmLocation());
+            assertEquals(expected.getmTimeInMilliseconds(), actual.getmTimeInMilliseconds());
+            assertEquals(expected.getmUpdatedInMilliseconds(), actual.getmUpdatedInMilliseconds());
+            assertEquals(expected.getmUrl(), actual.getmUrl());
+            assertEquals(expected.getmLatitude(), actual.getmLatitude(), 0);
+            assertEquals(expected.getmLongitude(), actual.getmLongitude(), 0);
+            assertEquals(expected.getmDepth(), actual.getmDepth(), 0);
+        }
+    }
+
+    @Test
+    public void missingOrNullUpdatedFallsBackToTime() throws IOException {
+        List<Earthquake> streamed = EarthquakeJsonParser.readFeaturesFromStream(
+                new ByteArrayInputStream(FEED.getBytes(Charset.forName("UTF-8"))));
+        assertEquals(1540000600000L, streamed.get(0).getmUpdatedInMilliseconds());
+        assertEquals(1540000100000L, streamed.get(1).getmUpdatedInMilliseconds());     //missing
+        assertEquals(1540000200000L, streamed.get(2).getmUpdatedInMilliseconds());     //null
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of EarthquakePlaceIndex: how places and queries are split into words, prefix matching of every query word, and
+ * the entries left dead when an event's place changes or the event is removed.
+ * 測試地名的拆字(重音符號、標點、大小寫)、前綴搜尋，以及地名變更或刪除後舊的資料不會再被搜尋到
+ */
+public class EarthquakePlaceIndexTest {
+
+    @Test
+    public void tokenizeFoldsCaseAndSplitsOnPunctuation() {
+        assertEquals(Arrays.asList("74km", "nw", "of", "rumoi", "japan"),
+                EarthquakePlaceIndex.tokenize("74km NW of Rumoi, Japan"));
+        assertEquals(Arrays.asList("m", "4", "5", "kepulauan", "talaud"),
+                EarthquakePlaceIndex.tokenize("  M 4.5 - Kepulauan-Talaud!  "));
+        assertEquals(Arrays.asList(), EarthquakePlaceIndex.tokenize(" ,.- "));
+        assertEquals(Arrays.asList(), EarthquakePlaceIndex.tokenize(null));
+    }
+
+    @Test
+    public void tokenizeDropsAccents() {
+        assertEquals(Arrays.asList("san", "jose", "mexico"), EarthquakePlaceIndex.tokenize("San José, México"));
+        assertEquals(Arrays.asList("acoria"), EarthquakePlaceIndex.tokenize("Açoria"));
+        // Already decomposed: the combining acute accent is dropped, it does not split the word.
+        assertEquals(Arrays.asList("jose"), EarthquakePlaceIndex.tokenize("Jose\u0301"));
+    }
+
+    @Test
+    public void everyQueryWordMustPrefixAWordOfThePlace() {
+        EarthquakePlaceIndex index = index();
+        assertMatches(index.search("rum jap"), "rumoi");
+        assertMatches(index.search("jap"), "rumoi", "honshu");
+        assertMatches(index.search("JAPAN, rum"), "rumoi");
+        assertMatches(index.search("japan"), "rumoi", "honshu");
+        assertMatches(index.search("japanese"));
+        assertMatches(index.search("rum fiji"));
+        assertMatches(index.search("mexico"), "oaxaca");
+        assertMatches(index.search("méx"), "oaxaca");
+        assertMatches(index.search("of"), "rumoi", "honshu", "oaxaca");
+    }
+
+    @Test
+    public void emptyQueryMatchesNothing() {
+        EarthquakePlaceIndex index = index();
+        assertMatches(index.search(""));
+        assertMatches(index.search(" - "));
+    }
+
+    @Test
+    public void changedPlaceMarksTheOldEntryDead() {
+        EarthquakePlaceIndex index = index();
+        index.add("rumoi", "74km NW of Rumoi, Japan");     //same place: nothing to update
+        assertEquals(3, index.size());
+
+        index.add("rumoi", "Hokkaido, Japan region");
+        assertEquals(3, index.size());
+        assertMatches(index.search("rumoi"));
+        assertMatches(index.search("hok jap"), "rumoi");
+        assertMatches(index.search("japan"), "rumoi", "honshu");
+    }
+
+    @Test
+    public void removedEventNoLongerMatches() {
+        EarthquakePlaceIndex index = index();
+        index.remove("honshu");
+        index.remove("unknown");
+        assertEquals(2, index.size());
+        assertMatches(index.search("japan"), "rumoi");
+
+        // Added again later, e.g. by a sync after a full download that left it out.
+        index.add("honshu", "near the east coast of Honshu, Japan");
+        assertMatches(index.search("honshu"), "honshu");
+    }
+
+    @Test
+    public void addIfAbsentKeepsTheNewerPlace() {
+        EarthquakePlaceIndex index = index();
+        // The stored events are loaded after a merge already indexed the newer place of "rumoi".
+        index.add("rumoi", "Hokkaido, Japan region");
+        index.addIfAbsent("rumoi", "74km NW of Rumoi, Japan");
+        index.addIfAbsent("fiji", "Fiji region");
+        assertMatches(index.search("rumoi"));
+        assertMatches(index.search("hokkaido"), "rumoi");
+        assertMatches(index.search("fiji"), "fiji");
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void nullKeyOrPlaceIsIgnored() {
+        EarthquakePlaceIndex index = new EarthquakePlaceIndex();
+        index.add(null, "Fiji region");
+        index.add("fiji", null);
+        assertEquals(0, index.size());
+        assertFalse(index.search("fiji").contains("fiji"));
+        assertFalse(index.search("fiji").contains(null));
+    }
+
+    private static EarthquakePlaceIndex index() {
+        EarthquakePlaceIndex index = new EarthquakePlaceIndex();
+        index.add("rumoi", "74km NW of Rumoi, Japan");
+        index.add("honshu", "near the east coast of Honshu, Japan");
+        index.add("oaxaca", "12km SW of San Pedro Pochutla, Oaxaca, México");
+        return index;
+    }
+
+    /** The matches are exactly the given keys, out of the keys index() adds and "fiji" */
+    private static void assertMatches(EarthquakePlaceIndex.Matches matches, String... keys) {
+        assertEquals(keys.length, matches.size());
+        for (String key : keys) {
+            assertTrue(key, matches.contains(key));
+        }
+        for (String other : Arrays.asList("rumoi", "honshu", "oaxaca", "fiji")) {
+            if (!Arrays.asList(keys).contains(other)) {
+                assertFalse(other, matches.contains(other));
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of EarthquakeQueryPlanner: how a time-ranged query is cut into windows, and fetching them from a local HTTP
+ * server that answers each window with the events in it (both ends included, as USGS does).
+ * 測試查詢如何切成時段、合併時去除重複的地震，以及只重新下載失敗的時段
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeQueryPlannerTest {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    /** Start of the query's time range */
+    private static final long START = 1540000000000L - 1540000000000L % HOUR;
+
+    private HttpServer mServer;
+
+    private String mBaseUrl;
+
+    /** The events the server knows: id, magnitude, time, updated */
+    private final List<Earthquake> mEvents = new ArrayList<>();
+
+    /** starttime of the requests the server received */
+    private final List<String> mRequestedStarts = Collections.synchronizedList(new ArrayList<String>());
+
+    /** A window (by starttime) to answer with 404 once, or null */
+    private volatile String mFailOnceStart;
+
+    /** A window (by starttime) to always answer with 404, or null */
+    private volatile String mAlwaysFailStart;
+
+    private QueryRetryPolicy mDefaultPolicy;
+
+    @Before
+    public void setUp() throws IOException {
+        // No retries or hedges inside QueryUtils, so only the planner fetches a window again.
+        mDefaultPolicy = QueryRetryPolicy.get();
+        QueryRetryPolicy.set(new QueryRetryPolicy(1, 1, 1, 10, 0, 0));
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Uri uri = Uri.parse(exchange.getRequestURI().toString());
+                String start = uri.getQueryParameter("starttime");
+                mRequestedStarts.add(start);
+                byte[] body;
+                int status = 200;
+                if (start != null && (start.equals(mAlwaysFailStart) || start.equals(mFailOnceStart))) {
+                    mFailOnceStart = null;
+                    status = 404;
+                    body = "Not found".getBytes("UTF-8");
+                } else {
+                    body = feed(parseTime(start), parseTime(uri.getQueryParameter("endtime"))).getBytes("UTF-8");
+                }
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/query";
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        QueryRetryPolicy.set(mDefaultPolicy);
+    }
+
+    @Test
+    public void timeRangeIsCutIntoEqualContiguousWindows() {
+        EarthquakeQueryPlanner planner = new EarthquakeQueryPlanner(4, 2, 1, 0);
+        List<String> shards = planner.planShards(query(START, START + 8 * HOUR, 100));
+        assertEquals(4, shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            Uri shard = Uri.parse(shards.get(i));
+            assertEquals(EarthquakeStore.formatFdsnTime(START + i * 2 * HOUR), shard.getQueryParameter("starttime"));
+            assertEquals(EarthquakeStore.formatFdsnTime(START + (i + 1) * 2 * HOUR), shard.getQueryParameter("endtime"));
+            assertEquals("100", shard.getQueryParameter("limit"));
+            assertEquals("time", shard.getQueryParameter("orderby"));
+        }
+    }
+
+    @Test
+    public void shortRangeIsCutIntoWindowsOfAtLeastAnHour() {
+        EarthquakeQueryPlanner planner = new EarthquakeQueryPlanner(4, 2, 1, 0);
+        assertEquals(2, planner.planShards(query(START, START + 2 * HOUR + 1, 100)).size());
+        assertEquals(1, planner.planShards(query(START, START + HOUR / 2, 100)).size());
+    }
+
+    @Test
+    public void queriesWithoutARangeOrWithAnOffsetAreNotSplit() {
+        EarthquakeQueryPlanner planner = new EarthquakeQueryPlanner(4, 2, 1, 0);
+        String page = mBaseUrl + "?format=geojson&limit=20&minmag=4.5&orderby=time";
+        assertEquals(Arrays.asList(page), planner.planShards(page));
+        String offset = query(START, START + 8 * HOUR, 20) + "&offset=21";
+        assertEquals(Arrays.asList(offset), planner.planShards(offset));
+        String endOnly = mBaseUrl + "?endtime=" + EarthquakeStore.formatFdsnTime(START);
+        assertEquals(Arrays.asList(endOnly), planner.planShards(endOnly));
+    }
+
+    @Test
+    public void windowsAreMergedWithoutDuplicates() {
+        mEvents.add(event("a", 4.6, START + 30 * 60000L, 1));
+        mEvents.add(event("b", 5.2, START + 2 * HOUR, 1));          //on the boundary of the first two windows
+        mEvents.add(event("c", 4.9, START + 5 * HOUR, 1));
+        mEvents.add(event("d", 6.0, START + 7 * HOUR, 1));
+        mEvents.add(event("d", 6.1, START + 7 * HOUR, 2));          //updated while the query ran: the newer copy wins
+
+        List<Earthquake> merged = new EarthquakeQueryPlanner(4, 2, 1, 0).fetch(query(START, START + 8 * HOUR, 100));
+        assertEquals(Arrays.asList("d", "c", "b", "a"), ids(merged));   //newest first, "b" once
+        assertEquals(6.1, merged.get(0).getmMagnitude(), 0);
+        assertEquals(4, mRequestedStarts.size());
+    }
+
+    @Test
+    public void mergedResultIsCutToTheLimitInTheQueryOrder() {
+        for (int i = 0; i < 8; i++) {
+            mEvents.add(event("e" + i, 4.5 + i % 3, START + i * HOUR + 1, 1));
+        }
+        String byMagnitude = query(START, START + 8 * HOUR, 3).replace("orderby=time", "orderby=magnitude");
+        List<Earthquake> merged = new EarthquakeQueryPlanner(4, 2, 1, 0).fetch(byMagnitude);
+        assertEquals(3, merged.size());
+        assertEquals(6.5, merged.get(0).getmMagnitude(), 0);
+        assertEquals(6.5, merged.get(1).getmMagnitude(), 0);
+        assertEquals(5.5, merged.get(2).getmMagnitude(), 0);
+    }
+
+    @Test
+    public void onlyTheFailedWindowIsFetchedAgain() {
+        mEvents.add(event("a", 4.6, START + HOUR, 1));
+        mEvents.add(event("b", 4.6, START + 3 * HOUR, 1));
+        String secondWindow = EarthquakeStore.formatFdsnTime(START + 2 * HOUR);
+        mFailOnceStart = secondWindow;
+
+        List<Earthquake> merged = new EarthquakeQueryPlanner(4, 2, 3, 0).fetch(query(START, START + 8 * HOUR, 100));
+        assertEquals(Arrays.asList("b", "a"), ids(merged));
+        assertEquals(5, mRequestedStarts.size());                   //4 windows, then the failed one alone
+        assertEquals(2, Collections.frequency(mRequestedStarts, secondWindow));
+        assertEquals(1, Collections.frequency(mRequestedStarts, EarthquakeStore.formatFdsnTime(START)));
+    }
+
+    @Test
+    public void queryFailsWhenAWindowFailsEveryAttempt() {
+        String lastWindow = EarthquakeStore.formatFdsnTime(START + 6 * HOUR);
+        mAlwaysFailStart = lastWindow;
+        assertNull(new EarthquakeQueryPlanner(4, 2, 2, 0).fetch(query(START, START + 8 * HOUR, 100)));
+        assertEquals(5, mRequestedStarts.size());
+        assertEquals(2, Collections.frequency(mRequestedStarts, lastWindow));
+    }
+
+    @Test
+    public void cancelledQueryFetchesNothing() {
+        QueryDeadline deadline = QueryDeadline.after(10000);
+        deadline.cancel();
+        assertNull(new EarthquakeQueryPlanner(4, 2, 3, 0).fetch(query(START, START + 8 * HOUR, 100), deadline));
+        assertEquals(0, mRequestedStarts.size());
+    }
+
+    private String query(long start, long end, int limit) {
+        return mBaseUrl + "?format=geojson&limit=" + limit + "&orderby=time"
+                + "&starttime=" + EarthquakeStore.formatFdsnTime(start)
+                + "&endtime=" + EarthquakeStore.formatFdsnTime(end);
+    }
+
+    /** The events of the window, both ends included */
+    private String feed(long start, long end) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        String separator = "";
+        for (Earthquake event : mEvents) {
+            if (event.getmTimeInMilliseconds() >= start && event.getmTimeInMilliseconds() <= end) {
+                json.append(separator)
+                        .append("{\"type\":\"Feature\",\"properties\":{\"mag\":").append(event.getmMagnitude())
+                        .append(",\"place\":\"Fiji region\",\"time\":").append(event.getmTimeInMilliseconds())
+                        .append(",\"updated\":").append(event.getmUpdatedInMilliseconds())
+                        .append(",\"url\":\"https://example.com/").append(event.getmId())
+                        .append("\"},\"id\":\"").append(event.getmId()).append("\"}");
+                separator = ",";
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    private static Earthquake event(String id, double magnitude, long time, long updated) {
+        return new Earthquake(id, magnitude, "Fiji region", time, "https://example.com/" + id, updated);
+    }
+
+    private static long parseTime(String value) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(value).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(value, e);
+        }
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getmId());
+        }
+        return ids;
+    }
+}
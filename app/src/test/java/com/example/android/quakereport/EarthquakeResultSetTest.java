@@ -0,0 +1,135 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of EarthquakeResultSet.getItems(orderBy, minMagnitude) and countAtLeast(): the binary search over the magnitude
+ * index that filters a stricter minimum magnitude locally, at its boundaries, with ties, and after concat() and
+ * subSet() rebuilt the indices.
+ * 測試在本地用二分搜尋篩選最小震度：門檻剛好等於某個震度、相同震度、門檻高於或低於所有地震，以及無法解析的設定值
+ */
+public class EarthquakeResultSetTest {
+
+    /** Rows in server (time) order: id, magnitude; the time goes down by one minute per row */
+    private static final EarthquakeResultSet RESULT_SET = resultSet(0,
+            "a", 4.5, "b", 6.1, "c", 5.0, "d", 6.1, "e", 2.3, "f", 5.0, "g", 7.4);
+
+    @Test
+    public void thresholdEqualToAMagnitudeKeepsThatMagnitude() {
+        assertEquals(5, RESULT_SET.countAtLeast(5.0));
+        assertEquals(3, RESULT_SET.countAtLeast(6.1));
+        assertEquals(1, RESULT_SET.countAtLeast(7.4));
+        assertEquals(3, RESULT_SET.countAtLeast(5.0001));
+        assertEquals(5, RESULT_SET.countAtLeast(4.9999));
+    }
+
+    @Test
+    public void thresholdBelowOrAboveEveryRow() {
+        assertEquals(7, RESULT_SET.countAtLeast(2.3));
+        assertEquals(7, RESULT_SET.countAtLeast(-1));
+        assertEquals(7, RESULT_SET.countAtLeast(Double.NEGATIVE_INFINITY));
+        assertEquals(0, RESULT_SET.countAtLeast(7.5));
+        assertEquals(0, RESULT_SET.countAtLeast(Double.POSITIVE_INFINITY));
+        assertEquals(0, RESULT_SET.getItems(EarthquakeResultSet.ORDER_BY_TIME, 9).size());
+        assertEquals(7, RESULT_SET.getItems(EarthquakeResultSet.ORDER_BY_MAGNITUDE, 0).size());
+    }
+
+    @Test
+    public void nanThresholdFiltersNothing() {
+        assertEquals(7, RESULT_SET.countAtLeast(Double.NaN));
+        assertEquals(ids("g", "b", "d", "c", "f", "a", "e"),
+                ids(RESULT_SET.getItems(EarthquakeResultSet.ORDER_BY_MAGNITUDE, Double.NaN)));
+    }
+
+    @Test
+    public void filteredByMagnitudeKeepsTiesInServerOrder() {
+        assertEquals(ids("g", "b", "d", "c", "f"),
+                ids(RESULT_SET.getItems(EarthquakeResultSet.ORDER_BY_MAGNITUDE, 5.0)));
+    }
+
+    @Test
+    public void filteredByTimeKeepsTheTimeOrder() {
+        assertEquals(ids("b", "c", "d", "f", "g"),
+                ids(RESULT_SET.getItems(EarthquakeResultSet.ORDER_BY_TIME, 5.0)));
+        assertEquals(ids("b", "d", "g"), ids(RESULT_SET.getItems(EarthquakeResultSet.ORDER_BY_TIME, 6.1)));
+    }
+
+    @Test
+    public void unknownOrderKeepsTheServerOrder() {
+        assertEquals(ids("b", "c", "d", "f", "g"), ids(RESULT_SET.getItems("unknown", 5.0)));
+    }
+
+    @Test
+    public void emptyResultSet() {
+        EarthquakeResultSet empty = resultSet(0);
+        assertEquals(0, empty.countAtLeast(5.0));
+        assertEquals(0, empty.getItems(EarthquakeResultSet.ORDER_BY_TIME, 5.0).size());
+    }
+
+    @Test
+    public void filterAfterConcatAndSubSet() {
+        EarthquakeResultSet page = resultSet(7, "h", 5.0, "i", 8.0);
+        EarthquakeResultSet window = RESULT_SET.concat(page);
+        assertEquals(7, window.countAtLeast(5.0));
+        assertEquals(ids("i", "g", "b", "d", "c", "f", "h"),
+                ids(window.getItems(EarthquakeResultSet.ORDER_BY_MAGNITUDE, 5.0)));
+
+        EarthquakeResultSet trimmed = window.subSet(3, window.size());  //drop a, b, c
+        assertEquals(5, trimmed.countAtLeast(5.0));
+        assertEquals(ids("d", "f", "g", "h", "i"), ids(trimmed.getItems(EarthquakeResultSet.ORDER_BY_TIME, 5.0)));
+    }
+
+    @Test
+    public void countMatchesALinearScan() {
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rows.add("r" + i);
+            rows.add((i * 37 % 90) / 10.0);     //0.0 to 8.9, with many ties
+        }
+        EarthquakeResultSet resultSet = resultSet(0, rows.toArray());
+        for (double threshold = -0.05; threshold < 9.5; threshold += 0.05) {
+            int expected = 0;
+            for (EarthquakeListItem item : resultSet.getItems()) {
+                if (item.getEarthquake().getmMagnitude() >= threshold) {
+                    expected++;
+                }
+            }
+            assertEquals("threshold " + threshold, expected, resultSet.countAtLeast(threshold));
+            assertEquals(expected, resultSet.getItems(EarthquakeResultSet.ORDER_BY_TIME, threshold).size());
+        }
+    }
+
+    /** Build a result set from id, magnitude pairs; the first row is firstMinute minutes before a fixed time */
+    private static EarthquakeResultSet resultSet(int firstMinute, Object... idsAndMagnitudes) {
+        List<EarthquakeListItem> items = new ArrayList<>();
+        for (int i = 0; i < idsAndMagnitudes.length; i += 2) {
+            long time = 1540000000000L - (firstMinute + i / 2) * 60000L;
+            Earthquake earthquake = new Earthquake((String) idsAndMagnitudes[i], (Double) idsAndMagnitudes[i + 1],
+                    "Fiji region", time, null, time);
+            items.add(new EarthquakeListItem(earthquake, "5.0", 0, "Near the", "Fiji region", "Oct 20, 2018",
+                    "1:46 AM"));
+        }
+        return new EarthquakeResultSet(items);
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> list = new ArrayList<>();
+        for (String id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<String> ids(List<EarthquakeListItem> items) {
+        List<String> ids = new ArrayList<>();
+        for (EarthquakeListItem item : items) {
+            ids.add(item.getEarthquake().getmId());
+        }
+        return ids;
+    }
+}
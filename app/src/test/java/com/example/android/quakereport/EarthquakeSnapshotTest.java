@@ -0,0 +1,169 @@
+package com.example.android.quakereport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of EarthquakeSnapshot: writing and reading back a snapshot, and rejecting truncated and corrupt files
+ * without throwing or allocating for them.
+ * 測試快照檔的寫入與讀取，以及被截斷或損壞的檔案會被忽略而不會造成當機
+ */
+public class EarthquakeSnapshotTest {
+
+    private static final String QUERY = "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=20";
+
+    /** Offsets in the header */
+    private static final int ROW_COUNT_AT = 8;
+    private static final int STRING_COUNT_AT = 12;
+    private static final int QUERY_STRING_AT = 16;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final List<Earthquake> EARTHQUAKES = Arrays.asList(
+            new Earthquake("us1000abcd", 6.1, "74km NW of Rumoi, Japan", 1540000000000L,
+                    "https://earthquake.usgs.gov/earthquakes/eventpage/us1000abcd", 1540000100000L,
+                    44.4, 141.2, 35.0),
+            new Earthquake("ak20419010", 4.7, "Reykjanesbær, Iceland", 1539990000000L,
+                    "https://earthquake.usgs.gov/earthquakes/eventpage/ak20419010", 1539990500000L,
+                    Double.NaN, Double.NaN, Double.NaN),
+            new Earthquake(null, 5.0, "74km NW of Rumoi, Japan", 1539980000000L, null, 0,
+                    -17.9, -178.4, 600.5));
+
+    @Test
+    public void writtenSnapshotReadsBackTheSameEarthquakes() {
+        File file = EarthquakeSnapshot.getFile(mFolder.getRoot());
+        EarthquakeSnapshot.write(file, QUERY, EARTHQUAKES);
+
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(file, QUERY);
+        assertNotNull(snapshot);
+        assertEquals(QUERY, snapshot.getQueryUrl());
+        assertEquals(EARTHQUAKES.size(), snapshot.size());
+        List<Earthquake> read = snapshot.asList();
+        for (int i = 0; i < EARTHQUAKES.size(); i++) {
+            Earthquake expected = EARTHQUAKES.get(i);
+            Earthquake actual = read.get(i);
+            assertEquals(expected.getmId(), actual.getmId());
+            assertEquals(expected.getmMagnitude(), actual.getmMagnitude(), 0);
+            assertEquals(expected.getmLocation(), actual.getmLocation());
+            assertEquals(expected.getmTimeInMilliseconds(), actual.getmTimeInMilliseconds());
+            assertEquals(expected.getmUrl(), actual.getmUrl());
+            assertEquals(expected.getmUpdatedInMilliseconds(), actual.getmUpdatedInMilliseconds());
+            assertEquals(expected.getmLatitude(), actual.getmLatitude(), 0);
+            assertEquals(expected.getmLongitude(), actual.getmLongitude(), 0);
+            assertEquals(expected.getmDepth(), actual.getmDepth(), 0);
+        }
+    }
+
+    @Test
+    public void emptySnapshot() throws IOException {
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.wrap(ByteBuffer.wrap(bytes(Arrays.<Earthquake>asList())));
+        assertNotNull(snapshot);
+        assertEquals(0, snapshot.size());
+        assertEquals(QUERY, snapshot.getQueryUrl());
+    }
+
+    @Test
+    public void snapshotOfAnotherQueryOrNoFileIsNotOpened() {
+        File file = EarthquakeSnapshot.getFile(mFolder.getRoot());
+        assertNull(EarthquakeSnapshot.open(file, QUERY));
+        EarthquakeSnapshot.write(file, QUERY, EARTHQUAKES);
+        assertNull(EarthquakeSnapshot.open(file, QUERY + "&minmag=5"));
+    }
+
+    @Test
+    public void everyTruncationIsRejected() throws IOException {
+        byte[] bytes = bytes(EARTHQUAKES);
+        assertNotNull(EarthquakeSnapshot.wrap(ByteBuffer.wrap(bytes)));
+        for (int length = 0; length < bytes.length; length++) {
+            assertNull("truncated to " + length, EarthquakeSnapshot.wrap(ByteBuffer.wrap(Arrays.copyOf(bytes, length))));
+        }
+    }
+
+    @Test
+    public void truncatedFileIsNotOpened() throws IOException {
+        byte[] bytes = bytes(EARTHQUAKES);
+        File file = EarthquakeSnapshot.getFile(mFolder.getRoot());
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes, 0, bytes.length - 1);
+        out.close();
+        assertNull(EarthquakeSnapshot.open(file, QUERY));
+    }
+
+    @Test
+    public void hugeCountsAreRejectedWithoutAllocating() throws IOException {
+        byte[] bytes = bytes(EARTHQUAKES);
+        // Counts whose sections overflow an int, or just exceed the file: none may reach the constructor.
+        int[] counts = {Integer.MAX_VALUE, Integer.MAX_VALUE / 4, Integer.MAX_VALUE / 60 + 1, 0x10000000, 1 << 20};
+        for (int count : counts) {
+            assertNull("rowCount " + count, EarthquakeSnapshot.wrap(withInt(bytes, ROW_COUNT_AT, count)));
+            assertNull("stringCount " + count, EarthquakeSnapshot.wrap(withInt(bytes, STRING_COUNT_AT, count)));
+        }
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, ROW_COUNT_AT, -1)));
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, STRING_COUNT_AT, -1)));
+    }
+
+    @Test
+    public void corruptHeaderIsNotOpened() throws IOException {
+        byte[] bytes = bytes(EARTHQUAKES);
+        File file = EarthquakeSnapshot.getFile(mFolder.getRoot());
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(withInt(bytes, STRING_COUNT_AT, Integer.MAX_VALUE - 1).array());
+        out.close();
+        assertNull(EarthquakeSnapshot.open(file, QUERY));
+    }
+
+    @Test
+    public void wrongMagicOrVersionIsRejected() throws IOException {
+        byte[] bytes = bytes(EARTHQUAKES);
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, 0, 0x12345678)));
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, 4, EarthquakeSnapshot.VERSION - 1)));
+    }
+
+    @Test
+    public void corruptStringIndexOrOffsetIsRejected() throws IOException {
+        byte[] bytes = bytes(EARTHQUAKES);
+        int rowCount = EARTHQUAKES.size();
+        int idsAt = 20 + rowCount * 6 * 8;
+        int stringOffsetsAt = idsAt + rowCount * 3 * 4;
+        int stringCount = ByteBuffer.wrap(bytes).getInt(STRING_COUNT_AT);
+
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, QUERY_STRING_AT, stringCount)));
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, idsAt, stringCount)));
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, idsAt + (rowCount * 3 - 1) * 4, -2)));
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, stringOffsetsAt, 1)));                 //must start at 0
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, stringOffsetsAt + 8, -1)));            //must ascend
+        assertNull(EarthquakeSnapshot.wrap(withInt(bytes, stringOffsetsAt + stringCount * 4, bytes.length)));
+        assertTrue(EarthquakeSnapshot.wrap(withInt(bytes, idsAt, -1)).getId(0) == null);       //null stays valid
+    }
+
+    private static byte[] bytes(List<Earthquake> earthquakes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        EarthquakeSnapshot.writeTo(out, QUERY, earthquakes);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** A copy of the bytes with the int at the given offset replaced */
+    private static ByteBuffer withInt(byte[] bytes, int offset, int value) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.clone());
+        buffer.putInt(offset, value);
+        return buffer;
+    }
+}
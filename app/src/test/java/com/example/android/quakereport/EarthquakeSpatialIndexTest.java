@@ -0,0 +1,189 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of EarthquakeSpatialIndex against a brute-force scan of every row, with extra points and queries at the poles
+ * and on both sides of the antimeridian, where the cells of a query wrap around.
+ * 用逐筆比對的結果檢查空間索引的查詢，特別是跨越國際換日線和靠近南北極的範圍
+ */
+public class EarthquakeSpatialIndexTest {
+
+    private static final int POINTS = 5000;
+
+    private static final double[] CELL_DEGREES = {EarthquakeSpatialIndex.DEFAULT_CELL_DEGREES, 7.0};
+
+    @Test
+    public void radiusQueriesMatchBruteForce() {
+        EarthquakeTable table = table(new Random(42));
+        Random random = new Random(7);
+        for (double cellDegrees : CELL_DEGREES) {
+            EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(table, cellDegrees);
+            for (int i = 0; i < 300; i++) {
+                double latitude = random.nextDouble() * 180 - 90;
+                double longitude = random.nextDouble() * 360 - 180;
+                double radiusKm = 10 + random.nextDouble() * 3000;
+                assertRadius(index, latitude, longitude, radiusKm);
+            }
+        }
+    }
+
+    @Test
+    public void radiusQueriesAcrossTheAntimeridian() {
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(table(new Random(42)));
+        assertRadius(index, -17.9, 179.8, 500);         //Fiji: the circle reaches west of -180
+        assertRadius(index, -17.9, -179.8, 500);
+        assertRadius(index, 52.0, 180, 800);
+        assertRadius(index, 52.0, -180, 800);
+        assertRadius(index, 0, 179.999, 1);
+    }
+
+    @Test
+    public void radiusQueriesAtAndNearThePoles() {
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(table(new Random(42)));
+        assertRadius(index, 90, 0, 1500);               //every longitude
+        assertRadius(index, -90, 123, 1500);
+        assertRadius(index, 88.5, 45, 300);             //the circle crosses the pole
+        assertRadius(index, -87, -170, 600);
+        assertRadius(index, 80, 10, 100);               //close to the pole but not reaching it: wide in longitude
+        assertRadius(index, 0, 0, 20000);               //the whole globe
+    }
+
+    @Test
+    public void boxQueriesMatchBruteForce() {
+        EarthquakeTable table = table(new Random(42));
+        Random random = new Random(11);
+        for (double cellDegrees : CELL_DEGREES) {
+            EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(table, cellDegrees);
+            for (int i = 0; i < 300; i++) {
+                double south = random.nextDouble() * 180 - 90;
+                double north = Math.min(90, south + random.nextDouble() * 60);
+                double west = random.nextDouble() * 360 - 180;
+                double east = west + random.nextDouble() * 90;
+                if (east > 180) {
+                    east -= 360;        //crosses the antimeridian
+                }
+                assertBox(index, south, west, north, east);
+            }
+        }
+    }
+
+    @Test
+    public void boxQueriesAcrossTheAntimeridianAndAtThePoles() {
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(table(new Random(42)));
+        assertBox(index, -30, 170, 10, -170);
+        assertBox(index, -30, 170.5, 10, 170.2);        //west and east in the same cell: all but a sliver
+        assertBox(index, -90, -180, 90, 180);
+        assertBox(index, 80, -180, 90, 180);
+        assertBox(index, -90, 100, -85, -100);
+        assertBox(index, 10, 20, 5, 30);                //south of north: nothing
+    }
+
+    @Test
+    public void rowsWithoutAPositionAreNotIndexed() {
+        EarthquakeTable table = new EarthquakeTable();
+        table.add(event(0.5, 0.5));
+        table.add(event(Double.NaN, Double.NaN));
+        table.add(event(-0.5, -0.5));
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(table);
+        assertEquals(2, index.size());
+        assertArrayEquals(new int[]{0, 2}, sorted(index.withinBox(-90, -180, 90, 180)));
+        assertArrayEquals(new int[]{0, 2}, sorted(index.withinRadius(0, 0, 200)));
+    }
+
+    @Test
+    public void distanceOfKnownPoints() {
+        // A quarter of the meridian, and half of the equator.
+        assertEquals(Math.PI / 2 * EarthquakeSpatialIndex.EARTH_RADIUS_KM,
+                EarthquakeSpatialIndex.distanceKm(0, 0, 90, 0), 1e-6);
+        assertEquals(Math.PI * EarthquakeSpatialIndex.EARTH_RADIUS_KM,
+                EarthquakeSpatialIndex.distanceKm(0, -90, 0, 90), 1e-6);
+        assertEquals(EarthquakeSpatialIndex.distanceKm(10, 179.5, 10, -179.5),
+                EarthquakeSpatialIndex.distanceKm(10, -0.5, 10, 0.5), 1e-9);
+    }
+
+    private static void assertRadius(EarthquakeSpatialIndex index, double latitude, double longitude, double radiusKm) {
+        EarthquakeTable table = index.getTable();
+        List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            double distance = EarthquakeSpatialIndex.distanceKm(
+                    latitude, longitude, table.getLatitude(row), table.getLongitude(row));
+            if (Math.abs(distance - radiusKm) < 1e-6) {
+                continue;       //on the circle: rounding decides, either answer is right
+            }
+            if (distance <= radiusKm) {
+                expected.add(row);
+            }
+        }
+        List<Integer> actual = new ArrayList<>();
+        for (int row : index.withinRadius(latitude, longitude, radiusKm)) {
+            double distance = EarthquakeSpatialIndex.distanceKm(
+                    latitude, longitude, table.getLatitude(row), table.getLongitude(row));
+            if (Math.abs(distance - radiusKm) >= 1e-6) {
+                actual.add(row);
+            }
+        }
+        assertEquals("within " + radiusKm + " km of " + latitude + ", " + longitude, expected, sortedList(actual));
+    }
+
+    private static void assertBox(EarthquakeSpatialIndex index, double south, double west, double north, double east) {
+        EarthquakeTable table = index.getTable();
+        List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            double latitude = table.getLatitude(row);
+            double longitude = table.getLongitude(row);
+            boolean longitudeInside = west <= east
+                    ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (latitude >= south && latitude <= north && longitudeInside) {
+                expected.add(row);
+            }
+        }
+        List<Integer> actual = new ArrayList<>();
+        for (int row : index.withinBox(south, west, north, east)) {
+            actual.add(row);
+        }
+        assertEquals("box " + south + ", " + west + ", " + north + ", " + east, expected, sortedList(actual));
+    }
+
+    /** Random points over the globe, plus points on the poles, the antimeridian and the cell edges */
+    private static EarthquakeTable table(Random random) {
+        EarthquakeTable table = new EarthquakeTable(POINTS);
+        for (int i = 0; i < POINTS; i++) {
+            // Uniform over the sphere, so the polar cells hold few points, as they do in the real feed.
+            double latitude = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+            table.add(event(latitude, random.nextDouble() * 360 - 180));
+        }
+        double[][] edges = {{90, 0}, {90, 180}, {-90, -45}, {89.99, -179.99}, {-89.99, 179.99},
+                {0, 180}, {0, -180}, {10, 180}, {-10, -180}, {45, 0}, {-45, 90}, {30, 170}, {30, -170}};
+        for (double[] edge : edges) {
+            table.add(event(edge[0], edge[1]));
+        }
+        return table;
+    }
+
+    private static Earthquake event(double latitude, double longitude) {
+        return new Earthquake(null, 5.0, "Fiji region", 1540000000000L, null, 0, latitude, longitude, 10);
+    }
+
+    private static int[] sorted(int[] rows) {
+        int[] copy = rows.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static List<Integer> sortedList(List<Integer> rows) {
+        List<Integer> copy = new ArrayList<>(rows);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.android.quakereport;
+
+import android.app.NotificationManager;
+import android.content.Context;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowNotificationManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of EarthquakeStore.sync() against a local HTTP server standing in for USGS: the full download, the incremental
+ * "updatedafter" sync merged into it, and the purge of events the server no longer returns. Also the spatial index the
+ * store keeps up to date as events are stored.
+ * 用本機的HTTP伺服器代替USGS，測試資料庫的全部下載、增量同步和刪除已不存在的地震，以及空間索引的更新
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeStoreTest {
+
+    private HttpServer mServer;
+
+    /** Response body of the next request; set by each test */
+    private volatile String mFeed = feed();
+
+    /** Status of the next request */
+    private volatile int mStatus = 200;
+
+    /** Query strings of the requests the server received, in order */
+    private final List<String> mQueries = Collections.synchronizedList(new ArrayList<String>());
+
+    private EarthquakeStore mStore;
+
+    private String mBaseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/fdsnws/event/1/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mQueries.add(exchange.getRequestURI().getQuery());
+                byte[] body = mFeed.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(mStatus, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/fdsnws/event/1/query";
+
+        // No sharding, no retries of a failed window and no memo, so every sync is exactly one request.
+        mStore = new EarthquakeStore(RuntimeEnvironment.application,
+                new EarthquakeQueryPlanner(1, 1, 1, 0),
+                new EarthquakeSyncPolicy(EarthquakeSyncPolicy.SYSTEM_CLOCK, 60000, 60000, 600000, 0));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void firstSyncDownloadsEverythingAndLaterSyncsOnlyTheChanges() {
+        mFeed = feed(
+                feature("us1", 5.1, "10km N of Hualien, Taiwan", 1000, 1500),
+                feature("us2", 4.6, "20km S of Rumoi, Japan", 2000, 2500));
+        List<Earthquake> first = mStore.sync(query("4.5"));
+        assertEquals(Arrays.asList("us2", "us1"), ids(first));
+        assertFalse(mQueries.get(0).contains("updatedafter"));
+
+        // The second sync asks for what changed after the newest "updated" time, and merges the answer.
+        mFeed = feed(feature("us1", 5.4, "10km N of Hualien, Taiwan", 1000, 3000));
+        List<Earthquake> second = mStore.sync(query("4.5"));
+        String lastQuery = mQueries.get(mQueries.size() - 1);
+        assertTrue(lastQuery, lastQuery.contains("updatedafter=1970-01-01T00:00:02.500"));
+        assertEquals(Arrays.asList("us2", "us1"), ids(second));
+        assertEquals(5.4, second.get(1).getmMagnitude(), 0);
+    }
+
+    @Test
+    public void fullDownloadRemovesEventsTheServerNoLongerReturns() {
+        mFeed = feed(
+                feature("us1", 5.1, "10km N of Hualien, Taiwan", 1000, 1500),
+                feature("us2", 4.6, "20km S of Rumoi, Japan", 2000, 2500),
+                feature("us3", 4.8, "Fiji region", 3000, 3500));
+        mStore.sync(query("4.5"));
+        assertTrue(mStore.getPlaceIndex().search("fiji").contains("us3"));
+
+        // A new query starts with a full download; us3 was deleted by USGS in the meantime.
+        mFeed = feed(
+                feature("us1", 5.1, "10km N of Hualien, Taiwan", 1000, 1500),
+                feature("us2", 4.6, "20km S of Rumoi, Japan", 2000, 2500));
+        List<Earthquake> result = mStore.sync(query("4.0"));
+        assertFalse(mQueries.get(1).contains("updatedafter"));
+        assertEquals(Arrays.asList("us2", "us1"), ids(result));
+        assertFalse(mStore.getPlaceIndex().search("fiji").contains("us3"));
+        assertTrue(mStore.getPlaceIndex().search("rumoi").contains("us2"));
+    }
+
+    @Test
+    public void fullDownloadRemovesRowsOfOtherPages() {
+        // A row merged by a page of an earlier query would otherwise be read back into the first page of this one.
+        mStore.merge(Arrays.asList(new Earthquake("old1", 6.0, "South Sandwich Islands", 5000, "", 5000,
+                Double.NaN, Double.NaN, Double.NaN)));
+        mFeed = feed(feature("us1", 5.1, "10km N of Hualien, Taiwan", 1000, 1500));
+        assertEquals(Arrays.asList("us1"), ids(mStore.sync(query("4.5"))));
+    }
+
+    @Test
+    public void failedSyncReturnsTheStoredEarthquakes() {
+        mFeed = feed(feature("us1", 5.1, "10km N of Hualien, Taiwan", 1000, 1500));
+        mStore.sync(query("4.5"));
+
+        mStatus = 400;     //不會重試的錯誤
+        mFeed = "Bad request";
+        assertEquals(Arrays.asList("us1"), ids(mStore.sync(query("4.5"))));
+    }
+
+    @Test
+    public void cancelledSyncReturnsNull() {
+        QueryDeadline deadline = QueryDeadline.after(10000);
+        deadline.cancel();
+        assertNull(mStore.sync(query("4.5"), deadline));
+        assertTrue(mQueries.isEmpty());
+    }
+
+    @Test
+    public void onlyTheDeltaOfAnIncrementalSyncIsAlerted() {
+        // Both are recent and at or above the default alert magnitude (7).
+        long now = System.currentTimeMillis();
+        mFeed = feed(feature("us1", 7.1, "Fiji region", now - 60000, now - 60000));
+        mStore.sync(query("4.5"));
+        assertEquals(0, notificationCount());
+
+        mFeed = feed(
+                feature("us1", 7.3, "Fiji region", now - 60000, now - 30000),
+                feature("us2", 7.0, "near the east coast of Honshu, Japan", now - 10000, now - 10000));
+        mStore.sync(query("4.5"));
+        assertTrue(mQueries.get(1).contains("updatedafter"));
+        assertEquals(1, notificationCount());
+    }
+
+    @Test
+    public void spatialIndexIsBuiltOnceAndUpdatedByMerge() {
+        mStore.merge(Arrays.asList(
+                located("us1", 24.0, 121.6),        //Hualien
+                located("us2", 43.9, 141.6),        //Rumoi
+                located("us3", Double.NaN, Double.NaN)));
+        EarthquakeSpatialIndex index = mStore.getSpatialIndex();
+        assertEquals(2, index.size());
+        assertSame(index, mStore.getSpatialIndex());
+
+        // us1 moves to Fiji, us3 gets a position, us4 is new near Rumoi.
+        mStore.merge(Arrays.asList(
+                located("us1", -17.9, -178.4),
+                located("us3", 24.1, 121.7),
+                located("us4", 43.8, 141.5)));
+        EarthquakeSpatialIndex updated = mStore.getSpatialIndex();
+        assertNotSame(index, updated);
+        assertEquals(set("us3"), idsWithin(updated, 24.0, 121.6));
+        assertEquals(set("us2", "us4"), idsWithin(updated, 43.9, 141.6));
+        assertEquals(set("us1"), idsWithin(updated, -17.9, 179.9));
+        assertSameRowsAsTheTable(updated);
+    }
+
+    @Test
+    public void spatialIndexDropsEventsReplacedByAFullDownload() {
+        mStore.merge(Arrays.asList(located("old1", -60.0, -26.0), located("us1", 24.0, 121.6)));
+        assertEquals(2, mStore.getSpatialIndex().size());
+
+        mFeed = feed(
+                feature("us1", 5.1, "10km N of Hualien, Taiwan", 1000, 1500),
+                feature("us2", 4.6, "Hualien, Taiwan", 2000, 2500));
+        mStore.sync(query("4.5"));
+        EarthquakeSpatialIndex index = mStore.getSpatialIndex();
+        assertEquals(set("us1", "us2"), idsWithin(index, 24.0, 121.6));
+        assertEquals(set(), idsWithin(index, -60.0, -26.0));
+        assertSameRowsAsTheTable(index);
+    }
+
+    @Test
+    public void spatialIndexIsNotBuiltByStoring() {
+        mStore.merge(Arrays.asList(located("us1", 24.0, 121.6)));
+        mStore.merge(Arrays.asList(located("us2", 24.1, 121.7)));
+        // The first read builds it from the table, with everything stored so far.
+        assertEquals(set("us1", "us2"), idsWithin(mStore.getSpatialIndex(), 24.0, 121.6));
+    }
+
+    private static int notificationCount() {
+        NotificationManager notificationManager = (NotificationManager)
+                RuntimeEnvironment.application.getSystemService(Context.NOTIFICATION_SERVICE);
+        return ((ShadowNotificationManager) Shadow.extract(notificationManager)).size();
+    }
+
+    /** The index kept up to date by the store holds the same events as one read from the table by a new store */
+    private static void assertSameRowsAsTheTable(EarthquakeSpatialIndex index) {
+        EarthquakeStore reopened = new EarthquakeStore(RuntimeEnvironment.application,
+                new EarthquakeQueryPlanner(1, 1, 1, 0),
+                new EarthquakeSyncPolicy(EarthquakeSyncPolicy.SYSTEM_CLOCK, 60000, 60000, 600000, 0));
+        assertEquals(idsWithin(reopened.getSpatialIndex(), 0, 0, 20000), idsWithin(index, 0, 0, 20000));
+    }
+
+    private static Set<String> idsWithin(EarthquakeSpatialIndex index, double latitude, double longitude) {
+        return idsWithin(index, latitude, longitude, 300);
+    }
+
+    private static Set<String> idsWithin(EarthquakeSpatialIndex index, double latitude, double longitude,
+                                         double radiusKm) {
+        Set<String> ids = new HashSet<>();
+        for (int row : index.withinRadius(latitude, longitude, radiusKm)) {
+            ids.add(index.getTable().getId(row));
+        }
+        return ids;
+    }
+
+    private static Set<String> set(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private static Earthquake located(String id, double latitude, double longitude) {
+        return new Earthquake(id, 5.0, "Somewhere", 1000, "", 1000, latitude, longitude, 10.0);
+    }
+
+    private String query(String minMagnitude) {
+        return mBaseUrl + "?format=geojson&limit=10&minmag=" + minMagnitude + "&orderby=time";
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getmId());
+        }
+        return ids;
+    }
+
+    private static String feed(String... features) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < features.length; i++) {
+            json.append(i > 0 ? "," : "").append(features[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String feature(String id, double magnitude, String place, long time, long updated) {
+        return "{\"type\":\"Feature\",\"properties\":{\"mag\":" + magnitude + ",\"place\":\"" + place
+                + "\",\"time\":" + time + ",\"updated\":" + updated + ",\"url\":\"https://example.com/" + id
+                + "\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[121.6,24.0,10.0]},\"id\":\"" + id + "\"}";
+    }
+}
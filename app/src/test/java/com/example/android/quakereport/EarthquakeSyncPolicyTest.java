@@ -0,0 +1,182 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of EarthquakeSyncPolicy on a fake clock, with the app's times (R.integer.sync_*): coalescing, the backoff after
+ * failures, skipping while offline, a clock set backwards and cancelled refreshes.
+ * 用假的時鐘測試背景同步的排程：合併重複的要求、失敗後的指數退避、離線、時鐘被調回去與取消的同步
+ */
+public class EarthquakeSyncPolicyTest {
+
+    private static final long MINUTE = 60L * 1000L;
+
+    private static final long INTERVAL = 60 * MINUTE;
+    private static final long INITIAL_BACKOFF = 5 * MINUTE;
+    private static final long MAX_BACKOFF = 360 * MINUTE;
+    private static final long MIN_SPACING = 2 * MINUTE;
+
+    private static final long START = 1540000000000L;
+
+    private FakeClock mClock;
+
+    private EarthquakeSyncPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mClock.mNow = START;
+        mPolicy = new EarthquakeSyncPolicy(mClock, INTERVAL, INITIAL_BACKOFF, MAX_BACKOFF, MIN_SPACING);
+    }
+
+    @Test
+    public void neverSyncedIsDueNow() {
+        assertEquals(START, mPolicy.getNextRunAt());
+        assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(false, true));
+    }
+
+    @Test
+    public void nextSyncIsOneIntervalAfterASuccess() {
+        run(true);
+        assertEquals(START + INTERVAL, mPolicy.getNextRunAt());
+        assertEquals(START + INTERVAL, mPolicy.getNextWakeUpAt(EarthquakeSyncPolicy.Decision.NOT_DUE));
+
+        mClock.mNow = START + INTERVAL - 1;
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(false, true));
+        mClock.mNow = START + INTERVAL;
+        assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(false, true));
+    }
+
+    @Test
+    public void requestsWhileASyncRunsAreCoalesced() {
+        mPolicy.onRunStarted();
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(true, true));
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(false, true));
+        mPolicy.onRunFinished(true);
+        assertEquals(0, mPolicy.getConsecutiveFailures());
+    }
+
+    @Test
+    public void requestsRightAfterASyncAreCoalesced() {
+        run(true);
+        // The app starting, the list's loader and a queued duplicate, all within the minimum spacing.
+        mClock.mNow = START + MIN_SPACING - 1;
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(true, true));
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(false, true));
+        assertEquals(START + INTERVAL, mPolicy.getNextWakeUpAt(EarthquakeSyncPolicy.Decision.NOT_DUE));
+        // An explicit request runs once the spacing is over, even though the next sync isn't due.
+        mClock.mNow = START + MIN_SPACING;
+        assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(true, true));
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(false, true));
+    }
+
+    @Test
+    public void backoffDoublesFromFiveMinutesUpToSixHours() {
+        long[] expectedMinutes = {5, 10, 20, 40, 80, 160, 320, 360, 360, 360};
+        for (long minutes : expectedMinutes) {
+            run(false);
+            assertEquals(minutes * MINUTE, mPolicy.getBackoffMillis());
+            assertEquals(mClock.mNow + minutes * MINUTE, mPolicy.getNextRunAt());
+
+            mClock.mNow += minutes * MINUTE - 1;
+            assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(false, true));
+            mClock.mNow += 1;
+            assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(false, true));
+        }
+        assertEquals(expectedMinutes.length, mPolicy.getConsecutiveFailures());
+
+        run(true);
+        assertEquals(0, mPolicy.getConsecutiveFailures());
+        assertEquals(mClock.mNow + INTERVAL, mPolicy.getNextRunAt());
+    }
+
+    @Test
+    public void backoffSurvivesARestore() {
+        EarthquakeSyncPolicy restored =
+                new EarthquakeSyncPolicy(mClock, INTERVAL, INITIAL_BACKOFF, MAX_BACKOFF, MIN_SPACING);
+        restored.restore(START - 10 * MINUTE, 3);
+        assertEquals(20 * MINUTE, restored.getBackoffMillis());
+        assertEquals(START + 10 * MINUTE, restored.getNextRunAt());
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, restored.decide(false, true));
+    }
+
+    @Test
+    public void offlineSkipIsNotAFailure() {
+        run(true);
+        mClock.mNow = START + INTERVAL;
+        assertEquals(EarthquakeSyncPolicy.Decision.OFFLINE, mPolicy.decide(false, false));
+        assertEquals(0, mPolicy.getConsecutiveFailures());
+        assertEquals(START, mPolicy.getLastAttemptAt());
+        assertEquals(mClock.mNow + INTERVAL, mPolicy.getNextWakeUpAt(EarthquakeSyncPolicy.Decision.OFFLINE));
+        // Not due is still not due offline: the schedule doesn't ask about the network before it has to.
+        mClock.mNow = START + 1;
+        run(true);
+        mClock.mNow += MIN_SPACING;
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(false, false));
+    }
+
+    @Test
+    public void clockSetBackwardsMakesTheSyncDue() {
+        run(true);
+        mClock.mNow = START - 24 * 60 * MINUTE;     //the user set the date back a day
+        assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(false, true));
+        assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(true, true));
+        assertEquals(EarthquakeSyncPolicy.Decision.OFFLINE, mPolicy.decide(false, false));
+
+        // The next wake-up is measured from the new time, not a day and an interval away.
+        long wakeUpAt = mPolicy.getNextWakeUpAt(EarthquakeSyncPolicy.Decision.NOT_DUE);
+        assertEquals(mClock.mNow + MIN_SPACING, wakeUpAt);
+
+        run(true);
+        assertEquals(mClock.mNow + INTERVAL, mPolicy.getNextRunAt());
+    }
+
+    @Test
+    public void cancelledSyncChangesNothing() {
+        run(false);
+        long lastAttemptAt = mPolicy.getLastAttemptAt();
+        long nextRunAt = mPolicy.getNextRunAt();
+
+        mClock.mNow += INITIAL_BACKOFF;
+        mPolicy.onRunStarted();
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(false, true));
+        mClock.mNow += MINUTE;
+        mPolicy.onRunCancelled();
+
+        assertEquals(1, mPolicy.getConsecutiveFailures());
+        assertEquals(lastAttemptAt, mPolicy.getLastAttemptAt());
+        assertEquals(nextRunAt, mPolicy.getNextRunAt());
+        assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(false, true));   //no longer running
+
+        // An extra cancel (or finish) doesn't leave the count below zero and block later syncs.
+        mPolicy.onRunCancelled();
+        mPolicy.onRunStarted();
+        assertEquals(EarthquakeSyncPolicy.Decision.NOT_DUE, mPolicy.decide(true, true));
+        mPolicy.onRunCancelled();
+        assertEquals(EarthquakeSyncPolicy.Decision.RUN, mPolicy.decide(true, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxBackoffBelowInitialIsRejected() {
+        new EarthquakeSyncPolicy(mClock, INTERVAL, INITIAL_BACKOFF, INITIAL_BACKOFF - 1, MIN_SPACING);
+    }
+
+    /** Start and finish one refresh at the current time */
+    private void run(boolean success) {
+        mPolicy.onRunStarted();
+        mPolicy.onRunFinished(success);
+    }
+
+    private static final class FakeClock implements EarthquakeSyncPolicy.Clock {
+
+        long mNow;
+
+        @Override
+        public long now() {
+            return mNow;
+        }
+    }
+}
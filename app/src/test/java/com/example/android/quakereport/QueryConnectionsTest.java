@@ -0,0 +1,223 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests of QueryConnections.release() against a local HTTP server, which records the client port of every request: the
+ * same port means the request was sent on the pooled connection of the one before. Also the connection, handshake and
+ * reuse counts over HTTPS, against a server with a self-signed certificate (test-keystore.jks).
+ * 用本機的HTTP伺服器測試連線是否被重複使用：內容讀完的連線要放回連線池，太長的內容或失敗的請求要關閉連線
+ */
+public class QueryConnectionsTest {
+
+    /** Longer than what release() drains (64 KiB) */
+    private static final int LONG_BODY_BYTES = 256 * 1024;
+
+    /** Key store of the HTTPS server's self-signed certificate for 127.0.0.1, which the client trusts as well */
+    private static final String KEY_STORE = "/test-keystore.jks";
+
+    private static final char[] KEY_STORE_PASSWORD = "password".toCharArray();
+
+    private HttpServer mServer;
+
+    private String mBaseUrl;
+
+    /** Client port of every request the server received, in order */
+    private final List<Integer> mClientPorts = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /** Connections discarded by QueryConnections before the test */
+    private int mDiscardedBefore;
+
+    /** Answers both servers */
+    private final HttpHandler mHandler = new HttpHandler() {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            mClientPorts.add(exchange.getRemoteAddress().getPort());
+            String path = exchange.getRequestURI().getPath();
+            int status = path.startsWith("/missing") ? 400 : 200;
+            byte[] body = new byte[path.startsWith("/long") ? LONG_BODY_BYTES : 4000];
+            try {
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            } catch (IOException e) {
+                exchange.close();   //the client disconnected before reading the whole body
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", mHandler);
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mDiscardedBefore = discarded();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void drainedBodyReusesTheSocket() throws IOException {
+        request("/short", 10, false);           //release() reads the other 3990 bytes
+        request("/short", 10, false);
+        request("/short", 0, false);
+        assertEquals(3, mClientPorts.size());
+        assertEquals(mClientPorts.get(0), mClientPorts.get(1));
+        assertEquals(mClientPorts.get(0), mClientPorts.get(2));
+    }
+
+    @Test
+    public void errorBodyIsDrainedAndReusesTheSocket() throws IOException {
+        HttpURLConnection connection = QueryConnections.open(new URL(mBaseUrl + "/missing"));
+        assertEquals(400, connection.getResponseCode());
+        QueryConnections.release(connection, null, false);
+        request("/short", 0, false);
+        assertEquals(mClientPorts.get(0), mClientPorts.get(1));
+    }
+
+    @Test
+    public void remainderOverTheDrainLimitDisconnects() throws IOException {
+        request("/short", 0, false);
+        request("/long", 10, false);            //same socket, but too much is left to read
+        request("/short", 0, false);
+        assertEquals(mClientPorts.get(0), mClientPorts.get(1));
+        assertNotEquals(mClientPorts.get(1), mClientPorts.get(2));
+        assertEquals(1, discarded() - mDiscardedBefore);
+    }
+
+    @Test
+    public void failedRequestDisconnects() throws IOException {
+        request("/short", 0, false);
+        request("/short", 10, true);            //e.g. the parser threw: the connection's state is unknown
+        request("/short", 0, false);
+        assertEquals(mClientPorts.get(0), mClientPorts.get(1));
+        assertNotEquals(mClientPorts.get(1), mClientPorts.get(2));
+        assertEquals(1, discarded() - mDiscardedBefore);
+    }
+
+    @Test
+    public void httpsRequestsShareOneConnectionAndHandshake() throws Exception {
+        SSLContext context = selfSignedContext();
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(context));
+        server.createContext("/", mHandler);
+        server.start();
+        QueryConnections.setSSLSocketFactory(context.getSocketFactory());
+        try {
+            String httpsUrl = "https://127.0.0.1:" + server.getAddress().getPort();
+            int httpsBefore = QueryConnections.getHttpsRequestCount();
+            int connectionsBefore = QueryConnections.getConnectionCount();
+            int handshakesBefore = QueryConnections.getHandshakeCount();
+            int requests = 5;
+            for (int i = 0; i < requests; i++) {
+                request(httpsUrl, "/short", 0, false);
+            }
+            assertEquals(1, new HashSet<>(mClientPorts).size());
+            assertEquals(requests, QueryConnections.getHttpsRequestCount() - httpsBefore);
+            assertEquals(1, QueryConnections.getConnectionCount() - connectionsBefore);
+            assertEquals(1, awaitHandshakes(handshakesBefore + 1) - handshakesBefore);
+
+            int https = httpsBefore + requests;
+            double expected = (https - (connectionsBefore + 1)) / (double) https;
+            assertEquals(expected, QueryConnections.getReuseRatio(), 1e-9);
+
+            // Plain HTTP requests open connections that can't be counted: they leave the ratio alone.
+            request("/short", 0, false);
+            request("/long", 10, false);            //discarded, so the next one opens a new connection
+            request("/short", 0, false);
+            assertEquals(expected, QueryConnections.getReuseRatio(), 1e-9);
+        } finally {
+            QueryConnections.setSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Send a request through QueryConnections, read the first bytes of the body and release the connection.
+     */
+    private void request(String path, int bytesToRead, boolean failed) throws IOException {
+        request(mBaseUrl, path, bytesToRead, failed);
+    }
+
+    private static void request(String baseUrl, String path, int bytesToRead, boolean failed) throws IOException {
+        HttpURLConnection connection = QueryConnections.open(new URL(baseUrl + path));
+        InputStream body = connection.getInputStream();
+        for (int i = 0; i < bytesToRead; i++) {
+            body.read();
+        }
+        QueryConnections.release(connection, body, failed);
+    }
+
+    /**
+     * A TLS context serving the self-signed certificate of KEY_STORE and trusting only that certificate.
+     */
+    private static SSLContext selfSignedContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream in = QueryConnectionsTest.class.getResourceAsStream(KEY_STORE);
+        try {
+            keyStore.load(in, KEY_STORE_PASSWORD);
+        } finally {
+            in.close();
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, KEY_STORE_PASSWORD);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    /**
+     * Returns the handshake count once it reaches the given one, or after a second: the platform notifies the
+     * handshake listener on a thread of its own, which may run after the response was read.
+     */
+    private static int awaitHandshakes(int expected) throws InterruptedException {
+        long end = System.currentTimeMillis() + 1000;
+        while (QueryConnections.getHandshakeCount() < expected && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);                       //a second handshake, if there was one, would be counted by now
+        return QueryConnections.getHandshakeCount();
+    }
+
+    /** The discarded count of QueryConnections.describeStats() */
+    private static int discarded() {
+        String stats = QueryConnections.describeStats();
+        int start = stats.indexOf("discarded=") + "discarded=".length();
+        return Integer.parseInt(stats.substring(start, stats.indexOf(' ', start)));
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of QueryDeadline: sleep() ending early when the query is cancelled or expires, child deadlines ending with
+ * their parent but not the other way round, and the listeners.
+ * 測試取消與超時是否會叫醒正在等待的執行緒，以及子期限跟著父期限結束、單獨取消子期限不會影響父期限
+ */
+public class QueryDeadlineTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void sleepRunsItsTimeOnAnActiveQuery() throws InterruptedException {
+        QueryDeadline deadline = QueryDeadline.after(60000);
+        try {
+            long start = System.nanoTime();
+            assertTrue(deadline.sleep(50));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+            assertFalse(deadline.isDone());
+        } finally {
+            deadline.finish();
+        }
+    }
+
+    @Test
+    public void cancelWakesSleep() throws Exception {
+        final QueryDeadline deadline = QueryDeadline.after(60000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> sleeper = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    return deadline.sleep(60000);
+                }
+            });
+            Thread.sleep(100);                  //讓另一個執行緒先開始等待
+            deadline.cancel();
+            long cancelledAt = System.nanoTime();
+            assertFalse(sleeper.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelledAt) < 1000);
+            assertTrue(deadline.isCancelled());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void expiryWakesSleep() throws InterruptedException {
+        QueryDeadline deadline = QueryDeadline.after(50);
+        long start = System.nanoTime();
+        assertFalse(deadline.sleep(60000));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertTrue(deadline.isExpired());
+        assertFalse(deadline.isCancelled());
+    }
+
+    @Test
+    public void sleepOnAnEndedQueryReturnsAtOnce() throws InterruptedException {
+        QueryDeadline deadline = QueryDeadline.after(60000);
+        deadline.cancel();
+        assertFalse(deadline.sleep(60000));
+    }
+
+    @Test
+    public void childIsCancelledWithItsParent() {
+        QueryDeadline parent = QueryDeadline.after(60000);
+        QueryDeadline child = parent.newChild();
+        parent.cancel();
+        assertTrue(child.isDone());
+        assertTrue(child.isCancelled());
+    }
+
+    @Test
+    public void childExpiresWithItsParent() throws InterruptedException {
+        QueryDeadline parent = QueryDeadline.after(50);
+        QueryDeadline child = parent.newChild();
+        assertFalse(child.sleep(60000));
+        assertTrue(child.isExpired());
+        assertTrue(parent.isExpired());
+    }
+
+    @Test
+    public void childCancelledAloneLeavesItsParentActive() throws InterruptedIOException {
+        QueryDeadline parent = QueryDeadline.after(60000);
+        try {
+            QueryDeadline child = parent.newChild();
+            QueryDeadline sibling = parent.newChild();
+            child.cancel();
+            assertTrue(child.isCancelled());
+            assertFalse(parent.isDone());
+            assertFalse(sibling.isDone());
+            parent.throwIfDone();
+        } finally {
+            parent.finish();
+        }
+    }
+
+    @Test
+    public void finishedChildIsNoLongerEndedByItsParent() {
+        QueryDeadline parent = QueryDeadline.after(60000);
+        QueryDeadline child = parent.newChild();
+        final AtomicInteger runs = new AtomicInteger();
+        child.addListener(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+        child.finish();
+        parent.cancel();
+        assertEquals(0, runs.get());
+        assertFalse(child.isDone());
+    }
+
+    @Test
+    public void listenerRunsOnceOnCancelOrAtOnceWhenAlreadyEnded() {
+        QueryDeadline deadline = QueryDeadline.after(60000);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        deadline.addListener(listener);
+        deadline.cancel();
+        deadline.cancel();
+        assertEquals(1, runs.get());
+        deadline.addListener(listener);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void throwIfDoneTellsCancelFromExpiry() {
+        QueryDeadline cancelled = QueryDeadline.after(60000);
+        cancelled.cancel();
+        assertThrows(cancelled, "Query cancelled");
+        assertThrows(QueryDeadline.after(0), "Query deadline passed");
+    }
+
+    @Test
+    public void noneIsNeverDone() throws InterruptedException {
+        QueryDeadline.NONE.cancel();
+        assertFalse(QueryDeadline.NONE.isDone());
+        assertTrue(QueryDeadline.NONE.sleep(1));
+    }
+
+    private static void assertThrows(QueryDeadline deadline, String message) {
+        try {
+            deadline.throwIfDone();
+            fail("Expected an InterruptedIOException");
+        } catch (InterruptedIOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
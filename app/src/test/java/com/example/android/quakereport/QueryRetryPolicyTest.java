@@ -0,0 +1,273 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of QueryRetryPolicy and QueryAttempt with scripted attempts instead of HTTP requests: which failures are
+ * retried, the budget limiting retries and hedges, a hedge winning over a slow first attempt, the deadline cutting
+ * retries short, and the percentile of the response times the hedging delay comes from.
+ * 測試哪些失敗會重試、額度用完時不再重試或對沖、對沖的請求先完成時取消第一個請求，以及對沖延遲的p95計算
+ */
+public class QueryRetryPolicyTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    /** Shortest hedging delay of the hedging policies, so that a fast first attempt is never hedged */
+    private static final long MIN_HEDGE_MILLIS = 50;
+
+    @Test
+    public void onlyOverloadAndIoFailuresAreRetryable() {
+        assertFalse(failedAttempt(400, false).isRetryable());
+        assertFalse(failedAttempt(404, false).isRetryable());
+        assertTrue(failedAttempt(429, false).isRetryable());
+        assertTrue(failedAttempt(500, false).isRetryable());
+        assertTrue(failedAttempt(503, false).isRetryable());
+        assertTrue(failedAttempt(0, true).isRetryable());       //connection refused or reset, connect timeout
+        assertTrue(failedAttempt(200, true).isRetryable());     //body cut off
+        assertFalse(failedAttempt(200, false).isRetryable());   //malformed JSON: the same again
+    }
+
+    @Test
+    public void cancelledOrSuccessfulAttemptIsNotRetryable() {
+        QueryAttempt cancelled = new QueryAttempt(QueryDeadline.after(60000));
+        cancelled.onIoFailure();            //the disconnect makes the read fail
+        cancelled.getDeadline().cancel();
+        cancelled.finish(null);
+        assertFalse(cancelled.isRetryable());
+
+        QueryAttempt succeeded = new QueryAttempt(QueryDeadline.after(60000));
+        succeeded.onResponse(200);
+        succeeded.finish(earthquakes());
+        assertFalse(succeeded.isRetryable());
+    }
+
+    @Test
+    public void retryableFailuresAreRetriedUpToMaxAttempts() {
+        QueryRetryPolicy policy = new QueryRetryPolicy(3, 1, 1, 100, 0, 0);
+        ScriptedAttempter overloaded = new ScriptedAttempter(503, 429, 200);
+        assertEquals(1, policy.fetch("test", QueryDeadline.NONE, overloaded).size());
+        assertEquals(3, overloaded.mCalls.get());
+
+        ScriptedAttempter down = new ScriptedAttempter(503, 503, 503, 503);
+        assertNull(policy.fetch("test", QueryDeadline.NONE, down));
+        assertEquals(3, down.mCalls.get());
+
+        ScriptedAttempter unreachable = new ScriptedAttempter(ScriptedAttempter.IO_FAILURE, 200);
+        assertEquals(1, policy.fetch("test", QueryDeadline.NONE, unreachable).size());
+        assertEquals(2, unreachable.mCalls.get());
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() {
+        QueryRetryPolicy policy = new QueryRetryPolicy(3, 1, 1, 100, 0, 0);
+        ScriptedAttempter badQuery = new ScriptedAttempter(400, 200);
+        assertNull(policy.fetch("test", QueryDeadline.NONE, badQuery));
+        assertEquals(1, badQuery.mCalls.get());
+    }
+
+    @Test
+    public void cancelledQueryIsNotRetried() {
+        QueryRetryPolicy policy = new QueryRetryPolicy(3, 1, 1, 100, 0, 0);
+        final QueryDeadline deadline = QueryDeadline.after(60000);
+        final AtomicInteger calls = new AtomicInteger();
+        List<Earthquake> result = policy.fetch("test", deadline, new QueryRetryPolicy.Attempter() {
+            @Override
+            public List<Earthquake> attempt(QueryAttempt attempt) {
+                calls.incrementAndGet();
+                deadline.cancel();          //e.g. the user left the list while the request was failing
+                attempt.onIoFailure();
+                return null;
+            }
+        });
+        assertNull(result);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void spentBudgetDeniesRetries() {
+        QueryRetryPolicy policy = new QueryRetryPolicy(3, 1, 1, 0, 0, 0);  //requests add nothing to the budget
+        spendBudget(policy);
+        ScriptedAttempter overloaded = new ScriptedAttempter(503, 200);
+        assertNull(policy.fetch("test", QueryDeadline.NONE, overloaded));
+        assertEquals(1, overloaded.mCalls.get());
+    }
+
+    @Test
+    public void spentBudgetDeniesHedges() {
+        QueryRetryPolicy policy = new QueryRetryPolicy(1, 1, 1, 0, 95, MIN_HEDGE_MILLIS);
+        recordResponses(policy, 20, 0);
+        assertEquals(MIN_HEDGE_MILLIS, policy.getHedgeDelayMillis());
+        spendBudget(policy);
+
+        ScriptedAttempter slow = new ScriptedAttempter(200);
+        slow.mResponseDelayMillis = 4 * MIN_HEDGE_MILLIS;
+        assertEquals(1, policy.fetch("test", QueryDeadline.NONE, slow).size());
+        assertEquals(1, slow.mCalls.get());
+    }
+
+    @Test
+    public void hedgeWinsAndCancelsTheFirstAttempt() {
+        QueryRetryPolicy policy = new QueryRetryPolicy(1, 1, 1, 100, 95, MIN_HEDGE_MILLIS);
+        recordResponses(policy, 20, 0);
+
+        final List<Earthquake> hedgeResult = earthquakes();
+        final AtomicInteger calls = new AtomicInteger();
+        final List<QueryAttempt> primary = new ArrayList<>();
+        QueryDeadline deadline = QueryDeadline.after(60000);
+        try {
+            List<Earthquake> result = policy.fetch("test", deadline, new QueryRetryPolicy.Attempter() {
+                @Override
+                public List<Earthquake> attempt(QueryAttempt attempt) {
+                    if (calls.incrementAndGet() == 1) {
+                        primary.add(attempt);
+                        try {
+                            attempt.getDeadline().sleep(TIMEOUT_MILLIS);   //no response until cancelled
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }
+                    attempt.onResponse(200);
+                    return hedgeResult;
+                }
+            });
+            assertSame(hedgeResult, result);
+            assertEquals(2, calls.get());
+            assertTrue(primary.get(0).getDeadline().isCancelled());
+            assertFalse(deadline.isDone());
+        } finally {
+            deadline.finish();
+        }
+    }
+
+    @Test
+    public void noRetryWhenTheBackoffWouldPassTheDeadline() {
+        // A backoff of up to 11 days: practically always longer than what is left of the query.
+        QueryRetryPolicy policy = new QueryRetryPolicy(3, 1000000000, 1000000000, 100, 0, 0);
+        QueryDeadline deadline = QueryDeadline.after(2000);
+        try {
+            ScriptedAttempter overloaded = new ScriptedAttempter(503, 200);
+            long start = System.nanoTime();
+            assertNull(policy.fetch("test", deadline, overloaded));
+            assertEquals(1, overloaded.mCalls.get());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);    //no backoff was slept
+            assertFalse(deadline.isDone());
+        } finally {
+            deadline.finish();
+        }
+    }
+
+    @Test
+    public void hedgeDelayNeedsEnoughSamples() {
+        QueryRetryPolicy policy = new QueryRetryPolicy(1, 1, 1, 100, 95, MIN_HEDGE_MILLIS);
+        recordResponses(policy, 19, 0);
+        assertEquals(-1, policy.getHedgeDelayMillis());
+        recordResponses(policy, 1, 0);
+        assertEquals(MIN_HEDGE_MILLIS, policy.getHedgeDelayMillis());
+
+        QueryRetryPolicy noHedging = new QueryRetryPolicy(1, 1, 1, 100, 0, MIN_HEDGE_MILLIS);
+        recordResponses(noHedging, 20, 0);
+        assertEquals(-1, noHedging.getHedgeDelayMillis());
+    }
+
+    @Test
+    public void hedgeDelayIsTheRankedPercentile() {
+        // p95 of 20 samples is the 19th smallest (rank ceil(20 * 0.95)): one slow response is left out of it, two are
+        // not. The slow ones come first, before hedging starts.
+        QueryRetryPolicy oneSlow = new QueryRetryPolicy(1, 1, 1, 100, 95, 1);
+        recordResponses(oneSlow, 1, 300);
+        recordResponses(oneSlow, 19, 0);
+        assertTrue(oneSlow.describeStats(), oneSlow.getHedgeDelayMillis() < 100);
+
+        QueryRetryPolicy twoSlow = new QueryRetryPolicy(1, 1, 1, 100, 95, 1);
+        recordResponses(twoSlow, 2, 300);
+        recordResponses(twoSlow, 18, 0);
+        long delay = twoSlow.getHedgeDelayMillis();
+        assertTrue(twoSlow.describeStats(), delay >= 300 && delay < 300 + 1000);
+    }
+
+    private static QueryAttempt failedAttempt(int responseCode, boolean ioFailure) {
+        QueryAttempt attempt = new QueryAttempt(QueryDeadline.after(60000));
+        if (responseCode != 0) {
+            attempt.onResponse(responseCode);
+        }
+        if (ioFailure) {
+            attempt.onIoFailure();
+        }
+        attempt.finish(null);
+        return attempt;
+    }
+
+    /** Spend every token of the budget */
+    private static void spendBudget(QueryRetryPolicy policy) {
+        int spent = 0;
+        while (policy.tryAcquireBudget()) {
+            spent++;
+        }
+        assertTrue(spent > 0);
+    }
+
+    /** Run the given number of successful requests that respond after the given time, to fill the response times */
+    private static void recordResponses(QueryRetryPolicy policy, int count, long responseDelayMillis) {
+        for (int i = 0; i < count; i++) {
+            ScriptedAttempter attempter = new ScriptedAttempter(200);
+            attempter.mResponseDelayMillis = responseDelayMillis;
+            assertEquals(1, policy.fetch("warm-up", QueryDeadline.NONE, attempter).size());
+        }
+    }
+
+    private static List<Earthquake> earthquakes() {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        earthquakes.add(new Earthquake("a", 6.1, "Fiji region", 1540000000000L, null, 0));
+        return earthquakes;
+    }
+
+    /**
+     * Answers the calls with the given status codes in order (200 returns earthquakes, IO_FAILURE fails before any
+     * response), repeating the last one.
+     */
+    private static final class ScriptedAttempter implements QueryRetryPolicy.Attempter {
+
+        static final int IO_FAILURE = -1;
+
+        final AtomicInteger mCalls = new AtomicInteger();
+
+        private final int[] mResponses;
+
+        volatile long mResponseDelayMillis;
+
+        ScriptedAttempter(int... responses) {
+            mResponses = responses;
+        }
+
+        @Override
+        public List<Earthquake> attempt(QueryAttempt attempt) {
+            int call = mCalls.getAndIncrement();
+            int response = mResponses[Math.min(call, mResponses.length - 1)];
+            if (mResponseDelayMillis > 0) {
+                try {
+                    Thread.sleep(mResponseDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (response == IO_FAILURE) {
+                attempt.onIoFailure();
+                return null;
+            }
+            attempt.onResponse(response);
+            return response == 200 ? earthquakes() : null;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of QuerySingleFlight: callers of the same URL sharing one fetch, the URL key, the memo of finished results and
+ * what the callers that joined do when the caller running the fetch is cancelled.
+ * 測試相同的查詢是否只下載一次、網址正規化、結果暫存與過期，以及開始下載的呼叫者被取消時其他呼叫者會自己重新下載
+ */
+public class QuerySingleFlightTest {
+
+    private static final String URL = "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=20&minmag=6";
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void concurrentCallersJoinOneFetch() throws Exception {
+        final QuerySingleFlight singleFlight = new QuerySingleFlight(0);
+        final CountingFetcher fetcher = new CountingFetcher(earthquakes("a"));
+        fetcher.mBlock = new CountDownLatch(1);
+
+        int callers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<List<Earthquake>>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(new Callable<List<Earthquake>>() {
+                    @Override
+                    public List<Earthquake> call() {
+                        return singleFlight.fetch(URL, QueryDeadline.NONE, fetcher);
+                    }
+                }));
+            }
+            awaitStats(singleFlight, "joined=" + (callers - 1));
+            fetcher.mBlock.countDown();
+
+            List<Earthquake> first = results.get(0).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals("a", first.get(0).getmId());
+            for (Future<List<Earthquake>> result : results) {
+                assertSame(first, result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            }
+            assertEquals(1, fetcher.mCalls.get());
+            assertTrue(singleFlight.describeStats(), singleFlight.describeStats().startsWith("fetched=1 avoided=3"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sharedResultIsReadOnly() {
+        new QuerySingleFlight(0).fetch(URL, QueryDeadline.NONE, new CountingFetcher(earthquakes("a"))).clear();
+    }
+
+    @Test
+    public void normalizeSortsParametersAndLowersOnlySchemeAndHost() {
+        assertEquals(QuerySingleFlight.normalize("https://earthquake.usgs.gov/q?minmag=6&format=geojson&limit=20"),
+                QuerySingleFlight.normalize("https://earthquake.usgs.gov/q?limit=20&format=geojson&minmag=6"));
+        assertEquals("https://earthquake.usgs.gov/Path?a=1&b=2",
+                QuerySingleFlight.normalize("HTTPS://Earthquake.USGS.gov/Path?b=2&&a=1&"));
+        assertEquals("https://earthquake.usgs.gov", QuerySingleFlight.normalize("HTTPS://EARTHQUAKE.usgs.gov"));
+        assertNotEquals(QuerySingleFlight.normalize("https://h/path?a=1"), QuerySingleFlight.normalize("https://h/PATH?a=1"));
+        assertNotEquals(QuerySingleFlight.normalize("https://h/q?minmag=6"), QuerySingleFlight.normalize("https://h/q?minmag=5"));
+    }
+
+    @Test
+    public void reorderedUrlSharesTheMemo() {
+        QuerySingleFlight singleFlight = new QuerySingleFlight(60000);
+        CountingFetcher fetcher = new CountingFetcher(earthquakes("a"));
+        List<Earthquake> first = singleFlight.fetch(URL, QueryDeadline.NONE, fetcher);
+        List<Earthquake> second = singleFlight.fetch(
+                "https://EARTHQUAKE.usgs.gov/fdsnws/event/1/query?minmag=6&limit=20&format=geojson",
+                QueryDeadline.NONE, fetcher);
+        assertSame(first, second);
+        assertEquals(1, fetcher.mCalls.get());
+    }
+
+    @Test
+    public void failedFetchIsNotMemoized() {
+        QuerySingleFlight singleFlight = new QuerySingleFlight(60000);
+        CountingFetcher failing = new CountingFetcher(null);
+        assertNull(singleFlight.fetch(URL, QueryDeadline.NONE, failing));
+        assertNull(singleFlight.fetch(URL, QueryDeadline.NONE, failing));
+        assertEquals(2, failing.mCalls.get());
+
+        CountingFetcher throwing = new CountingFetcher(null);
+        throwing.mThrow = true;
+        assertNull(singleFlight.fetch(URL, QueryDeadline.NONE, throwing));
+
+        CountingFetcher working = new CountingFetcher(earthquakes("a"));
+        assertNotNull(singleFlight.fetch(URL, QueryDeadline.NONE, working));
+        assertEquals(1, working.mCalls.get());
+    }
+
+    @Test
+    public void memoExpires() throws InterruptedException {
+        QuerySingleFlight singleFlight = new QuerySingleFlight(100);
+        CountingFetcher fetcher = new CountingFetcher(earthquakes("a"));
+        List<Earthquake> first = singleFlight.fetch(URL, QueryDeadline.NONE, fetcher);
+        assertSame(first, singleFlight.fetch(URL, QueryDeadline.NONE, fetcher));
+        assertEquals(1, fetcher.mCalls.get());
+
+        Thread.sleep(150);
+        List<Earthquake> afterExpiry = singleFlight.fetch(URL, QueryDeadline.NONE, fetcher);
+        assertEquals(2, fetcher.mCalls.get());
+        assertNotSame(first, afterExpiry);
+    }
+
+    @Test
+    public void noMemoWithZeroMemoTime() {
+        QuerySingleFlight singleFlight = new QuerySingleFlight(0);
+        CountingFetcher fetcher = new CountingFetcher(earthquakes("a"));
+        singleFlight.fetch(URL, QueryDeadline.NONE, fetcher);
+        singleFlight.fetch(URL, QueryDeadline.NONE, fetcher);
+        assertEquals(2, fetcher.mCalls.get());
+    }
+
+    @Test
+    public void joinerStartsOverWhenTheStarterIsCancelled() throws Exception {
+        final QuerySingleFlight singleFlight = new QuerySingleFlight(0);
+        final QueryDeadline starterDeadline = QueryDeadline.after(60000);
+        // The starter's fetch runs until its query ends, then fails, as QueryUtils does when it is disconnected.
+        final Callable<List<Earthquake>> starterFetcher = new Callable<List<Earthquake>>() {
+            @Override
+            public List<Earthquake> call() throws InterruptedException {
+                while (starterDeadline.sleep(60000)) {
+                    //一直等到查詢被取消
+                }
+                return null;
+            }
+        };
+        final CountingFetcher joinerFetcher = new CountingFetcher(earthquakes("b"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Earthquake>> starter = executor.submit(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() {
+                    return singleFlight.fetch(URL, starterDeadline, starterFetcher);
+                }
+            });
+            awaitStats(singleFlight, "fetched=1");
+            Future<List<Earthquake>> joiner = executor.submit(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() {
+                    return singleFlight.fetch(URL, QueryDeadline.after(60000), joinerFetcher);
+                }
+            });
+            awaitStats(singleFlight, "joined=1");
+
+            starterDeadline.cancel();
+            assertNull(starter.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            List<Earthquake> result = joiner.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertNotNull(result);
+            assertEquals("b", result.get(0).getmId());
+            assertEquals(1, joinerFetcher.mCalls.get());
+            assertTrue(singleFlight.describeStats(), singleFlight.describeStats().startsWith("fetched=2"));
+        } finally {
+            starterDeadline.finish();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelledJoinerStopsWaitingWithoutStoppingTheFetch() throws Exception {
+        final QuerySingleFlight singleFlight = new QuerySingleFlight(0);
+        final CountingFetcher fetcher = new CountingFetcher(earthquakes("a"));
+        fetcher.mBlock = new CountDownLatch(1);
+        final QueryDeadline joinerDeadline = QueryDeadline.after(60000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Earthquake>> starter = executor.submit(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() {
+                    return singleFlight.fetch(URL, QueryDeadline.NONE, fetcher);
+                }
+            });
+            awaitStats(singleFlight, "fetched=1");
+            Future<List<Earthquake>> joiner = executor.submit(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() {
+                    return singleFlight.fetch(URL, joinerDeadline, fetcher);
+                }
+            });
+            awaitStats(singleFlight, "joined=1");
+
+            joinerDeadline.cancel();
+            assertNull(joiner.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertFalse(starter.isDone());
+            fetcher.mBlock.countDown();
+            assertNotNull(starter.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(1, fetcher.mCalls.get());
+        } finally {
+            joinerDeadline.finish();
+            executor.shutdownNow();
+        }
+    }
+
+    /** Wait until the counters of describeStats() contain the given text */
+    private static void awaitStats(QuerySingleFlight singleFlight, String expected) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!singleFlight.describeStats().contains(expected)) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Expected " + expected + ", was " + singleFlight.describeStats());
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<Earthquake> earthquakes(String... ids) {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (String id : ids) {
+            earthquakes.add(new Earthquake(id, 6.1, "Fiji region", 1540000000000L, null, 0));
+        }
+        return earthquakes;
+    }
+
+    /**
+     * A fetcher that counts its calls and returns a copy of the given list (or null), optionally after a latch opens.
+     */
+    private static final class CountingFetcher implements Callable<List<Earthquake>> {
+
+        final AtomicInteger mCalls = new AtomicInteger();
+
+        private final List<Earthquake> mResult;
+
+        volatile CountDownLatch mBlock;
+
+        volatile boolean mThrow;
+
+        CountingFetcher(List<Earthquake> result) {
+            mResult = result;
+        }
+
+        @Override
+        public List<Earthquake> call() throws Exception {
+            mCalls.incrementAndGet();
+            CountDownLatch block = mBlock;
+            if (block != null) {
+                block.await();
+            }
+            if (mThrow) {
+                throw new IOException("Connection reset");
+            }
+            return mResult == null ? null : new ArrayList<>(mResult);
+        }
+    }
+}
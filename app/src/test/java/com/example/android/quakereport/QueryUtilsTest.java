@@ -0,0 +1,347 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of QueryUtils.fetchEarthquakeData() against a local HTTP server:
+ * - How quickly a query stops once it is cancelled or out of time: the parser between two features, and a response
+ *   that stalls or trickles in, where only the disconnect (not the 10 s read timeout) can stop the read in time.
+ * - Responses compressed with gzip and deflate: decoded, parsed, and counted on the wire and inflated.
+ * 測試查詢被取消或超時後多快停下來，以及gzip和deflate壓縮的回應能正確解壓縮、解析與計算位元組數
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QueryUtilsTest {
+
+    private static final String HEADER = "{\"type\":\"FeatureCollection\",\"features\":[";
+
+    private static final String FEATURE = "{\"type\":\"Feature\",\"properties\":{\"mag\":6.1,\"place\":\"Fiji region\","
+            + "\"time\":1540000000000,\"updated\":1540000000000,\"url\":\"https://example.com/us1\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[178.1,-18.1,10]},\"id\":\"us1\"}";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** How long after the cancel or the deadline the request must have stopped; the read timeout is 10 s */
+    private static final long STOP_BOUND_MILLIS = 1000;
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    /** Number of features of the compressed responses */
+    private static final int FEED_FEATURES = 200;
+
+    private HttpServer mServer;
+
+    private String mBaseUrl;
+
+    /** Opened once the server has sent the headers and the first features */
+    private final CountDownLatch mBodyStarted = new CountDownLatch(1);
+
+    /** Opened at the end of the test, to let the handlers that are still writing go */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    /** Accept-Encoding of the last request for a compressed response */
+    private volatile String mAcceptEncoding;
+
+    private QueryRetryPolicy mDefaultPolicy;
+
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws IOException {
+        // No retries or hedges: the test measures one request.
+        mDefaultPolicy = QueryRetryPolicy.get();
+        QueryRetryPolicy.set(new QueryRetryPolicy(1, 1, 1, 10, 0, 0));
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                if (path.startsWith("/encoded/")) {
+                    mAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                    String encoding = path.substring("/encoded/".length());
+                    byte[] body = encode(feed(FEED_FEATURES), encoding);
+                    if (!"identity".equals(encoding)) {
+                        exchange.getResponseHeaders().add("Content-Encoding", encoding);
+                    }
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                    return;
+                }
+                boolean trickle = path.startsWith("/trickle");
+                byte[] start = (HEADER + FEATURE + "," + FEATURE).getBytes(UTF_8);
+                try {
+                    if (trickle) {
+                        exchange.sendResponseHeaders(200, 0);   //chunked, kept alive
+                    } else {
+                        // The JVM's HttpURLConnection only closes the socket under a blocked read when it is
+                        // disconnected if the connection isn't kept alive and the body isn't chunked; otherwise it
+                        // waits for the read. Android's closes the socket either way.
+                        exchange.getResponseHeaders().add("Connection", "close");
+                        exchange.sendResponseHeaders(200, start.length + 2);
+                    }
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(start);
+                    out.flush();
+                    mBodyStarted.countDown();
+                    if (trickle) {
+                        while (!mRelease.await(10, TimeUnit.MILLISECONDS)) {
+                            out.write(("," + FEATURE).getBytes(UTF_8));     //每10毫秒送出一個地震
+                            out.flush();
+                        }
+                    } else {
+                        mRelease.await();                                   //送出開頭之後就卡住
+                    }
+                    out.write("]}".getBytes(UTF_8));
+                    out.close();
+                } catch (IOException | InterruptedException e) {
+                    exchange.close();   //the client disconnected
+                }
+            }
+        });
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mExecutor.shutdownNow();
+        mServer.stop(0);
+        QueryRetryPolicy.set(mDefaultPolicy);
+    }
+
+    @Test
+    public void parserThrowsMidStreamAfterCancel() throws IOException {
+        final QueryDeadline deadline = QueryDeadline.after(60000);
+        FeatureStream stream = new FeatureStream(100000, 50, deadline);
+        try {
+            EarthquakeJsonParser.readFeaturesFromStream(stream, deadline);
+            fail("Expected an InterruptedIOException");
+        } catch (InterruptedIOException e) {
+            assertEquals("Query cancelled", e.getMessage());
+        } finally {
+            deadline.finish();
+        }
+        // Only what the readers had buffered past the cancel is read, not the rest of the 100000 features.
+        assertTrue("Read " + stream.mFeaturesServed + " features", stream.mFeaturesServed < 50 + 200);
+    }
+
+    @Test
+    public void parserReadsEveryFeatureOfAnActiveQuery() throws IOException {
+        QueryDeadline deadline = QueryDeadline.after(60000);
+        try {
+            assertEquals(300, EarthquakeJsonParser.readFeaturesFromStream(
+                    new FeatureStream(300, -1, deadline), deadline).size());
+        } finally {
+            deadline.finish();
+        }
+    }
+
+    @Test
+    public void cancelStopsAStalledRead() throws Exception {
+        QueryDeadline deadline = QueryDeadline.after(60000);
+        try {
+            Future<List<Earthquake>> fetch = fetch(mBaseUrl + "/stall", deadline);
+            assertTrue(mBodyStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            Thread.sleep(100);                  //讓解析器讀完前兩個地震，卡在socket上
+            long cancelStart = System.nanoTime();
+            deadline.cancel();                  //runs the disconnect listener on this thread
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelStart) < STOP_BOUND_MILLIS);
+            assertStopsWithinBound(fetch, deadline);
+        } finally {
+            deadline.finish();
+        }
+    }
+
+    @Test
+    public void cancelStopsATricklingResponse() throws Exception {
+        QueryDeadline deadline = QueryDeadline.after(60000);
+        try {
+            Future<List<Earthquake>> fetch = fetch(mBaseUrl + "/trickle", deadline);
+            assertTrue(mBodyStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            Thread.sleep(200);
+            deadline.cancel();
+            assertStopsWithinBound(fetch, deadline);
+        } finally {
+            deadline.finish();
+        }
+    }
+
+    @Test
+    public void deadlineStopsAStalledRead() throws Exception {
+        QueryDeadline deadline = QueryDeadline.after(300);
+        Future<List<Earthquake>> fetch = fetch(mBaseUrl + "/stall", deadline);
+        assertTrue(mBodyStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertNull(fetch.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(deadline.isExpired());
+        long stopMillis = TimeUnit.NANOSECONDS.toMillis(deadline.getNanosSinceDone());
+        assertTrue("Stopped " + stopMillis + " ms after the deadline", stopMillis < STOP_BOUND_MILLIS);
+    }
+
+    @Test
+    public void gzipResponseIsInflatedAndParsed() throws Exception {
+        assertEncodedResponseIsParsed("gzip");
+    }
+
+    @Test
+    public void deflateResponseIsInflatedAndParsed() throws Exception {
+        assertEncodedResponseIsParsed("deflate");
+    }
+
+    @Test
+    public void uncompressedResponseIsParsed() throws Exception {
+        assertEncodedResponseIsParsed("identity");
+    }
+
+    @Test
+    public void wireAndInflatedBytesAreCounted() throws IOException {
+        byte[] raw = feed(FEED_FEATURES);
+        for (String encoding : new String[]{"gzip", "deflate", "identity"}) {
+            byte[] body = encode(raw, encoding);
+            // Stacked as in makeHttpRequest(): one count under the decompressor, one above it.
+            CountingInputStream wire = new CountingInputStream(new ByteArrayInputStream(body));
+            CountingInputStream inflated = new CountingInputStream(QueryUtils.openDecodedStream(wire, encoding));
+            assertEquals(FEED_FEATURES, EarthquakeJsonParser.readFeaturesFromStream(inflated).size());
+            assertEquals(encoding, raw.length, inflated.getCount());
+            // The parser stops at the closing brace, so the checksum trailer may be left unread (up to 8 bytes).
+            assertTrue(encoding + " read " + wire.getCount() + " of " + body.length,
+                    wire.getCount() <= body.length && wire.getCount() >= body.length - 8);
+            if (!"identity".equals(encoding)) {
+                assertTrue(encoding, body.length < raw.length / 4);
+            }
+        }
+    }
+
+    /**
+     * Fetch a response compressed with the given Content-Encoding and check the earthquakes, that the request offered
+     * both encodings and, when metrics are on, the bytes counted on the wire.
+     */
+    private void assertEncodedResponseIsParsed(String encoding) throws Exception {
+        long wireBytesBefore = Metrics.HTTP_WIRE_BYTES.get();
+        List<Earthquake> earthquakes = fetch(mBaseUrl + "/encoded/" + encoding, QueryDeadline.NONE)
+                .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(FEED_FEATURES, earthquakes.size());
+        assertEquals("us1", earthquakes.get(0).getmId());
+        assertEquals(6.1, earthquakes.get(FEED_FEATURES - 1).getmMagnitude(), 0);
+        assertEquals("gzip, deflate", mAcceptEncoding);
+        if (Metrics.ENABLED) {
+            long wireBytes = Metrics.HTTP_WIRE_BYTES.get() - wireBytesBefore;
+            int bodyBytes = encode(feed(FEED_FEATURES), encoding).length;
+            assertTrue(encoding + " counted " + wireBytes + " of " + bodyBytes,
+                    wireBytes <= bodyBytes && wireBytes >= bodyBytes - 8);
+        }
+    }
+
+    private static byte[] feed(int features) {
+        StringBuilder json = new StringBuilder(HEADER);
+        for (int i = 0; i < features; i++) {
+            json.append(i == 0 ? "" : ",").append(FEATURE);
+        }
+        return json.append("]}").toString().getBytes(UTF_8);
+    }
+
+    /** Compress the given bytes as the given Content-Encoding does: gzip, deflate (zlib) or identity */
+    private static byte[] encode(byte[] raw, String encoding) throws IOException {
+        if ("identity".equals(encoding)) {
+            return raw;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = "gzip".equals(encoding) ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes);
+        out.write(raw);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private Future<List<Earthquake>> fetch(final String url, final QueryDeadline deadline) {
+        return mExecutor.submit(new Callable<List<Earthquake>>() {
+            @Override
+            public List<Earthquake> call() {
+                return QueryUtils.fetchEarthquakeData(url, deadline);
+            }
+        });
+    }
+
+    private static void assertStopsWithinBound(Future<List<Earthquake>> fetch, QueryDeadline deadline)
+            throws Exception {
+        assertNull(fetch.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        long stopMillis = TimeUnit.NANOSECONDS.toMillis(deadline.getNanosSinceDone());
+        assertTrue("Stopped " + stopMillis + " ms after the cancel", stopMillis < STOP_BOUND_MILLIS);
+    }
+
+    /**
+     * A feed of the given number of features, generated as it is read, that cancels the query once the given number of
+     * features (or -1 for never) was read from it.
+     */
+    private static final class FeatureStream extends InputStream {
+
+        private final int mFeatures;
+
+        private final int mCancelAfter;
+
+        private final QueryDeadline mDeadline;
+
+        private byte[] mChunk = HEADER.getBytes(UTF_8);
+
+        private int mPosition;
+
+        int mFeaturesServed;
+
+        FeatureStream(int features, int cancelAfter, QueryDeadline deadline) {
+            mFeatures = features;
+            mCancelAfter = cancelAfter;
+            mDeadline = deadline;
+        }
+
+        @Override
+        public int read() {
+            if (mPosition == mChunk.length) {
+                if (mFeaturesServed > mFeatures) {
+                    return -1;
+                }
+                if (mFeaturesServed == mCancelAfter) {
+                    mDeadline.cancel();
+                }
+                String next = mFeaturesServed == mFeatures ? "]}" : (mFeaturesServed == 0 ? "" : ",") + FEATURE;
+                mFeaturesServed++;
+                mChunk = next.getBytes(UTF_8);
+                mPosition = 0;
+            }
+            return mChunk[mPosition++] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Heap footprint of a result set held as one {@link Earthquake} object per event (the list the parser returns) against
+ * the same events in an {@link EarthquakeTable}, measured with JOL: every object reachable from each, with the object
+ * headers and padding of the running JVM. JMH only measures time, so this is a plain program:
+ *   ./gradlew :benchmarks:footprint
+ * 用JOL量出同一批地震存成物件列表和存成欄式表格各佔多少記憶體
+ */
+public final class Footprint {
+
+    private static final int[] EVENTS = {1000, 100000};
+
+    private Footprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("Footprint (events)  Row objects (bytes)  Table (bytes)  Table/rows  Bytes per event (rows, table)");
+        for (int events : EVENTS) {
+            List<Earthquake> earthquakes =
+                    EarthquakeJsonParser.readFeaturesFromStream(new ByteArrayInputStream(UsgsFeeds.feed(events)));
+            EarthquakeTable table = new EarthquakeTable(earthquakes.size());
+            for (int i = 0; i < earthquakes.size(); i++) {
+                table.add(earthquakes.get(i));
+            }
+            // Measured apart, so the strings the table shares with the row objects (ids, places) count in both.
+            long rowBytes = GraphLayout.parseInstance(earthquakes).totalSize();
+            long tableBytes = GraphLayout.parseInstance(table).totalSize();
+            System.out.println(String.format(Locale.US, "%18d  %19d  %13d  %10.2f  %d, %d",
+                    events, rowBytes, tableBytes, (double) tableBytes / rowBytes,
+                    rowBytes / events, tableBytes / events));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The formatting helpers, one call at a time: what every row of the list costs.
+ * 測量每一列的格式化方法各花多少時間
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private final long[] mTimes = new long[VALUES];
+
+    private final double[] mMagnitudes = new double[VALUES];
+
+    private final String[] mLocations = new String[VALUES];
+
+    /** Cycles through the values, so the JIT can't fold a constant argument */
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        EarthquakeTable table = new EarthquakeTable(VALUES);
+        for (Earthquake earthquake : EarthquakeJsonParser.readFeaturesFromStream(
+                new ByteArrayInputStream(UsgsFeeds.generate(VALUES)))) {
+            table.add(earthquake);
+        }
+        for (int i = 0; i < VALUES; i++) {
+            mTimes[i] = table.getTimeInMilliseconds(i);
+            mMagnitudes[i] = table.getMagnitude(i);
+            mLocations[i] = table.getLocation(i);
+        }
+    }
+
+    private int next() {
+        mNext = (mNext + 1) & (VALUES - 1);
+        return mNext;
+    }
+
+    @Benchmark
+    public String formatDate() {
+        return EarthquakeTextFormat.formatDate(mTimes[next()]);
+    }
+
+    @Benchmark
+    public String formatTime() {
+        return EarthquakeTextFormat.formatTime(mTimes[next()]);
+    }
+
+    @Benchmark
+    public String formatMagnitude() {
+        return EarthquakeTextFormat.formatMagnitude(mMagnitudes[next()]);
+    }
+
+    @Benchmark
+    public int primaryLocationStart() {
+        return EarthquakeTextFormat.primaryLocationStart(mLocations[next()]);
+    }
+}
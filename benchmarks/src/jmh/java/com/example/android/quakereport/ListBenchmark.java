@@ -0,0 +1,91 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the list from parsed earthquakes, as EarthquakeLoader does on its background thread: the list items (with
+ * the text of EarthquakeTextFormat), the sorted result set and its filtered views, and the columnar table.
+ * 測量把地震資料建立成列表、排序索引、篩選與欄式表格所花的時間
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ListBenchmark {
+
+    /** Stands in for the magnitude color, which needs a Context to resolve */
+    private static final int MAGNITUDE_COLOR = 0xFFFFA32B;
+
+    @Param({"10", "1000", "100000"})
+    public int events;
+
+    private List<Earthquake> mEarthquakes;
+
+    private List<EarthquakeListItem> mItems;
+
+    private EarthquakeResultSet mResultSet;
+
+    @Setup
+    public void setUp() throws IOException {
+        mEarthquakes = EarthquakeJsonParser.readFeaturesFromStream(new ByteArrayInputStream(UsgsFeeds.feed(events)));
+        mItems = buildItems();
+        mResultSet = new EarthquakeResultSet(mItems);
+    }
+
+    /**
+     * The items as EarthquakeFormatter.format() builds them, without the color lookup.
+     */
+    @Benchmark
+    public List<EarthquakeListItem> buildItems() {
+        List<EarthquakeListItem> items = new ArrayList<>(mEarthquakes.size());
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            Earthquake earthquake = mEarthquakes.get(i);
+            String location = earthquake.getmLocation();
+            int primaryLocationStart = EarthquakeTextFormat.primaryLocationStart(location);
+            items.add(new EarthquakeListItem(
+                    earthquake,
+                    EarthquakeTextFormat.formatMagnitude(earthquake.getmMagnitude()),
+                    MAGNITUDE_COLOR,
+                    primaryLocationStart < 0 ? "Near the" : location.substring(0, primaryLocationStart),
+                    primaryLocationStart < 0 ? location : location.substring(primaryLocationStart),
+                    EarthquakeTextFormat.formatDate(earthquake.getmTimeInMilliseconds()),
+                    EarthquakeTextFormat.formatTime(earthquake.getmTimeInMilliseconds())));
+        }
+        return items;
+    }
+
+    @Benchmark
+    public EarthquakeResultSet buildResultSet() {
+        return new EarthquakeResultSet(mItems);
+    }
+
+    /**
+     * A minimum magnitude change, ordered by time: the filtered view is built from the indexes, without sorting.
+     */
+    @Benchmark
+    public int filterByMagnitude() {
+        List<EarthquakeListItem> items = mResultSet.getItems(EarthquakeResultSet.ORDER_BY_TIME, 4.5);
+        return items.size() == 0 ? 0 : items.get(items.size() - 1).hashCode();
+    }
+
+    @Benchmark
+    public EarthquakeTable buildTable() {
+        EarthquakeTable table = new EarthquakeTable(mEarthquakes.size());
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            table.add(mEarthquakes.get(i));
+        }
+        return table;
+    }
+}
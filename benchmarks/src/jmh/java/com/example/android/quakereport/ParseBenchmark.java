@@ -0,0 +1,50 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON extraction: the streaming parser of the network path against the original DOM path, on the same feed.
+ * 比較串流解析(readFeaturesFromStream)與原本先讀成字符再建立JSONObject的解析方式
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int events;
+
+    private byte[] mFeed;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFeed = UsgsFeeds.feed(events);
+        int parsed = EarthquakeJsonParser.readFeaturesFromStream(new ByteArrayInputStream(mFeed)).size();
+        if (parsed != events) {
+            throw new IllegalStateException("Feed of " + events + " events parsed to " + parsed);
+        }
+    }
+
+    @Benchmark
+    public List<Earthquake> streaming() throws IOException {
+        return EarthquakeJsonParser.readFeaturesFromStream(new ByteArrayInputStream(mFeed));
+    }
+
+    @Benchmark
+    public List<Earthquake> dom() throws IOException {
+        String json = EarthquakeJsonParser.readFromStream(new ByteArrayInputStream(mFeed));
+        return EarthquakeJsonParser.extractFeatureFromJson(json);
+    }
+}
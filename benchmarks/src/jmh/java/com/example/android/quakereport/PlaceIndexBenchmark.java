@@ -0,0 +1,78 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the list by place as the user types (EarthquakeActivity.onSearchQueryChanged()): building the
+ * EarthquakePlaceIndex, and looking a word, a short prefix and two words up in it, against a case-insensitive scan of
+ * every place string (what the search costs without the index).
+ * 測量地名索引的建立時間，以及用索引和逐一比對地名字串搜尋各要多久
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaceIndexBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int events;
+
+    private List<Earthquake> mEarthquakes;
+
+    private EarthquakePlaceIndex mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        mEarthquakes = EarthquakeJsonParser.readFeaturesFromStream(new ByteArrayInputStream(UsgsFeeds.feed(events)));
+        mIndex = buildIndex();
+    }
+
+    @Benchmark
+    public EarthquakePlaceIndex buildIndex() {
+        EarthquakePlaceIndex index = new EarthquakePlaceIndex();
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            Earthquake earthquake = mEarthquakes.get(i);
+            index.add(earthquake.getmId(), earthquake.getmLocation());
+        }
+        return index;
+    }
+
+    @Benchmark
+    public int searchWord() {
+        return mIndex.search("japan").size();
+    }
+
+    /** The first letters typed: a wide range of the dictionary */
+    @Benchmark
+    public int searchPrefix() {
+        return mIndex.search("a").size();
+    }
+
+    @Benchmark
+    public int searchTwoWords() {
+        return mIndex.search("rum jap").size();
+    }
+
+    @Benchmark
+    public int scanWord() {
+        int found = 0;
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            if (mEarthquakes.get(i).getmLocation().toLowerCase(Locale.ROOT).contains("japan")) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The snapshot the list shows on a cold start (EarthquakeActivity.showSnapshot()): opening the file (map, check the
+ * layout), reading every row back, and writing it as EarthquakeLoader does after a load. Compare open and read with
+ * ParseBenchmark.streaming, which is what the same events cost from JSON. The list's own snapshot is one page (20).
+ * 測量啟動時開啟快照檔、讀出每一筆地震，以及寫入快照各要多久
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+
+    private static final String QUERY =
+            "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=20&minmag=6&orderby=time";
+
+    @Param({"20", "1000", "100000"})
+    public int events;
+
+    private List<Earthquake> mEarthquakes;
+
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mEarthquakes = EarthquakeJsonParser.readFeaturesFromStream(new ByteArrayInputStream(UsgsFeeds.feed(events)));
+        mFile = File.createTempFile("snapshot", ".bin");
+        EarthquakeSnapshot.write(mFile, QUERY, mEarthquakes);
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(mFile, QUERY);
+        if (snapshot == null || snapshot.size() != events) {
+            throw new IllegalStateException("Snapshot of " + events + " events did not read back");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * Map the file and check its layout; no row is read yet.
+     */
+    @Benchmark
+    public EarthquakeSnapshot open() {
+        return EarthquakeSnapshot.open(mFile, QUERY);
+    }
+
+    /**
+     * Open, then build the Earthquake of every row, as the list's formatter reads them.
+     */
+    @Benchmark
+    public long openAndReadAll() {
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(mFile, QUERY);
+        long checksum = 0;
+        for (Earthquake earthquake : snapshot.asList()) {
+            checksum += earthquake.getmTimeInMilliseconds() + earthquake.getmLocation().length();
+        }
+        return checksum;
+    }
+
+    /**
+     * Encode the events (in memory, so the disk isn't measured).
+     */
+    @Benchmark
+    public int write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        EarthquakeSnapshot.writeTo(out, QUERY, mEarthquakes);
+        out.close();
+        return bytes.size();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region queries over the epicenters of a table: building an EarthquakeSpatialIndex, and the radius and bounding-box
+ * queries with it against a scan of every row (what answering them without the index takes).
+ *
+ * The points are generated from a fixed seed rather than parsed from a feed (a feed of a million events would be about
+ * a gigabyte): most lie in clusters around the centers of AREAS, like epicenters along plate boundaries, and the rest
+ * anywhere on the globe. The queries are centered on the clusters, so they find rows.
+ * 測量空間索引的建立時間，以及用索引和逐筆比對查詢某點附近或某個範圍內的地震各要多久
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialBenchmark {
+
+    /** Latitude and longitude of the cluster centers: Japan, Fiji (on the antimeridian), Chile, Alaska, Iceland... */
+    private static final double[][] AREAS = {
+            {44.4, 141.2}, {-17.9, -178.4}, {-33.4, -70.6}, {61.2, -149.9}, {64.0, -22.6}, {35.7, -117.6},
+            {-15.4, 167.7}, {19.7, -155.1}, {-6.2, 130.5}, {40.9, 14.8}, {-12.0, -77.0}, {38.5, 70.0}
+    };
+
+    /** Share of the points that lie in a cluster */
+    private static final double CLUSTERED = 0.9;
+
+    /** Radius of a radius query, and half the side of a box query (as R.integer.nearby_radius_km) */
+    private static final double RADIUS_KM = 300;
+    private static final double BOX_DEGREES = 3;
+
+    @Param({"10000", "100000", "1000000"})
+    public int events;
+
+    private EarthquakeTable mTable;
+
+    private EarthquakeSpatialIndex mIndex;
+
+    /** Next query center, so consecutive calls query different areas */
+    private int mNextArea;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mTable = new EarthquakeTable(events);
+        for (int i = 0; i < events; i++) {
+            double latitude;
+            double longitude;
+            if (random.nextDouble() < CLUSTERED) {
+                double[] area = AREAS[random.nextInt(AREAS.length)];
+                latitude = Math.max(-90, Math.min(90, area[0] + random.nextGaussian() * 2));
+                longitude = area[1] + random.nextGaussian() * 2;
+                longitude = longitude > 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+            } else {
+                latitude = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+                longitude = random.nextDouble() * 360 - 180;
+            }
+            mTable.add("ev" + i, 4.5, "Fiji region", 1540000000000L - i, null, 0, latitude, longitude, 10);
+        }
+        mIndex = new EarthquakeSpatialIndex(mTable);
+    }
+
+    @Benchmark
+    public EarthquakeSpatialIndex buildIndex() {
+        return new EarthquakeSpatialIndex(mTable);
+    }
+
+    @Benchmark
+    public int radiusWithIndex() {
+        double[] area = nextArea();
+        return mIndex.withinRadius(area[0], area[1], RADIUS_KM).length;
+    }
+
+    @Benchmark
+    public int radiusScan() {
+        double[] area = nextArea();
+        int found = 0;
+        for (int row = 0; row < mTable.size(); row++) {
+            if (EarthquakeSpatialIndex.distanceKm(area[0], area[1], mTable.getLatitude(row), mTable.getLongitude(row))
+                    <= RADIUS_KM) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int boxWithIndex() {
+        double[] area = nextArea();
+        return mIndex.withinBox(area[0] - BOX_DEGREES, west(area), area[0] + BOX_DEGREES, east(area)).length;
+    }
+
+    @Benchmark
+    public int boxScan() {
+        double[] area = nextArea();
+        double south = area[0] - BOX_DEGREES;
+        double north = area[0] + BOX_DEGREES;
+        double west = west(area);
+        double east = east(area);
+        int found = 0;
+        for (int row = 0; row < mTable.size(); row++) {
+            double latitude = mTable.getLatitude(row);
+            double longitude = mTable.getLongitude(row);
+            boolean longitudeInside = west <= east
+                    ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (latitude >= south && latitude <= north && longitudeInside) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private double[] nextArea() {
+        double[] area = AREAS[mNextArea];
+        mNextArea = (mNextArea + 1) % AREAS.length;
+        return area;
+    }
+
+    /** West and east edges of the box around an area; the one around Fiji crosses the antimeridian */
+    private static double west(double[] area) {
+        double west = area[1] - BOX_DEGREES;
+        return west < -180 ? west + 360 : west;
+    }
+
+    private static double east(double[] area) {
+        double east = area[1] + BOX_DEGREES;
+        return east > 180 ? east - 360 : east;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The USGS GeoJSON feeds the benchmarks parse.
+ *
+ * A feed of n events is read from usgs-n.geojson in the directory named by the usgs.feedDir system property when
+ * that file exists, so a recorded feed can be measured as is, e.g.
+ *   curl -o feeds/usgs-1000.geojson "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=1000"
+ *   ./gradlew :benchmarks:jmh -PusgsFeedDir=feeds
+ * Otherwise it is generated: every feature has all the properties of the USGS summary format, in the USGS order,
+ * with values drawn from a fixed seed, so every run parses the same bytes and the numbers stay comparable.
+ * 基準測試用的USGS資料：有錄好的檔案就用檔案，否則用固定的亂數種子產生格式和USGS完全相同的資料
+ */
+final class UsgsFeeds {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] REGIONS = {
+            "Rumoi, Japan", "Ridgecrest, CA", "Anchorage, Alaska", "Hilo, Hawaii", "Santiago, Chile",
+            "Port-Vila, Vanuatu", "Ciudad Hidalgo, Mexico", "Ierapetra, Greece", "Lima, Peru", "Tobelo, Indonesia",
+            "San Pedro de Atacama, Chile", "Kŭlob, Tajikistan", "Reykjanesbær, Iceland", "Avellino, Italy"
+    };
+
+    private static final String[] AREAS = {
+            "Southern East Pacific Rise", "Fiji region", "Kermadec Islands region", "Mid-Atlantic Ridge",
+            "Alaska Peninsula", "Banda Sea"
+    };
+
+    private static final String[] DIRECTIONS = {
+            "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"
+    };
+
+    private static final String[] NETWORKS = {"us", "ak", "ci", "nc", "hv", "nn", "uw", "pr"};
+
+    /** Time of the newest generated event; the others are spread over the 30 days before it */
+    private static final long NEWEST_TIME = 1540000000000L;
+
+    private UsgsFeeds() {
+    }
+
+    /**
+     * Returns the bytes of a feed of the given number of events.
+     */
+    static byte[] feed(int events) throws IOException {
+        String feedDir = System.getProperty("usgs.feedDir");
+        if (feedDir != null) {
+            File recorded = new File(feedDir, "usgs-" + events + ".geojson");
+            if (recorded.isFile()) {
+                return readFile(recorded);
+            }
+        }
+        return generate(events);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return bytes;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Generate a feed in the USGS summary format: metadata, then the features, newest first, then the bbox.
+     */
+    static byte[] generate(int events) {
+        Random random = new Random(events);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(events * 1100 + 512);
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":").append(NEWEST_TIME + 60000)
+                .append(",\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=")
+                .append(events).append("\",\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.10.3\",")
+                .append("\"limit\":").append(events).append(",\"offset\":1,\"count\":").append(events)
+                .append("},\"features\":[");
+        long time = NEWEST_TIME;
+        for (int i = 0; i < events; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            time -= random.nextInt((int) (30L * 24 * 60 * 60 * 1000 / Math.max(1, events)) + 1);
+            appendFeature(json, random, i, time);
+            flush(json, output);
+        }
+        json.append("],\"bbox\":[-179.9,-62.1,-3.2,179.9,84.5,650.2]}");
+        flush(json, output);
+        return output.toByteArray();
+    }
+
+    private static void appendFeature(StringBuilder json, Random random, int index, long time) {
+        String network = NETWORKS[random.nextInt(NETWORKS.length)];
+        String code = String.format(Locale.US, "%08x", index * 2654435761L & 0xffffffffL);
+        String id = network + code;
+        // Most USGS magnitudes are small: square a uniform value to skew towards 0.
+        double uniform = random.nextDouble();
+        double magnitude = Math.round(uniform * uniform * 80) / 10.0 - 0.5;
+        String place = random.nextInt(10) == 0
+                ? AREAS[random.nextInt(AREAS.length)]
+                : (random.nextInt(150) + 1) + " km " + DIRECTIONS[random.nextInt(DIRECTIONS.length)] + " of "
+                        + REGIONS[random.nextInt(REGIONS.length)];
+        long updated = time + random.nextInt(3600000);
+        double longitude = Math.round((random.nextDouble() * 360 - 180) * 10000) / 10000.0;
+        double latitude = Math.round((random.nextDouble() * 170 - 85) * 10000) / 10000.0;
+        double depth = Math.round(random.nextDouble() * 6500) / 10.0;
+        boolean reviewed = random.nextBoolean();
+
+        json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":").append(magnitude)
+                .append(",\"place\":\"").append(place)
+                .append("\",\"time\":").append(time)
+                .append(",\"updated\":").append(updated)
+                .append(",\"tz\":null,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/").append(id)
+                .append("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=").append(id)
+                .append("&format=geojson\",\"felt\":").append(magnitude >= 4 ? String.valueOf(random.nextInt(500)) : "null")
+                .append(",\"cdi\":").append(magnitude >= 4 ? String.valueOf(random.nextInt(90) / 10.0) : "null")
+                .append(",\"mmi\":null,\"alert\":").append(magnitude >= 6 ? "\"green\"" : "null")
+                .append(",\"status\":\"").append(reviewed ? "reviewed" : "automatic")
+                .append("\",\"tsunami\":0,\"sig\":").append((int) (magnitude * magnitude * 10) + 1)
+                .append(",\"net\":\"").append(network)
+                .append("\",\"code\":\"").append(code)
+                .append("\",\"ids\":\",").append(id).append(",\",\"sources\":\",").append(network)
+                .append(",\",\"types\":\",origin,phase-data,\",\"nst\":").append(random.nextInt(80) + 4)
+                .append(",\"dmin\":").append(random.nextInt(5000) / 1000.0)
+                .append(",\"rms\":").append(random.nextInt(1500) / 1000.0)
+                .append(",\"gap\":").append(random.nextInt(300) + 10)
+                .append(",\"magType\":\"").append(magnitude >= 4 ? "mb" : "ml")
+                .append("\",\"type\":\"earthquake\",\"title\":\"M ").append(magnitude).append(" - ").append(place)
+                .append("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[").append(longitude).append(',')
+                .append(latitude).append(',').append(depth)
+                .append("]},\"id\":\"").append(id).append("\"}");
+    }
+
+    private static void flush(StringBuilder json, ByteArrayOutputStream output) {
+        byte[] bytes = json.toString().getBytes(UTF_8);
+        output.write(bytes, 0, bytes.length);
+        json.setLength(0);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.quakereport;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * The network conditions the replay server imitates: latency before the response, occasional latency spikes (the
+ * slow tail that hedged requests are meant to cut), a bandwidth limit on the body, and a share of requests answered
+ * with an error status.
+ * 模擬的網路狀況：回應前的延遲、偶發的延遲尖峰、回應內容的頻寬限制，以及一定比例的錯誤回應
+ *
+ * Random choices come from one seeded Random, so a run with the same seed and the same requests in the same order
+ * sees the same delays and errors.
+ */
+final class ReplayFaults {
+
+    /** Size of the chunks the throttled body is written in (about one TCP segment) */
+    private static final int CHUNK_BYTES = 1400;
+
+    private final long mLatencyMillis;
+
+    private final long mJitterMillis;
+
+    private final double mSpikeRate;
+
+    private final long mSpikeMillis;
+
+    /** 0 for no limit */
+    private final long mBytesPerSecond;
+
+    private final double mErrorRate;
+
+    private final int mErrorStatus;
+
+    private final Random mRandom;
+
+    /**
+     * @param latencyMillis is added before every response
+     * @param jitterMillis is the upper bound of a uniformly random delay added to the latency
+     * @param spikeRate is the share of requests (0 to 1) that are delayed by spikeMillis more
+     * @param spikeMillis is the extra delay of those requests
+     * @param bandwidthKbps is the bandwidth of each response body in kilobits per second, or 0 for no limit
+     * @param errorRate is the share of requests (0 to 1) answered with errorStatus instead of the events
+     * @param errorStatus is the HTTP status of those errors, e.g. 503
+     * @param seed seeds the random choices
+     */
+    ReplayFaults(long latencyMillis, long jitterMillis, double spikeRate, long spikeMillis, long bandwidthKbps,
+                 double errorRate, int errorStatus, long seed) {
+        mLatencyMillis = Math.max(0, latencyMillis);
+        mJitterMillis = Math.max(0, jitterMillis);
+        mSpikeRate = Math.max(0, Math.min(1, spikeRate));
+        mSpikeMillis = Math.max(0, spikeMillis);
+        mBytesPerSecond = Math.max(0, bandwidthKbps) * 1000 / 8;
+        mErrorRate = Math.max(0, Math.min(1, errorRate));
+        mErrorStatus = errorStatus;
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Returns the delay before the next response, in milliseconds.
+     */
+    synchronized long nextDelayMillis() {
+        long delay = mLatencyMillis + (mJitterMillis == 0 ? 0 : (long) (mRandom.nextDouble() * mJitterMillis));
+        if (mSpikeRate > 0 && mRandom.nextDouble() < mSpikeRate) {
+            delay += mSpikeMillis;      //偶發的延遲尖峰，例如伺服器卡住或封包遺失後的重傳
+        }
+        return delay;
+    }
+
+    /**
+     * Returns the error status the next response should have, or 0 to answer it normally.
+     */
+    synchronized int nextErrorStatus() {
+        return mErrorRate > 0 && mRandom.nextDouble() < mErrorRate ? mErrorStatus : 0;
+    }
+
+    /**
+     * Returns the given response body stream, limited to the configured bandwidth.
+     */
+    OutputStream throttle(OutputStream body) {
+        return mBytesPerSecond == 0 ? body : new ThrottledOutputStream(body, mBytesPerSecond);
+    }
+
+    String describe() {
+        return "latency=" + mLatencyMillis + "ms jitter=" + mJitterMillis + "ms"
+                + " spikes=" + Math.round(mSpikeRate * 100) + "% (+" + mSpikeMillis + "ms)"
+                + " bandwidth=" + (mBytesPerSecond == 0 ? "unlimited" : mBytesPerSecond * 8 / 1000 + "kbps")
+                + " errors=" + Math.round(mErrorRate * 100) + "% (" + mErrorStatus + ")";
+    }
+
+    /**
+     * Writes in chunks and sleeps between them, so that the bytes leave at no more than the given rate on average.
+     */
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+
+        private final long mBytesPerSecond;
+
+        private final long mStartNanos = System.nanoTime();
+
+        private long mWritten;
+
+        ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+            super(out);
+            mBytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, CHUNK_BYTES);
+                out.write(b, off, chunk);
+                out.flush();
+                mWritten += chunk;
+                off += chunk;
+                len -= chunk;
+                pace();
+            }
+        }
+
+        /**
+         * Sleep until the time at which the bytes written so far are due at the configured rate.
+         */
+        private void pace() throws IOException {
+            long dueNanos = mWritten * 1000000000L / mBytesPerSecond;
+            long aheadMillis = (dueNanos - (System.nanoTime() - mStartNanos)) / 1000000L;
+            if (aheadMillis > 0) {
+                try {
+                    Thread.sleep(aheadMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttling");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.android.quakereport;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * The recorded events the replay server answers from, and the FDSN query over them.
+ *
+ * Every feature of the recorded feeds is kept as JSON text (serialized once, at load time, with all the properties
+ * and the numbers exactly as USGS sent them), with the few values the query filters and sorts on. A query only selects
+ * and orders events; the server pastes their JSON together.
+ * 這個類保存錄好的地震資料，並依照FDSN的查詢參數(minmag、orderby、limit、offset、updatedafter等)篩選和排序
+ */
+final class ReplayFeed {
+
+    /** Largest "limit" USGS accepts */
+    static final int MAX_LIMIT = 20000;
+
+    /** Formats FDSN accepts for times (UTC), most specific first */
+    private static final String[] FDSN_TIME_PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ss.SSS",
+            "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm",
+            "yyyy-MM-dd"
+    };
+
+    private final List<Event> mEvents;
+
+    private ReplayFeed(List<Event> events) {
+        mEvents = events;
+    }
+
+    /**
+     * Load and merge the given GeoJSON feeds. An event in several feeds is kept once, in its most recently updated
+     * version.
+     */
+    static ReplayFeed load(List<File> files) throws IOException {
+        Map<String, Event> byId = new LinkedHashMap<>();
+        for (File file : files) {
+            Reader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+            try {
+                JsonArray features = new JsonParser().parse(reader).getAsJsonObject().getAsJsonArray("features");
+                for (JsonElement feature : features) {
+                    Event event = new Event(feature.getAsJsonObject());
+                    Event existing = byId.get(event.mId);
+                    if (existing == null || existing.mUpdated <= event.mUpdated) {
+                        byId.put(event.mId, event);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return new ReplayFeed(new ArrayList<>(byId.values()));
+    }
+
+    int size() {
+        return mEvents.size();
+    }
+
+    /**
+     * Returns the events matching the given FDSN query parameters, in order, as JSON features.
+     *
+     * @throws IllegalArgumentException if a parameter is not valid, which the server answers with 400
+     */
+    List<String> query(Map<String, String> parameters) {
+        String format = parameters.get("format");
+        if (format != null && !"geojson".equals(format)) {
+            throw new IllegalArgumentException("Only format=geojson is supported");
+        }
+        double minMagnitude = parseDouble(parameters, "minmag", Double.NEGATIVE_INFINITY);
+        double maxMagnitude = parseDouble(parameters, "maxmag", Double.POSITIVE_INFINITY);
+        long startTime = parseTime(parameters, "starttime", Long.MIN_VALUE);
+        long endTime = parseTime(parameters, "endtime", Long.MAX_VALUE);
+        long updatedAfter = parseTime(parameters, "updatedafter", Long.MIN_VALUE);
+        int offset = parseInt(parameters, "offset", 1);
+        int limit = parseInt(parameters, "limit", MAX_LIMIT);
+        if (offset < 1 || limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("offset must be >= 1 and limit between 1 and " + MAX_LIMIT);
+        }
+        boolean magnitudeFilter = parameters.containsKey("minmag") || parameters.containsKey("maxmag");
+
+        List<Event> matches = new ArrayList<>();
+        for (Event event : mEvents) {
+            if (magnitudeFilter && (Double.isNaN(event.mMagnitude)
+                    || event.mMagnitude < minMagnitude || event.mMagnitude > maxMagnitude)) {
+                continue;
+            }
+            if (event.mTime < startTime || event.mTime > endTime || event.mUpdated <= updatedAfter) {
+                continue;
+            }
+            matches.add(event);
+        }
+        Collections.sort(matches, comparator(parameters.get("orderby")));
+
+        List<String> features = new ArrayList<>();
+        for (int i = offset - 1; i < matches.size() && features.size() < limit; i++) {
+            features.add(matches.get(i).mJson);
+        }
+        return features;
+    }
+
+    private static Comparator<Event> comparator(String orderBy) {
+        if (orderBy == null || "time".equals(orderBy)) {
+            return new Comparator<Event>() {
+                @Override
+                public int compare(Event a, Event b) {
+                    return compareLongs(b.mTime, a.mTime);
+                }
+            };
+        } else if ("time-asc".equals(orderBy)) {
+            return new Comparator<Event>() {
+                @Override
+                public int compare(Event a, Event b) {
+                    return compareLongs(a.mTime, b.mTime);
+                }
+            };
+        } else if ("magnitude".equals(orderBy)) {
+            return new Comparator<Event>() {
+                @Override
+                public int compare(Event a, Event b) {
+                    return Double.compare(b.mMagnitude, a.mMagnitude);
+                }
+            };
+        } else if ("magnitude-asc".equals(orderBy)) {
+            return new Comparator<Event>() {
+                @Override
+                public int compare(Event a, Event b) {
+                    return Double.compare(a.mMagnitude, b.mMagnitude);
+                }
+            };
+        }
+        throw new IllegalArgumentException("Unknown orderby: " + orderBy);
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private static double parseDouble(Map<String, String> parameters, String name, double defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+
+    private static int parseInt(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Parse an FDSN time (UTC), or a number of milliseconds since the Epoch.
+     */
+    private static long parseTime(Map<String, String> parameters, String name, long defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.matches("-?\\d{5,}")) {
+            return Long.parseLong(value);
+        }
+        for (String pattern : FDSN_TIME_PATTERNS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            try {
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                // Try the next, less specific pattern.
+            }
+        }
+        throw new IllegalArgumentException("Bad " + name + ": " + value);
+    }
+
+    /**
+     * One recorded feature, with the values the query needs.
+     */
+    private static final class Event {
+
+        final String mId;
+
+        /** NaN if USGS sent no magnitude */
+        final double mMagnitude;
+
+        final long mTime;
+
+        final long mUpdated;
+
+        /** The feature as recorded */
+        final String mJson;
+
+        Event(JsonObject feature) {
+            JsonObject properties = feature.getAsJsonObject("properties");
+            JsonElement id = feature.get("id");
+            JsonElement magnitude = properties.get("mag");
+            mId = id == null || id.isJsonNull() ? String.valueOf(System.identityHashCode(feature)) : id.getAsString();
+            mMagnitude = magnitude == null || magnitude.isJsonNull() ? Double.NaN : magnitude.getAsDouble();
+            mTime = properties.get("time").getAsLong();
+            JsonElement updated = properties.get("updated");
+            mUpdated = updated == null || updated.isJsonNull() ? mTime : updated.getAsLong();
+            mJson = feature.toString();
+        }
+    }
+}
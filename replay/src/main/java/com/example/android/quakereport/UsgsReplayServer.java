@@ -0,0 +1,253 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the USGS FDSN event service (/fdsnws/event/1/query) that replays recorded GeoJSON.
+ *
+ * It answers the parameters the app sends: format (geojson only), minmag/maxmag, starttime/endtime, updatedafter,
+ * orderby (time, time-asc, magnitude, magnitude-asc), limit and offset, with USGS's rules (offset starts at 1, limit is
+ * at most 20000, a bad parameter is a 400). Bodies are gzipped when the client accepts it, as USGS does.
+ * The network can be made worse with ReplayFaults: latency, latency spikes, a bandwidth limit and injected error
+ * responses.
+ * 本機的USGS查詢服務替身：重播錄好的GeoJSON，可模擬延遲、頻寬限制和錯誤回應，讓載入流程可以離線做負載測試
+ *
+ * Record a feed with e.g.
+ *   curl -o feeds/usgs-20000.geojson "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=20000"
+ * and see ReplayDriverService (app/src/debug) for the driver that loads through the app against this server.
+ */
+public final class UsgsReplayServer {
+
+    private static final String QUERY_PATH = "/fdsnws/event/1/query";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String USAGE = "Usage: replay --feed FILE [--feed FILE ...] [options]\n"
+            + "  --port N             port to listen on (default 8080)\n"
+            + "  --latency-ms N       delay before every response (default 0)\n"
+            + "  --jitter-ms N        extra random delay, 0 to N ms (default 0)\n"
+            + "  --spike-rate P       share of requests delayed by a latency spike, 0 to 1 (default 0)\n"
+            + "  --spike-ms N         extra delay of a latency spike (default 2000)\n"
+            + "  --bandwidth-kbps N   bandwidth of each response body, in kilobits/s (default unlimited)\n"
+            + "  --error-rate P       share of requests answered with an error, 0 to 1 (default 0)\n"
+            + "  --error-status N     HTTP status of those errors (default 503)\n"
+            + "  --no-gzip            never compress responses\n"
+            + "  --seed N             seed of the random delays and errors (default 1)\n";
+
+    private final ReplayFeed mFeed;
+
+    private final ReplayFaults mFaults;
+
+    private final boolean mGzip;
+
+    private UsgsReplayServer(ReplayFeed feed, ReplayFaults faults, boolean gzip) {
+        mFeed = feed;
+        mFaults = faults;
+        mGzip = gzip;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<File> feeds = new ArrayList<>();
+        int port = 8080;
+        long latencyMillis = 0;
+        long jitterMillis = 0;
+        double spikeRate = 0;
+        long spikeMillis = 2000;
+        long bandwidthKbps = 0;
+        double errorRate = 0;
+        int errorStatus = 503;
+        boolean gzip = true;
+        long seed = 1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if ("--no-gzip".equals(option)) {
+                    gzip = false;
+                    continue;
+                }
+                if ("--help".equals(option) || i + 1 >= args.length) {
+                    System.out.print(USAGE);
+                    return;
+                }
+                String value = args[++i];
+                if ("--feed".equals(option)) {
+                    feeds.add(new File(value));
+                } else if ("--port".equals(option)) {
+                    port = Integer.parseInt(value);
+                } else if ("--latency-ms".equals(option)) {
+                    latencyMillis = Long.parseLong(value);
+                } else if ("--jitter-ms".equals(option)) {
+                    jitterMillis = Long.parseLong(value);
+                } else if ("--spike-rate".equals(option)) {
+                    spikeRate = Double.parseDouble(value);
+                } else if ("--spike-ms".equals(option)) {
+                    spikeMillis = Long.parseLong(value);
+                } else if ("--bandwidth-kbps".equals(option)) {
+                    bandwidthKbps = Long.parseLong(value);
+                } else if ("--error-rate".equals(option)) {
+                    errorRate = Double.parseDouble(value);
+                } else if ("--error-status".equals(option)) {
+                    errorStatus = Integer.parseInt(value);
+                } else if ("--seed".equals(option)) {
+                    seed = Long.parseLong(value);
+                } else {
+                    System.out.print("Unknown option " + option + "\n" + USAGE);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.print("Bad number: " + e.getMessage() + "\n" + USAGE);
+            return;
+        }
+        if (feeds.isEmpty()) {
+            System.out.print(USAGE);
+            return;
+        }
+
+        ReplayFeed feed = ReplayFeed.load(feeds);
+        ReplayFaults faults = new ReplayFaults(latencyMillis, jitterMillis, spikeRate, spikeMillis, bandwidthKbps,
+                errorRate, errorStatus, seed);
+        start(feed, faults, gzip, port);
+        System.out.println("Replaying " + feed.size() + " events on http://localhost:" + port + QUERY_PATH
+                + " (" + faults.describe() + ", gzip=" + gzip + ")");
+    }
+
+    /**
+     * Start a server on the given port (0 for any free port) and return it; stop it with HttpServer.stop().
+     */
+    static HttpServer start(ReplayFeed feed, ReplayFaults faults, boolean gzip, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        final UsgsReplayServer replay = new UsgsReplayServer(feed, faults, gzip);
+        server.createContext(QUERY_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    replay.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());   //每個連線各自一個執行緒，延遲和限速不會互相卡住
+        server.start();
+        return server;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String query = exchange.getRequestURI().getRawQuery();
+
+        sleep(mFaults.nextDelayMillis());
+        int errorStatus = mFaults.nextErrorStatus();
+        if (errorStatus != 0) {
+            sendText(exchange, errorStatus, "Injected error\n");
+            log(exchange, errorStatus, -1, start);
+            return;
+        }
+
+        List<String> features;
+        try {
+            features = mFeed.query(parseQuery(query));
+        } catch (IllegalArgumentException e) {
+            sendText(exchange, 400, "Bad Request: " + e.getMessage() + "\n");
+            log(exchange, 400, -1, start);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = mGzip && acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, 0);  //0: chunked, the length isn't known before the body is compressed
+        OutputStream body = mFaults.throttle(exchange.getResponseBody());
+        if (gzip) {
+            body = new GZIPOutputStream(body, 8192);
+        }
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":").append(System.currentTimeMillis())
+                .append(",\"url\":\"http://localhost").append(QUERY_PATH).append('?').append(query == null ? "" : query)
+                .append("\",\"title\":\"USGS Earthquakes (replay)\",\"status\":200,\"api\":\"1.10.3\",\"count\":")
+                .append(features.size()).append("},\"features\":[");
+        for (int i = 0; i < features.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(features.get(i));
+            if (json.length() > 64 * 1024) {
+                body.write(json.toString().getBytes(UTF_8));
+                json.setLength(0);
+            }
+        }
+        json.append("]}");
+        body.write(json.toString().getBytes(UTF_8));
+        body.close();
+        log(exchange, 200, features.size(), start);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(decode(parameter.substring(0, equals)).toLowerCase(Locale.US),
+                        decode(parameter.substring(equals + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+    }
+
+    private static void log(HttpExchange exchange, int status, int events, long start) {
+        System.out.println(String.format(Locale.US, "%d %s %s%s %.0f ms", status,
+                exchange.getRequestMethod(), exchange.getRequestURI(),
+                events < 0 ? "" : " -> " + events + " events", (System.nanoTime() - start) / 1e6));
+    }
+}